@@ -0,0 +1,31 @@
+package com.learntocode.inverntoryservice.configuration;
+
+import com.learntocode.inverntoryservice.model.ReservationStatus;
+import com.learntocode.inverntoryservice.repository.ReservationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/***
+ * Populates the status of Reservations saved before the status column was introduced. Released reservation keys
+ * used to be deleted, so every remaining row still holds its stock and becomes RESERVED. The update only touches
+ * rows without status, so it is a no-op once all rows have been migrated
+ */
+@Component
+@Slf4j
+public class ReservationStatusMigration implements ApplicationRunner {
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Override
+    @Transactional
+    public void run(ApplicationArguments args) {
+        int migratedReservations = reservationRepository.populateMissingStatus(ReservationStatus.RESERVED);
+        if(migratedReservations > 0){
+            log.info("Populated status of {} Reservations", migratedReservations);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.learntocode.inverntoryservice.configuration;
+
+import com.learntocode.inverntoryservice.repository.InventoryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/***
+ * Populates the normalized skuCode key of Inventories saved before the key column was introduced.
+ * The unique index on the key column is created by hibernate schema update, rows without a key are
+ * migrated here on startup. The update only touches rows where the key is missing, so it is a no-op
+ * once all rows have been migrated. Inventories whose skuCodes only differ by case cannot share the
+ * unique key, they are reported before anything is migrated and have to be merged by hand
+ */
+@Component
+@Slf4j
+public class SkuCodeKeyMigration implements ApplicationRunner {
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Override
+    @Transactional
+    public void run(ApplicationArguments args) {
+        List<String> duplicateSkuCodeKeys = inventoryRepository.findDuplicateSkuCodeKeys();
+        if(!duplicateSkuCodeKeys.isEmpty()){
+            throw new IllegalStateException("SkuCode key cannot be populated, Inventories of skuCodes " +
+                    duplicateSkuCodeKeys + " only differ by case. Merge them into one Inventory per skuCode " +
+                    "before starting inventory-service");
+        }
+        int migratedInventories = inventoryRepository.populateMissingSkuCodeKeys();
+        if(migratedInventories > 0){
+            log.info("Populated skuCode key of {} Inventories", migratedInventories);
+        }
+    }
+}
@@ -6,16 +6,23 @@ import com.learntocode.inverntoryservice.dto.InventoryUpdateRequestDTO;
 import com.learntocode.inverntoryservice.dto.OrderInventoryDTO;
 import com.learntocode.inverntoryservice.exception.InventoryNotFoundException;
 import com.learntocode.inverntoryservice.service.InventoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/api/inventories")
 public class InventoryController {
     @Autowired
     private InventoryService inventoryService;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     /***
      * Endpoint to create inventory
@@ -28,12 +35,37 @@ public class InventoryController {
     }
 
     /***
-     * Endpoint to get all Inventories
+     * Endpoint to get all Inventories. When afterId or size is given, a single page ordered by id is returned,
+     * the id of the last Inventory of a page is the afterId of the next page
+     * @param afterId id of the last Inventory of the previous page
+     * @param size maximum number of Inventories in the page
      * @return list of InventoryResponseDTO
      */
     @GetMapping("/")
-    public List<InventoryResponseDTO> getAllInventories(){
-        return inventoryService.getAllInventories();
+    public List<InventoryResponseDTO> getAllInventories(@RequestParam(value = "afterId", required = false) Long afterId,
+                                                        @RequestParam(value = "size", required = false) Integer size){
+        if(Objects.isNull(afterId) && Objects.isNull(size)){
+            return inventoryService.getAllInventories();
+        }
+        return inventoryService.getInventoriesPage(afterId, size);
+    }
+
+    /***
+     * Endpoint to stream all Inventories as newline delimited JSON, selected with Accept: application/x-ndjson.
+     * Each Inventory is written to the response as soon as it is read
+     * @return StreamingResponseBody writing one InventoryResponseDTO per line
+     */
+    @GetMapping(value = "/", produces = "application/x-ndjson")
+    public StreamingResponseBody streamAllInventories(){
+        return outputStream -> inventoryService.streamAllInventories(responseDTO -> {
+            try{
+                outputStream.write(objectMapper.writeValueAsBytes(responseDTO));
+                outputStream.write('\n');
+            }
+            catch(IOException exception){
+                throw new UncheckedIOException(exception);
+            }
+        });
     }
 
     /***
@@ -90,4 +122,36 @@ public class InventoryController {
     public OrderInventoryDTO isInStock(@RequestBody OrderInventoryDTO requestDTO){
         return inventoryService.isInStock(requestDTO);
     }
+
+    /***
+     * Endpoint to reserve the required quantity of all the products in the given order request. Either all the
+     * products are reserved or none of them
+     * @param requestDTO OrderInventoryDTO contains list of skuCodes and required quantity
+     * @return OrderInventoryDTO contains list of skuCodes, required quantity, available quantity and flag
+     * indicating if in stock or not. All flags are true only when the reservation succeeded
+     */
+    @PostMapping("/reserve/")
+    public OrderInventoryDTO reserve(@RequestBody OrderInventoryDTO requestDTO){
+        return inventoryService.reserve(requestDTO);
+    }
+
+    /***
+     * Endpoint to reserve the products of several orders in one call. Every order is reserved on its own, either
+     * all the products of an order are reserved or none of them, irrespective of the other orders in the batch
+     * @param requestDTOList list of OrderInventoryDTO each containing the skuCodes and required quantity of an order
+     * @return list of OrderInventoryDTO containing the result of each reservation, in the order of the request
+     */
+    @PostMapping("/reserve/batch/")
+    public List<OrderInventoryDTO> reserveAll(@RequestBody List<OrderInventoryDTO> requestDTOList){
+        return inventoryService.reserveAll(requestDTOList);
+    }
+
+    /***
+     * Endpoint to release the quantity of products reserved earlier through reserve endpoint
+     * @param requestDTO OrderInventoryDTO contains list of skuCodes and the quantity to be released
+     */
+    @PostMapping("/release/")
+    public void release(@RequestBody OrderInventoryDTO requestDTO){
+        inventoryService.release(requestDTO);
+    }
 }
@@ -5,12 +5,12 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
+import javax.persistence.*;
+import java.util.Locale;
+import java.util.Objects;
 
 @Entity
+@Table(indexes = @Index(name = "ux_inventory_sku_code_key", columnList = "sku_code_key", unique = true))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -21,4 +21,24 @@ public class Inventory {
     private Long id;
     private String skuCode;
     private Integer quantity;
+    @Column(name = "sku_code_key")
+    private String skuCodeKey;
+
+    /***
+     * Keeps the normalized skuCode key in sync with skuCode whenever the Inventory is written
+     */
+    @PrePersist
+    @PreUpdate
+    public void updateSkuCodeKey(){
+        this.skuCodeKey = normalizeSkuCode(skuCode);
+    }
+
+    /***
+     * Method to normalize skuCode so that case-insensitive lookups can be served by an equality predicate
+     * @param skuCode skuCode to be normalized
+     * @return upper cased skuCode, null if skuCode is null
+     */
+    public static String normalizeSkuCode(String skuCode){
+        return Objects.isNull(skuCode) ? null : skuCode.toUpperCase(Locale.ROOT);
+    }
 }
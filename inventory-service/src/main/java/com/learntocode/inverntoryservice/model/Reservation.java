@@ -0,0 +1,33 @@
+package com.learntocode.inverntoryservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/***
+ * Marks a reservation made under a reservation key, so that the same reservation requested again, for instance by
+ * a hedged call, is not applied twice. The row is written in the transaction decrementing the quantities and moves
+ * to RELEASED once the quantities are given back. A release arriving before its reservation leaves a RELEASED row
+ * as well, so a late reservation under the key is not applied
+ */
+@Entity
+@Table(indexes = @Index(name = "ux_reservation_reservation_key", columnList = "reservation_key", unique = true))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class Reservation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "reservation_key", nullable = false)
+    private String reservationKey;
+    @Enumerated(EnumType.STRING)
+    private ReservationStatus status;
+    private Instant createdAt;
+    private Instant releasedAt;
+}
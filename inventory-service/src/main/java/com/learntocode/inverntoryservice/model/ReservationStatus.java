@@ -0,0 +1,6 @@
+package com.learntocode.inverntoryservice.model;
+
+public enum ReservationStatus {
+    RESERVED,
+    RELEASED
+}
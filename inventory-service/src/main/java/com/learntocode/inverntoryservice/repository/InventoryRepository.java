@@ -1,12 +1,83 @@
 package com.learntocode.inverntoryservice.repository;
 
 import com.learntocode.inverntoryservice.model.Inventory;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
-    Optional<Inventory> findBySkuCodeIgnoreCase(String skuCode);
+    Optional<Inventory> findBySkuCodeKey(String skuCodeKey);
+
+    /***
+     * Method to fetch a page of Inventories following the given id, used for keyset pagination
+     * @param id of the last Inventory of the previous page
+     * @param pageable page size, offset is always 0
+     * @return List of Inventory ordered by id
+     */
+    List<Inventory> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /***
+     * Method to stream all Inventories ordered by id. Rows are fetched from the database in chunks of the fetch
+     * size, the stream has to be consumed within a transaction and closed afterwards
+     * @return Stream of Inventory
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select i from Inventory i order by i.id")
+    Stream<Inventory> streamAllOrderById();
+
+    /***
+     * Method to fetch all Inventories for a set of skuCodes in a single query
+     * @param skuCodeKeys normalized skuCodes
+     * @return List of Inventory matching any of the given skuCodes irrespective of case
+     */
+    List<Inventory> findAllBySkuCodeKeyIn(Collection<String> skuCodeKeys);
+
+    /***
+     * Method to decrement the quantity of an Inventory only if enough quantity is available
+     * @param skuCodeKey normalized skuCode
+     * @param quantity quantity to be reserved
+     * @return number of Inventories updated, 0 if Inventory is not found or not enough quantity is available
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update Inventory i set i.quantity = i.quantity - :quantity " +
+            "where i.skuCodeKey = :skuCodeKey and i.quantity >= :quantity")
+    int reserveQuantity(@Param("skuCodeKey") String skuCodeKey, @Param("quantity") Integer quantity);
+
+    /***
+     * Method to increment the quantity of an Inventory, used to release a previous reservation
+     * @param skuCodeKey normalized skuCode
+     * @param quantity quantity to be released
+     * @return number of Inventories updated
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update Inventory i set i.quantity = i.quantity + :quantity where i.skuCodeKey = :skuCodeKey")
+    int releaseQuantity(@Param("skuCodeKey") String skuCodeKey, @Param("quantity") Integer quantity);
+
+    /***
+     * Method to find skuCodes shared by several Inventories irrespective of case, they cannot be given the same
+     * unique normalized skuCode key
+     * @return List of upper cased skuCodes held by more than one Inventory
+     */
+    @Query("select upper(i.skuCode) from Inventory i where i.skuCode is not null " +
+            "group by upper(i.skuCode) having count(i) > 1")
+    List<String> findDuplicateSkuCodeKeys();
+
+    /***
+     * Method to populate the normalized skuCode key of Inventories created before the key column existed
+     * @return number of Inventories updated
+     */
+    @Modifying
+    @Query("update Inventory i set i.skuCodeKey = upper(i.skuCode) where i.skuCodeKey is null and i.skuCode is not null")
+    int populateMissingSkuCodeKeys();
 }
@@ -0,0 +1,52 @@
+package com.learntocode.inverntoryservice.repository;
+
+import com.learntocode.inverntoryservice.model.Reservation;
+import com.learntocode.inverntoryservice.model.ReservationStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface ReservationRepository extends JpaRepository<Reservation, Long> {
+    Optional<Reservation> findByReservationKey(String reservationKey);
+
+    /***
+     * Method to mark the Reservation made under a reservation key as released
+     * @param reservationKey reservation key
+     * @param releasedAt instant of the release
+     * @return number of Reservations released, 0 if nothing is reserved under the key or it is already released
+     */
+    @Modifying
+    @Query("update Reservation r set r.status = com.learntocode.inverntoryservice.model.ReservationStatus.RELEASED, " +
+            "r.releasedAt = :releasedAt " +
+            "where r.reservationKey = :reservationKey " +
+            "and r.status = com.learntocode.inverntoryservice.model.ReservationStatus.RESERVED")
+    int markReleased(@Param("reservationKey") String reservationKey, @Param("releasedAt") Instant releasedAt);
+
+    /***
+     * Method to delete the Reservations released before the retention, a repeated call can no longer arrive for
+     * them. Reservations still holding stock are kept, so that they can be released at any time
+     * @param releasedBefore Reservations released before this instant are deleted
+     * @return number of Reservations deleted
+     */
+    @Modifying
+    @Query("delete from Reservation r " +
+            "where r.status = com.learntocode.inverntoryservice.model.ReservationStatus.RELEASED " +
+            "and r.releasedAt < :releasedBefore")
+    int deleteReleasedBefore(@Param("releasedBefore") Instant releasedBefore);
+
+    /***
+     * Method to populate the status of Reservations made before the status column existed, which all still hold
+     * their stock as released keys used to be deleted
+     * @param status status of the migrated Reservations
+     * @return number of Reservations updated
+     */
+    @Modifying
+    @Query("update Reservation r set r.status = :status where r.status is null")
+    int populateMissingStatus(@Param("status") ReservationStatus status);
+}
@@ -7,14 +7,20 @@ import com.learntocode.inverntoryservice.dto.OrderInventoryDTO;
 import com.learntocode.inverntoryservice.exception.InventoryNotFoundException;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface InventoryService {
     InventoryResponseDTO createInventory(InventoryRequestDTO requestDTO);
     List<InventoryResponseDTO> getAllInventories();
+    List<InventoryResponseDTO> getInventoriesPage(Long afterId, Integer size);
+    void streamAllInventories(Consumer<InventoryResponseDTO> consumer);
     InventoryResponseDTO getInventoryById(Long id) throws InventoryNotFoundException;
     InventoryResponseDTO getInventoryBySkuCodeIgnoreCase(String skuCode) throws InventoryNotFoundException;
     InventoryResponseDTO updateInventory(InventoryUpdateRequestDTO requestDTO) throws InventoryNotFoundException;
     void deleteInventoryById(Long id) throws InventoryNotFoundException;
 
     OrderInventoryDTO isInStock(OrderInventoryDTO requestDTO);
+    OrderInventoryDTO reserve(OrderInventoryDTO requestDTO);
+    List<OrderInventoryDTO> reserveAll(List<OrderInventoryDTO> requestDTOList);
+    void release(OrderInventoryDTO requestDTO);
 }
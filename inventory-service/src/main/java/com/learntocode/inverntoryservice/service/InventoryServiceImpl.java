@@ -3,18 +3,64 @@ package com.learntocode.inverntoryservice.service;
 import com.learntocode.inverntoryservice.dto.*;
 import com.learntocode.inverntoryservice.exception.InventoryNotFoundException;
 import com.learntocode.inverntoryservice.model.Inventory;
+import com.learntocode.inverntoryservice.model.Reservation;
+import com.learntocode.inverntoryservice.model.ReservationStatus;
 import com.learntocode.inverntoryservice.repository.InventoryRepository;
+import com.learntocode.inverntoryservice.repository.ReservationRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class InventoryServiceImpl implements InventoryService{
     @Autowired
     private InventoryRepository inventoryRepository;
+    @Autowired
+    private ReservationRepository reservationRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private CacheManager cacheManager;
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Value("${listing.max-page-size}")
+    private Integer maxPageSize;
+    @Value("${inventory.reservation.retention}")
+    private Duration reservationRetention;
+
+    /* Availability cache keyed by normalized skuCode. It only serves read-only lookups, reservations
+       always go to the database and evict the affected entries once committed
+     */
+    private Cache inventoryCache;
+    /* Eviction generations of the availability cache, one per stripe of normalized skuCodes. An Inventory read from
+       the database is only cached if no eviction of its stripe happened since the read started, so a read racing a
+       reservation cannot put back the quantity the reservation evicted
+     */
+    private static final int EVICTION_STRIPES = 1024;
+    private final AtomicLongArray evictionGenerations = new AtomicLongArray(EVICTION_STRIPES);
+
+    @PostConstruct
+    public void initInventoryCache(){
+        inventoryCache = cacheManager.getCache("inventories");
+    }
 
     /***
      * Method maps requestDTO to inventory object, invokes repository save method to save Inventory
@@ -24,7 +70,12 @@ public class InventoryServiceImpl implements InventoryService{
      */
     @Override
     public InventoryResponseDTO createInventory(InventoryRequestDTO requestDTO) {
-        return mapToInventoryResponseDTO(inventoryRepository.save(mapToInventory(requestDTO)));
+        String skuCodeKey = Inventory.normalizeSkuCode(requestDTO.getSkuCode());
+        long evictionGeneration = evictionGeneration(skuCodeKey);
+        Inventory inventory = inventoryRepository.save(mapToInventory(requestDTO));
+        InventoryResponseDTO responseDTO = mapToInventoryResponseDTO(inventory);
+        cacheInventory(skuCodeKey, responseDTO, evictionGeneration);
+        return responseDTO;
     }
 
     /***
@@ -37,6 +88,38 @@ public class InventoryServiceImpl implements InventoryService{
         return inventoryList.stream().map(this::mapToInventoryResponseDTO).toList();
     }
 
+    /***
+     * Method returns a page of Inventories using keyset pagination on id
+     * @param afterId id of the last Inventory of the previous page, null for the first page
+     * @param size number of Inventories in the page, limited to the configured maximum page size
+     * @return List of InventoryResponseDTO ordered by id
+     */
+    @Override
+    public List<InventoryResponseDTO> getInventoriesPage(Long afterId, Integer size) {
+        int pageSize = Objects.isNull(size) ? maxPageSize : Math.max(1, Math.min(size, maxPageSize));
+        return inventoryRepository
+                .findByIdGreaterThanOrderByIdAsc(Objects.requireNonNullElse(afterId, 0L), PageRequest.of(0, pageSize))
+                .stream()
+                .map(this::mapToInventoryResponseDTO)
+                .toList();
+    }
+
+    /***
+     * Method streams all Inventories to the consumer one by one. Inventories are read with a bounded fetch size
+     * and detached once mapped, so memory stays constant irrespective of the number of Inventories
+     * @param consumer receives each InventoryResponseDTO as soon as it is mapped
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllInventories(Consumer<InventoryResponseDTO> consumer) {
+        try(Stream<Inventory> inventoryStream = inventoryRepository.streamAllOrderById()){
+            inventoryStream.forEach(inventory -> {
+                consumer.accept(mapToInventoryResponseDTO(inventory));
+                entityManager.detach(inventory);
+            });
+        }
+    }
+
     /***
      * Method to retrieve Inventory based on id
      * @param id Inventory id
@@ -53,18 +136,27 @@ public class InventoryServiceImpl implements InventoryService{
     }
 
     /***
-     * Method retrieves Inventory object based on skuCode
+     * Method retrieves Inventory object based on skuCode, served from the availability cache when present
      * @param skuCode of Inventory
      * @return InventoryResponseDTO corresponding to Inventory of particular skuCode
      * @throws InventoryNotFoundException exception is throws if inventory is not present
      */
     @Override
     public InventoryResponseDTO getInventoryBySkuCodeIgnoreCase(String skuCode) throws InventoryNotFoundException {
-        Optional<Inventory> inventoryOptional = inventoryRepository.findBySkuCodeIgnoreCase(skuCode);
+        String skuCodeKey = Inventory.normalizeSkuCode(skuCode);
+        InventoryResponseDTO cachedDTO = Objects.isNull(skuCodeKey) ? null :
+                inventoryCache.get(skuCodeKey, InventoryResponseDTO.class);
+        if(Objects.nonNull(cachedDTO)){
+            return cachedDTO;
+        }
+        long evictionGeneration = evictionGeneration(skuCodeKey);
+        Optional<Inventory> inventoryOptional = inventoryRepository.findBySkuCodeKey(skuCodeKey);
         if(inventoryOptional.isEmpty()){
             throw new InventoryNotFoundException("Inventory " + skuCode + " Not Found");
         }
-        return mapToInventoryResponseDTO(inventoryOptional.get());
+        InventoryResponseDTO responseDTO = mapToInventoryResponseDTO(inventoryOptional.get());
+        cacheInventory(skuCodeKey, responseDTO, evictionGeneration);
+        return responseDTO;
     }
 
     /***
@@ -80,6 +172,7 @@ public class InventoryServiceImpl implements InventoryService{
             throw new InventoryNotFoundException("Inventory " + requestDTO.getId() + " Not Found");
         }
         Inventory inventory = inventoryOptional.get();
+        String previousSkuCodeKey = inventory.getSkuCodeKey();
         if(Objects.nonNull(requestDTO.getSkuCode()) &&
         !"".equalsIgnoreCase(requestDTO.getSkuCode())){
             inventory.setSkuCode(requestDTO.getSkuCode());
@@ -88,7 +181,15 @@ public class InventoryServiceImpl implements InventoryService{
                 !"".equalsIgnoreCase(requestDTO.getQuantity().toString())){
             inventory.setQuantity(requestDTO.getQuantity());
         }
-        return mapToInventoryResponseDTO(inventoryRepository.save(inventory));
+        String skuCodeKey = Inventory.normalizeSkuCode(inventory.getSkuCode());
+        long evictionGeneration = evictionGeneration(skuCodeKey);
+        inventory = inventoryRepository.save(inventory);
+        InventoryResponseDTO responseDTO = mapToInventoryResponseDTO(inventory);
+        if(!Objects.equals(previousSkuCodeKey, skuCodeKey)){
+            evictInventories(Collections.singleton(previousSkuCodeKey));
+        }
+        cacheInventory(skuCodeKey, responseDTO, evictionGeneration);
+        return responseDTO;
     }
 
     /***
@@ -104,10 +205,13 @@ public class InventoryServiceImpl implements InventoryService{
             throw new InventoryNotFoundException("Inventory " + id + " Not Found");
         }
         inventoryRepository.delete(inventoryOptional.get());
+        evictInventories(Collections.singleton(inventoryOptional.get().getSkuCodeKey()));
     }
 
     /***
-     * Method to check if requested Products are in Stock and in required quantity
+     * Method to check if requested Products are in Stock and in required quantity.
+     * Inventories are served from the availability cache, the ones missing in the cache are fetched with a
+     * single query and matched in memory
      * @param requestDTO OrderInventoryDTO contains list of skuCodes corresponding to products, and the required
      *                   quantity
      * @return OrderInventoryDTO contains list of skuCodes, required quantity, available quantity and finally
@@ -115,41 +219,377 @@ public class InventoryServiceImpl implements InventoryService{
      */
     @Override
     public OrderInventoryDTO isInStock(OrderInventoryDTO requestDTO) {
+        return checkInventoryStock(requestDTO,
+                findCachedInventoriesBySkuCodes(requestDTO.getOrderLineItemInventoryDTOList()));
+    }
+
+    /***
+     * Helper method to check the stock of all the line items against the resolved Inventories
+     * @param requestDTO OrderInventoryDTO contains list of skuCodes and the required quantity
+     * @param inventoryMap Inventories of the order resolved by normalized skuCode
+     * @return OrderInventoryDTO contains list of skuCodes, required quantity, available quantity and in stock flag
+     */
+    public OrderInventoryDTO checkInventoryStock(OrderInventoryDTO requestDTO,
+                                                 Map<String, InventoryResponseDTO> inventoryMap){
         OrderInventoryDTO responseDTO = new OrderInventoryDTO();
         List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList = requestDTO
                 .getOrderLineItemInventoryDTOList()
                 .stream()
-                .map(this::checkInventoryStock)
+                .map(orderLineItemInventoryDTO -> checkInventoryStock(orderLineItemInventoryDTO, inventoryMap))
                 .toList();
         responseDTO.setOrderLineItemInventoryDTOList(orderLineItemInventoryDTOList);
         return responseDTO;
     }
 
+    /***
+     * Method to reserve requested Products. Quantities are decremented with conditional updates
+     * (quantity >= required) within one transaction, so either all the line items are reserved or none of them.
+     * SkuCodes are reserved in sorted order so that concurrent reservations lock rows in the same order.
+     * A reservation carrying a reservation key is applied at most once. A repeated request for a key is answered
+     * with the outcome stored for the key: reserved while it holds the stock, not in stock once it has been
+     * released, without touching the quantities again
+     * @param requestDTO OrderInventoryDTO contains list of skuCodes, the required quantity and optionally a
+     * reservation key
+     * @return OrderInventoryDTO contains list of skuCodes, required quantity, available quantity and in stock
+     * flag. On success available quantity is the quantity left after the reservation
+     */
+    @Override
+    public OrderInventoryDTO reserve(OrderInventoryDTO requestDTO) {
+        Map<String, Integer> requiredQuantityMap =
+                requiredQuantityBySkuCode(requestDTO.getOrderLineItemInventoryDTOList());
+        Set<String> unavailableSkuCodes = new HashSet<>();
+        OrderInventoryDTO reservedDTO;
+        try{
+            reservedDTO = transactionTemplate.execute(status -> {
+                if(Objects.nonNull(requestDTO.getReservationKey())){
+                    /* Blocks on the unique index while a concurrent request with the same key is in flight and
+                       fails once that one committed */
+                    reservationRepository.saveAndFlush(new Reservation(null, requestDTO.getReservationKey(),
+                            ReservationStatus.RESERVED, Instant.now(), null));
+                }
+                for(Map.Entry<String, Integer> entry : requiredQuantityMap.entrySet()){
+                    if(entry.getValue() < 0 ||
+                            inventoryRepository.reserveQuantity(entry.getKey(), entry.getValue()) == 0){
+                        unavailableSkuCodes.add(entry.getKey());
+                        status.setRollbackOnly();
+                        return null;
+                    }
+                }
+                return reservedResponse(requestDTO);
+            });
+        }
+        catch(DataIntegrityViolationException exception){
+            /* Only the unique reservation key is expected to be violated, anything else is not a repeated
+               reservation */
+            if(Objects.isNull(requestDTO.getReservationKey())){
+                throw exception;
+            }
+            boolean reserved = reservationRepository
+                    .findByReservationKey(requestDTO.getReservationKey())
+                    .map(reservation -> reservation.getStatus() == ReservationStatus.RESERVED)
+                    .orElse(false);
+            return reserved ? reservedResponse(requestDTO) : releasedResponse(requestDTO);
+        }
+        if(Objects.nonNull(reservedDTO)){
+            evictInventories(requiredQuantityMap.keySet());
+            return reservedDTO;
+        }
+
+        /* Reservation rolled back, report the current availability from the database. The line item that could
+           not be reserved is always reported as not in stock even if the stock got replenished in the meantime
+         */
+        OrderInventoryDTO responseDTO = checkInventoryStock(requestDTO,
+                findInventoriesBySkuCodes(requestDTO.getOrderLineItemInventoryDTOList()));
+        responseDTO.getOrderLineItemInventoryDTOList()
+                .stream()
+                .filter(orderLineItemInventoryDTO -> Objects.isNull(orderLineItemInventoryDTO.getSkuCode()) ||
+                        unavailableSkuCodes.contains(Inventory.normalizeSkuCode(orderLineItemInventoryDTO.getSkuCode())))
+                .forEach(orderLineItemInventoryDTO -> orderLineItemInventoryDTO.setInStock(false));
+        return responseDTO;
+    }
+
+    /***
+     * Method to reserve the requested Products of several orders. Every order is reserved in its own transaction,
+     * so an order that cannot be reserved does not affect the other orders of the batch. The orders are reserved
+     * one after the other on the calling thread, so a batch saves order-service calls but not database round trips,
+     * and takes as long as its orders reserved on their own. Batches are bounded by the bulk max-size and coalescer
+     * max-batch-size of order-service
+     * @param requestDTOList list of OrderInventoryDTO each containing the skuCodes and required quantity of an order
+     * @return list of OrderInventoryDTO containing the result of each reservation, in the order of the request
+     */
+    @Override
+    public List<OrderInventoryDTO> reserveAll(List<OrderInventoryDTO> requestDTOList) {
+        return requestDTOList
+                .stream()
+                .map(this::reserve)
+                .toList();
+    }
+
+    /***
+     * Method to release the quantities reserved earlier for the requested Products. A release carrying a
+     * reservation key only releases the quantities if they are held under that key, and marks the key released so
+     * that neither a repeated release nor a late repeated reservation changes the quantities again. A release
+     * arriving before any reservation under its key leaves the key released, the reservation is then never applied
+     * @param requestDTO OrderInventoryDTO contains list of skuCodes, the quantity to be released and optionally the
+     * reservation key they have been reserved under
+     */
+    @Override
+    public void release(OrderInventoryDTO requestDTO) {
+        Map<String, Integer> requiredQuantityMap =
+                requiredQuantityBySkuCode(requestDTO.getOrderLineItemInventoryDTOList());
+        boolean released;
+        try{
+            released = releaseQuantities(requestDTO.getReservationKey(), requiredQuantityMap);
+        }
+        catch(DataIntegrityViolationException exception){
+            /* A reservation under the key committed while the released key was being written, it holds the stock
+               now and is released like any other */
+            released = releaseQuantities(requestDTO.getReservationKey(), requiredQuantityMap);
+        }
+        if(released){
+            evictInventories(requiredQuantityMap.keySet());
+        }
+    }
+
+    /***
+     * Method to delete the reservation keys released before the retention. Hedged and retried reservations arrive
+     * within seconds of the first request, released keys are only kept to turn them away. Keys still holding stock
+     * are never deleted, so their release is honoured however late it arrives
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.purge-interval}")
+    public void purgeReservations() {
+        transactionTemplate.executeWithoutResult(status ->
+                reservationRepository.deleteReleasedBefore(Instant.now().minus(reservationRetention)));
+    }
+
+    /***
+     * Helper method to release the quantities in one transaction
+     * @param reservationKey reservation key the quantities have been reserved under, null if not reserved under a key
+     * @param requiredQuantityMap normalized skuCode to quantity to be released
+     * @return true if the quantities have been released, false if the key does not hold them
+     * @throws DataIntegrityViolationException is thrown if a reservation under the key committed concurrently
+     */
+    private boolean releaseQuantities(String reservationKey, Map<String, Integer> requiredQuantityMap){
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if(Objects.nonNull(reservationKey) && reservationRepository.markReleased(reservationKey, Instant.now()) == 0){
+                if(reservationRepository.findByReservationKey(reservationKey).isEmpty()){
+                    Instant now = Instant.now();
+                    reservationRepository.saveAndFlush(
+                            new Reservation(null, reservationKey, ReservationStatus.RELEASED, now, now));
+                }
+                return false;
+            }
+            requiredQuantityMap.forEach((skuCode, quantity) -> {
+                if(quantity > 0){
+                    inventoryRepository.releaseQuantity(skuCode, quantity);
+                }
+            });
+            return true;
+        }));
+    }
+
+    /***
+     * Helper method to build the response of a successful reservation
+     * @param requestDTO OrderInventoryDTO that has been reserved
+     * @return OrderInventoryDTO with all line items in stock and the quantity currently left, 0 for SKUs no longer
+     * in inventory
+     */
+    public OrderInventoryDTO reservedResponse(OrderInventoryDTO requestDTO){
+        Map<String, InventoryResponseDTO> inventoryMap =
+                findInventoriesBySkuCodes(requestDTO.getOrderLineItemInventoryDTOList());
+        List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList = requestDTO
+                .getOrderLineItemInventoryDTOList()
+                .stream()
+                .map(orderLineItemInventoryDTO -> OrderLineItemInventoryDTO
+                        .builder()
+                        .skuCode(orderLineItemInventoryDTO.getSkuCode())
+                        .requiredQuantity(orderLineItemInventoryDTO.getRequiredQuantity())
+                        .availableQuantity(Optional
+                                .ofNullable(inventoryMap.get(
+                                        Inventory.normalizeSkuCode(orderLineItemInventoryDTO.getSkuCode())))
+                                .map(InventoryResponseDTO::getQuantity)
+                                .orElse(0))
+                        .inStock(true)
+                        .build())
+                .toList();
+        return OrderInventoryDTO.builder().orderLineItemInventoryDTOList(orderLineItemInventoryDTOList).build();
+    }
+
+    /***
+     * Helper method to build the response of a reservation whose key has been released, it is not reserved again
+     * @param requestDTO OrderInventoryDTO repeating a released reservation
+     * @return OrderInventoryDTO with all line items not in stock and their current available quantity
+     */
+    public OrderInventoryDTO releasedResponse(OrderInventoryDTO requestDTO){
+        OrderInventoryDTO responseDTO = checkInventoryStock(requestDTO,
+                findInventoriesBySkuCodes(requestDTO.getOrderLineItemInventoryDTOList()));
+        responseDTO.getOrderLineItemInventoryDTOList()
+                .forEach(orderLineItemInventoryDTO -> orderLineItemInventoryDTO.setInStock(false));
+        return responseDTO;
+    }
+
+    /***
+     * Helper method to sum up the required quantity of line items by normalized skuCode. A line item without
+     * skuCode is mapped to an empty skuCode which never matches an Inventory
+     * @param orderLineItemInventoryDTOList line items of the order
+     * @return sorted Map of normalized skuCode to total required quantity
+     */
+    public SortedMap<String, Integer> requiredQuantityBySkuCode(List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList){
+        SortedMap<String, Integer> requiredQuantityMap = new TreeMap<>();
+        for(OrderLineItemInventoryDTO orderLineItemInventoryDTO : orderLineItemInventoryDTOList){
+            String skuCode = Objects.isNull(orderLineItemInventoryDTO.getSkuCode()) ? "" :
+                    Inventory.normalizeSkuCode(orderLineItemInventoryDTO.getSkuCode());
+            requiredQuantityMap.merge(skuCode,
+                    Objects.requireNonNullElse(orderLineItemInventoryDTO.getRequiredQuantity(), 0),
+                    Integer::sum);
+        }
+        return requiredQuantityMap;
+    }
+
+    /***
+     * Helper method to resolve Inventories of all the line items with one set based query
+     * @param orderLineItemInventoryDTOList line items containing the skuCodes to be resolved
+     * @return Map of normalized skuCode to Inventory, skuCodes not in inventory are absent from the map
+     */
+    public Map<String, InventoryResponseDTO> findInventoriesBySkuCodes(
+            List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList){
+        return findInventoriesBySkuCodeKeys(skuCodeKeys(orderLineItemInventoryDTOList));
+    }
+
+    /***
+     * Helper method to resolve Inventories of all the line items from the availability cache. SkuCodes missing
+     * in the cache are fetched with one set based query and added to the cache, unless evicted while being fetched
+     * @param orderLineItemInventoryDTOList line items containing the skuCodes to be resolved
+     * @return Map of normalized skuCode to Inventory, skuCodes not in inventory are absent from the map
+     */
+    public Map<String, InventoryResponseDTO> findCachedInventoriesBySkuCodes(
+            List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList){
+        Map<String, InventoryResponseDTO> inventoryMap = new HashMap<>();
+        Set<String> missingSkuCodeKeys = new HashSet<>();
+        for(String skuCodeKey : skuCodeKeys(orderLineItemInventoryDTOList)){
+            InventoryResponseDTO cachedDTO = inventoryCache.get(skuCodeKey, InventoryResponseDTO.class);
+            if(Objects.nonNull(cachedDTO)){
+                inventoryMap.put(skuCodeKey, cachedDTO);
+            }
+            else{
+                missingSkuCodeKeys.add(skuCodeKey);
+            }
+        }
+        Map<String, Long> evictionGenerationMap = new HashMap<>();
+        missingSkuCodeKeys.forEach(skuCodeKey -> evictionGenerationMap.put(skuCodeKey, evictionGeneration(skuCodeKey)));
+        Map<String, InventoryResponseDTO> fetchedInventoryMap = findInventoriesBySkuCodeKeys(missingSkuCodeKeys);
+        fetchedInventoryMap.forEach((skuCodeKey, responseDTO) ->
+                cacheInventory(skuCodeKey, responseDTO, evictionGenerationMap.get(skuCodeKey)));
+        inventoryMap.putAll(fetchedInventoryMap);
+        return inventoryMap;
+    }
+
+    /***
+     * Helper method to fetch Inventories of the given normalized skuCodes with one set based query
+     * @param skuCodeKeys normalized skuCodes
+     * @return Map of normalized skuCode to Inventory, skuCodes not in inventory are absent from the map
+     */
+    public Map<String, InventoryResponseDTO> findInventoriesBySkuCodeKeys(Set<String> skuCodeKeys){
+        if(skuCodeKeys.isEmpty()){
+            return Map.of();
+        }
+        return inventoryRepository
+                .findAllBySkuCodeKeyIn(skuCodeKeys)
+                .stream()
+                .collect(Collectors.toMap(Inventory::getSkuCodeKey,
+                        this::mapToInventoryResponseDTO,
+                        (first, second) -> first));
+    }
+
+    /***
+     * Helper method to collect the normalized skuCodes of the line items
+     * @param orderLineItemInventoryDTOList line items of the order
+     * @return Set of normalized skuCodes, line items without skuCode are skipped
+     */
+    public Set<String> skuCodeKeys(List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList){
+        return orderLineItemInventoryDTOList
+                .stream()
+                .map(OrderLineItemInventoryDTO::getSkuCode)
+                .filter(Objects::nonNull)
+                .map(Inventory::normalizeSkuCode)
+                .collect(Collectors.toSet());
+    }
+
+    /***
+     * Helper method to write an Inventory through to the availability cache. The Inventory is only kept if its
+     * stripe has not been evicted since the eviction generation was taken, an eviction racing the put removes it
+     * again either here or in evictInventories
+     * @param skuCodeKey normalized skuCode of the Inventory
+     * @param responseDTO Inventory to be cached
+     * @param evictionGeneration eviction generation of the skuCode taken before the Inventory was read or written
+     */
+    public void cacheInventory(String skuCodeKey, InventoryResponseDTO responseDTO, long evictionGeneration){
+        if(Objects.isNull(skuCodeKey) || evictionGeneration(skuCodeKey) != evictionGeneration){
+            return;
+        }
+        inventoryCache.put(skuCodeKey, responseDTO);
+        if(evictionGeneration(skuCodeKey) != evictionGeneration){
+            inventoryCache.evict(skuCodeKey);
+        }
+    }
+
+    /***
+     * Helper method to evict Inventories from the availability cache after their quantity or skuCode changed. The
+     * eviction generation moves on before the entry is evicted, so a read started earlier does not cache it again
+     * @param skuCodeKeys normalized skuCodes to be evicted
+     */
+    public void evictInventories(Collection<String> skuCodeKeys){
+        skuCodeKeys.stream().filter(Objects::nonNull).forEach(skuCodeKey -> {
+            evictionGenerations.incrementAndGet(evictionStripe(skuCodeKey));
+            inventoryCache.evict(skuCodeKey);
+        });
+    }
+
+    /***
+     * Helper method to get the eviction generation of a normalized skuCode
+     * @param skuCodeKey normalized skuCode, may be null
+     * @return current eviction generation of the stripe of the skuCode
+     */
+    public long evictionGeneration(String skuCodeKey){
+        return Objects.isNull(skuCodeKey) ? 0 : evictionGenerations.get(evictionStripe(skuCodeKey));
+    }
+
+    /***
+     * Helper method to get the stripe of eviction generations a normalized skuCode belongs to
+     * @param skuCodeKey normalized skuCode
+     * @return index of the stripe
+     */
+    private static int evictionStripe(String skuCodeKey){
+        return Math.floorMod(skuCodeKey.hashCode(), EVICTION_STRIPES);
+    }
+
     /***
      * Helper method to check if each Product is present in stock and in required quantity
      * @param requestDTO OrderLineIemInventoryDTO contains the skuCode and required quantity
+     * @param inventoryMap Inventories of the order resolved by normalized skuCode
      * @return OrderLineItemInventoryDTO contains skuCode, required quantity, available quantity and in stock
      * flag
      */
-    public OrderLineItemInventoryDTO checkInventoryStock(OrderLineItemInventoryDTO requestDTO){
+    public OrderLineItemInventoryDTO checkInventoryStock(OrderLineItemInventoryDTO requestDTO,
+                                                         Map<String, InventoryResponseDTO> inventoryMap){
         OrderLineItemInventoryDTO responseDTO = new OrderLineItemInventoryDTO();
         responseDTO.setSkuCode(requestDTO.getSkuCode());
         responseDTO.setRequiredQuantity(requestDTO.getRequiredQuantity());
-        Optional<Inventory> inventoryOptional =
-                inventoryRepository.findBySkuCodeIgnoreCase(requestDTO.getSkuCode());
+        InventoryResponseDTO inventory = Objects.isNull(requestDTO.getSkuCode()) ? null :
+                inventoryMap.get(Inventory.normalizeSkuCode(requestDTO.getSkuCode()));
 
         /* If
             product not in inventory, indicate quantity as 0 and in stock as false
            Else
             indicate the actual quantity and in stock if available qty >= required qty
          */
-        if(inventoryOptional.isEmpty()){
+        if(Objects.isNull(inventory)){
             responseDTO.setAvailableQuantity(0);
             responseDTO.setInStock(false);
         }
         else{
-            responseDTO.setAvailableQuantity(inventoryOptional.get().getQuantity());
-            responseDTO.setInStock(inventoryOptional.get().getQuantity() >= requestDTO.getRequiredQuantity());
+            responseDTO.setAvailableQuantity(inventory.getQuantity());
+            responseDTO.setInStock(inventory.getQuantity() >= requestDTO.getRequiredQuantity());
         }
         return responseDTO;
     }
@@ -0,0 +1,446 @@
+package com.learntocode.inverntoryservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learntocode.inverntoryservice.dto.InventoryRequestDTO;
+import com.learntocode.inverntoryservice.dto.InventoryResponseDTO;
+import com.learntocode.inverntoryservice.dto.InventoryUpdateRequestDTO;
+import com.learntocode.inverntoryservice.dto.OrderInventoryDTO;
+import com.learntocode.inverntoryservice.dto.OrderLineItemInventoryDTO;
+import com.learntocode.inverntoryservice.service.InventoryService;
+import com.learntocode.inverntoryservice.service.InventoryServiceImpl;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Slf4j
+public class InventoryServiceApplicationTests {
+    /* PostgreSQL started from the binaries of the embedded-postgres test dependency, no Docker needed */
+    static EmbeddedPostgres embeddedPostgres = startEmbeddedPostgres();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry dynamicPropertyRegistry){
+        dynamicPropertyRegistry.add("spring.datasource.url", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+        dynamicPropertyRegistry.add("spring.datasource.username", () -> "postgres");
+        dynamicPropertyRegistry.add("spring.datasource.password", () -> "postgres");
+        dynamicPropertyRegistry.add("spring.jpa.show-sql", () -> false);
+        dynamicPropertyRegistry.add("spring.jpa.properties.hibernate.generate_statistics", () -> true);
+        dynamicPropertyRegistry.add("eureka.client.enabled", () -> false);
+        dynamicPropertyRegistry.add("spring.zipkin.enabled", () -> false);
+        //small enough for Integration Test05 to overflow, large enough for the line items of Integration Test01
+        dynamicPropertyRegistry.add("spring.cache.caffeine.spec", () -> "maximumSize=200,expireAfterWrite=30s,recordStats");
+    }
+
+    /***
+     * Integration Test of GET /api/inventories/orderInStock/ api endpoint. Orders of a growing number of line items
+     * are checked with the availability cache cleared, every check has to resolve all line items with a single
+     * query and its latency has to stay flat. The latency of each order size is logged as a benchmark.
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test01 - Check Stock of All Line Items with One Query")
+    public void shouldCheckStockOfAllLineItemsWithOneQuery() throws Exception{
+        for(int index = 0; index < 100; index++){
+            createInventory("STOCK-" + index, 10);
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        int[] lineItemCounts = {1, 10, 40, 100};
+        double[] medianMillis = new double[lineItemCounts.length];
+        for(int position = 0; position < lineItemCounts.length; position++){
+            //unknown SKUs are reported with availableQuantity 0 and inStock false
+            List<OrderLineItemInventoryDTO> lineItems = new ArrayList<>(IntStream.range(0, lineItemCounts[position])
+                    .mapToObj(index -> getLineItem("stock-" + index, 5))
+                    .toList());
+            lineItems.add(getLineItem("STOCK-UNKNOWN", 1));
+            String requestString = objectMapper.writeValueAsString(
+                    OrderInventoryDTO.builder().orderLineItemInventoryDTOList(lineItems).build());
+            long[] nanos = new long[50];
+            for(int run = 0; run < nanos.length; run++){
+                cacheManager.getCache("inventories").clear();
+                statistics.clear();
+                long startedAt = System.nanoTime();
+                mockMvc.perform(MockMvcRequestBuilders.get("/api/inventories/orderInStock/")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestString))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(MockMvcResultMatchers.jsonPath("$.orderLineItemInventoryDTOList[0].inStock")
+                                .value(true))
+                        .andExpect(MockMvcResultMatchers.jsonPath("$.orderLineItemInventoryDTOList[-1].inStock")
+                                .value(false))
+                        .andExpect(MockMvcResultMatchers.jsonPath(
+                                "$.orderLineItemInventoryDTOList[-1].availableQuantity").value(0));
+                nanos[run] = System.nanoTime() - startedAt;
+                assertEquals(1, statistics.getPrepareStatementCount());
+            }
+            Arrays.sort(nanos);
+            medianMillis[position] = nanos[nanos.length / 2] / 1e6;
+            log.info("Stock check of {} line items: median {} ms", lineItemCounts[position] + 1,
+                    String.format("%.2f", medianMillis[position]));
+        }
+        //one query whatever the number of line items, only mapping and JSON grow with it
+        assertTrue(medianMillis[medianMillis.length - 1] < 5 * medianMillis[0] + 5,
+                "Latency grows with the number of line items: " + Arrays.toString(medianMillis));
+    }
+
+    /***
+     * Contention Test of reserve. Many concurrent reservations of the same SKU under distinct keys, reserving more
+     * than in stock, have to reserve exactly the stock, never drive the quantity negative, and every reservation
+     * reported in stock has to be backed by a decrement
+     * @throws Exception reservation futures and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test02 - Reserve Exactly the Stock under Contention")
+    public void shouldReserveExactlyTheStockUnderContention() throws Exception{
+        createInventory("CONTENDED-1", 50);
+        int threads = 8;
+        int reservations = 200;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for(int index = 0; index < reservations; index++){
+            String reservationKey = "contended-" + index;
+            futures.add(executorService.submit(() -> {
+                startLatch.await();
+                return inventoryService.reserve(getOrderInventory(reservationKey, getLineItem("CONTENDED-1", 1)))
+                        .getOrderLineItemInventoryDTOList().get(0).getInStock();
+            }));
+        }
+        startLatch.countDown();
+        int reserved = 0;
+        for(Future<Boolean> future : futures){
+            reserved += future.get() ? 1 : 0;
+        }
+        executorService.shutdown();
+        assertEquals(50, reserved);
+        assertEquals(0, getQuantity("CONTENDED-1"));
+    }
+
+    /***
+     * Integration Test of the reservation key lifecycle through POST /api/inventories/reserve/ and
+     * POST /api/inventories/release/. Repeated reservations and releases of a key change the quantity once, a
+     * reservation repeated after its release and a reservation arriving after the release of its key are not
+     * applied, and a repeated reservation of a SKU deleted in the meantime is still answered
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test03 - Apply Reservation Keys Once")
+    public void shouldApplyReservationKeysOnce() throws Exception{
+        createInventory("KEYED-1", 10);
+        OrderInventoryDTO keyed = getOrderInventory("keyed-order-1", getLineItem("KEYED-1", 3));
+        assertTrue(reserve(keyed));
+        assertTrue(reserve(keyed));
+        assertEquals(7, getQuantity("KEYED-1"));
+
+        release(keyed);
+        release(keyed);
+        assertEquals(10, getQuantity("KEYED-1"));
+
+        //a hedged or retried reservation arriving after the release is turned away
+        assertFalse(reserve(keyed));
+        assertEquals(10, getQuantity("KEYED-1"));
+
+        //a release overtaking its reservation leaves the key released
+        OrderInventoryDTO overtaken = getOrderInventory("keyed-order-2", getLineItem("KEYED-1", 4));
+        release(overtaken);
+        assertEquals(10, getQuantity("KEYED-1"));
+        assertFalse(reserve(overtaken));
+        assertEquals(10, getQuantity("KEYED-1"));
+
+        //a repeated reservation of a SKU no longer in inventory reports no quantity left
+        InventoryResponseDTO removed = createInventory("KEYED-2", 5);
+        OrderInventoryDTO removedKeyed = getOrderInventory("keyed-order-3", getLineItem("KEYED-2", 2));
+        assertTrue(reserve(removedKeyed));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/inventories/" + removed.getId()))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/inventories/reserve/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(removedKeyed)))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.orderLineItemInventoryDTOList[0].availableQuantity")
+                        .value(0));
+    }
+
+    /***
+     * Query-plan Test of the skuCode lookups. With a large inventory table the single, batch and reserve lookups on
+     * the normalized key have to be served by its unique index, while the upper(skuCode) predicate they replaced
+     * scans the table. The lookup through GET /api/inventories/skuCode/{skuCode} keeps its case-insensitive semantics
+     * @throws Exception MockMVC perform method throws exception
+     */
+    @Test
+    @DisplayName("Integration Test04 - Look up skuCodes through the Unique Index")
+    public void shouldLookUpSkuCodesThroughTheUniqueIndex() throws Exception{
+        jdbcTemplate.update("insert into inventory (sku_code, sku_code_key, quantity) " +
+                "select 'Plan-' || n, 'PLAN-' || n, 10 from generate_series(1, 200000) n");
+        jdbcTemplate.execute("analyze inventory");
+
+        assertTrue(explain("select * from inventory where sku_code_key = 'PLAN-123456'")
+                .contains("ux_inventory_sku_code_key"));
+        assertTrue(explain("select * from inventory where sku_code_key in ('PLAN-1', 'PLAN-2', 'PLAN-3')")
+                .contains("ux_inventory_sku_code_key"));
+        assertTrue(explain("update inventory set quantity = quantity - 1 " +
+                "where sku_code_key = 'PLAN-123456' and quantity >= 1")
+                .contains("ux_inventory_sku_code_key"));
+        assertTrue(explain("select * from inventory where upper(sku_code) = upper('plan-123456')")
+                .contains("Seq Scan"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/inventories/skuCode/pLaN-123456"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.skuCode").value("Plan-123456"));
+    }
+
+    /***
+     * Integration Test of the availability cache. Creates and updates write the Inventory through to the cache, a
+     * changed skuCode, a reservation and a deletion evict it, and a read started before an eviction does not put its
+     * Inventory back. Hits, misses and size evictions are published as cache metrics on the actuator
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test05 - Keep the Availability Cache Consistent with Writes")
+    public void shouldKeepTheAvailabilityCacheConsistentWithWrites() throws Exception{
+        Cache inventoryCache = cacheManager.getCache("inventories");
+
+        //lookups of the test itself count as hits and misses too, the metrics are read right around the request
+        InventoryResponseDTO created = createInventory("Cached-1", 10);
+        assertEquals(10, inventoryCache.get("CACHED-1", InventoryResponseDTO.class).getQuantity());
+        double hits = getCacheMetric("cache.gets", "result:hit");
+        assertEquals(10, getQuantity("cached-1"));
+        assertEquals(hits + 1, getCacheMetric("cache.gets", "result:hit"));
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/inventories/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(InventoryUpdateRequestDTO.builder()
+                                .id(created.getId()).quantity(20).build())))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        assertEquals(20, inventoryCache.get("CACHED-1", InventoryResponseDTO.class).getQuantity());
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/inventories/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(InventoryUpdateRequestDTO.builder()
+                                .id(created.getId()).skuCode("Cached-2").build())))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        assertNull(inventoryCache.get("CACHED-1"));
+        assertEquals(20, inventoryCache.get("CACHED-2", InventoryResponseDTO.class).getQuantity());
+
+        //a reservation evicts, the next read misses and caches the quantity left
+        assertTrue(reserve(getOrderInventory(null, getLineItem("cached-2", 5))));
+        assertNull(inventoryCache.get("CACHED-2"));
+        double misses = getCacheMetric("cache.gets", "result:miss");
+        assertEquals(15, getQuantity("CACHED-2"));
+        assertEquals(misses + 1, getCacheMetric("cache.gets", "result:miss"));
+        assertEquals(15, inventoryCache.get("CACHED-2", InventoryResponseDTO.class).getQuantity());
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/inventories/" + created.getId()))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        assertNull(inventoryCache.get("CACHED-2"));
+
+        //a read that started before a reservation evicted the skuCode does not cache what it read
+        InventoryServiceImpl inventoryServiceImpl = (InventoryServiceImpl) inventoryService;
+        InventoryResponseDTO raced = createInventory("Cached-3", 10);
+        inventoryCache.evict("CACHED-3");
+        long evictionGeneration = inventoryServiceImpl.evictionGeneration("CACHED-3");
+        inventoryServiceImpl.evictInventories(Set.of("CACHED-3"));
+        inventoryServiceImpl.cacheInventory("CACHED-3", raced, evictionGeneration);
+        assertNull(inventoryCache.get("CACHED-3"));
+
+        //writing through more Inventories than the cache holds evicts by size
+        double evictions = getCacheMetric("cache.evictions", null);
+        for(int index = 0; index < 300; index++){
+            inventoryService.createInventory(getInventoryRequest("CACHED-BULK-" + index, 1));
+        }
+        ((CaffeineCache) inventoryCache).getNativeCache().cleanUp();
+        assertTrue(getCacheMetric("cache.evictions", null) >= evictions + 100);
+    }
+
+    /***
+     * Helper method to read a metric of the availability cache through GET /actuator/metrics/{name}
+     * @param name name of the metric
+     * @param tag additional tag to select, null for none
+     * @return value of the metric
+     * @throws Exception ObjectMapper read method and MockMVC perform method throw exception
+     */
+    public double getCacheMetric(String name, String tag) throws Exception{
+        MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.get("/actuator/metrics/" + name)
+                .param("tag", "cache:inventories");
+        if(Objects.nonNull(tag)){
+            requestBuilder.param("tag", tag);
+        }
+        String responseString = mockMvc.perform(requestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(responseString).get("measurements").get(0).get("value").asDouble();
+    }
+
+    /***
+     * Helper method to fetch the query plan of a statement
+     * @param sql statement to be explained
+     * @return query plan, one line per node
+     */
+    public String explain(String sql){
+        String plan = String.join("\n", jdbcTemplate.queryForList("explain " + sql, String.class));
+        log.info("Query plan of {}:\n{}", sql, plan);
+        return plan;
+    }
+
+    /***
+     * Helper method to reserve through POST /api/inventories/reserve/
+     * @param requestDTO OrderInventoryDTO to be reserved
+     * @return true if all line items are reported in stock
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    public boolean reserve(OrderInventoryDTO requestDTO) throws Exception{
+        String responseString = mockMvc.perform(MockMvcRequestBuilders.post("/api/inventories/reserve/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requestDTO)))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(responseString, OrderInventoryDTO.class)
+                .getOrderLineItemInventoryDTOList()
+                .stream()
+                .allMatch(OrderLineItemInventoryDTO::getInStock);
+    }
+
+    /***
+     * Helper method to release through POST /api/inventories/release/
+     * @param requestDTO OrderInventoryDTO to be released
+     * @throws Exception ObjectMapper write method and MockMVC perform method throw exception
+     */
+    public void release(OrderInventoryDTO requestDTO) throws Exception{
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/inventories/release/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requestDTO)))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    /***
+     * Helper method to read the quantity in stock through GET /api/inventories/skuCode/{skuCode}
+     * @param skuCode skuCode of the Inventory
+     * @return quantity in stock
+     * @throws Exception ObjectMapper read method and MockMVC perform method throw exception
+     */
+    public int getQuantity(String skuCode) throws Exception{
+        String responseString = mockMvc.perform(MockMvcRequestBuilders.get("/api/inventories/skuCode/" + skuCode))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(responseString, InventoryResponseDTO.class).getQuantity();
+    }
+
+    /***
+     * Helper method to build OrderInventoryDTO
+     * @return Method return OrderInventoryDTO built using parameters
+     */
+    public OrderInventoryDTO getOrderInventory(String reservationKey, OrderLineItemInventoryDTO... lineItems){
+        return OrderInventoryDTO
+                .builder()
+                .reservationKey(reservationKey)
+                .orderLineItemInventoryDTOList(List.of(lineItems))
+                .build();
+    }
+
+    /***
+     * Helper method to create an Inventory through POST /api/inventories/
+     * @param skuCode skuCode of the Inventory
+     * @param quantity quantity in stock
+     * @return InventoryResponseDTO of the created Inventory
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform method throw exception
+     */
+    public InventoryResponseDTO createInventory(String skuCode, int quantity) throws Exception{
+        String responseString = mockMvc.perform(MockMvcRequestBuilders.post("/api/inventories/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(getInventoryRequest(skuCode, quantity))))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(responseString, InventoryResponseDTO.class);
+    }
+
+    /***
+     * Helper method to build InventoryRequestDTO
+     * @return Method return InventoryRequestDTO built using parameters
+     */
+    public InventoryRequestDTO getInventoryRequest(String skuCode, int quantity){
+        return InventoryRequestDTO
+                .builder()
+                .skuCode(skuCode)
+                .quantity(quantity)
+                .build();
+    }
+
+    /***
+     * Helper method to build OrderLineItemInventoryDTO
+     * @return Method return OrderLineItemInventoryDTO built using parameters
+     */
+    public OrderLineItemInventoryDTO getLineItem(String skuCode, int requiredQuantity){
+        return OrderLineItemInventoryDTO
+                .builder()
+                .skuCode(skuCode)
+                .requiredQuantity(requiredQuantity)
+                .build();
+    }
+
+    /***
+     * Helper method to start the embedded PostgreSQL shared by all tests
+     * @return EmbeddedPostgres, stopped by its shutdown hook
+     */
+    private static EmbeddedPostgres startEmbeddedPostgres(){
+        try{
+            return EmbeddedPostgres.start();
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
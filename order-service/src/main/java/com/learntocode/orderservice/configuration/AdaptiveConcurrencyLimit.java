@@ -0,0 +1,67 @@
+package com.learntocode.orderservice.configuration;
+
+/***
+ * Concurrency limit adapted with additive increase and multiplicative decrease (AIMD). While requests are answered
+ * within the latency threshold and at least half of the limit is in use, the limit grows by one per limit
+ * requests. A request slower than the threshold or failing shrinks the limit by the backoff ratio, at most once per
+ * latency threshold so that the requests of one slow spell do not shrink it over and over
+ */
+public class AdaptiveConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseAt;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos,
+                                    double backoffRatio) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.lastDecreaseAt = System.nanoTime() - latencyThresholdNanos;
+    }
+
+    /***
+     * Method to take a slot for a request
+     * @return true if the request is within the limit, false if it has to be rejected
+     */
+    public synchronized boolean tryAcquire() {
+        if(inFlight >= (int) limit){
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /***
+     * Method to give back the slot of a completed request and adapt the limit
+     * @param latencyNanos latency of the request in nanoseconds
+     * @param failed true if the request failed
+     * @param now current time in nanoseconds
+     */
+    public synchronized void release(long latencyNanos, boolean failed, long now) {
+        int inFlightAtCompletion = inFlight;
+        inFlight--;
+        if(failed || latencyNanos > latencyThresholdNanos){
+            if(now - lastDecreaseAt >= latencyThresholdNanos){
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseAt = now;
+            }
+        }
+        else if(inFlightAtCompletion * 2 >= limit){
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
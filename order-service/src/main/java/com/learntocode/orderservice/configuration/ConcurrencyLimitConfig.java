@@ -0,0 +1,32 @@
+package com.learntocode.orderservice.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ConcurrencyLimitProperties.class)
+public class ConcurrencyLimitConfig {
+    /***
+     * Registers the ConcurrencyLimitFilter for the order endpoints. It runs after the metrics and tracing filters,
+     * so refused requests are still measured and traced
+     * @param properties limits of the endpoints
+     * @param meterRegistry registry of the limit metrics
+     * @param objectMapper writes the body of refused requests
+     * @return FilterRegistrationBean of ConcurrencyLimitFilter
+     */
+    @Bean
+    @ConditionalOnProperty(name = "order.concurrency-limit.enabled", havingValue = "true")
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(ConcurrencyLimitProperties properties,
+                                                                                 MeterRegistry meterRegistry,
+                                                                                 ObjectMapper objectMapper){
+        FilterRegistrationBean<ConcurrencyLimitFilter> registrationBean =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(properties, meterRegistry, objectMapper));
+        registrationBean.addUrlPatterns("/api/orders/*");
+        return registrationBean;
+    }
+}
@@ -0,0 +1,203 @@
+package com.learntocode.orderservice.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learntocode.orderservice.dto.ExceptionResponseDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/***
+ * Servlet filter limiting the requests in flight per order endpoint with an AdaptiveConcurrencyLimit. Requests
+ * beyond the limit are refused at once with 503 instead of queueing in Tomcat, so the requests let through keep
+ * their latency past saturation. Asynchronous requests hold their slot until the response is completed, which is
+ * why long streaming responses are limited apart from the short requests sharing their path
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private final List<LimitedEndpoint> limitedEndpoints;
+    private final ObjectMapper objectMapper;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public ConcurrencyLimitFilter(ConcurrencyLimitProperties properties, MeterRegistry meterRegistry,
+                                  ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.limitedEndpoints = properties
+                .getEndpoints()
+                .stream()
+                .map(endpoint -> {
+                    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(endpoint.getInitialLimit(),
+                            endpoint.getMinLimit(), endpoint.getMaxLimit(), endpoint.getLatencyThreshold().toNanos(),
+                            properties.getBackoffRatio());
+                    Gauge.builder("order.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                            .tag("endpoint", endpoint.getName())
+                            .description("Current concurrency limit of the endpoint")
+                            .register(meterRegistry);
+                    Gauge.builder("order.concurrency.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                            .tag("endpoint", endpoint.getName())
+                            .description("Requests of the endpoint in flight")
+                            .register(meterRegistry);
+                    Counter rejectedCounter = Counter.builder("order.concurrency.rejected")
+                            .tag("endpoint", endpoint.getName())
+                            .description("Requests of the endpoint refused as the concurrency limit was reached")
+                            .register(meterRegistry);
+                    MediaType accept = Objects.isNull(endpoint.getAccept()) ? null :
+                            MediaType.parseMediaType(endpoint.getAccept());
+                    return new LimitedEndpoint(endpoint.getMethod(), endpoint.getPath(), accept, limit,
+                            rejectedCounter);
+                })
+                .toList();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        LimitedEndpoint limitedEndpoint = match(request);
+        if(Objects.isNull(limitedEndpoint)){
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if(!limitedEndpoint.limit.tryAcquire()){
+            limitedEndpoint.rejectedCounter.increment();
+            reject(response);
+            return;
+        }
+        long startedAt = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        try{
+            filterChain.doFilter(request, response);
+        }
+        catch(IOException | ServletException | RuntimeException exception){
+            release(limitedEndpoint, released, startedAt, true);
+            throw exception;
+        }
+        if(request.isAsyncStarted()){
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    release(limitedEndpoint, released, startedAt,
+                            response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value());
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    release(limitedEndpoint, released, startedAt, true);
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    release(limitedEndpoint, released, startedAt, true);
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        }
+        else{
+            release(limitedEndpoint, released, startedAt,
+                    response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value());
+        }
+    }
+
+    /***
+     * Helper method to find the limited endpoint of a request, the first one matching its method and path, and
+     * its Accept header for endpoints limited to a media type
+     * @param request HTTP request
+     * @return LimitedEndpoint, null if the request is not limited
+     */
+    private LimitedEndpoint match(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        List<MediaType> acceptedMediaTypes = null;
+        for(LimitedEndpoint limitedEndpoint : limitedEndpoints){
+            if(!limitedEndpoint.method.equalsIgnoreCase(request.getMethod()) ||
+                    !pathMatcher.match(limitedEndpoint.path, path)){
+                continue;
+            }
+            if(Objects.isNull(limitedEndpoint.accept)){
+                return limitedEndpoint;
+            }
+            if(Objects.isNull(acceptedMediaTypes)){
+                acceptedMediaTypes = acceptedMediaTypes(request);
+            }
+            if(acceptedMediaTypes.stream().anyMatch(limitedEndpoint.accept::equalsTypeAndSubtype)){
+                return limitedEndpoint;
+            }
+        }
+        return null;
+    }
+
+    /***
+     * Helper method to parse the Accept header of a request. Wildcards are kept as they are, so that a request
+     * accepting anything is not taken for one asking for a specific media type
+     * @param request HTTP request
+     * @return List of MediaType, empty if the header is missing or invalid
+     */
+    private static List<MediaType> acceptedMediaTypes(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if(Objects.isNull(accept)){
+            return List.of();
+        }
+        try{
+            return MediaType.parseMediaTypes(accept);
+        }
+        catch(InvalidMediaTypeException exception){
+            return List.of();
+        }
+    }
+
+    /***
+     * Helper method to give back the slot of a request once, whichever of completion, timeout or error comes first
+     * @param limitedEndpoint endpoint of the request
+     * @param released flag of the request, set once the slot is given back
+     * @param startedAt time the request started in nanoseconds
+     * @param failed true if the request failed
+     */
+    private static void release(LimitedEndpoint limitedEndpoint, AtomicBoolean released, long startedAt,
+                                boolean failed) {
+        if(released.compareAndSet(false, true)){
+            long now = System.nanoTime();
+            limitedEndpoint.limit.release(now - startedAt, failed, now);
+        }
+    }
+
+    /***
+     * Helper method to refuse a request beyond the concurrency limit
+     * @param response HTTP response
+     * @throws IOException if the response cannot be written
+     */
+    private void reject(HttpServletResponse response) throws IOException {
+        ExceptionResponseDTO responseDTO = new ExceptionResponseDTO();
+        responseDTO.setStatus(HttpStatus.SERVICE_UNAVAILABLE);
+        responseDTO.setMessage("Too many requests in flight. Please try after sometime");
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), responseDTO);
+    }
+
+    @AllArgsConstructor
+    private static class LimitedEndpoint {
+        private final String method;
+        private final String path;
+        private final MediaType accept;
+        private final AdaptiveConcurrencyLimit limit;
+        private final Counter rejectedCounter;
+    }
+}
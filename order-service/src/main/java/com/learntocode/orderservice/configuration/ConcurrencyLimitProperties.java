@@ -0,0 +1,35 @@
+package com.learntocode.orderservice.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Properties of the adaptive concurrency limits of the order endpoints, bound from order.concurrency-limit
+ */
+@Data
+@ConfigurationProperties(prefix = "order.concurrency-limit")
+public class ConcurrencyLimitProperties {
+    private boolean enabled;
+    private double backoffRatio;
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    /***
+     * Limit of the requests matching a method and an ant path pattern, and a media type of the Accept header if
+     * one is given
+     */
+    @Data
+    public static class Endpoint {
+        private String name;
+        private String method;
+        private String path;
+        private String accept;
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+        private Duration latencyThreshold;
+    }
+}
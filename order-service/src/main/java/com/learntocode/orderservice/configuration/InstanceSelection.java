@@ -0,0 +1,67 @@
+package com.learntocode.orderservice.configuration;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/***
+ * Request attribute passed by InventoryClient to LatencyAwareLoadBalancer for one attempt of a call. Attempts of the
+ * same call share the instances already chosen, so that a hedged attempt is routed to a different instance. An
+ * attempt cancelled before completion is not reported to the load balancer lifecycle, the cancel handler registered
+ * when the request starts lets it be taken out of the requests in flight of its instance
+ */
+public class InstanceSelection {
+    public static final String ATTRIBUTE = InstanceSelection.class.getName();
+
+    private final Set<String> chosenInstanceIds;
+    private final AtomicReference<Runnable> cancelHandler = new AtomicReference<>();
+
+    /***
+     * @param chosenInstanceIds instance ids chosen by earlier attempts of the same call, shared by all its attempts
+     */
+    public InstanceSelection(Set<String> chosenInstanceIds) {
+        this.chosenInstanceIds = chosenInstanceIds;
+    }
+
+    /***
+     * Method to check whether an instance has been chosen by an attempt of the same call
+     * @param instanceId instance id
+     * @return true if the instance has already been chosen
+     */
+    public boolean isChosen(String instanceId) {
+        return chosenInstanceIds.contains(instanceId);
+    }
+
+    /***
+     * Method to record the instance chosen for this attempt
+     * @param instanceId instance id
+     */
+    public void choose(String instanceId) {
+        chosenInstanceIds.add(instanceId);
+    }
+
+    /***
+     * Method to register the action undoing the start of the request on its instance
+     * @param handler action run if the attempt is cancelled before completion
+     */
+    public void onCancel(Runnable handler) {
+        cancelHandler.set(handler);
+    }
+
+    /***
+     * Method to drop the cancel handler once the request completed
+     */
+    public void complete() {
+        cancelHandler.set(null);
+    }
+
+    /***
+     * Method to run the cancel handler of a request cancelled before completion, at most once
+     */
+    public void cancel() {
+        Runnable handler = cancelHandler.getAndSet(null);
+        if(Objects.nonNull(handler)){
+            handler.run();
+        }
+    }
+}
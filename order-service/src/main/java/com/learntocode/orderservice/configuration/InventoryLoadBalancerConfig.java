@@ -0,0 +1,39 @@
+package com.learntocode.orderservice.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/***
+ * Load balancer configuration of inventory-service, registered through @LoadBalancerClient in WebClientConfig.
+ * It is deliberately not annotated with @Configuration, so that it only applies to the inventory-service child
+ * context and is not picked up by component scanning
+ */
+public class InventoryLoadBalancerConfig {
+    /***
+     * Replaces the default round-robin load balancer of inventory-service. Properties are read through the
+     * Environment, as the child context has no conversion service for durations like 30s
+     * @param environment holds the name of the service the child context is created for and the
+     * order.inventory.load-balancer properties
+     * @param loadBalancerClientFactory provides the instances registered in Eureka
+     * @param meterRegistry MeterRegistry
+     * @return LatencyAwareLoadBalancer
+     */
+    @Bean
+    public LatencyAwareLoadBalancer latencyAwareLoadBalancer(Environment environment,
+                                                             LoadBalancerClientFactory loadBalancerClientFactory,
+                                                             MeterRegistry meterRegistry){
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        return new LatencyAwareLoadBalancer(serviceId,
+                loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+                DurationStyle.detectAndParse(environment.getRequiredProperty("order.inventory.load-balancer.decay-time")),
+                environment.getRequiredProperty("order.inventory.load-balancer.error-rate-threshold", Double.class),
+                environment.getRequiredProperty("order.inventory.load-balancer.min-requests", Integer.class),
+                DurationStyle.detectAndParse(
+                        environment.getRequiredProperty("order.inventory.load-balancer.ejection-duration")),
+                meterRegistry);
+    }
+}
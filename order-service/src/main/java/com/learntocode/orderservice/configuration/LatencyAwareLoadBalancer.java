@@ -0,0 +1,313 @@
+package com.learntocode.orderservice.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.client.loadbalancer.TimedRequestContext;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/***
+ * Load balancer picking the instance expected to answer fastest. Every instance keeps an exponentially weighted
+ * moving average (EWMA) of its latency and the number of requests in flight. Two instances are drawn at random and
+ * the one with the lower cost, latency times requests in flight plus one, is chosen (power of two choices).
+ * Instances whose error rate over the last requests exceeds the threshold are ejected for a while. The load
+ * balancer is also the LoadBalancerLifecycle observing the requests it routed, which is how latency and errors
+ * are measured
+ */
+@Slf4j
+public class LatencyAwareLoadBalancer implements ReactorServiceInstanceLoadBalancer,
+        LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+    /* Cost of an instance without latency sample that already has requests in flight, so that a new instance is
+       tried but not flooded before its first response */
+    private static final double UNSAMPLED_PENALTY_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final String serviceId;
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+    private final long decayTimeNanos;
+    private final double errorRateThreshold;
+    private final int minRequests;
+    private final long ejectionNanos;
+    private final Counter ejectionCounter;
+    private final Map<String, InstanceStats> instanceStatsMap = new ConcurrentHashMap<>();
+
+    public LatencyAwareLoadBalancer(String serviceId,
+                                    ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+                                    Duration decayTime,
+                                    double errorRateThreshold,
+                                    int minRequests,
+                                    Duration ejectionDuration,
+                                    MeterRegistry meterRegistry) {
+        this.serviceId = serviceId;
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.decayTimeNanos = decayTime.toNanos();
+        this.errorRateThreshold = errorRateThreshold;
+        this.minRequests = minRequests;
+        this.ejectionNanos = ejectionDuration.toNanos();
+        this.ejectionCounter = Counter.builder("order.loadbalancer.ejections")
+                .tag("service", serviceId)
+                .description("Number of times an instance has been ejected for failing too often")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+                .getIfAvailable(NoopServiceInstanceListSupplier::new);
+        InstanceSelection instanceSelection = instanceSelectionOf(request);
+        return supplier.get(request)
+                .next()
+                .map(serviceInstances -> choose(serviceInstances, instanceSelection));
+    }
+
+    /***
+     * Method to pick an instance with power of two choices over the instances not ejected. If every instance is
+     * ejected, all of them are considered again rather than failing the request
+     * @param serviceInstances instances currently registered
+     * @return Response of the chosen instance, EmptyResponse if there is no instance
+     */
+    public Response<ServiceInstance> choose(List<ServiceInstance> serviceInstances) {
+        return choose(serviceInstances, null);
+    }
+
+    /***
+     * Method to pick an instance with power of two choices over the instances not ejected and not chosen by
+     * another attempt of the same call. Ejected or already chosen instances are only picked if no other instance
+     * is left
+     * @param serviceInstances instances currently registered
+     * @param instanceSelection instances chosen by other attempts of the same call, null if the call is not hedged
+     * @return Response of the chosen instance, EmptyResponse if there is no instance
+     */
+    public Response<ServiceInstance> choose(List<ServiceInstance> serviceInstances,
+                                            InstanceSelection instanceSelection) {
+        if(serviceInstances.isEmpty()){
+            log.warn("No servers available for service: {}", serviceId);
+            return new EmptyResponse();
+        }
+        long now = System.nanoTime();
+        List<ServiceInstance> candidates = serviceInstances
+                .stream()
+                .filter(serviceInstance -> !statsOf(serviceInstance).isEjected(now))
+                .toList();
+        if(candidates.isEmpty()){
+            candidates = serviceInstances;
+        }
+        if(Objects.nonNull(instanceSelection)){
+            List<ServiceInstance> unchosenCandidates = candidates
+                    .stream()
+                    .filter(serviceInstance -> !instanceSelection.isChosen(instanceKey(serviceInstance)))
+                    .toList();
+            if(!unchosenCandidates.isEmpty()){
+                candidates = unchosenCandidates;
+            }
+        }
+        ServiceInstance chosenInstance = candidates.size() == 1 ? candidates.get(0) : chooseOfTwo(candidates, now);
+        if(Objects.nonNull(instanceSelection)){
+            instanceSelection.choose(instanceKey(chosenInstance));
+        }
+        return new DefaultResponse(chosenInstance);
+    }
+
+    /***
+     * Helper method to draw two distinct instances at random and keep the one with the lower cost
+     * @param candidates at least two instances
+     * @param now current time in nanoseconds
+     * @return chosen instance
+     */
+    private ServiceInstance chooseOfTwo(List<ServiceInstance> candidates, long now) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if(second >= first){
+            second++;
+        }
+        ServiceInstance firstInstance = candidates.get(first);
+        ServiceInstance secondInstance = candidates.get(second);
+        return statsOf(firstInstance).cost(now) <= statsOf(secondInstance).cost(now) ?
+                firstInstance : secondInstance;
+    }
+
+    @Override
+    public boolean supports(Class requestContextClass, Class responseClass, Class serverTypeClass) {
+        return ServiceInstance.class.isAssignableFrom(serverTypeClass);
+    }
+
+    @Override
+    public void onStart(Request<Object> request) {
+    }
+
+    @Override
+    public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+        long startedAt = System.nanoTime();
+        if(request.getContext() instanceof TimedRequestContext timedRequestContext){
+            timedRequestContext.setRequestStartTime(startedAt);
+        }
+        if(lbResponse.hasServer()){
+            InstanceStats instanceStats = statsOf(lbResponse.getServer());
+            instanceStats.start(startedAt);
+            InstanceSelection instanceSelection = instanceSelectionOf(request);
+            if(Objects.nonNull(instanceSelection)){
+                instanceSelection.onCancel(() -> instanceStats.cancel(startedAt));
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+        InstanceSelection instanceSelection = instanceSelectionOf(completionContext.getLoadBalancerRequest());
+        if(Objects.nonNull(instanceSelection)){
+            instanceSelection.complete();
+        }
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if(Objects.isNull(lbResponse) || !lbResponse.hasServer() ||
+                completionContext.status() == CompletionContext.Status.DISCARD ||
+                !(completionContext.getLoadBalancerRequest().getContext() instanceof TimedRequestContext context)){
+            return;
+        }
+        boolean failed = completionContext.status() == CompletionContext.Status.FAILED ||
+                (completionContext.getClientResponse() instanceof ResponseData responseData &&
+                        Objects.nonNull(responseData.getHttpStatus()) && responseData.getHttpStatus().is5xxServerError());
+        if(statsOf(lbResponse.getServer()).complete(context.getRequestStartTime(), System.nanoTime(), failed)){
+            ejectionCounter.increment();
+            log.warn("Instance {} of {} ejected for {} ms", lbResponse.getServer().getInstanceId(), serviceId,
+                    Duration.ofNanos(ejectionNanos).toMillis());
+        }
+    }
+
+    /***
+     * Helper method to get the statistics of an instance, created on first use
+     * @param serviceInstance instance
+     * @return InstanceStats of the instance
+     */
+    private InstanceStats statsOf(ServiceInstance serviceInstance) {
+        return instanceStatsMap.computeIfAbsent(instanceKey(serviceInstance), instanceKey -> new InstanceStats());
+    }
+
+    /***
+     * Helper method to identify an instance, by its instance id or else by host and port
+     * @param serviceInstance instance
+     * @return key of the instance
+     */
+    private static String instanceKey(ServiceInstance serviceInstance) {
+        return Objects.requireNonNullElseGet(serviceInstance.getInstanceId(),
+                () -> serviceInstance.getHost() + ":" + serviceInstance.getPort());
+    }
+
+    /***
+     * Helper method to get the InstanceSelection attribute a WebClient request has been sent with
+     * @param request load balancer request
+     * @return InstanceSelection of the request, null if the request carries none
+     */
+    private static InstanceSelection instanceSelectionOf(Request<?> request) {
+        if(Objects.nonNull(request) && request.getContext() instanceof RequestDataContext requestDataContext &&
+                Objects.nonNull(requestDataContext.getClientRequest()) &&
+                requestDataContext.getClientRequest().getAttributes().get(InstanceSelection.ATTRIBUTE)
+                        instanceof InstanceSelection instanceSelection){
+            return instanceSelection;
+        }
+        return null;
+    }
+
+    /***
+     * Latency, error rate and requests in flight of one instance. Latency is a peak EWMA: a slower sample is taken
+     * over at once, faster samples pull the average down with a weight depending on the time elapsed since the
+     * previous sample. As a stalled instance does not answer at all, the average age of its requests in flight
+     * counts as latency too, so it is avoided before its first slow answer. Error rate is an EWMA over the last
+     * requests
+     */
+    private class InstanceStats {
+        private int inFlight;
+        private long inFlightStartedAtSum;
+        private double ewmaLatencyNanos;
+        private double ewmaErrorRate;
+        private long requests;
+        private long lastLatencyAt;
+        private boolean sampled;
+        private volatile boolean ejected;
+        private volatile long ejectedUntil;
+
+        synchronized double cost(long now) {
+            if(!sampled){
+                return inFlight == 0 ? 0 : UNSAMPLED_PENALTY_NANOS + inFlight;
+            }
+            double inFlightAgeNanos = inFlight == 0 ? 0 : now - (double) inFlightStartedAtSum / inFlight;
+            return Math.max(ewmaLatencyNanos, inFlightAgeNanos) * (inFlight + 1);
+        }
+
+        synchronized void start(long startedAt) {
+            inFlight++;
+            inFlightStartedAtSum += startedAt;
+        }
+
+        /***
+         * Takes a request cancelled before completion out of the requests in flight without recording a sample,
+         * its latency is unknown
+         * @param startedAt time the request started in nanoseconds
+         */
+        synchronized void cancel(long startedAt) {
+            if(inFlight > 0){
+                inFlight--;
+                inFlightStartedAtSum -= startedAt;
+            }
+        }
+
+        /***
+         * Records a completed request and ejects the instance once its error rate exceeds the threshold
+         * @param startedAt time the request started in nanoseconds
+         * @param now current time in nanoseconds
+         * @param failed true if the request failed
+         * @return true if the instance has just been ejected
+         */
+        synchronized boolean complete(long startedAt, long now, boolean failed) {
+            if(inFlight > 0){
+                inFlight--;
+                inFlightStartedAtSum -= startedAt;
+            }
+            long latencyNanos = now - startedAt;
+            if(!sampled || latencyNanos > ewmaLatencyNanos){
+                ewmaLatencyNanos = latencyNanos;
+            }
+            else{
+                double weight = Math.exp(-(double) (now - lastLatencyAt) / decayTimeNanos);
+                ewmaLatencyNanos = ewmaLatencyNanos * weight + latencyNanos * (1 - weight);
+            }
+            sampled = true;
+            lastLatencyAt = now;
+
+            double errorWeight = 1.0 / minRequests;
+            ewmaErrorRate = ewmaErrorRate * (1 - errorWeight) + (failed ? errorWeight : 0);
+            requests++;
+            if(requests >= minRequests && ewmaErrorRate > errorRateThreshold && !isEjected(now)){
+                ejected = true;
+                ejectedUntil = now + ejectionNanos;
+                ewmaErrorRate = 0;
+                requests = 0;
+                return true;
+            }
+            return false;
+        }
+
+        boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.learntocode.orderservice.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class OrderExecutorConfig {
+    /***
+     * Spring Boot backs off its default executor as soon as any executor bean is defined. It is declared here
+     * so that Spring MVC async requests keep running on the default executor rather than the order executor
+     * @param builder TaskExecutorBuilder configured through spring.task.execution properties
+     * @return ThreadPoolTaskExecutor
+     */
+    @Lazy
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder){
+        return builder.build();
+    }
+
+    /***
+     * Bounded executor running the blocking parts of order creation, the transaction saving the Order together with
+     * its OutboxEvent and the lookups of Orders by idempotency key, so that servlet threads are released while an
+     * Order is in flight. Kafka publish is left to OutboxRelay. Tasks beyond the queue capacity are rejected
+     * @param corePoolSize number of threads kept alive
+     * @param maxPoolSize maximum number of threads once the queue is full
+     * @param queueCapacity maximum number of queued tasks
+     * @return ThreadPoolTaskExecutor
+     */
+    @Bean
+    public ThreadPoolTaskExecutor orderExecutor(@Value("${order.executor.core-pool-size}") int corePoolSize,
+                                                @Value("${order.executor.max-pool-size}") int maxPoolSize,
+                                                @Value("${order.executor.queue-capacity}") int queueCapacity){
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("order-");
+        executor.initialize();
+        return executor;
+    }
+
+    /***
+     * Executor running the workers of AsyncOrderQueue, one thread per worker. AsyncOrderQueue never runs more
+     * workers than threads, the queue only holds a worker started while the thread of a finishing one winds down
+     * @param workers number of workers
+     * @return ThreadPoolTaskExecutor
+     */
+    @Bean
+    public ThreadPoolTaskExecutor asyncOrderExecutor(@Value("${order.async.workers}") int workers){
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(workers);
+        executor.setThreadNamePrefix("async-order-");
+        executor.initialize();
+        return executor;
+    }
+}
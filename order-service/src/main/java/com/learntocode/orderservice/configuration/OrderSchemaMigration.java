@@ -0,0 +1,82 @@
+package com.learntocode.orderservice.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/***
+ * Migrates data of Orders saved by earlier versions of order-service, on top of the hibernate schema update.
+ * Every step only touches rows that have not been migrated yet, so the migration is a no-op once done
+ */
+@Component
+@Slf4j
+public class OrderSchemaMigration implements ApplicationRunner {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void run(ApplicationArguments args) {
+        migrateOrderNumbers();
+        int confirmedOrders = jdbcTemplate.update("update orders set status = 'CONFIRMED' where status is null");
+        if(confirmedOrders > 0){
+            log.info("Populated status of {} Orders", confirmedOrders);
+        }
+        migrateOrderLineItemJoinTable();
+        alignSequence("orders_seq", "orders");
+        alignSequence("order_line_item_seq", "order_line_item");
+        alignSequence("outbox_event_seq", "outbox_event");
+    }
+
+    /***
+     * OrderNumbers used to be random UUIDs stored as text in order_number. They are now stored in the uuid column
+     * order_uuid, which is populated from order_number for Orders saved earlier if the column still exists
+     */
+    public void migrateOrderNumbers(){
+        Boolean orderNumberColumnExists = jdbcTemplate.queryForObject(
+                "select exists (select 1 from information_schema.columns " +
+                "where table_name = 'orders' and column_name = 'order_number' and table_schema = current_schema())",
+                Boolean.class);
+        if(Boolean.TRUE.equals(orderNumberColumnExists)){
+            int migratedOrders = jdbcTemplate.update(
+                    "update orders set order_uuid = cast(order_number as uuid) " +
+                    "where order_uuid is null and order_number is not null");
+            if(migratedOrders > 0){
+                log.info("Populated order_uuid of {} Orders", migratedOrders);
+            }
+        }
+    }
+
+    /***
+     * OrderLineItems used to be linked to their Order through a join table, they now reference the Order directly.
+     * The order_id of OrderLineItems saved earlier is populated from the join table if it still exists
+     */
+    public void migrateOrderLineItemJoinTable(){
+        Boolean joinTableExists = jdbcTemplate.queryForObject(
+                "select to_regclass('orders_order_line_item_list') is not null", Boolean.class);
+        if(Boolean.TRUE.equals(joinTableExists)){
+            int migratedOrderLineItems = jdbcTemplate.update(
+                    "update order_line_item li set order_id = j.order_id from orders_order_line_item_list j " +
+                    "where j.order_line_item_list_id = li.id and li.order_id is null");
+            if(migratedOrderLineItems > 0){
+                log.info("Populated order_id of {} OrderLineItems", migratedOrderLineItems);
+            }
+        }
+    }
+
+    /***
+     * Ids used to be generated by identity columns. Sequences created by the schema update start at 1, so they
+     * are moved past the highest id already in use. Sequences already ahead are left untouched
+     * @param sequenceName sequence generating the ids of the table
+     * @param tableName table whose ids are generated by the sequence
+     */
+    public void alignSequence(String sequenceName, String tableName){
+        jdbcTemplate.queryForObject(
+                "select setval('" + sequenceName + "', greatest((select coalesce(max(id), 0) from " + tableName +
+                ") + 50, (select last_value from " + sequenceName + ")))", Long.class);
+    }
+}
@@ -1,11 +1,13 @@
 package com.learntocode.orderservice.configuration;
 
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
 
 @Configuration
+@LoadBalancerClient(name = "inventory-service", configuration = InventoryLoadBalancerConfig.class)
 public class WebClientConfig {
     @Bean
     @LoadBalanced
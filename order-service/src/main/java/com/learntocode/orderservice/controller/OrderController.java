@@ -1,44 +1,164 @@
 package com.learntocode.orderservice.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learntocode.orderservice.dto.BulkOrderResultDTO;
 import com.learntocode.orderservice.dto.OrderRequestDTO;
 import com.learntocode.orderservice.dto.OrderResponseDTO;
 import com.learntocode.orderservice.exception.InventoryServiceCallException;
 import com.learntocode.orderservice.exception.OrderNotFoundException;
-import com.learntocode.orderservice.exception.ProductsNotInStockException;
 import com.learntocode.orderservice.service.OrderService;
-import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     /***
-     * Endpoint to create Order and corresponding OrderLineItems contained within
+     * Endpoint to create Order and corresponding OrderLineItems contained within. The request is processed
+     * asynchronously, the servlet thread is released while inventory-service is called. Requests retried with
+     * the same Idempotency-Key header create a single Order and are all answered with it
      * @param requestDTO Order create request
-     * @return OrderResponseDTO containing Order and OrderLineItems saved in the system
+     * @param idempotencyKey optional Idempotency-Key header, at most 255 characters
+     * @return CompletableFuture of OrderResponseDTO containing Order and OrderLineItems saved in the system
      */
     @PostMapping("/")
-    @CircuitBreaker(name = "inventory", fallbackMethod = "fallbackMethodInventory")
-    public OrderResponseDTO createOrder(@RequestBody OrderRequestDTO requestDTO) throws InventoryServiceCallException, ProductsNotInStockException {
-        return orderService.createOrder(requestDTO);
+    public CompletableFuture<OrderResponseDTO> createOrder(@RequestBody OrderRequestDTO requestDTO,
+                                                           @RequestHeader(value = "Idempotency-Key", required = false)
+                                                           String idempotencyKey) {
+        return orderService
+                .createOrder(requestDTO, idempotencyKey)
+                .exceptionallyCompose(exception -> fallbackMethodInventory(requestDTO, idempotencyKey, exception));
     }
 
-    public OrderResponseDTO fallbackMethodInventory(OrderRequestDTO requestDTO, Exception exception) throws InventoryServiceCallException {
-        throw new InventoryServiceCallException("Inventory-Service Unavailable. Please try after sometime");
+    /***
+     * Fallback of createOrder. The inventory circuit breaker guards the inventory-service calls rather than the
+     * endpoint, so that a call reserving the Orders of several requests counts once. Only an open circuit and a
+     * failed inventory-service call mean inventory-service is unavailable, the Order is then accepted only if the
+     * recent availability known to order-service vouches for it. A failed call may have been reserved by
+     * inventory-service, the Order keeps the orderNumber it has been reserved under. Any other failure, such as
+     * products not being in stock or a client error, is passed on
+     * @param requestDTO Order create request
+     * @param idempotencyKey Idempotency-Key header of the request
+     * @param exception failure of createOrder
+     * @return CompletableFuture of OrderResponseDTO containing the Order accepted from the availability snapshot,
+     * completed exceptionally otherwise
+     */
+    public CompletableFuture<OrderResponseDTO> fallbackMethodInventory(OrderRequestDTO requestDTO,
+                                                                       String idempotencyKey,
+                                                                       Throwable exception) {
+        Throwable cause = exception instanceof CompletionException && Objects.nonNull(exception.getCause()) ?
+                exception.getCause() : exception;
+        if(cause instanceof CallNotPermittedException){
+            return orderService.createOrderFromSnapshot(requestDTO, idempotencyKey, null);
+        }
+        if(cause instanceof InventoryServiceCallException inventoryServiceCallException){
+            return orderService.createOrderFromSnapshot(requestDTO, idempotencyKey,
+                    inventoryServiceCallException.getReservationKey());
+        }
+        return CompletableFuture.failedFuture(cause);
     }
+
     /***
-     * Endpoint to get all Orders in the system
+     * Endpoint to accept an Order without waiting for inventory-service. The Order is queued as PENDING and
+     * answered with 202 right away, its status is then polled with the orderNumber until it is CONFIRMED or
+     * REJECTED. Refused with 429 while the queue is full
+     * @param requestDTO Order create request
+     * @param idempotencyKey optional Idempotency-Key header, at most 255 characters
+     * @return CompletableFuture of ResponseEntity of OrderResponseDTO containing the queued Order, the Location
+     * header points at its status
+     */
+    @PostMapping("/async/")
+    public CompletableFuture<ResponseEntity<OrderResponseDTO>> enqueueOrder(@RequestBody OrderRequestDTO requestDTO,
+                                                                            @RequestHeader(value = "Idempotency-Key",
+                                                                                    required = false)
+                                                                            String idempotencyKey) {
+        return orderService
+                .enqueueOrder(requestDTO, idempotencyKey)
+                .thenApply(responseDTO -> ResponseEntity
+                        .accepted()
+                        .location(URI.create("/api/orders/orderNumber/" + responseDTO.getOrderNumber()))
+                        .body(responseDTO));
+    }
+
+    /***
+     * Endpoint to create several Orders at once. All Orders are reserved with one inventory-service call and saved
+     * in batches, every Order is accepted or rejected on its own
+     * @param requestDTOList Order create requests
+     * @return CompletableFuture of the list of BulkOrderResultDTO in the order of the requests
+     */
+    @PostMapping("/bulk/")
+    public CompletableFuture<List<BulkOrderResultDTO>> createOrders(@RequestBody List<OrderRequestDTO> requestDTOList) {
+        return orderService
+                .createOrders(requestDTOList)
+                .exceptionallyCompose(exception -> fallbackMethodBulkInventory(requestDTOList, exception));
+    }
+
+    /***
+     * Fallback of createOrders. An open circuit means inventory-service is unavailable, any other failure, such as
+     * a failed inventory-service call or an invalid bulk, is passed on. Bulks are not accepted from the availability
+     * snapshot
+     * @param requestDTOList Order create requests
+     * @param exception failure of createOrders
+     * @return CompletableFuture completed exceptionally
+     */
+    public CompletableFuture<List<BulkOrderResultDTO>> fallbackMethodBulkInventory(List<OrderRequestDTO> requestDTOList,
+                                                                                 Throwable exception) {
+        Throwable cause = exception instanceof CompletionException && Objects.nonNull(exception.getCause()) ?
+                exception.getCause() : exception;
+        if(cause instanceof CallNotPermittedException){
+            return CompletableFuture.failedFuture(new InventoryServiceCallException(
+                    "Inventory-Service Unavailable. Please try after sometime"));
+        }
+        return CompletableFuture.failedFuture(cause);
+    }
+    /***
+     * Endpoint to get all Orders in the system. When afterId or size is given, a single page ordered by id is
+     * returned, the id of the last Order of a page is the afterId of the next page
+     * @param afterId id of the last Order of the previous page
+     * @param size maximum number of Orders in the page
      * @return List of OrderResponseDTO
      */
     @GetMapping("/")
-    public List<OrderResponseDTO> getAllOrders(){
-        return orderService.getAllOrders();
+    public List<OrderResponseDTO> getAllOrders(@RequestParam(value = "afterId", required = false) Long afterId,
+                                               @RequestParam(value = "size", required = false) Integer size){
+        if(Objects.isNull(afterId) && Objects.isNull(size)){
+            return orderService.getAllOrders();
+        }
+        return orderService.getOrdersPage(afterId, size);
+    }
+
+    /***
+     * Endpoint to stream all Orders as newline delimited JSON, selected with Accept: application/x-ndjson.
+     * Each Order is written to the response as soon as it is read
+     * @return StreamingResponseBody writing one OrderResponseDTO per line
+     */
+    @GetMapping(value = "/", produces = "application/x-ndjson")
+    public StreamingResponseBody streamAllOrders(){
+        return outputStream -> orderService.streamAllOrders(responseDTO -> {
+            try{
+                outputStream.write(objectMapper.writeValueAsBytes(responseDTO));
+                outputStream.write('\n');
+            }
+            catch(IOException exception){
+                throw new UncheckedIOException(exception);
+            }
+        });
     }
 
     /***
@@ -0,0 +1,18 @@
+package com.learntocode.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkOrderResultDTO {
+    private Integer index;
+    private Boolean accepted;
+    private OrderResponseDTO order;
+    private String message;
+    private OrderInventoryDTO details;
+}
@@ -12,5 +12,6 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 public class OrderInventoryDTO {
+    private String reservationKey;
     private List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList;
 }
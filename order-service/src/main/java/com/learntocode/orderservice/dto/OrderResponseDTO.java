@@ -1,4 +1,6 @@
 package com.learntocode.orderservice.dto;
+
+import com.learntocode.orderservice.model.OrderStatus;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,5 +15,6 @@ import java.util.List;
 public class OrderResponseDTO {
     private Long id;
     private String orderNumber;
+    private OrderStatus status;
     private List<OrderLineItemDTO> orderLineItemList;
 }
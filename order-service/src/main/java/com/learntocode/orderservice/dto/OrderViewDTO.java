@@ -0,0 +1,20 @@
+package com.learntocode.orderservice.dto;
+
+import com.learntocode.orderservice.model.OrderStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderViewDTO {
+    private Long id;
+    private UUID orderNumber;
+    private OrderStatus status;
+}
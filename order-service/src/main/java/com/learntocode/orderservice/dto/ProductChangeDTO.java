@@ -0,0 +1,17 @@
+package com.learntocode.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductChangeDTO {
+    private String id;
+    private Boolean deleted;
+    private ProductPriceDTO product;
+    private String catalogVersion;
+}
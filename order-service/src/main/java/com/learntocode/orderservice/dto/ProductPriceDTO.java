@@ -0,0 +1,18 @@
+package com.learntocode.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPriceDTO {
+    private String id;
+    private String skuCode;
+    private BigDecimal price;
+}
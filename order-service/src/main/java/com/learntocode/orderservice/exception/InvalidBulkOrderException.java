@@ -0,0 +1,11 @@
+package com.learntocode.orderservice.exception;
+
+public class InvalidBulkOrderException extends Exception{
+    public InvalidBulkOrderException() {
+        super();
+    }
+
+    public InvalidBulkOrderException(String message) {
+        super(message);
+    }
+}
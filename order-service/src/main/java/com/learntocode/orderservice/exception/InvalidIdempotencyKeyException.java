@@ -0,0 +1,11 @@
+package com.learntocode.orderservice.exception;
+
+public class InvalidIdempotencyKeyException extends Exception{
+    public InvalidIdempotencyKeyException() {
+        super();
+    }
+
+    public InvalidIdempotencyKeyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.learntocode.orderservice.exception;
+
+public class InvalidOrderPriceException extends Exception{
+    public InvalidOrderPriceException() {
+        super();
+    }
+
+    public InvalidOrderPriceException(String message) {
+        super(message);
+    }
+}
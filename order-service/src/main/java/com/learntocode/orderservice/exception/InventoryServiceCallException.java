@@ -1,6 +1,11 @@
 package com.learntocode.orderservice.exception;
 
+import lombok.Data;
+
+@Data
 public class InventoryServiceCallException extends Exception{
+    /* Key of the reservation that may have been applied by inventory-service before the call failed */
+    private String reservationKey;
     public InventoryServiceCallException() {
         super();
     }
@@ -8,4 +13,9 @@ public class InventoryServiceCallException extends Exception{
     public InventoryServiceCallException(String message) {
         super(message);
     }
+
+    public InventoryServiceCallException(String message, String reservationKey) {
+        super(message);
+        this.reservationKey = reservationKey;
+    }
 }
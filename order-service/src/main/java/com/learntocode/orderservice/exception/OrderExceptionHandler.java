@@ -6,6 +6,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 @ControllerAdvice
@@ -43,4 +44,64 @@ public class OrderExceptionHandler extends ResponseEntityExceptionHandler {
 
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(responseDTO);
     }
+
+    @ExceptionHandler(WebClientResponseException.class)
+    public ResponseEntity<ExceptionResponseDTO> webClientResponseExceptionHandler(
+            WebClientResponseException exception,
+            WebRequest request
+    ){
+        ExceptionResponseDTO responseDTO = new ExceptionResponseDTO();
+        responseDTO.setStatus(HttpStatus.BAD_REQUEST);
+        responseDTO.setMessage("Order rejected by Inventory-Service with " + exception.getRawStatusCode());
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(responseDTO);
+    }
+
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    public ResponseEntity<ExceptionResponseDTO> invalidIdempotencyKeyExceptionHandler(
+            InvalidIdempotencyKeyException exception,
+            WebRequest request
+    ){
+        ExceptionResponseDTO responseDTO = new ExceptionResponseDTO();
+        responseDTO.setStatus(HttpStatus.BAD_REQUEST);
+        responseDTO.setMessage(exception.getMessage());
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(responseDTO);
+    }
+
+    @ExceptionHandler(OrderQueueFullException.class)
+    public ResponseEntity<ExceptionResponseDTO> orderQueueFullExceptionHandler(
+            OrderQueueFullException exception,
+            WebRequest request
+    ){
+        ExceptionResponseDTO responseDTO = new ExceptionResponseDTO();
+        responseDTO.setStatus(HttpStatus.TOO_MANY_REQUESTS);
+        responseDTO.setMessage(exception.getMessage());
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(responseDTO);
+    }
+
+    @ExceptionHandler(InvalidOrderPriceException.class)
+    public ResponseEntity<ExceptionResponseDTO> invalidOrderPriceExceptionHandler(
+            InvalidOrderPriceException exception,
+            WebRequest request
+    ){
+        ExceptionResponseDTO responseDTO = new ExceptionResponseDTO();
+        responseDTO.setStatus(HttpStatus.CONFLICT);
+        responseDTO.setMessage(exception.getMessage());
+
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(responseDTO);
+    }
+
+    @ExceptionHandler(InvalidBulkOrderException.class)
+    public ResponseEntity<ExceptionResponseDTO> invalidBulkOrderExceptionHandler(
+            InvalidBulkOrderException exception,
+            WebRequest request
+    ){
+        ExceptionResponseDTO responseDTO = new ExceptionResponseDTO();
+        responseDTO.setStatus(HttpStatus.BAD_REQUEST);
+        responseDTO.setMessage(exception.getMessage());
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(responseDTO);
+    }
 }
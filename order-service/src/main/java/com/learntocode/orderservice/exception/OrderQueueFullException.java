@@ -0,0 +1,11 @@
+package com.learntocode.orderservice.exception;
+
+public class OrderQueueFullException extends Exception{
+    public OrderQueueFullException() {
+        super();
+    }
+
+    public OrderQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -3,20 +3,45 @@ package com.learntocode.orderservice.model;
 import lombok.*;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.List;
+import java.util.UUID;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders",
+        indexes = {
+                @Index(name = "ux_orders_order_uuid", columnList = "order_uuid", unique = true),
+                @Index(name = "ux_orders_idempotency_key", columnList = "idempotency_key", unique = true),
+                @Index(name = "ix_orders_status", columnList = "status, id")
+        })
 @Builder
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
+    public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
-    private String orderNumber;
-    @OneToMany(cascade = CascadeType.ALL)
+    /* Stored in the native 16 byte uuid column, time-ordered so that new Orders are appended to its index */
+    @Column(name = "order_uuid")
+    private UUID orderNumber;
+    @Column(name = "idempotency_key", length = Order.MAX_IDEMPOTENCY_KEY_LENGTH)
+    private String idempotencyKey;
+    @Column(name = "reservation_pending")
+    private Boolean reservationPending;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16)
+    private OrderStatus status;
+    /* Time a PENDING Order has been queued and claimed by a worker of AsyncOrderQueue, a claim expires after the
+       claim lease so that Orders of a failed worker are picked up again */
+    @Column(name = "queued_at")
+    private Instant queuedAt;
+    @Column(name = "claimed_at")
+    private Instant claimedAt;
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<OrderLineItem> orderLineItemList;
 }
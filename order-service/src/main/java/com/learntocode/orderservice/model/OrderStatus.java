@@ -0,0 +1,11 @@
+package com.learntocode.orderservice.model;
+
+/***
+ * Status of an Order. Orders created synchronously are CONFIRMED right away, Orders accepted asynchronously are
+ * PENDING until their inventory has been reserved (CONFIRMED) or found not in stock (REJECTED)
+ */
+public enum OrderStatus {
+    PENDING,
+    CONFIRMED,
+    REJECTED
+}
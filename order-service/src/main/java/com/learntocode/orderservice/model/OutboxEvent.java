@@ -0,0 +1,41 @@
+package com.learntocode.orderservice.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+@Entity
+@Table(name = "outbox_event")
+@Builder
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq", allocationSize = 50)
+    private Long id;
+    private String topic;
+    private String orderNumber;
+    private Instant createdAt;
+    /* Time the OutboxEvent has been claimed by a relay, a claim expires after the claim lease so that events of a
+       relay that died while publishing are picked up again */
+    @Column(name = "claimed_at")
+    private Instant claimedAt;
+
+    /***
+     * Method to build the OutboxEvent announcing a placed Order on OrderPlacedTopic
+     * @param order saved Order
+     * @return OutboxEvent
+     */
+    public static OutboxEvent orderPlaced(Order order){
+        return OutboxEvent
+                .builder()
+                .topic("OrderPlacedTopic")
+                .orderNumber(order.getOrderNumber().toString())
+                .createdAt(Instant.now())
+                .build();
+    }
+}
@@ -1,12 +1,154 @@
 package com.learntocode.orderservice.repository;
 
+import com.learntocode.orderservice.dto.OrderLineItemViewDTO;
+import com.learntocode.orderservice.dto.OrderViewDTO;
 import com.learntocode.orderservice.model.Order;
+import com.learntocode.orderservice.model.OrderStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
-    Optional<Order> findOrderByOrderNumberIgnoreCase(String orderNumber);
+    /***
+     * Method to fetch an Order along with its OrderLineItems in a single query
+     * @param id of the Order
+     * @return Optional of Order
+     */
+    @EntityGraph(attributePaths = "orderLineItemList")
+    Optional<Order> findWithOrderLineItemsById(Long id);
+
+    /***
+     * Method to fetch an Order by its orderNumber along with its OrderLineItems in a single query
+     * @param orderNumber orderNumber of the Order
+     * @return Optional of Order
+     */
+    @EntityGraph(attributePaths = "orderLineItemList")
+    Optional<Order> findOrderByOrderNumber(UUID orderNumber);
+
+    /***
+     * Method to fetch the Order created for an Idempotency-Key along with its OrderLineItems in a single query
+     * @param idempotencyKey Idempotency-Key of the create request
+     * @return Optional of Order
+     */
+    @EntityGraph(attributePaths = "orderLineItemList")
+    Optional<Order> findOrderByIdempotencyKey(String idempotencyKey);
+
+    /***
+     * Method to fetch the ids of the oldest Orders accepted without an inventory reservation
+     * @param pageable maximum number of Orders, offset is always 0
+     * @return List of Order ids in ascending order
+     */
+    @Query("select o.id from Order o where o.reservationPending = true order by o.id")
+    List<Long> findReservationPendingIds(Pageable pageable);
+
+    /***
+     * Method to mark the inventory reservation of an Order as done and move the Order to its final status. Only an
+     * Order whose reservation is still pending is updated, so that it is completed once
+     * @param id of the Order
+     * @param status CONFIRMED if the inventory has been reserved, REJECTED otherwise
+     * @return number of Orders updated
+     */
+    @Modifying
+    @Query("update Order o set o.reservationPending = false, o.status = :status " +
+            "where o.id = :id and o.reservationPending = true")
+    int completeReservation(@Param("id") Long id, @Param("status") OrderStatus status);
+
+    /***
+     * Method to lock the oldest PENDING Orders that are not claimed by a worker or whose claim has expired. Rows
+     * locked by another order-service instance are skipped, so an Order is claimed by one worker at a time
+     * @param expiredBefore claims older than this time have expired
+     * @param limit maximum number of Orders to be locked
+     * @return List of ids of the locked Orders
+     */
+    @Query(value = "select id from orders where status = 'PENDING' and " +
+            "(claimed_at is null or claimed_at < :expiredBefore) order by id limit :limit for update skip locked",
+            nativeQuery = true)
+    List<Long> lockClaimablePendingIds(@Param("expiredBefore") Instant expiredBefore, @Param("limit") int limit);
+
+    /***
+     * Method to claim Orders locked with lockClaimablePendingIds for a worker
+     * @param ids of the Orders
+     * @param claimedAt time of the claim, identifying it
+     * @return number of Orders updated
+     */
+    @Modifying
+    @Query("update Order o set o.claimedAt = :claimedAt where o.id in :ids")
+    int claim(@Param("ids") Collection<Long> ids, @Param("claimedAt") Instant claimedAt);
+
+    /***
+     * Method to move a PENDING Order to its final status, provided it is still claimed by the caller
+     * @param id of the Order
+     * @param claimedAt time of the claim of the caller
+     * @param status CONFIRMED or REJECTED
+     * @return number of Orders updated, 0 if the claim has been taken over by another worker
+     */
+    @Modifying
+    @Query("update Order o set o.status = :status, o.claimedAt = null where o.id = :id and " +
+            "o.status = com.learntocode.orderservice.model.OrderStatus.PENDING and o.claimedAt = :claimedAt")
+    int completeClaim(@Param("id") Long id, @Param("claimedAt") Instant claimedAt,
+                      @Param("status") OrderStatus status);
+
+    /***
+     * Method to give up the claim of a PENDING Order so that it is picked up again
+     * @param id of the Order
+     * @param claimedAt time of the claim of the caller
+     * @return number of Orders updated
+     */
+    @Modifying
+    @Query("update Order o set o.claimedAt = null where o.id = :id and o.claimedAt = :claimedAt")
+    int releaseClaim(@Param("id") Long id, @Param("claimedAt") Instant claimedAt);
+
+    /***
+     * Method to count the Orders of a status
+     * @param status OrderStatus
+     * @return number of Orders
+     */
+    long countByStatus(OrderStatus status);
+
+    /***
+     * Method to fetch all Orders as read-only projections without building managed entities
+     * @return List of OrderViewDTO ordered by id
+     */
+    @Query("select new com.learntocode.orderservice.dto.OrderViewDTO(o.id, o.orderNumber, o.status) from Order o " +
+            "order by o.id")
+    List<OrderViewDTO> findAllOrderViews();
+
+    /***
+     * Method to fetch a page of Orders following the given id as read-only projections, used for keyset pagination
+     * @param id of the last Order of the previous page
+     * @param pageable page size, offset is always 0
+     * @return List of OrderViewDTO ordered by id
+     */
+    @Query("select new com.learntocode.orderservice.dto.OrderViewDTO(o.id, o.orderNumber, o.status) from Order o " +
+            "where o.id > :id order by o.id")
+    List<OrderViewDTO> findOrderViewsAfter(@Param("id") Long id, Pageable pageable);
+
+    /***
+     * Method to fetch all OrderLineItems as read-only projections without building managed entities
+     * @return List of OrderLineItemViewDTO ordered by id
+     */
+    @Query("select new com.learntocode.orderservice.dto.OrderLineItemViewDTO(" +
+            "li.order.id, li.id, li.skuCode, li.price, li.quantity) from OrderLineItem li order by li.id")
+    List<OrderLineItemViewDTO> findAllOrderLineItemViews();
+
+    /***
+     * Method to fetch the OrderLineItems of the given Orders as read-only projections in a single query
+     * @param orderIds ids of the Orders
+     * @return List of OrderLineItemViewDTO ordered by id
+     */
+    @Query("select new com.learntocode.orderservice.dto.OrderLineItemViewDTO(" +
+            "li.order.id, li.id, li.skuCode, li.price, li.quantity) from OrderLineItem li " +
+            "where li.order.id in :orderIds order by li.id")
+    List<OrderLineItemViewDTO> findOrderLineItemViewsByOrderIds(@Param("orderIds") Collection<Long> orderIds);
 }
@@ -0,0 +1,64 @@
+package com.learntocode.orderservice.repository;
+
+import com.learntocode.orderservice.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    /***
+     * Method to lock the oldest OutboxEvents that are not claimed by a relay or whose claim has expired. Rows locked
+     * by another order-service instance are skipped, so concurrent relays never claim the same OutboxEvent
+     * @param expiredBefore claims older than this time have expired
+     * @param batchSize maximum number of OutboxEvents to be locked
+     * @return List of OutboxEvent ordered by id
+     */
+    @Query(value = "select * from outbox_event where claimed_at is null or claimed_at < :expiredBefore " +
+            "order by id limit :batchSize for update skip locked", nativeQuery = true)
+    List<OutboxEvent> lockClaimableBatch(@Param("expiredBefore") Instant expiredBefore,
+                                         @Param("batchSize") int batchSize);
+
+    /***
+     * Method to claim OutboxEvents locked with lockClaimableBatch for a relay
+     * @param ids of the OutboxEvents
+     * @param claimedAt time of the claim, identifying it
+     * @return number of OutboxEvents updated
+     */
+    @Modifying
+    @Query("update OutboxEvent e set e.claimedAt = :claimedAt where e.id in :ids")
+    int claim(@Param("ids") Collection<Long> ids, @Param("claimedAt") Instant claimedAt);
+
+    /***
+     * Method to delete relayed OutboxEvents, provided they are still claimed by the caller
+     * @param ids of the OutboxEvents
+     * @param claimedAt time of the claim of the caller
+     * @return number of OutboxEvents deleted
+     */
+    @Modifying
+    @Query("delete from OutboxEvent e where e.id in :ids and e.claimedAt = :claimedAt")
+    int deleteClaimed(@Param("ids") Collection<Long> ids, @Param("claimedAt") Instant claimedAt);
+
+    /***
+     * Method to give up the claim of OutboxEvents that could not be published, so that they are picked up again
+     * @param ids of the OutboxEvents
+     * @param claimedAt time of the claim of the caller
+     * @return number of OutboxEvents updated
+     */
+    @Modifying
+    @Query("update OutboxEvent e set e.claimedAt = null where e.id in :ids and e.claimedAt = :claimedAt")
+    int releaseClaim(@Param("ids") Collection<Long> ids, @Param("claimedAt") Instant claimedAt);
+
+    /***
+     * Method to get the creation time of the oldest OutboxEvent not relayed yet
+     * @return creation time, null if the outbox is empty
+     */
+    @Query("select min(e.createdAt) from OutboxEvent e")
+    Instant findOldestCreatedAt();
+}
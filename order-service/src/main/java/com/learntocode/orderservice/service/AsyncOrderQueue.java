@@ -0,0 +1,298 @@
+package com.learntocode.orderservice.service;
+
+import com.learntocode.orderservice.dto.OrderInventoryDTO;
+import com.learntocode.orderservice.dto.OrderLineItemInventoryDTO;
+import com.learntocode.orderservice.model.Order;
+import com.learntocode.orderservice.model.OrderStatus;
+import com.learntocode.orderservice.model.OutboxEvent;
+import com.learntocode.orderservice.repository.OrderRepository;
+import com.learntocode.orderservice.repository.OutboxEventRepository;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Durable queue of Orders accepted asynchronously. The queue is the PENDING Orders themselves, so it survives
+ * restarts and is shared by all order-service instances. Workers claim the oldest PENDING Order, reserve its
+ * inventory and move it to CONFIRMED or REJECTED. A claim expires after the claim lease, the Orders of a worker that
+ * died are then picked up again. The orderNumber is the reservation key, so a reservation repeated for a picked up
+ * Order is applied only once
+ */
+@Component
+@Slf4j
+public class AsyncOrderQueue {
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private InventoryRequestCoalescer inventoryRequestCoalescer;
+    @Autowired
+    private InventorySnapshot inventorySnapshot;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    @Qualifier("asyncOrderExecutor")
+    private ThreadPoolTaskExecutor asyncOrderExecutor;
+    @Value("${order.async.queue-capacity}")
+    private long queueCapacity;
+    @Value("${order.async.workers}")
+    private int workers;
+    @Value("${order.async.claim-lease}")
+    private Duration claimLease;
+    @Value("${order.async.reserve-timeout}")
+    private Duration reserveTimeout;
+
+    /* PENDING Orders of all instances as counted at the last poll, plus the slots taken here since */
+    private final AtomicLong queueDepth = new AtomicLong();
+    /* Slots taken for Orders not saved yet */
+    private final AtomicLong unsavedSlots = new AtomicLong();
+    /* Orders saved into their slot since startup, only ever increases */
+    private final AtomicLong savedSlots = new AtomicLong();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private Timer queueTimer;
+    private Counter confirmedCounter;
+    private Counter rejectedCounter;
+    private Counter queueFullCounter;
+
+    @PostConstruct
+    public void registerMetrics(){
+        Gauge.builder("order.async.queue.depth", queueDepth, AtomicLong::get)
+                .description("Number of PENDING Orders waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("order.async.queue.capacity", () -> queueCapacity)
+                .description("Number of PENDING Orders beyond which asynchronous Orders are refused")
+                .register(meterRegistry);
+        Gauge.builder("order.async.workers.active", activeWorkers, AtomicInteger::get)
+                .description("Number of workers processing PENDING Orders")
+                .register(meterRegistry);
+        queueTimer = Timer.builder("order.async.queue.time")
+                .description("Time from queueing an Order until a worker picked it up")
+                .register(meterRegistry);
+        confirmedCounter = Counter.builder("order.async.orders")
+                .tag("result", "confirmed")
+                .description("Asynchronous Orders confirmed")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("order.async.orders")
+                .tag("result", "rejected")
+                .description("Asynchronous Orders rejected as their products were not in stock")
+                .register(meterRegistry);
+        queueFullCounter = Counter.builder("order.async.queue.full")
+                .description("Asynchronous Orders refused as the queue was full")
+                .register(meterRegistry);
+    }
+
+    /***
+     * Method to take a slot in the queue for an Order about to be saved. The slot is taken in the same atomic step
+     * as the capacity check, so concurrent Orders cannot all pass the check before any of them is counted. The slot
+     * is given back by queued() once the Order is saved, or by releaseSlot() if it could not be. A refused Order is
+     * counted
+     * @return true if a slot has been taken, false if the queue is full
+     */
+    public boolean tryReserveSlot(){
+        unsavedSlots.incrementAndGet();
+        if(queueDepth.getAndUpdate(depth -> depth < queueCapacity ? depth + 1 : depth) < queueCapacity){
+            return true;
+        }
+        unsavedSlots.decrementAndGet();
+        queueFullCounter.increment();
+        return false;
+    }
+
+    /***
+     * Method to give back the slot of an Order that could not be saved
+     */
+    public void releaseSlot(){
+        unsavedSlots.decrementAndGet();
+        queueDepth.updateAndGet(depth -> Math.max(0, depth - 1));
+    }
+
+    /***
+     * Method to be called once a PENDING Order has been saved into its slot, starts a worker if one is idle. The
+     * slot stays counted in the queue depth until a worker completes the Order
+     */
+    public void queued(){
+        savedSlots.incrementAndGet();
+        unsavedSlots.decrementAndGet();
+        startWorkers(1);
+    }
+
+    /***
+     * Refreshes the queue depth and starts idle workers if Orders are waiting. Orders queued by other instances or
+     * left behind by failed workers are picked up this way. Slots taken here and not saved yet, or saved while
+     * counting, are kept on top of the count, an Order saved while counting may be counted twice until the next poll
+     */
+    @Scheduled(fixedDelayString = "${order.async.poll-interval}")
+    public void poll(){
+        try{
+            long savedBeforeCount = savedSlots.get();
+            long pendingOrders = orderRepository.countByStatus(OrderStatus.PENDING);
+            queueDepth.set(pendingOrders + unsavedSlots.get() + savedSlots.get() - savedBeforeCount);
+        }
+        catch(RuntimeException exception){
+            log.warn("PENDING Orders could not be counted", exception);
+            return;
+        }
+        startWorkers((int) Math.min(queueDepth.get(), workers));
+    }
+
+    /***
+     * Helper method to start idle workers. Nothing is started while the inventory circuit breaker is open
+     * @param count maximum number of workers to be started
+     */
+    private void startWorkers(int count){
+        if(circuitBreakerRegistry.circuitBreaker("inventory").getState() == CircuitBreaker.State.OPEN){
+            return;
+        }
+        int active;
+        int started = 0;
+        while(started < count && (active = activeWorkers.get()) < workers){
+            if(!activeWorkers.compareAndSet(active, active + 1)){
+                continue;
+            }
+            try{
+                asyncOrderExecutor.execute(this::work);
+                started++;
+            }
+            catch(TaskRejectedException exception){
+                activeWorkers.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /***
+     * Helper method run by a worker, processing PENDING Orders one after the other until none is left to be
+     * claimed or inventory-service fails
+     */
+    private void work(){
+        try{
+            Optional<Claim> claim;
+            while((claim = claimNext()).isPresent()){
+                if(!process(claim.get())){
+                    return;
+                }
+            }
+        }
+        catch(RuntimeException exception){
+            log.warn("Processing of PENDING Orders failed, will be retried", exception);
+        }
+        finally{
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    /***
+     * Helper method to claim the oldest PENDING Order not claimed by another worker
+     * @return Optional of the Claim, empty if there is no Order to be claimed
+     */
+    private Optional<Claim> claimNext(){
+        Instant claimedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        List<Long> ids = transactionTemplate.execute(status -> {
+            List<Long> claimableIds = orderRepository.lockClaimablePendingIds(claimedAt.minus(claimLease), 1);
+            if(!claimableIds.isEmpty()){
+                orderRepository.claim(claimableIds, claimedAt);
+            }
+            return claimableIds;
+        });
+        return Objects.isNull(ids) || ids.isEmpty() ? Optional.empty() : Optional.of(new Claim(ids.get(0), claimedAt));
+    }
+
+    /***
+     * Helper method to reserve the inventory of a claimed Order and move it to CONFIRMED or REJECTED. If
+     * inventory-service cannot be called, the claim is given up and the Order stays PENDING
+     * @param claim Claim of the Order
+     * @return true if the Order has been processed, false if inventory-service failed
+     */
+    private boolean process(Claim claim){
+        Optional<Order> orderOptional = orderRepository.findWithOrderLineItemsById(claim.id);
+        if(orderOptional.isEmpty()){
+            return true;
+        }
+        Order order = orderOptional.get();
+        if(Objects.nonNull(order.getQueuedAt())){
+            queueTimer.record(Duration.between(order.getQueuedAt(), claim.claimedAt));
+        }
+        List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList = order
+                .getOrderLineItemList()
+                .stream()
+                .map(orderLineItem -> OrderLineItemInventoryDTO
+                        .builder()
+                        .skuCode(orderLineItem.getSkuCode())
+                        .requiredQuantity(orderLineItem.getQuantity())
+                        .build())
+                .toList();
+        OrderInventoryDTO responseDTO;
+        try{
+            responseDTO = inventoryRequestCoalescer
+                    .reserve(OrderInventoryDTO
+                            .builder()
+                            .reservationKey(order.getOrderNumber().toString())
+                            .orderLineItemInventoryDTOList(orderLineItemInventoryDTOList)
+                            .build())
+                    .get(reserveTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch(Exception exception){
+            log.warn("Inventory of Order {} could not be reserved, will be retried", order.getOrderNumber(), exception);
+            transactionTemplate.executeWithoutResult(status -> orderRepository.releaseClaim(claim.id, claim.claimedAt));
+            return false;
+        }
+        inventorySnapshot.record(responseDTO);
+        boolean allInStock = responseDTO
+                .getOrderLineItemInventoryDTOList()
+                .stream()
+                .allMatch(OrderLineItemInventoryDTO::getInStock);
+        OrderStatus orderStatus = allInStock ? OrderStatus.CONFIRMED : OrderStatus.REJECTED;
+        Boolean completed = transactionTemplate.execute(status -> {
+            if(orderRepository.completeClaim(claim.id, claim.claimedAt, orderStatus) == 0){
+                return false;
+            }
+            if(allInStock){
+                outboxEventRepository.save(OutboxEvent.orderPlaced(order));
+            }
+            return true;
+        });
+        if(Boolean.TRUE.equals(completed)){
+            queueDepth.updateAndGet(depth -> Math.max(0, depth - 1));
+            (allInStock ? confirmedCounter : rejectedCounter).increment();
+        }
+        return true;
+    }
+
+    /***
+     * Claim of a PENDING Order by a worker, identified by the time it has been made
+     */
+    @AllArgsConstructor
+    private static class Claim {
+        private final Long id;
+        private final Instant claimedAt;
+    }
+}
@@ -0,0 +1,279 @@
+package com.learntocode.orderservice.service;
+
+import com.learntocode.orderservice.configuration.InstanceSelection;
+import com.learntocode.orderservice.dto.OrderInventoryDTO;
+import com.learntocode.orderservice.exception.InventoryServiceCallException;
+import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/***
+ * Client of inventory-service. Reservations can be hedged: if the first attempt has not answered within the
+ * configured percentile of the recent latency, a second attempt is sent to a different instance, the first response
+ * wins and the other attempt is cancelled. Reservations carry a reservation key, so inventory-service applies a
+ * hedged reservation only once. Hedges are paid from a budget refilled by a fraction of every call, which caps the
+ * extra load on inventory-service. Reservations are guarded by the inventory circuit breaker, each call to
+ * inventory-service counts once however many Orders it reserves and however many attempts it is hedged with
+ */
+@Component
+@Slf4j
+public class InventoryClient {
+    /* Hedge delays are derived from the latency percentile at most this often */
+    private static final long HEDGE_DELAY_REFRESH_NANOS = Duration.ofSeconds(1).toNanos();
+
+    @Autowired
+    private WebClient.Builder webClientBuilder;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${order.inventory.hedging.enabled}")
+    private boolean hedgingEnabled;
+    @Value("${order.inventory.hedging.percentile}")
+    private double hedgingPercentile;
+    @Value("${order.inventory.hedging.min-delay}")
+    private Duration hedgingMinDelay;
+    @Value("${order.inventory.hedging.min-samples}")
+    private long hedgingMinSamples;
+    @Value("${order.inventory.hedging.budget-ratio}")
+    private double hedgingBudgetRatio;
+    @Value("${order.inventory.hedging.budget-capacity}")
+    private double hedgingBudgetCapacity;
+
+    private HedgedCall reserveCall;
+    private HedgedCall reserveBatchCall;
+    private HedgeBudget hedgeBudget;
+    private Counter hedgeCounter;
+    private Counter hedgeWinCounter;
+    private Counter hedgeBudgetExhaustedCounter;
+
+    @PostConstruct
+    public void registerMetrics(){
+        reserveCall = new HedgedCall("reserve");
+        reserveBatchCall = new HedgedCall("reserve-batch");
+        hedgeBudget = new HedgeBudget(hedgingBudgetRatio, hedgingBudgetCapacity);
+        Gauge.builder("order.inventory.hedge.budget", hedgeBudget, HedgeBudget::tokens)
+                .description("Hedges inventory-service calls can currently be hedged with")
+                .register(meterRegistry);
+        hedgeCounter = Counter.builder("order.inventory.hedges")
+                .description("Hedged attempts sent to inventory-service")
+                .register(meterRegistry);
+        hedgeWinCounter = Counter.builder("order.inventory.hedge.wins")
+                .description("Hedged attempts answering before the first attempt")
+                .register(meterRegistry);
+        hedgeBudgetExhaustedCounter = Counter.builder("order.inventory.hedge.budget.exhausted")
+                .description("Hedges not sent as the hedge budget was exhausted")
+                .register(meterRegistry);
+    }
+
+    /***
+     * Method to reserve the products of an Order through inventory-service. The call does not block the
+     * calling thread
+     * @param orderInventoryDTO skuCodes and required quantity to be reserved
+     * @return CompletableFuture of OrderInventoryDTO containing the result of the reservation, completed
+     * exceptionally with InventoryServiceCallException if inventory-service could not be called, with
+     * WebClientResponseException if inventory-service rejected the reservation, or with CallNotPermittedException
+     * while the circuit is open
+     */
+    @CircuitBreaker(name = "inventory")
+    public CompletableFuture<OrderInventoryDTO> reserve(OrderInventoryDTO orderInventoryDTO){
+        return hedge(reserveCall, instanceSelection -> webClientBuilder
+                .build()
+                .post()
+                .uri("lb://inventory-service/api/inventories/reserve/")
+                .attribute(InstanceSelection.ATTRIBUTE, instanceSelection)
+                .bodyValue(orderInventoryDTO)
+                .retrieve()
+                .bodyToMono(OrderInventoryDTO.class)
+                .doOnCancel(instanceSelection::cancel))
+                .onErrorMap(InventoryClient::isUnavailable,
+                        exception -> new InventoryServiceCallException("Inventory Service Call Exception"))
+                .toFuture();
+    }
+
+    /***
+     * Method to reserve the products of several Orders through inventory-service in one call. Every Order is
+     * reserved on its own by inventory-service. The call does not block the calling thread
+     * @param orderInventoryDTOList skuCodes and required quantity of each Order to be reserved
+     * @return CompletableFuture of the list of OrderInventoryDTO containing the result of each reservation in the
+     * order of the request, completed exceptionally with InventoryServiceCallException if inventory-service could
+     * not be called, with WebClientResponseException if inventory-service rejected the reservations, or with
+     * CallNotPermittedException while the circuit is open
+     */
+    @CircuitBreaker(name = "inventory")
+    public CompletableFuture<List<OrderInventoryDTO>> reserveAll(List<OrderInventoryDTO> orderInventoryDTOList){
+        return hedge(reserveBatchCall, instanceSelection -> webClientBuilder
+                .build()
+                .post()
+                .uri("lb://inventory-service/api/inventories/reserve/batch/")
+                .attribute(InstanceSelection.ATTRIBUTE, instanceSelection)
+                .bodyValue(orderInventoryDTOList)
+                .retrieve()
+                .bodyToFlux(OrderInventoryDTO.class)
+                .collectList()
+                .doOnCancel(instanceSelection::cancel))
+                .onErrorMap(InventoryClient::isUnavailable,
+                        exception -> new InventoryServiceCallException("Inventory Service Call Exception"))
+                .toFuture();
+    }
+
+    /***
+     * Method to release the stock reserved for an Order that could not be saved. The call does not block the
+     * calling thread and failure to release is only logged as the original failure is more relevant to the caller
+     * @param orderInventoryDTO OrderInventoryDTO reserved earlier
+     */
+    public void release(OrderInventoryDTO orderInventoryDTO){
+        webClientBuilder
+                .build()
+                .post()
+                .uri("lb://inventory-service/api/inventories/release/")
+                .bodyValue(orderInventoryDTO)
+                .retrieve()
+                .toBodilessEntity()
+                .subscribe(responseEntity -> {},
+                        exception -> log.error("Inventory could not be released for {}", orderInventoryDTO, exception));
+    }
+
+    /***
+     * Helper method to tell whether a failed call means inventory-service is unavailable: it answered with a server
+     * error, could not be connected or timed out. A client error means the request itself was rejected, an Order
+     * must not be accepted from the availability snapshot for it
+     * @param exception failure of the call
+     * @return true if inventory-service is unavailable
+     */
+    private static boolean isUnavailable(Throwable exception){
+        if(exception instanceof WebClientResponseException webClientResponseException){
+            return webClientResponseException.getStatusCode().is5xxServerError();
+        }
+        return exception instanceof WebClientRequestException || exception instanceof TimeoutException;
+    }
+
+    /***
+     * Helper method to run a call with an optional hedge. The first attempt is timed for the latency percentile.
+     * The hedge is sent after the hedge delay unless the first attempt has finished by then or the budget is
+     * exhausted. The first attempt answering with a value wins and the other one is cancelled
+     * @param hedgedCall latency and hedge delay of the call
+     * @param attempt sends one attempt of the call with the given InstanceSelection
+     * @return Mono of the first value answered
+     */
+    private <T> Mono<T> hedge(HedgedCall hedgedCall, Function<InstanceSelection, Mono<T>> attempt){
+        Set<String> chosenInstanceIds = ConcurrentHashMap.newKeySet();
+        return Mono.defer(() -> {
+            long startedAt = System.nanoTime();
+            Sinks.Empty<Void> primaryFinished = Sinks.empty();
+            Mono<T> primary = attempt.apply(new InstanceSelection(chosenInstanceIds))
+                    .doFinally(signalType -> {
+                        hedgedCall.latencyTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                        primaryFinished.tryEmitEmpty();
+                    });
+            Duration hedgeDelay = hedgedCall.hedgeDelay();
+            if(!hedgingEnabled || hedgeDelay.isZero()){
+                return primary;
+            }
+            hedgeBudget.deposit();
+            Mono<T> hedged = Mono.delay(hedgeDelay)
+                    .takeUntilOther(primaryFinished.asMono())
+                    .filter(tick -> {
+                        if(hedgeBudget.tryWithdraw()){
+                            hedgeCounter.increment();
+                            return true;
+                        }
+                        hedgeBudgetExhaustedCounter.increment();
+                        return false;
+                    })
+                    .flatMap(tick -> attempt.apply(new InstanceSelection(chosenInstanceIds)))
+                    .doOnNext(value -> hedgeWinCounter.increment());
+            return Mono.firstWithValue(primary, hedged);
+        });
+    }
+
+    /***
+     * Latency of one kind of call and the hedge delay derived from it
+     */
+    private class HedgedCall {
+        private final Timer latencyTimer;
+        private volatile long hedgeDelayNanos;
+        private volatile long refreshedAt;
+
+        HedgedCall(String call){
+            latencyTimer = Timer.builder("order.inventory.call.latency")
+                    .tag("call", call)
+                    .publishPercentiles(hedgingPercentile)
+                    .description("Latency of the first attempt of inventory-service calls")
+                    .register(meterRegistry);
+            refreshedAt = System.nanoTime() - HEDGE_DELAY_REFRESH_NANOS;
+        }
+
+        /***
+         * Method to get the hedge delay, the latency percentile but at least the minimum delay
+         * @return hedge delay, zero while too few calls have been timed to hedge
+         */
+        Duration hedgeDelay(){
+            long now = System.nanoTime();
+            if(now - refreshedAt >= HEDGE_DELAY_REFRESH_NANOS){
+                refreshedAt = now;
+                long percentileNanos = 0;
+                for(ValueAtPercentile valueAtPercentile : latencyTimer.takeSnapshot().percentileValues()){
+                    if(valueAtPercentile.percentile() == hedgingPercentile){
+                        percentileNanos = (long) valueAtPercentile.value(TimeUnit.NANOSECONDS);
+                    }
+                }
+                hedgeDelayNanos = latencyTimer.count() < hedgingMinSamples ? 0 :
+                        Math.max(hedgingMinDelay.toNanos(), percentileNanos);
+            }
+            return Duration.ofNanos(hedgeDelayNanos);
+        }
+    }
+
+    /***
+     * Token bucket paying for hedges. Every hedgeable call deposits the budget ratio, a hedge withdraws one token,
+     * so at most that fraction of calls is hedged in the long run. The capacity bounds the hedges of a burst
+     */
+    private static class HedgeBudget {
+        private final double ratio;
+        private final double capacity;
+        private double tokens;
+
+        HedgeBudget(double ratio, double capacity){
+            this.ratio = ratio;
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        synchronized void deposit(){
+            tokens = Math.min(capacity, tokens + ratio);
+        }
+
+        synchronized boolean tryWithdraw(){
+            if(tokens < 1){
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        synchronized double tokens(){
+            return tokens;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.learntocode.orderservice.service;
+
+import com.learntocode.orderservice.dto.OrderInventoryDTO;
+import com.learntocode.orderservice.exception.InventoryServiceCallException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Coalesces the inventory reservations of concurrently arriving Orders. Reservations are collected for a short
+ * window, or until the maximum batch size is reached, and sent to inventory-service in one call. The result of
+ * each reservation is handed back to the caller that requested it. The inventory circuit breaker counts the call,
+ * not the reservations it carries, so one failed call fails all callers of the batch as one failure
+ */
+@Component
+@Slf4j
+public class InventoryRequestCoalescer {
+    @Autowired
+    private InventoryClient inventoryClient;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${order.inventory.coalescer.window}")
+    private Duration window;
+    @Value("${order.inventory.coalescer.max-batch-size}")
+    private int maxBatchSize;
+
+    private final Object lock = new Object();
+    private List<PendingReservation> pendingReservations = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private ScheduledExecutorService scheduler;
+    private DistributionSummary batchSizeSummary;
+
+    @PostConstruct
+    public void start(){
+        scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("inventory-coalescer-"));
+        batchSizeSummary = DistributionSummary.builder("order.inventory.reserve.batch.size")
+                .description("Number of Order reservations sent to inventory-service in one call")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("order.inventory.reserve.batch.window", window, Duration::toMillis)
+                .description("Time reservations are collected before being sent to inventory-service")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("order.inventory.reserve.batch.max.size", this, coalescer -> coalescer.maxBatchSize)
+                .description("Maximum number of Order reservations sent to inventory-service in one call")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop(){
+        flush();
+        scheduler.shutdown();
+    }
+
+    /***
+     * Method to reserve the products of an Order. The reservation is sent with the reservations of the Orders
+     * arriving within the same window. The call does not block the calling thread
+     * @param orderInventoryDTO skuCodes and required quantity to be reserved
+     * @return CompletableFuture of OrderInventoryDTO containing the result of the reservation, completed
+     * exceptionally with InventoryServiceCallException if inventory-service could not be called, with
+     * WebClientResponseException if it rejected the reservations, or with CallNotPermittedException while the
+     * inventory circuit is open
+     */
+    public CompletableFuture<OrderInventoryDTO> reserve(OrderInventoryDTO orderInventoryDTO){
+        if(maxBatchSize <= 1 || window.isZero()){
+            batchSizeSummary.record(1);
+            return inventoryClient.reserve(orderInventoryDTO);
+        }
+        CompletableFuture<OrderInventoryDTO> reservationFuture = new CompletableFuture<>();
+        List<PendingReservation> batch = null;
+        synchronized(lock){
+            pendingReservations.add(new PendingReservation(orderInventoryDTO, reservationFuture));
+            if(pendingReservations.size() >= maxBatchSize){
+                batch = drainPendingReservations();
+            }
+            else if(pendingReservations.size() == 1){
+                scheduledFlush = scheduler.schedule(this::flush, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if(Objects.nonNull(batch)){
+            send(batch);
+        }
+        return reservationFuture;
+    }
+
+    /***
+     * Sends the reservations collected so far, called once the window of the first of them elapsed
+     */
+    public void flush(){
+        List<PendingReservation> batch;
+        synchronized(lock){
+            if(pendingReservations.isEmpty()){
+                return;
+            }
+            batch = drainPendingReservations();
+        }
+        send(batch);
+    }
+
+    /***
+     * Helper method to take the collected reservations and start a new batch. Has to be called holding the lock
+     * @return collected reservations
+     */
+    private List<PendingReservation> drainPendingReservations(){
+        List<PendingReservation> batch = pendingReservations;
+        pendingReservations = new ArrayList<>(maxBatchSize);
+        if(Objects.nonNull(scheduledFlush)){
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    /***
+     * Helper method to send a batch of reservations and complete the future of each caller with its own result.
+     * A single reservation is sent through the single Order endpoint
+     * @param batch reservations to be sent
+     */
+    private void send(List<PendingReservation> batch){
+        batchSizeSummary.record(batch.size());
+        if(batch.size() == 1){
+            PendingReservation pendingReservation = batch.get(0);
+            inventoryClient.reserve(pendingReservation.orderInventoryDTO)
+                    .whenComplete((responseDTO, exception) -> complete(pendingReservation, responseDTO, exception));
+            return;
+        }
+        List<OrderInventoryDTO> orderInventoryDTOList = batch
+                .stream()
+                .map(pendingReservation -> pendingReservation.orderInventoryDTO)
+                .toList();
+        inventoryClient.reserveAll(orderInventoryDTOList)
+                .whenComplete((responseDTOList, exception) -> {
+                    Throwable failure = exception;
+                    if(Objects.isNull(failure) && responseDTOList.size() != batch.size()){
+                        log.error("inventory-service returned {} results for {} reservations",
+                                responseDTOList.size(), batch.size());
+                        failure = new InventoryServiceCallException("Inventory Service Call Exception");
+                    }
+                    for(int i = 0; i < batch.size(); i++){
+                        complete(batch.get(i), Objects.isNull(failure) ? responseDTOList.get(i) : null, failure);
+                    }
+                });
+    }
+
+    /***
+     * Helper method to complete the future of a caller
+     * @param pendingReservation reservation of the caller
+     * @param responseDTO result of the reservation
+     * @param exception failure of the call, null if the call succeeded
+     */
+    private void complete(PendingReservation pendingReservation, OrderInventoryDTO responseDTO, Throwable exception){
+        if(Objects.isNull(exception)){
+            pendingReservation.reservationFuture.complete(responseDTO);
+        }
+        else{
+            pendingReservation.reservationFuture.completeExceptionally(exception);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PendingReservation {
+        private final OrderInventoryDTO orderInventoryDTO;
+        private final CompletableFuture<OrderInventoryDTO> reservationFuture;
+    }
+}
@@ -0,0 +1,125 @@
+package com.learntocode.orderservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.learntocode.orderservice.dto.OrderInventoryDTO;
+import com.learntocode.orderservice.dto.OrderLineItemInventoryDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/***
+ * Availability of SKUs as last reported by inventory-service. It is fed from the responses of reservations and
+ * lets Orders be accepted while inventory-service is unavailable, as long as the availability is recent and
+ * leaves a comfortable margin. Entries older than the maximum staleness are never used and are evicted
+ */
+@Component
+public class InventorySnapshot {
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${order.inventory.snapshot.max-staleness}")
+    private Duration maxStaleness;
+    @Value("${order.inventory.snapshot.min-margin}")
+    private int minMargin;
+    @Value("${order.inventory.snapshot.maximum-size}")
+    private long maximumSize;
+
+    private Cache<String, Availability> availabilityCache;
+    private Counter acceptedCounter;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void initialize(){
+        availabilityCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(maxStaleness)
+                .build();
+        Gauge.builder("order.inventory.snapshot.size", availabilityCache, Cache::estimatedSize)
+                .description("Number of SKUs with a fresh availability in the snapshot")
+                .register(meterRegistry);
+        acceptedCounter = Counter.builder("order.inventory.snapshot.orders")
+                .tag("result", "accepted")
+                .description("Orders accepted from the availability snapshot while inventory-service was unavailable")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("order.inventory.snapshot.orders")
+                .tag("result", "rejected")
+                .description("Orders rejected as the availability snapshot was missing, stale or too close to the margin")
+                .register(meterRegistry);
+    }
+
+    /***
+     * Method to record the availability reported by inventory-service for the line items of an Order
+     * @param responseDTO OrderInventoryDTO returned by inventory-service
+     */
+    public void record(OrderInventoryDTO responseDTO){
+        long observedAt = System.nanoTime();
+        responseDTO.getOrderLineItemInventoryDTOList()
+                .stream()
+                .filter(orderLineItemInventoryDTO -> Objects.nonNull(orderLineItemInventoryDTO.getSkuCode()) &&
+                        Objects.nonNull(orderLineItemInventoryDTO.getAvailableQuantity()))
+                .forEach(orderLineItemInventoryDTO -> availabilityCache.put(
+                        normalizeSkuCode(orderLineItemInventoryDTO.getSkuCode()),
+                        new Availability(orderLineItemInventoryDTO.getAvailableQuantity(), observedAt)));
+    }
+
+    /***
+     * Method to take the required quantity of an Order from the snapshot. The Order is accepted only if every
+     * SKU has an availability younger than the maximum staleness that stays at or above the margin once the
+     * required quantity is taken. Accepted quantities are deducted so that following Orders see the lower stock
+     * @param orderInventoryDTO skuCodes and required quantity of the Order
+     * @return true if the Order has been accepted
+     */
+    public synchronized boolean tryReserve(OrderInventoryDTO orderInventoryDTO){
+        Map<String, Integer> requiredQuantityMap = new HashMap<>();
+        for(OrderLineItemInventoryDTO orderLineItemInventoryDTO : orderInventoryDTO.getOrderLineItemInventoryDTOList()){
+            if(Objects.isNull(orderLineItemInventoryDTO.getSkuCode()) ||
+                    Objects.isNull(orderLineItemInventoryDTO.getRequiredQuantity()) ||
+                    orderLineItemInventoryDTO.getRequiredQuantity() < 0){
+                rejectedCounter.increment();
+                return false;
+            }
+            requiredQuantityMap.merge(normalizeSkuCode(orderLineItemInventoryDTO.getSkuCode()),
+                    orderLineItemInventoryDTO.getRequiredQuantity(), Integer::sum);
+        }
+        long now = System.nanoTime();
+        for(Map.Entry<String, Integer> entry : requiredQuantityMap.entrySet()){
+            Availability availability = availabilityCache.getIfPresent(entry.getKey());
+            if(Objects.isNull(availability) ||
+                    now - availability.observedAt > maxStaleness.toNanos() ||
+                    availability.quantity - entry.getValue() < minMargin){
+                rejectedCounter.increment();
+                return false;
+            }
+        }
+        requiredQuantityMap.forEach((skuCode, quantity) -> availabilityCache.asMap().computeIfPresent(skuCode,
+                (key, availability) -> new Availability(availability.quantity - quantity, availability.observedAt)));
+        acceptedCounter.increment();
+        return true;
+    }
+
+    /***
+     * Helper method to normalize skuCode the way inventory-service matches it
+     * @param skuCode skuCode to be normalized
+     * @return upper cased skuCode
+     */
+    private static String normalizeSkuCode(String skuCode){
+        return skuCode.toUpperCase(Locale.ROOT);
+    }
+
+    @AllArgsConstructor
+    private static class Availability {
+        private final int quantity;
+        private final long observedAt;
+    }
+}
@@ -0,0 +1,67 @@
+package com.learntocode.orderservice.service;
+
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Generates time-ordered orderNumbers as version 7 UUIDs (RFC 9562): 48 bits of Unix time in milliseconds, a 12 bit
+ * counter and 62 random bits. OrderNumbers generated by one instance are strictly increasing, the counter orders
+ * those of the same millisecond and carries into the timestamp when it overflows or the clock goes back. Instances
+ * need no coordination, the random bits keep their orderNumbers apart and hard to guess
+ */
+@Component
+public class OrderNumberGenerator {
+    private static final int COUNTER_BITS = 12;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    /* The counter of a new millisecond starts at a random value in the lower half, leaving room to count up */
+    private static final int COUNTER_SEED_BOUND = 1 << (COUNTER_BITS - 1);
+    private static final long VERSION = 7L << COUNTER_BITS;
+    private static final long VARIANT = 0x8000000000000000L;
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+    /* Random bits are drawn from SecureRandom in blocks, every thread consuming its own block */
+    private static final int RANDOM_BLOCK_SIZE = 256;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ThreadLocal<ByteBuffer> randomBlock =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(RANDOM_BLOCK_SIZE).position(RANDOM_BLOCK_SIZE));
+    /* Timestamp in milliseconds shifted left by the counter bits, plus the counter of the last orderNumber */
+    private final AtomicLong lastTimestampAndCounter = new AtomicLong();
+
+    /***
+     * Method to generate the next orderNumber
+     * @return version 7 UUID greater than every UUID generated before by this generator
+     */
+    public UUID next(){
+        long now = System.currentTimeMillis();
+        long last;
+        long next;
+        do{
+            last = lastTimestampAndCounter.get();
+            next = now > last >>> COUNTER_BITS ?
+                    now << COUNTER_BITS | ThreadLocalRandom.current().nextInt(COUNTER_SEED_BOUND) :
+                    last + 1;
+        } while(!lastTimestampAndCounter.compareAndSet(last, next));
+        long mostSignificantBits = (next >>> COUNTER_BITS) << 16 | VERSION | (next & COUNTER_MASK);
+        long leastSignificantBits = VARIANT | (nextRandomLong() & RANDOM_MASK);
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    /***
+     * Helper method to take 64 random bits from the block of the current thread, refilled once consumed
+     * @return random long
+     */
+    private long nextRandomLong(){
+        ByteBuffer block = randomBlock.get();
+        if(block.remaining() < Long.BYTES){
+            secureRandom.nextBytes(block.array());
+            block.clear();
+        }
+        return block.getLong();
+    }
+}
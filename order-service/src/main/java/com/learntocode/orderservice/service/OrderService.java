@@ -1,16 +1,23 @@
 package com.learntocode.orderservice.service;
 
+import com.learntocode.orderservice.dto.BulkOrderResultDTO;
 import com.learntocode.orderservice.dto.OrderRequestDTO;
 import com.learntocode.orderservice.dto.OrderResponseDTO;
-import com.learntocode.orderservice.exception.InventoryServiceCallException;
 import com.learntocode.orderservice.exception.OrderNotFoundException;
-import com.learntocode.orderservice.exception.ProductsNotInStockException;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface OrderService {
-    OrderResponseDTO createOrder(OrderRequestDTO requestDTO) throws InventoryServiceCallException, ProductsNotInStockException;
+    CompletableFuture<OrderResponseDTO> createOrder(OrderRequestDTO requestDTO, String idempotencyKey);
+    CompletableFuture<OrderResponseDTO> createOrderFromSnapshot(OrderRequestDTO requestDTO, String idempotencyKey,
+                                                                String reservationKey);
+    CompletableFuture<OrderResponseDTO> enqueueOrder(OrderRequestDTO requestDTO, String idempotencyKey);
+    CompletableFuture<List<BulkOrderResultDTO>> createOrders(List<OrderRequestDTO> requestDTOList);
     List<OrderResponseDTO> getAllOrders();
+    List<OrderResponseDTO> getOrdersPage(Long afterId, Integer size);
+    void streamAllOrders(Consumer<OrderResponseDTO> consumer);
     OrderResponseDTO getOrderById(Long id) throws OrderNotFoundException;
     OrderResponseDTO getOrderByOrderNumber(String orderNumber) throws OrderNotFoundException;
     void deleteOrderById(Long id) throws OrderNotFoundException;
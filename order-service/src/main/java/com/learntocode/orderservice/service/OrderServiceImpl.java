@@ -1,82 +1,653 @@
 package com.learntocode.orderservice.service;
 
 import com.learntocode.orderservice.dto.*;
-import com.learntocode.orderservice.event.OrderPlacedEvent;
+import com.learntocode.orderservice.exception.InvalidBulkOrderException;
+import com.learntocode.orderservice.exception.InvalidIdempotencyKeyException;
+import com.learntocode.orderservice.exception.InvalidOrderPriceException;
 import com.learntocode.orderservice.exception.InventoryServiceCallException;
 import com.learntocode.orderservice.exception.OrderNotFoundException;
+import com.learntocode.orderservice.exception.OrderQueueFullException;
 import com.learntocode.orderservice.exception.ProductsNotInStockException;
 import com.learntocode.orderservice.model.Order;
 import com.learntocode.orderservice.model.OrderLineItem;
+import com.learntocode.orderservice.model.OrderStatus;
+import com.learntocode.orderservice.model.OutboxEvent;
 import com.learntocode.orderservice.repository.OrderRepository;
+import com.learntocode.orderservice.repository.OutboxEventRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
+@Slf4j
 public class OrderServiceImpl implements OrderService{
     @Autowired
     private OrderRepository orderRepository;
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    private InventoryClient inventoryClient;
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+    @Autowired
+    private InventoryRequestCoalescer inventoryRequestCoalescer;
+    @Autowired
+    private InventorySnapshot inventorySnapshot;
+    @Autowired
+    private AsyncOrderQueue asyncOrderQueue;
+    @Autowired
+    private ProductPriceCache productPriceCache;
+    @Autowired
+    @Qualifier("orderExecutor")
+    private ThreadPoolTaskExecutor orderExecutor;
 
     @Autowired
-    private KafkaTemplate<String, OrderPlacedEvent> kafkaTemplate;
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${listing.max-page-size}")
+    private Integer maxPageSize;
+    @Value("${order.idempotency.cache.maximum-size}")
+    private long idempotencyCacheMaximumSize;
+    @Value("${order.idempotency.cache.expire-after-write}")
+    private Duration idempotencyCacheExpireAfterWrite;
+    @Value("${order.bulk.max-size}")
+    private int bulkMaxSize;
+    @Value("${order.bulk.save-chunk-size}")
+    private int bulkSaveChunkSize;
+
+    private final ConcurrentMap<String, CompletableFuture<OrderResponseDTO>> inFlightOrders = new ConcurrentHashMap<>();
+    private Cache<String, OrderResponseDTO> idempotentResponseCache;
+    private Counter idempotentReplayCounter;
+
+    @PostConstruct
+    public void initializeIdempotency(){
+        idempotentResponseCache = Caffeine.newBuilder()
+                .maximumSize(idempotencyCacheMaximumSize)
+                .expireAfterWrite(idempotencyCacheExpireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, idempotentResponseCache, "order.idempotency");
+        Gauge.builder("order.idempotency.in.flight", inFlightOrders, Map::size)
+                .description("Number of idempotent Order requests in flight")
+                .register(meterRegistry);
+        idempotentReplayCounter = Counter.builder("order.idempotency.replays")
+                .description("Number of Order requests answered with the Order created earlier for the same key")
+                .register(meterRegistry);
+    }
 
     /***
      * Method to save Order along with OrderLineItems specified in the Order
-     * Firstly, products and their quantity are verified through inventory-service for availability
-     * before Order is being created
+     * Firstly, products and their quantity are reserved through inventory-service before Order is being created.
+     * The inventory-service call is non-blocking and the Order is saved and published on the order executor,
+     * so no servlet thread waits for inventory-service. Reservation is released again if the Order could not be saved.
+     * A request carrying an Idempotency-Key creates at most one Order per key. Replays are answered with the
+     * Order created first without calling inventory-service again, and a replay arriving while the first request
+     * is still in flight waits for its result. OrderLineItems are priced from ProductPriceCache before anything is
+     * reserved
      * @param requestDTO Order request
-     * @return OrderResponseDTO containing Order and OrderLineItems saved into the system
+     * @param idempotencyKey Idempotency-Key of the request, null if the request is not idempotent
+     * @return CompletableFuture of OrderResponseDTO containing Order and OrderLineItems saved into the system,
+     * completed exceptionally with InventoryServiceCallException, WebClientResponseException if inventory-service
+     * rejected the reservation, ProductsNotInStockException, InvalidIdempotencyKeyException or
+     * InvalidOrderPriceException
      */
     @Override
-    public OrderResponseDTO createOrder(OrderRequestDTO requestDTO)
-            throws InventoryServiceCallException, ProductsNotInStockException {
-        OrderInventoryDTO responseDTO;
-        try{
-            /*
-             Need to verify if the requested products and their required quantity are available in stock.
-            An inventory-service call is needed to check the stock.
-            */
-            OrderInventoryDTO orderInventoryDTO = new OrderInventoryDTO();
-            List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList =
-                    requestDTO
-                            .getOrderLineItemList()
+    public CompletableFuture<OrderResponseDTO> createOrder(OrderRequestDTO requestDTO, String idempotencyKey) {
+        return idempotent(idempotencyKey, true,
+                () -> priced(requestDTO, linePrices -> placeOrder(requestDTO, linePrices, idempotencyKey)));
+    }
+
+    /***
+     * Method to save an Order while inventory-service is unavailable. The Order is accepted only if the
+     * InventorySnapshot shows a fresh availability with a comfortable margin for every product. The Order is saved
+     * with a pending reservation, which is made by ReservationReconciler once inventory-service is back, and its
+     * OrderPlacedEvent is published once reserved. A failed createOrder may have been reserved by inventory-service
+     * before its call failed, the Order then keeps the orderNumber it has been reserved under, so that the
+     * reservation is not applied twice. An Order the snapshot cannot vouch for gives that reservation up.
+     * Idempotency-Key is honoured the same way as in createOrder, replays are answered from the database as the
+     * Order is still to be reserved
+     * @param requestDTO Order request
+     * @param idempotencyKey Idempotency-Key of the request, null if the request is not idempotent
+     * @param reservationKey orderNumber the failed createOrder has reserved the Order under, null if it has not
+     * reached inventory-service
+     * @return CompletableFuture of OrderResponseDTO containing the saved Order, completed exceptionally with
+     * InventoryServiceCallException if the snapshot cannot vouch for the Order
+     */
+    @Override
+    public CompletableFuture<OrderResponseDTO> createOrderFromSnapshot(OrderRequestDTO requestDTO, String idempotencyKey,
+                                                                       String reservationKey) {
+        return idempotent(idempotencyKey, false, () -> priced(requestDTO, linePrices -> CompletableFuture.supplyAsync(() -> {
+            UUID orderNumber = Objects.isNull(reservationKey) ?
+                    orderNumberGenerator.next() : UUID.fromString(reservationKey);
+            OrderInventoryDTO orderInventoryDTO = mapOrderRequestDTOToOrderInventoryDTO(requestDTO, orderNumber);
+            if(!inventorySnapshot.tryReserve(orderInventoryDTO)){
+                if(Objects.nonNull(reservationKey)){
+                    inventoryClient.release(orderInventoryDTO);
+                }
+                throw new CompletionException(new InventoryServiceCallException(
+                        "Inventory-Service Unavailable. Please try after sometime"));
+            }
+            return saveOrder(requestDTO, linePrices, idempotencyKey, orderNumber, null);
+        }, orderExecutor)));
+    }
+
+    /***
+     * Method to accept an Order without waiting for inventory-service. The Order is saved as PENDING and processed
+     * by a worker of AsyncOrderQueue, which moves it to CONFIRMED or REJECTED. Idempotency-Key is honoured the same
+     * way as in createOrder
+     * @param requestDTO Order request
+     * @param idempotencyKey Idempotency-Key of the request, null if the request is not idempotent
+     * @return CompletableFuture of OrderResponseDTO containing the PENDING Order, completed exceptionally with
+     * OrderQueueFullException if too many Orders are PENDING, InvalidIdempotencyKeyException or
+     * InvalidOrderPriceException
+     */
+    @Override
+    public CompletableFuture<OrderResponseDTO> enqueueOrder(OrderRequestDTO requestDTO, String idempotencyKey) {
+        return idempotent(idempotencyKey, true, () -> priced(requestDTO, linePrices -> {
+            if(!asyncOrderQueue.tryReserveSlot()){
+                return CompletableFuture.failedFuture(new OrderQueueFullException(
+                        "Too many Orders pending. Please try after sometime"));
+            }
+            try{
+                return CompletableFuture.supplyAsync(() -> {
+                    OrderResponseDTO responseDTO;
+                    try{
+                        responseDTO = transactionTemplate.execute(status -> {
+                            Order order = mapOrderRequestDTOToOrder(requestDTO, linePrices,
+                                    orderNumberGenerator.next());
+                            order.setIdempotencyKey(idempotencyKey);
+                            order.setReservationPending(false);
+                            order.setStatus(OrderStatus.PENDING);
+                            order.setQueuedAt(Instant.now());
+                            return mapOrderToOrderResponseDTO(orderRepository.save(order));
+                        });
+                    }
+                    catch(RuntimeException exception){
+                        asyncOrderQueue.releaseSlot();
+                        throw exception;
+                    }
+                    asyncOrderQueue.queued();
+                    return responseDTO;
+                }, orderExecutor);
+            }
+            catch(TaskRejectedException exception){
+                asyncOrderQueue.releaseSlot();
+                throw exception;
+            }
+        }));
+    }
+
+    /***
+     * Method to create several Orders at once. The products of all Orders are reserved with a single
+     * inventory-service call, every Order on its own, and the Orders in stock are saved in chunks of batched
+     * inserts, each chunk in one transaction along with its OutboxEvents. OutboxRelay publishes the events in
+     * batches. Every Order is accepted or rejected on its own, Orders that cannot be priced are rejected without
+     * being reserved
+     * @param requestDTOList Order requests
+     * @return CompletableFuture of the list of BulkOrderResultDTO in the order of the requests, completed
+     * exceptionally with InvalidBulkOrderException if the bulk is empty or too large, or with
+     * InventoryServiceCallException if inventory-service could not be called
+     */
+    @Override
+    public CompletableFuture<List<BulkOrderResultDTO>> createOrders(List<OrderRequestDTO> requestDTOList) {
+        if(requestDTOList.isEmpty() || requestDTOList.size() > bulkMaxSize){
+            return CompletableFuture.failedFuture(new InvalidBulkOrderException(
+                    "Bulk must contain 1 to " + bulkMaxSize + " Orders"));
+        }
+        BulkOrderResultDTO[] results = new BulkOrderResultDTO[requestDTOList.size()];
+        List<Integer> pricedIndexes = new ArrayList<>();
+        List<List<BigDecimal>> linePricesList = new ArrayList<>();
+        for(int index = 0; index < requestDTOList.size(); index++){
+            try{
+                linePricesList.add(priceOrder(requestDTOList.get(index)));
+                pricedIndexes.add(index);
+            }
+            catch(InvalidOrderPriceException exception){
+                results[index] = BulkOrderResultDTO
+                        .builder()
+                        .index(index)
+                        .accepted(false)
+                        .message(exception.getMessage())
+                        .build();
+            }
+        }
+        if(pricedIndexes.isEmpty()){
+            return CompletableFuture.completedFuture(Arrays.asList(results));
+        }
+        List<OrderRequestDTO> pricedRequestDTOList = pricedIndexes.stream().map(requestDTOList::get).toList();
+        List<UUID> orderNumbers = pricedRequestDTOList.stream().map(requestDTO -> orderNumberGenerator.next()).toList();
+        List<OrderInventoryDTO> orderInventoryDTOList = new ArrayList<>(pricedRequestDTOList.size());
+        for(int position = 0; position < pricedRequestDTOList.size(); position++){
+            orderInventoryDTOList.add(
+                    mapOrderRequestDTOToOrderInventoryDTO(pricedRequestDTOList.get(position), orderNumbers.get(position)));
+        }
+        return inventoryClient
+                .reserveAll(orderInventoryDTOList)
+                .thenApplyAsync(responseDTOList -> {
+                    List<BulkOrderResultDTO> pricedResults =
+                            saveOrders(pricedRequestDTOList, linePricesList, orderNumbers, orderInventoryDTOList,
+                                    responseDTOList);
+                    for(int position = 0; position < pricedResults.size(); position++){
+                        BulkOrderResultDTO resultDTO = pricedResults.get(position);
+                        resultDTO.setIndex(pricedIndexes.get(position));
+                        results[resultDTO.getIndex()] = resultDTO;
+                    }
+                    return Arrays.asList(results);
+                }, orderExecutor);
+    }
+
+    /***
+     * Helper method to save the Orders of a bulk whose products have been reserved. Orders not in stock are
+     * rejected. If a chunk cannot be saved, the reservations of its Orders are released and they are rejected
+     * @param requestDTOList Order requests
+     * @param linePricesList prices of the OrderLineItems of each Order
+     * @param orderNumbers orderNumber of each Order, the key it has been reserved under
+     * @param orderInventoryDTOList OrderInventoryDTO reserved for each Order
+     * @param responseDTOList result of the reservation of each Order
+     * @return List of BulkOrderResultDTO in the order of the requests
+     */
+    private List<BulkOrderResultDTO> saveOrders(List<OrderRequestDTO> requestDTOList,
+                                                List<List<BigDecimal>> linePricesList,
+                                                List<UUID> orderNumbers,
+                                                List<OrderInventoryDTO> orderInventoryDTOList,
+                                                List<OrderInventoryDTO> responseDTOList) {
+        BulkOrderResultDTO[] results = new BulkOrderResultDTO[requestDTOList.size()];
+        List<Integer> reservedIndexes = new ArrayList<>();
+        for(int index = 0; index < requestDTOList.size(); index++){
+            OrderInventoryDTO responseDTO = responseDTOList.get(index);
+            inventorySnapshot.record(responseDTO);
+            boolean allInStock = responseDTO
+                    .getOrderLineItemInventoryDTOList()
+                    .stream()
+                    .allMatch(orderLineItemInventoryDTO -> orderLineItemInventoryDTO.getInStock());
+            if(allInStock){
+                reservedIndexes.add(index);
+            }
+            else{
+                results[index] = BulkOrderResultDTO
+                        .builder()
+                        .index(index)
+                        .accepted(false)
+                        .message("Products Not in Stock")
+                        .details(responseDTO)
+                        .build();
+            }
+        }
+        for(int from = 0; from < reservedIndexes.size(); from += bulkSaveChunkSize){
+            List<Integer> chunk = reservedIndexes.subList(from, Math.min(from + bulkSaveChunkSize, reservedIndexes.size()));
+            try{
+                List<OrderResponseDTO> orderResponseDTOList = transactionTemplate.execute(status -> {
+                    List<Order> orderList = chunk
                             .stream()
-                            .map(this::mapOrderLineItemDTOToOrderLineItemInventoryDTO)
+                            .map(index -> mapOrderRequestDTOToOrder(requestDTOList.get(index),
+                                    linePricesList.get(index), orderNumbers.get(index)))
                             .toList();
-            orderInventoryDTO.setOrderLineItemInventoryDTOList(orderLineItemInventoryDTOList);
-            WebClient.UriSpec<WebClient.RequestBodySpec> uriSpec =
-                    (WebClient.UriSpec<WebClient.RequestBodySpec>) webClientBuilder.build().get();
-            WebClient.RequestBodySpec bodySpec = uriSpec.uri("lb://inventory-service/api/inventories/orderInStock/");
-            WebClient.RequestHeadersSpec<?> headersSpec = bodySpec.bodyValue(orderInventoryDTO);
-            responseDTO = headersSpec
-                    .retrieve()
-                    .bodyToMono(OrderInventoryDTO.class)
-                    .block();
-        }
-        catch(Exception exception){
-            throw new InventoryServiceCallException("Inventory Service Call Exception");
-        }
-        boolean allInStock = responseDTO
-                .getOrderLineItemInventoryDTOList()
-                .stream()
-                .allMatch(orderLineItemInventoryDTO -> orderLineItemInventoryDTO.getInStock());
-        if(allInStock){
-            Order order = mapOrderRequestDTOToOrder(requestDTO);
-            order = orderRepository.save(order);
-            kafkaTemplate.send("OrderPlacedTopic",
-                    OrderPlacedEvent.builder().orderNumber(order.getOrderNumber()).build());
-            return mapOrderToOrderResponseDTO(order);
+                    orderList.forEach(order -> order.setReservationPending(false));
+                    orderList = orderRepository.saveAll(orderList);
+                    outboxEventRepository.saveAll(orderList.stream().map(this::mapOrderToOutboxEvent).toList());
+                    return orderList.stream().map(this::mapOrderToOrderResponseDTO).toList();
+                });
+                for(int position = 0; position < chunk.size(); position++){
+                    results[chunk.get(position)] = BulkOrderResultDTO
+                            .builder()
+                            .index(chunk.get(position))
+                            .accepted(true)
+                            .order(orderResponseDTOList.get(position))
+                            .build();
+                }
+            }
+            catch(RuntimeException exception){
+                log.error("Chunk of {} bulk Orders could not be saved", chunk.size(), exception);
+                for(Integer index : chunk){
+                    inventoryClient.release(orderInventoryDTOList.get(index));
+                    results[index] = BulkOrderResultDTO
+                            .builder()
+                            .index(index)
+                            .accepted(false)
+                            .message("Order could not be saved")
+                            .build();
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /***
+     * Helper method to run an Order placement at most once per Idempotency-Key. The response of a placed Order is
+     * cached, looked up in the database on a cache miss, and concurrent requests with the same key wait for the
+     * placement in flight
+     * @param idempotencyKey Idempotency-Key of the request, null if the request is not idempotent
+     * @param cacheable false if the placed Order may still change its status and is to be looked up on replays
+     * @param placement places the Order, only called if no Order has been placed for the key yet
+     * @return CompletableFuture of OrderResponseDTO of the Order placed for the key
+     */
+    private CompletableFuture<OrderResponseDTO> idempotent(String idempotencyKey, boolean cacheable,
+                                                           Supplier<CompletableFuture<OrderResponseDTO>> placement) {
+        if(Objects.isNull(idempotencyKey)){
+            return placement.get();
+        }
+        if(idempotencyKey.isBlank() || idempotencyKey.length() > Order.MAX_IDEMPOTENCY_KEY_LENGTH){
+            return CompletableFuture.failedFuture(new InvalidIdempotencyKeyException(
+                    "Idempotency-Key must be 1 to " + Order.MAX_IDEMPOTENCY_KEY_LENGTH + " characters"));
+        }
+        OrderResponseDTO cachedResponseDTO = idempotentResponseCache.getIfPresent(idempotencyKey);
+        if(Objects.nonNull(cachedResponseDTO)){
+            idempotentReplayCounter.increment();
+            return CompletableFuture.completedFuture(cachedResponseDTO);
+        }
+        CompletableFuture<OrderResponseDTO> orderFuture = new CompletableFuture<>();
+        CompletableFuture<OrderResponseDTO> inFlightOrderFuture = inFlightOrders.putIfAbsent(idempotencyKey, orderFuture);
+        if(Objects.nonNull(inFlightOrderFuture)){
+            idempotentReplayCounter.increment();
+            return inFlightOrderFuture.thenApply(Function.identity());
+        }
+        CompletableFuture
+                .supplyAsync(() -> findOrderResponseByIdempotencyKey(idempotencyKey), orderExecutor)
+                .thenCompose(existingResponseDTO -> {
+                    if(existingResponseDTO.isPresent()){
+                        idempotentReplayCounter.increment();
+                        return CompletableFuture.completedFuture(existingResponseDTO.get());
+                    }
+                    return placement.get();
+                })
+                .exceptionallyCompose(exception -> {
+                    /* Another order-service instance saved an Order with the same key first, the unique index
+                       rejected this one and its reservation has been released. The first Order is the answer
+                     */
+                    if(unwrap(exception) instanceof DataIntegrityViolationException){
+                        return CompletableFuture.supplyAsync(
+                                () -> findOrderResponseByIdempotencyKey(idempotencyKey).orElseThrow(() ->
+                                        new CompletionException(unwrap(exception))), orderExecutor);
+                    }
+                    return CompletableFuture.failedFuture(unwrap(exception));
+                })
+                .whenComplete((responseDTO, exception) -> {
+                    /* PENDING Orders are not cached, replays have to see their status moving on */
+                    if(Objects.isNull(exception) && cacheable && responseDTO.getStatus() != OrderStatus.PENDING){
+                        idempotentResponseCache.put(idempotencyKey, responseDTO);
+                    }
+                    inFlightOrders.remove(idempotencyKey, orderFuture);
+                    if(Objects.isNull(exception)){
+                        orderFuture.complete(responseDTO);
+                    }
+                    else{
+                        orderFuture.completeExceptionally(unwrap(exception));
+                    }
+                });
+        return orderFuture.thenApply(Function.identity());
+    }
+
+    /***
+     * Helper method to price an Order before it is placed
+     * @param requestDTO Order request
+     * @param placement places the priced Order, given the price of each OrderLineItem
+     * @return CompletableFuture of the placement, completed exceptionally with InvalidOrderPriceException if the
+     * Order cannot be priced
+     */
+    private <T> CompletableFuture<T> priced(OrderRequestDTO requestDTO,
+                                            Function<List<BigDecimal>, CompletableFuture<T>> placement) {
+        List<BigDecimal> linePrices;
+        try{
+            linePrices = priceOrder(requestDTO);
+        }
+        catch(InvalidOrderPriceException exception){
+            return CompletableFuture.failedFuture(exception);
+        }
+        return placement.apply(linePrices);
+    }
+
+    /***
+     * Helper method to price the OrderLineItems of an Order from ProductPriceCache, without calling product-service.
+     * OrderLineItems without price are priced at the current price of their SKU. OrderLineItems with a price
+     * differing from the current one are rejected, as the client has seen an outdated price. Orders are never priced
+     * at a price sent by the client alone, an SKU without a price confirmed by product-service rejects the Order.
+     * OrderLineItems without skuCode cannot be priced and reject the Order as well. Only with pricing disabled the
+     * prices sent by the client are taken as they are. The request is not modified
+     * @param requestDTO Order request
+     * @return price of each OrderLineItem, in the order of the request
+     * @throws InvalidOrderPriceException is thrown if a price differs from the current one, if no confirmed price
+     * is known for an SKU, or if an OrderLineItem has no skuCode
+     */
+    private List<BigDecimal> priceOrder(OrderRequestDTO requestDTO) throws InvalidOrderPriceException {
+        List<BigDecimal> linePrices = new ArrayList<>(requestDTO.getOrderLineItemList().size());
+        for(OrderLineItemDTO orderLineItemDTO : requestDTO.getOrderLineItemList()){
+            if(Objects.isNull(orderLineItemDTO.getSkuCode())){
+                if(productPriceCache.isEnabled()){
+                    throw new InvalidOrderPriceException("OrderLineItem without skuCode cannot be priced");
+                }
+                linePrices.add(orderLineItemDTO.getPrice());
+                continue;
+            }
+            BigDecimal price = productPriceCache.getPrice(orderLineItemDTO.getSkuCode());
+            if(Objects.isNull(price)){
+                if(productPriceCache.isStale()){
+                    throw new InvalidOrderPriceException(
+                            "Prices are not confirmed by Product-Service. Please try after sometime");
+                }
+                if(productPriceCache.isEnabled() || Objects.isNull(orderLineItemDTO.getPrice())){
+                    throw new InvalidOrderPriceException(
+                            "Price of " + orderLineItemDTO.getSkuCode() + " is not known");
+                }
+                price = orderLineItemDTO.getPrice();
+            }
+            else if(Objects.nonNull(orderLineItemDTO.getPrice()) && orderLineItemDTO.getPrice().compareTo(price) != 0){
+                throw new InvalidOrderPriceException(
+                        "Price of " + orderLineItemDTO.getSkuCode() + " has changed to " + price.toPlainString());
+            }
+            linePrices.add(price);
+        }
+        return linePrices;
+    }
+
+    /***
+     * Helper method to reserve the products of an Order through inventory-service and save the Order once reserved.
+     * The orderNumber is drawn first and is the reservation key, a failed inventory-service call reports it so that
+     * the Order accepted from the InventorySnapshot instead keeps it
+     * @param requestDTO Order request
+     * @param linePrices price of each OrderLineItem
+     * @param idempotencyKey Idempotency-Key saved with the Order, null if the request is not idempotent
+     * @return CompletableFuture of OrderResponseDTO containing the saved Order
+     */
+    private CompletableFuture<OrderResponseDTO> placeOrder(OrderRequestDTO requestDTO, List<BigDecimal> linePrices,
+                                                           String idempotencyKey) {
+        /*
+         Need to reserve the requested products and their required quantity in stock.
+        An inventory-service call is needed to reserve the stock.
+        */
+        UUID orderNumber = orderNumberGenerator.next();
+        OrderInventoryDTO orderInventoryDTO = mapOrderRequestDTOToOrderInventoryDTO(requestDTO, orderNumber);
+        return inventoryRequestCoalescer
+                .reserve(orderInventoryDTO)
+                .exceptionallyCompose(exception -> CompletableFuture.failedFuture(
+                        unwrap(exception) instanceof InventoryServiceCallException ?
+                                new InventoryServiceCallException(unwrap(exception).getMessage(),
+                                        orderInventoryDTO.getReservationKey()) :
+                                unwrap(exception)))
+                .thenCompose(responseDTO -> {
+                    inventorySnapshot.record(responseDTO);
+                    boolean allInStock = responseDTO
+                            .getOrderLineItemInventoryDTOList()
+                            .stream()
+                            .allMatch(orderLineItemInventoryDTO -> orderLineItemInventoryDTO.getInStock());
+                    if(!allInStock){
+                        return CompletableFuture.failedFuture(
+                                new ProductsNotInStockException("Products Not in Stock", responseDTO));
+                    }
+                    return CompletableFuture.supplyAsync(
+                            () -> saveOrder(requestDTO, linePrices, idempotencyKey, orderNumber, orderInventoryDTO),
+                            orderExecutor);
+                });
+    }
+
+    /***
+     * Helper method to save the Order of a successful reservation. OrderPlacedEvent is written to the outbox in
+     * the same transaction and published to Kafka by OutboxRelay, so the request never waits for the broker. The
+     * OrderPlacedEvent of an Order accepted from the InventorySnapshot is written by ReservationReconciler once the
+     * Order is reserved
+     * @param requestDTO Order request
+     * @param linePrices price of each OrderLineItem
+     * @param idempotencyKey Idempotency-Key saved with the Order, null if the request is not idempotent
+     * @param orderNumber orderNumber of the Order, the key it is reserved under
+     * @param orderInventoryDTO OrderInventoryDTO reserved for the Order, released if the Order could not be saved.
+     * null if the Order has been accepted from the InventorySnapshot and its reservation is still pending
+     * @return OrderResponseDTO containing the saved Order
+     */
+    public OrderResponseDTO saveOrder(OrderRequestDTO requestDTO, List<BigDecimal> linePrices, String idempotencyKey,
+                                      UUID orderNumber, OrderInventoryDTO orderInventoryDTO){
+        try{
+            return transactionTemplate.execute(status -> {
+                Order order = mapOrderRequestDTOToOrder(requestDTO, linePrices, orderNumber);
+                order.setIdempotencyKey(idempotencyKey);
+                order.setReservationPending(Objects.isNull(orderInventoryDTO));
+                order = orderRepository.save(order);
+                if(Objects.nonNull(orderInventoryDTO)){
+                    outboxEventRepository.save(mapOrderToOutboxEvent(order));
+                }
+                return mapOrderToOrderResponseDTO(order);
+            });
         }
-        else{
-            throw new ProductsNotInStockException("Products Not in Stock", responseDTO);
+        catch(RuntimeException exception){
+            if(Objects.nonNull(orderInventoryDTO)){
+                inventoryClient.release(orderInventoryDTO);
+            }
+            throw exception;
+        }
+    }
+
+    /***
+     * Helper method to look up the Order saved earlier for an Idempotency-Key
+     * @param idempotencyKey Idempotency-Key of the request
+     * @return Optional of OrderResponseDTO, empty if no Order has been saved for the key
+     */
+    private Optional<OrderResponseDTO> findOrderResponseByIdempotencyKey(String idempotencyKey) {
+        return orderRepository
+                .findOrderByIdempotencyKey(idempotencyKey)
+                .map(this::mapOrderToOrderResponseDTO);
+    }
+
+    /***
+     * Helper method to get the failure wrapped by a CompletionException
+     * @param exception failure of a CompletableFuture stage
+     * @return the wrapped failure, or the failure itself if it is not wrapped
+     */
+    private static Throwable unwrap(Throwable exception) {
+        return exception instanceof CompletionException && Objects.nonNull(exception.getCause()) ?
+                exception.getCause() : exception;
+    }
+
+    /***
+     * Helper method to read a keyset page of Orders along with their OrderLineItems using two queries
+     * @param afterId id of the last Order of the previous page
+     * @param pageSize number of Orders in the page
+     * @return List of OrderResponseDTO ordered by id
+     */
+    private List<OrderResponseDTO> findOrdersPage(long afterId, int pageSize) {
+        List<OrderViewDTO> orderViewList = orderRepository.findOrderViewsAfter(afterId, PageRequest.of(0, pageSize));
+        if(orderViewList.isEmpty()){
+            return List.of();
         }
+        List<Long> orderIds = orderViewList
+                .stream()
+                .map(OrderViewDTO::getId)
+                .toList();
+        return mapOrderViewsToOrderResponseDTOs(
+                orderViewList,
+                orderRepository.findOrderLineItemViewsByOrderIds(orderIds));
+    }
+
+    /***
+     * Helper method to assemble OrderResponseDTOs from Order and OrderLineItem projections
+     * @param orderViewList Orders in the order they are to be returned
+     * @param orderLineItemViewList OrderLineItems belonging to the Orders
+     * @return List of OrderResponseDTO
+     */
+    private List<OrderResponseDTO> mapOrderViewsToOrderResponseDTOs(List<OrderViewDTO> orderViewList,
+                                                                    List<OrderLineItemViewDTO> orderLineItemViewList) {
+        Map<Long, List<OrderLineItemDTO>> orderLineItemsByOrderId = orderLineItemViewList
+                .stream()
+                .collect(Collectors.groupingBy(
+                        OrderLineItemViewDTO::getOrderId,
+                        Collectors.mapping(this::mapOrderLineItemViewDTOToOrderLineItemDTO, Collectors.toList())));
+        return orderViewList
+                .stream()
+                .map(orderView -> OrderResponseDTO
+                        .builder()
+                        .id(orderView.getId())
+                        .orderNumber(orderView.getOrderNumber().toString())
+                        .status(orderView.getStatus())
+                        .orderLineItemList(orderLineItemsByOrderId.getOrDefault(orderView.getId(), List.of()))
+                        .build())
+                .toList();
+    }
+
+    /***
+     * Helper method to map OrderLineItemViewDTO to OrderLineItemDTO
+     * @param orderLineItemViewDTO OrderLineItemViewDTO
+     * @return OrderLineItemDTO
+     */
+    private OrderLineItemDTO mapOrderLineItemViewDTOToOrderLineItemDTO(OrderLineItemViewDTO orderLineItemViewDTO) {
+        return OrderLineItemDTO
+                .builder()
+                .id(orderLineItemViewDTO.getId())
+                .skuCode(orderLineItemViewDTO.getSkuCode())
+                .price(orderLineItemViewDTO.getPrice())
+                .quantity(orderLineItemViewDTO.getQuantity())
+                .build();
+    }
+
+    /***
+     * Helper method to map OrderRequestDTO to OrderInventoryDTO used in inventory-service calls, reserved under the
+     * orderNumber of the Order
+     * @param requestDTO OrderRequestDTO to be mapped
+     * @param orderNumber orderNumber of the Order
+     * @return OrderInventoryDTO
+     */
+    public OrderInventoryDTO mapOrderRequestDTOToOrderInventoryDTO(OrderRequestDTO requestDTO, UUID orderNumber){
+        List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList =
+                requestDTO
+                        .getOrderLineItemList()
+                        .stream()
+                        .map(this::mapOrderLineItemDTOToOrderLineItemInventoryDTO)
+                        .toList();
+        return OrderInventoryDTO
+                .builder()
+                .reservationKey(orderNumber.toString())
+                .orderLineItemInventoryDTOList(orderLineItemInventoryDTOList)
+                .build();
     }
 
     /***
@@ -99,11 +670,40 @@ public class OrderServiceImpl implements OrderService{
      */
     @Override
     public List<OrderResponseDTO> getAllOrders() {
-        List<Order> orderList = orderRepository.findAll();
-        return orderList
-                .stream()
-                .map(this::mapOrderToOrderResponseDTO)
-                .toList();
+        return mapOrderViewsToOrderResponseDTOs(
+                orderRepository.findAllOrderViews(),
+                orderRepository.findAllOrderLineItemViews());
+    }
+
+    /***
+     * Method to get a page of Orders using keyset pagination on id. The page is read with two queries,
+     * one for the Orders and one for the OrderLineItems of all Orders in the page
+     * @param afterId id of the last Order of the previous page, null for the first page
+     * @param size number of Orders in the page, limited to the configured maximum page size
+     * @return List of OrderResponseDTO ordered by id
+     */
+    @Override
+    public List<OrderResponseDTO> getOrdersPage(Long afterId, Integer size) {
+        int pageSize = Objects.isNull(size) ? maxPageSize : Math.max(1, Math.min(size, maxPageSize));
+        return findOrdersPage(Objects.requireNonNullElse(afterId, 0L), pageSize);
+    }
+
+    /***
+     * Method to stream all Orders to the consumer one by one. Orders are read in keyset pages of the
+     * configured maximum page size, so memory stays constant irrespective of the number of Orders
+     * @param consumer receives each OrderResponseDTO as soon as it is mapped
+     */
+    @Override
+    public void streamAllOrders(Consumer<OrderResponseDTO> consumer) {
+        long afterId = 0L;
+        List<OrderResponseDTO> page;
+        do {
+            page = findOrdersPage(afterId, maxPageSize);
+            page.forEach(consumer);
+            if(!page.isEmpty()){
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while(page.size() == maxPageSize);
     }
 
     /***
@@ -114,7 +714,7 @@ public class OrderServiceImpl implements OrderService{
      */
     @Override
     public OrderResponseDTO getOrderById(Long id) throws OrderNotFoundException {
-        Optional<Order> orderOptional = orderRepository.findById(id);
+        Optional<Order> orderOptional = orderRepository.findWithOrderLineItemsById(id);
         if(orderOptional.isEmpty()){
             throw new OrderNotFoundException("Order "+ id + " Not Found");
         }
@@ -129,7 +729,7 @@ public class OrderServiceImpl implements OrderService{
      */
     @Override
     public OrderResponseDTO getOrderByOrderNumber(String orderNumber) throws OrderNotFoundException {
-        Optional<Order> orderOptional = orderRepository.findOrderByOrderNumberIgnoreCase(orderNumber);
+        Optional<Order> orderOptional = parseOrderNumber(orderNumber).flatMap(orderRepository::findOrderByOrderNumber);
         if(orderOptional.isEmpty()){
             throw new OrderNotFoundException("Order "+ orderNumber + " Not Found");
         }
@@ -157,42 +757,71 @@ public class OrderServiceImpl implements OrderService{
      */
     @Override
     public void deleteOrderByOrderNumber(String orderNumber) throws OrderNotFoundException {
-        Optional<Order> orderOptional = orderRepository.findOrderByOrderNumberIgnoreCase(orderNumber);
+        Optional<Order> orderOptional = parseOrderNumber(orderNumber).flatMap(orderRepository::findOrderByOrderNumber);
         if(orderOptional.isEmpty()){
             throw new OrderNotFoundException("Order "+ orderNumber + " Not Found");
         }
         orderRepository.deleteById(orderOptional.get().getId());
     }
 
+    /***
+     * Helper method to parse an orderNumber. Parsing is case-insensitive, so is the lookup by orderNumber
+     * @param orderNumber orderNumber as given by the client
+     * @return Optional of the orderNumber as UUID, empty if it is not a UUID and hence no Order has it
+     */
+    private static Optional<UUID> parseOrderNumber(String orderNumber){
+        try{
+            return Optional.of(UUID.fromString(orderNumber));
+        }
+        catch(IllegalArgumentException exception){
+            return Optional.empty();
+        }
+    }
+
     /***
      * Helper method to map OrderRequestDTO to Order
      * @param requestDTO OrderRequestDTO
+     * @param linePrices price of each OrderLineItem, as resolved by priceOrder
+     * @param orderNumber orderNumber of the Order
      * @return Order
      */
-    public Order mapOrderRequestDTOToOrder(OrderRequestDTO requestDTO){
-        List<OrderLineItem> orderLineItemList =
-                requestDTO
-                        .getOrderLineItemList()
-                        .stream()
-                        .map(this::mapOrderLineItemDTOToOrderLineItem)
-                        .toList();
-        return Order
+    public Order mapOrderRequestDTOToOrder(OrderRequestDTO requestDTO, List<BigDecimal> linePrices, UUID orderNumber){
+        List<OrderLineItemDTO> orderLineItemDTOList = requestDTO.getOrderLineItemList();
+        List<OrderLineItem> orderLineItemList = new ArrayList<>(orderLineItemDTOList.size());
+        for(int index = 0; index < orderLineItemDTOList.size(); index++){
+            orderLineItemList.add(mapOrderLineItemDTOToOrderLineItem(orderLineItemDTOList.get(index),
+                    linePrices.get(index)));
+        }
+        Order order = Order
                 .builder()
-                .orderNumber(UUID.randomUUID().toString())
+                .orderNumber(orderNumber)
+                .status(OrderStatus.CONFIRMED)
                 .orderLineItemList(orderLineItemList)
                 .build();
+        orderLineItemList.forEach(orderLineItem -> orderLineItem.setOrder(order));
+        return order;
+    }
+
+    /***
+     * Helper method to map a saved Order to the OutboxEvent announcing it on OrderPlacedTopic
+     * @param order saved Order
+     * @return OutboxEvent
+     */
+    public OutboxEvent mapOrderToOutboxEvent(Order order){
+        return OutboxEvent.orderPlaced(order);
     }
 
     /***
      * Helper method to map OrderLineItemDTO to OrderLineItem
      * @param requestDTO OrderLineItemDTO
+     * @param price price of the OrderLineItem, as resolved by priceOrder
      * @return OrderLineItem
      */
-    public OrderLineItem mapOrderLineItemDTOToOrderLineItem(OrderLineItemDTO requestDTO){
+    public OrderLineItem mapOrderLineItemDTOToOrderLineItem(OrderLineItemDTO requestDTO, BigDecimal price){
         return OrderLineItem
                 .builder()
                 .skuCode(requestDTO.getSkuCode())
-                .price(requestDTO.getPrice())
+                .price(price)
                 .quantity(requestDTO.getQuantity())
                 .build();
     }
@@ -212,7 +841,8 @@ public class OrderServiceImpl implements OrderService{
         return OrderResponseDTO
                 .builder()
                 .id(order.getId())
-                .orderNumber(order.getOrderNumber())
+                .orderNumber(order.getOrderNumber().toString())
+                .status(order.getStatus())
                 .orderLineItemList(orderLineItemDTOList)
                 .build();
     }
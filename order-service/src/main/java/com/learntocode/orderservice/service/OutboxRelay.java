@@ -0,0 +1,152 @@
+package com.learntocode.orderservice.service;
+
+import com.learntocode.orderservice.event.OrderPlacedEvent;
+import com.learntocode.orderservice.model.OutboxEvent;
+import com.learntocode.orderservice.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/***
+ * Relays OutboxEvents written together with Orders to Kafka. OutboxEvents are drained in batches. A batch is claimed
+ * in a short transaction and published outside of it, so no database transaction or row lock is held while waiting
+ * for the broker. The batch is deleted only once the broker acknowledged all of its records. A failed batch gives up
+ * its claim and is retried on the next poll, the claim of a relay that died expires after the claim lease, so
+ * events are published at least once
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private KafkaTemplate<String, OrderPlacedEvent> kafkaTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${order.outbox.batch-size}")
+    private int batchSize;
+    @Value("${order.outbox.send-timeout}")
+    private Duration sendTimeout;
+    @Value("${order.outbox.claim-lease}")
+    private Duration claimLease;
+
+    private Timer relayLagTimer;
+
+    @PostConstruct
+    public void registerMetrics(){
+        Gauge.builder("order.outbox.depth", outboxEventRepository, OutboxEventRepository::count)
+                .description("Number of OutboxEvents waiting to be relayed")
+                .register(meterRegistry);
+        Gauge.builder("order.outbox.oldest.age", this, OutboxRelay::oldestEventAgeSeconds)
+                .description("Age in seconds of the oldest OutboxEvent waiting to be relayed")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        relayLagTimer = Timer.builder("order.outbox.relay.lag")
+                .description("Time from writing an OutboxEvent until the broker acknowledged it")
+                .register(meterRegistry);
+    }
+
+    /***
+     * Drains the outbox batch by batch until a batch smaller than the batch size is relayed
+     */
+    @Scheduled(fixedDelayString = "${order.outbox.poll-interval}")
+    public void relay(){
+        try{
+            int relayedEvents;
+            do{
+                relayedEvents = relayNextBatch();
+            } while(relayedEvents == batchSize);
+        }
+        catch(RuntimeException exception){
+            log.error("Outbox relay failed, will be retried", exception);
+        }
+    }
+
+    /***
+     * Helper method to claim one batch of OutboxEvents, publish it and delete it once acknowledged. Claiming and
+     * deleting run in transactions of their own, publishing runs outside of any transaction
+     * @return number of OutboxEvents relayed
+     */
+    public int relayNextBatch(){
+        Instant claimedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        List<OutboxEvent> outboxEvents = transactionTemplate.execute(status -> {
+            List<OutboxEvent> claimableEvents =
+                    outboxEventRepository.lockClaimableBatch(claimedAt.minus(claimLease), batchSize);
+            if(!claimableEvents.isEmpty()){
+                outboxEventRepository.claim(claimableEvents.stream().map(OutboxEvent::getId).toList(), claimedAt);
+            }
+            return claimableEvents;
+        });
+        if(Objects.isNull(outboxEvents) || outboxEvents.isEmpty()){
+            return 0;
+        }
+        List<Long> ids = outboxEvents.stream().map(OutboxEvent::getId).toList();
+        try{
+            publish(outboxEvents);
+        }
+        catch(RuntimeException exception){
+            transactionTemplate.executeWithoutResult(status -> outboxEventRepository.releaseClaim(ids, claimedAt));
+            throw exception;
+        }
+        Instant acknowledgedAt = Instant.now();
+        outboxEvents.forEach(outboxEvent ->
+                relayLagTimer.record(Duration.between(outboxEvent.getCreatedAt(), acknowledgedAt)));
+        transactionTemplate.executeWithoutResult(status -> outboxEventRepository.deleteClaimed(ids, claimedAt));
+        return outboxEvents.size();
+    }
+
+    /***
+     * Helper method to publish OutboxEvents and wait until the broker acknowledged all of them
+     * @param outboxEvents OutboxEvents to be published
+     * @throws IllegalStateException if the broker did not acknowledge all OutboxEvents within the send timeout
+     */
+    private void publish(List<OutboxEvent> outboxEvents){
+        CompletableFuture<?>[] sendFutures = outboxEvents
+                .stream()
+                .map(outboxEvent -> kafkaTemplate.send(outboxEvent.getTopic(), outboxEvent.getOrderNumber(),
+                                OrderPlacedEvent.builder().orderNumber(outboxEvent.getOrderNumber()).build())
+                        .completable())
+                .toArray(CompletableFuture[]::new);
+        kafkaTemplate.flush();
+        try{
+            CompletableFuture.allOf(sendFutures).get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch(InterruptedException exception){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("OutboxEvents could not be published", exception);
+        }
+        catch(ExecutionException | TimeoutException exception){
+            throw new IllegalStateException("OutboxEvents could not be published", exception);
+        }
+    }
+
+    /***
+     * Helper method to compute the age of the oldest OutboxEvent for the oldest age gauge
+     * @return age in seconds, 0 if the outbox is empty
+     */
+    public double oldestEventAgeSeconds(){
+        Instant oldestCreatedAt = outboxEventRepository.findOldestCreatedAt();
+        return Objects.isNull(oldestCreatedAt) ? 0 :
+                Duration.between(oldestCreatedAt, Instant.now()).toMillis() / 1000.0;
+    }
+}
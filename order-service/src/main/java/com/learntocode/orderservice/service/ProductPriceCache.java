@@ -0,0 +1,363 @@
+package com.learntocode.orderservice.service;
+
+import com.learntocode.orderservice.dto.ProductChangeDTO;
+import com.learntocode.orderservice.dto.ProductPriceDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/***
+ * Prices of SKUs as listed by product-service, so that OrderLineItems are priced without calling product-service
+ * per Order. All prices are loaded once at startup, along with the catalog version they are at. From then on every
+ * refresh interval only the changes of Products after that catalog version are read from product-service, page by
+ * page, and applied in place. All prices are loaded again only if product-service cannot tell the changes anymore,
+ * or sends no catalog version, as on its reactive web stack where every refresh loads all prices. Refreshes run on
+ * the WebClient without blocking the scheduler thread, one at a time. Prices not confirmed by product-service within
+ * the maximum staleness are not used. Lookups read a concurrent map and do not allocate
+ */
+@Component
+@Slf4j
+public class ProductPriceCache {
+    @Autowired
+    private WebClient.Builder webClientBuilder;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${order.pricing.enabled}")
+    private boolean enabled;
+    @Value("${order.pricing.max-staleness}")
+    private Duration maxStaleness;
+    @Value("${order.pricing.refresh-timeout}")
+    private Duration refreshTimeout;
+    @Value("${order.pricing.changes-page-size}")
+    private int changesPageSize;
+
+    /* Prices by normalized skuCode */
+    private final ConcurrentMap<String, BigDecimal> priceMap = new ConcurrentHashMap<>();
+    /* Normalized skuCode and price by Product id, to apply deletions and changed skuCodes */
+    private final ConcurrentMap<String, ProductPriceDTO> productMap = new ConcurrentHashMap<>();
+    /* Ids of the Products listing a normalized skuCode, in the order their prices have been applied. skuCodes are
+     * not unique in product-service, the price of an SKU is the one last applied among the Products still listing
+     * it. Guarded by the ProductPriceCache */
+    private final Map<String, LinkedHashSet<String>> skuCodeOwnerMap = new HashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    /* Catalog version the prices are at, the changes after it are still to be applied. null if all prices are to
+     * be loaded */
+    private volatile String catalogVersion;
+    /* System.nanoTime() at the start of the last successful refresh, the prices are at least as recent */
+    private volatile long refreshedAt;
+    private volatile boolean loaded;
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter staleCounter;
+    private Timer refreshLagTimer;
+
+    @PostConstruct
+    public void registerMetrics(){
+        Gauge.builder("order.product.prices.size", priceMap, ConcurrentMap::size)
+                .description("Number of SKUs with a price in the product price cache")
+                .register(meterRegistry);
+        Gauge.builder("order.product.prices.staleness", this, ProductPriceCache::stalenessSeconds)
+                .description("Seconds since the prices were last confirmed by product-service, prices are not used " +
+                        "beyond the maximum staleness")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        refreshLagTimer = Timer.builder("order.product.prices.refresh.lag")
+                .description("Time from the last change of a Product to its price being applied, to the second")
+                .register(meterRegistry);
+        hitCounter = lookupCounter("hit");
+        missCounter = lookupCounter("miss");
+        staleCounter = lookupCounter("stale");
+    }
+
+    /***
+     * Method to get the price of a SKU
+     * @param skuCode skuCode of the product
+     * @return price of the SKU, null if pricing is disabled, the SKU has no price or the prices are older than the
+     * maximum staleness
+     */
+    public BigDecimal getPrice(String skuCode){
+        if(!enabled){
+            return null;
+        }
+        if(isStale()){
+            staleCounter.increment();
+            return null;
+        }
+        BigDecimal price = priceMap.get(normalizeSkuCode(skuCode));
+        if(Objects.isNull(price)){
+            missCounter.increment();
+        }
+        else{
+            hitCounter.increment();
+        }
+        return price;
+    }
+
+    /***
+     * Method to check whether Orders are priced from the cache
+     * @return true if pricing is enabled
+     */
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /***
+     * Method to check whether the prices are unusable, not loaded yet or not confirmed within the maximum staleness
+     * @return true if pricing is enabled and no price can be used
+     */
+    public boolean isStale(){
+        return enabled && (!loaded || System.nanoTime() - refreshedAt > maxStaleness.toNanos());
+    }
+
+    /***
+     * Method to refresh the prices from product-service, scheduled from startup on. Applies the changes of Products
+     * after the catalog version the prices are at, or loads all prices if none is known. Returns at once, the
+     * refresh runs on the WebClient and a refresh still running when the next one is due is not overlapped. A failed
+     * refresh keeps the prices until they are stale
+     */
+    @Scheduled(fixedDelayString = "${order.pricing.refresh-interval}")
+    public void refresh(){
+        if(!enabled || !refreshing.compareAndSet(false, true)){
+            return;
+        }
+        long startedAt = System.nanoTime();
+        Mono<Void> update = Objects.isNull(catalogVersion) ? loadPrices() : applyChanges();
+        update
+                .timeout(refreshTimeout)
+                .doFinally(signalType -> refreshing.set(false))
+                .subscribe(
+                        unused -> {},
+                        exception -> log.warn("Product prices could not be refreshed, {} seconds since the last " +
+                                "refresh", Math.round(stalenessSeconds()), exception),
+                        () -> {
+                            refreshedAt = startedAt;
+                            loaded = true;
+                        });
+    }
+
+    /***
+     * Helper method to load all prices. The catalog version is read first from the ETag of the product listing, so
+     * that changes made while the prices are streamed are applied again by the next refresh. Loaded into the maps in
+     * place, a reload collects the ids of the listing to drop the Products deleted in the meantime
+     * @return Mono completing once the prices are loaded
+     */
+    private Mono<Void> loadPrices(){
+        WebClient webClient = webClientBuilder.build();
+        return webClient
+                .get()
+                .uri("lb://product-service/api/products/?size=1")
+                .retrieve()
+                .toBodilessEntity()
+                .flatMap(probe -> {
+                    String eTag = probe.getHeaders().getETag();
+                    Set<String> loadedIds = productMap.isEmpty() ? null : new HashSet<>();
+                    return webClient
+                            .get()
+                            .uri("lb://product-service/api/products/")
+                            .accept(MediaType.APPLICATION_NDJSON)
+                            .retrieve()
+                            .bodyToFlux(ProductPriceDTO.class)
+                            .doOnNext(productPriceDTO -> {
+                                applyProduct(productPriceDTO);
+                                if(Objects.nonNull(loadedIds)){
+                                    loadedIds.add(productPriceDTO.getId());
+                                }
+                            })
+                            .then(Mono.<Void>fromRunnable(() -> {
+                                if(Objects.nonNull(loadedIds)){
+                                    for(String id : productMap.keySet()){
+                                        if(!loadedIds.contains(id)){
+                                            removeProduct(id);
+                                        }
+                                    }
+                                }
+                                catalogVersion = Objects.isNull(eTag) ? null :
+                                        eTag.replace("W/", "").replace("\"", "");
+                                recordRefreshLag(catalogVersion);
+                            }));
+                });
+    }
+
+    /***
+     * Helper method to apply the changes of Products after the catalog version the prices are at, one page after
+     * another until a page is not full. The catalog version moves on with every change applied. All prices are
+     * loaded again if product-service answers 410, the changes cannot be read anymore
+     * @return Mono completing once all changes made so far are applied
+     */
+    private Mono<Void> applyChanges(){
+        String since = catalogVersion;
+        return webClientBuilder
+                .build()
+                .get()
+                .uri("lb://product-service/api/products/changes?since={since}&size={size}", since, changesPageSize)
+                .retrieve()
+                .bodyToFlux(ProductChangeDTO.class)
+                .doOnNext(this::applyChange)
+                .count()
+                .flatMap(changes -> {
+                    if(changes > 0){
+                        recordRefreshLag(catalogVersion);
+                    }
+                    return changes < changesPageSize ? Mono.<Void>empty() : applyChanges();
+                })
+                .onErrorResume(WebClientResponseException.Gone.class, exception -> {
+                    log.info("Changes of Products after catalog version {} cannot be read, loading all prices", since);
+                    catalogVersion = null;
+                    return loadPrices();
+                });
+    }
+
+    /***
+     * Helper method to apply a change of a Product and move the catalog version on
+     * @param changeDTO change of a Product
+     */
+    private void applyChange(ProductChangeDTO changeDTO){
+        if(Boolean.TRUE.equals(changeDTO.getDeleted())){
+            if(Objects.nonNull(changeDTO.getId())){
+                removeProduct(changeDTO.getId());
+            }
+        }
+        else if(Objects.nonNull(changeDTO.getProduct())){
+            applyProduct(changeDTO.getProduct());
+        }
+        catalogVersion = changeDTO.getCatalogVersion();
+    }
+
+    /***
+     * Helper method to put the price of a Product, giving up its previous skuCode if it changed. The Product becomes
+     * the last one to set the price of its SKU. A Product without skuCode or price has no price
+     * @param productPriceDTO Product as listed by product-service
+     */
+    private synchronized void applyProduct(ProductPriceDTO productPriceDTO){
+        String id = productPriceDTO.getId();
+        if(Objects.isNull(productPriceDTO.getSkuCode()) || Objects.isNull(productPriceDTO.getPrice())){
+            if(Objects.nonNull(id)){
+                removeProduct(id);
+            }
+            return;
+        }
+        String skuCode = normalizeSkuCode(productPriceDTO.getSkuCode());
+        if(Objects.isNull(id)){
+            priceMap.put(skuCode, productPriceDTO.getPrice());
+            return;
+        }
+        ProductPriceDTO previousProduct = productMap.put(id,
+                ProductPriceDTO.builder().id(id).skuCode(skuCode).price(productPriceDTO.getPrice()).build());
+        if(Objects.nonNull(previousProduct) && !previousProduct.getSkuCode().equals(skuCode)){
+            releaseSkuCode(previousProduct.getSkuCode(), id);
+        }
+        LinkedHashSet<String> ownerIds = skuCodeOwnerMap.computeIfAbsent(skuCode, key -> new LinkedHashSet<>());
+        ownerIds.remove(id);
+        ownerIds.add(id);
+        priceMap.put(skuCode, productPriceDTO.getPrice());
+    }
+
+    /***
+     * Helper method to drop the price of a Product
+     * @param id of the Product
+     */
+    private synchronized void removeProduct(String id){
+        ProductPriceDTO product = productMap.remove(id);
+        if(Objects.nonNull(product)){
+            releaseSkuCode(product.getSkuCode(), id);
+        }
+    }
+
+    /***
+     * Helper method to take a Product off the Products listing an SKU. The SKU keeps the price last applied among
+     * the remaining ones, and has no price once none is left
+     * @param skuCode normalized skuCode the Product listed
+     * @param id of the Product
+     */
+    private void releaseSkuCode(String skuCode, String id){
+        LinkedHashSet<String> ownerIds = skuCodeOwnerMap.get(skuCode);
+        if(Objects.nonNull(ownerIds)){
+            ownerIds.remove(id);
+        }
+        if(Objects.isNull(ownerIds) || ownerIds.isEmpty()){
+            skuCodeOwnerMap.remove(skuCode);
+            priceMap.remove(skuCode);
+            return;
+        }
+        String lastOwnerId = null;
+        for(String ownerId : ownerIds){
+            lastOwnerId = ownerId;
+        }
+        priceMap.put(skuCode, productMap.get(lastOwnerId).getPrice());
+    }
+
+    /***
+     * Helper method to record the refresh lag. The catalog version is the hex encoded cluster time of a change,
+     * whose upper 32 bits are seconds since the epoch
+     * @param version catalog version the prices have been brought to
+     */
+    private void recordRefreshLag(String version){
+        if(Objects.isNull(version)){
+            return;
+        }
+        try{
+            long changedAtSeconds = Long.parseUnsignedLong(version, 16) >>> 32;
+            long lagMillis = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(changedAtSeconds);
+            refreshLagTimer.record(Math.max(0, lagMillis), TimeUnit.MILLISECONDS);
+        }
+        catch(NumberFormatException exception){
+            log.debug("Catalog version {} carries no change time", version);
+        }
+    }
+
+    /***
+     * Helper method to get the seconds since the last successful refresh
+     * @return seconds, NaN if the prices have never been loaded
+     */
+    private double stalenessSeconds(){
+        return loaded ? (System.nanoTime() - refreshedAt) / 1e9 : Double.NaN;
+    }
+
+    /***
+     * Helper method to register the counter of lookups with the given result
+     * @param result hit, miss or stale
+     * @return Counter
+     */
+    private Counter lookupCounter(String result){
+        return Counter.builder("order.product.prices.lookups")
+                .tag("result", result)
+                .description("Lookups of SKU prices by result, stale lookups find prices older than the maximum " +
+                        "staleness")
+                .register(meterRegistry);
+    }
+
+    /***
+     * Helper method to normalize skuCode the way inventory-service matches it. Upper case skuCodes are returned
+     * as they are, without allocating
+     * @param skuCode skuCode to be normalized
+     * @return upper cased skuCode
+     */
+    private static String normalizeSkuCode(String skuCode){
+        return skuCode.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,144 @@
+package com.learntocode.orderservice.service;
+
+import com.learntocode.orderservice.dto.OrderInventoryDTO;
+import com.learntocode.orderservice.dto.OrderLineItemInventoryDTO;
+import com.learntocode.orderservice.model.Order;
+import com.learntocode.orderservice.model.OrderStatus;
+import com.learntocode.orderservice.model.OutboxEvent;
+import com.learntocode.orderservice.repository.OrderRepository;
+import com.learntocode.orderservice.repository.OutboxEventRepository;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Reserves the inventory of Orders accepted from the InventorySnapshot while inventory-service was unavailable.
+ * Pending Orders are retried oldest first once the inventory circuit breaker lets calls through again. A reserved
+ * Order stays CONFIRMED and its OrderPlacedEvent is published, an oversold Order is REJECTED
+ */
+@Component
+@Slf4j
+public class ReservationReconciler {
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private InventoryClient inventoryClient;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${order.inventory.snapshot.reconcile-batch-size}")
+    private int batchSize;
+    @Value("${order.inventory.snapshot.reconcile-timeout}")
+    private Duration reconcileTimeout;
+
+    private Counter reservedCounter;
+    private Counter oversoldCounter;
+
+    @PostConstruct
+    public void registerMetrics(){
+        reservedCounter = Counter.builder("order.inventory.snapshot.reconciled")
+                .tag("result", "reserved")
+                .description("Orders accepted from the availability snapshot whose inventory got reserved afterwards")
+                .register(meterRegistry);
+        oversoldCounter = Counter.builder("order.inventory.snapshot.reconciled")
+                .tag("result", "oversold")
+                .description("Orders accepted from the availability snapshot whose inventory was no longer in stock")
+                .register(meterRegistry);
+    }
+
+    /***
+     * Reserves pending Orders batch by batch until none is left, inventory-service fails or the breaker is open
+     */
+    @Scheduled(fixedDelayString = "${order.inventory.snapshot.reconcile-interval}")
+    public void reconcile(){
+        if(circuitBreakerRegistry.circuitBreaker("inventory").getState() == CircuitBreaker.State.OPEN){
+            return;
+        }
+        try{
+            List<Long> pendingOrderIds;
+            do{
+                pendingOrderIds = orderRepository.findReservationPendingIds(PageRequest.of(0, batchSize));
+                for(Long pendingOrderId : pendingOrderIds){
+                    Optional<Order> pendingOrder = orderRepository.findWithOrderLineItemsById(pendingOrderId);
+                    if(pendingOrder.isPresent()){
+                        reserve(pendingOrder.get());
+                    }
+                }
+            } while(pendingOrderIds.size() == batchSize);
+        }
+        catch(Exception exception){
+            log.warn("Reservation of pending Orders failed, will be retried", exception);
+        }
+    }
+
+    /***
+     * Helper method to reserve the inventory of one pending Order. An Order whose products are no longer in stock
+     * cannot be reserved anymore, it is logged, counted as oversold and REJECTED. The reservation key is the
+     * orderNumber, the key createOrder has reserved under too, so neither a reservation applied before the call of
+     * createOrder failed nor one retried after a timeout is applied twice
+     * @param order pending Order along with its OrderLineItems
+     * @throws Exception if inventory-service could not be called
+     */
+    private void reserve(Order order) throws Exception {
+        List<OrderLineItemInventoryDTO> orderLineItemInventoryDTOList = order
+                .getOrderLineItemList()
+                .stream()
+                .map(orderLineItem -> OrderLineItemInventoryDTO
+                        .builder()
+                        .skuCode(orderLineItem.getSkuCode())
+                        .requiredQuantity(orderLineItem.getQuantity())
+                        .build())
+                .toList();
+        OrderInventoryDTO responseDTO = inventoryClient
+                .reserve(OrderInventoryDTO
+                        .builder()
+                        .reservationKey(order.getOrderNumber().toString())
+                        .orderLineItemInventoryDTOList(orderLineItemInventoryDTOList)
+                        .build())
+                .get(reconcileTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        boolean allInStock = responseDTO
+                .getOrderLineItemInventoryDTOList()
+                .stream()
+                .allMatch(OrderLineItemInventoryDTO::getInStock);
+        OrderStatus orderStatus = allInStock ? OrderStatus.CONFIRMED : OrderStatus.REJECTED;
+        Boolean completed = transactionTemplate.execute(status -> {
+            if(orderRepository.completeReservation(order.getId(), orderStatus) == 0){
+                return false;
+            }
+            if(allInStock){
+                outboxEventRepository.save(OutboxEvent.orderPlaced(order));
+            }
+            return true;
+        });
+        if(!Boolean.TRUE.equals(completed)){
+            return;
+        }
+        if(allInStock){
+            reservedCounter.increment();
+        }
+        else{
+            oversoldCounter.increment();
+            log.warn("Order {} accepted from the availability snapshot is no longer in stock: {}",
+                    order.getOrderNumber(), responseDTO);
+        }
+    }
+}
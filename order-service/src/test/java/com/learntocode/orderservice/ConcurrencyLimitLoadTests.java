@@ -0,0 +1,288 @@
+package com.learntocode.orderservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learntocode.orderservice.configuration.ConcurrencyLimitFilter;
+import com.learntocode.orderservice.dto.OrderLineItemDTO;
+import com.learntocode.orderservice.dto.OrderRequestDTO;
+import com.learntocode.orderservice.service.InventoryRequestCoalescer;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/***
+ * Load tests of the concurrency limits of the order endpoints, over HTTP with the limits of application.yml.
+ * Excluded from the default build, run with mvn test -Pload-tests
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@EmbeddedKafka(topics = "OrderPlacedTopic", bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+@Slf4j
+public class ConcurrencyLimitLoadTests {
+    /* PostgreSQL started from the binaries of the embedded-postgres test dependency, no Docker needed */
+    static EmbeddedPostgres embeddedPostgres = startEmbeddedPostgres();
+    /* One inventory-service instance, registered with the simple discovery client */
+    static InventoryServiceStub.Stock stock = new InventoryServiceStub.Stock();
+    static InventoryServiceStub inventoryServiceStub = new InventoryServiceStub(stock, new ObjectMapper());
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private InventoryRequestCoalescer inventoryRequestCoalescer;
+
+    @Autowired
+    private FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry dynamicPropertyRegistry){
+        dynamicPropertyRegistry.add("spring.datasource.url", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+        dynamicPropertyRegistry.add("spring.datasource.username", () -> "postgres");
+        dynamicPropertyRegistry.add("spring.datasource.password", () -> "postgres");
+        dynamicPropertyRegistry.add("spring.jpa.show-sql", () -> false);
+        dynamicPropertyRegistry.add("eureka.client.enabled", () -> false);
+        dynamicPropertyRegistry.add("spring.zipkin.enabled", () -> false);
+        dynamicPropertyRegistry.add("order.pricing.enabled", () -> false);
+        dynamicPropertyRegistry.add("order.concurrency-limit.enabled", () -> true);
+        dynamicPropertyRegistry.add("spring.cloud.discovery.client.simple.instances.inventory-service[0].uri",
+                inventoryServiceStub::getUri);
+    }
+
+    @AfterEach
+    public void resetInventoryService(){
+        stock.reset();
+        inventoryServiceStub.reset();
+    }
+
+    /***
+     * Load Test of reads while clients stream all Orders without consuming them, more streams than the read limit.
+     * Every stream holds its slot for as long as it is open. Streams are limited apart from other reads, so the
+     * streams beyond their own limit are refused and reads by id all succeed with a bounded p99. Read latency is
+     * logged as a benchmark
+     * @throws Exception HTTP client methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test01 - Keep Reads Bounded while Orders are Streamed")
+    public void shouldKeepReadsBoundedWhileOrdersAreStreamed() throws Exception{
+        jdbcTemplate.update("insert into orders (id, order_uuid, reservation_pending, status) " +
+                "select nextval('orders_seq'), gen_random_uuid(), false, 'CONFIRMED' from generate_series(1, 200000)");
+        Long orderId = jdbcTemplate.queryForObject("select min(id) from orders", Long.class);
+
+        List<CompletableFuture<HttpResponse<InputStream>>> streams = new ArrayList<>();
+        for(int index = 0; index < 60; index++){
+            streams.add(httpClient.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/orders/"))
+                            .header("Accept", "application/x-ndjson")
+                            .GET()
+                            .build(),
+                    HttpResponse.BodyHandlers.ofInputStream()));
+        }
+        List<InputStream> openStreams = new ArrayList<>();
+        int refusedStreams = 0;
+        try{
+            for(CompletableFuture<HttpResponse<InputStream>> stream : streams){
+                HttpResponse<InputStream> response = stream.get(30, TimeUnit.SECONDS);
+                if(response.statusCode() == 200){
+                    openStreams.add(response.body());
+                    //the stream has started, it is left unread from here on
+                    assertTrue(response.body().read() >= 0);
+                }
+                else{
+                    assertEquals(503, response.statusCode());
+                    response.body().close();
+                    refusedStreams++;
+                }
+            }
+            OrderServiceLoadTests.LoadResult reads = OrderServiceLoadTests.measure(200, 8, () -> httpClient
+                    .sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/orders/" + orderId))
+                                    .GET()
+                                    .build(),
+                            HttpResponse.BodyHandlers.discarding())
+                    .thenApply(response -> response.statusCode() == 200));
+            log.info("{} streams open, {} refused", openStreams.size(), refusedStreams);
+            log.info("Reads by id while streaming: {}", reads);
+            assertTrue(openStreams.size() <= 16, "Streams not limited apart: " + openStreams.size());
+            assertEquals(60, openStreams.size() + refusedStreams);
+            assertEquals(200, reads.succeeded());
+            assertTrue(reads.p99Millis() < 1000, "Reads slowed down by streams: " + reads);
+        }
+        finally{
+            for(InputStream openStream : openStreams){
+                openStream.close();
+            }
+        }
+    }
+
+    /***
+     * Load Test of POST /api/orders/ saturated against a slow inventory-service. The instance handles 2
+     * reservations at a time in 100 ms each, 20 per second, reservations are not coalesced so every Order costs the
+     * instance a call, and Orders arrive at 60 per second whether or not earlier ones have been answered. Without
+     * the limiter every Order queues at the instance and latency grows for as long as Orders keep arriving. With it,
+     * the Orders beyond the create limit are refused with 503 at once and the Orders admitted keep a p99 well below
+     * the one of the unlimited run. Both runs are logged as a benchmark
+     * @throws Exception HTTP client and ObjectMapper methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test02 - Refuse Creates beyond the Limit of a Slow Inventory-Service")
+    public void shouldRefuseCreatesBeyondTheLimitOfASlowInventoryService() throws Exception{
+        stock.setQuantity("LIMIT-1", 1_000_000);
+        ConcurrencyLimitFilter filter = concurrencyLimitFilter.getFilter();
+        Object limitedEndpoints = ReflectionTestUtils.getField(filter, "limitedEndpoints");
+        int maxBatchSize = (int) ReflectionTestUtils.getField(inventoryRequestCoalescer, "maxBatchSize");
+        ReflectionTestUtils.setField(inventoryRequestCoalescer, "maxBatchSize", 1);
+        CreateResult unlimited;
+        CreateResult limited;
+        try{
+            ReflectionTestUtils.setField(filter, "limitedEndpoints", List.of());
+            createOrders(50, 50);
+            inventoryServiceStub.setLatency(requestNumber -> Duration.ofMillis(100));
+            inventoryServiceStub.setCapacity(2);
+            unlimited = createOrders(300, 60);
+            ReflectionTestUtils.setField(filter, "limitedEndpoints", limitedEndpoints);
+            limited = createOrders(300, 60);
+        }
+        finally{
+            ReflectionTestUtils.setField(filter, "limitedEndpoints", limitedEndpoints);
+            ReflectionTestUtils.setField(inventoryRequestCoalescer, "maxBatchSize", maxBatchSize);
+        }
+        log.info("Creates without the limiter: {}", unlimited);
+        log.info("Creates with the limiter: {}", limited);
+        assertEquals(300, unlimited.admitted());
+        assertEquals(300, limited.admitted() + limited.refused());
+        assertTrue(limited.refused() > 0, "No create refused: " + limited);
+        assertTrue(limited.refusedP99Millis() < limited.admittedP99Millis() / 4,
+                "Refused creates were not answered at once: " + limited);
+        assertTrue(limited.admittedP99Millis() < unlimited.admittedP99Millis() / 2,
+                "Admitted creates queued like unlimited ones: " + limited + " against " + unlimited);
+    }
+
+    /***
+     * Helper method to send Orders to POST /api/orders/ at a fixed rate, whether or not earlier ones have been
+     * answered
+     * @param requests number of Orders
+     * @param ratePerSecond Orders sent per second
+     * @return CreateResult of the run
+     * @throws Exception HTTP client and ObjectMapper methods throw exception
+     */
+    public CreateResult createOrders(int requests, int ratePerSecond) throws Exception{
+        String requestString = objectMapper.writeValueAsString(OrderRequestDTO
+                .builder()
+                .orderLineItemList(List.of(OrderLineItemDTO
+                        .builder()
+                        .skuCode("LIMIT-1")
+                        .price(BigDecimal.valueOf(100))
+                        .quantity(1)
+                        .build()))
+                .build());
+        long[] latencies = new long[requests];
+        int[] statusCodes = new int[requests];
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        long startedAt = System.nanoTime();
+        for(int index = 0; index < requests; index++){
+            long sendAt = startedAt + index * 1_000_000_000L / ratePerSecond;
+            long sleepNanos = sendAt - System.nanoTime();
+            if(sleepNanos > 0){
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+            int request = index;
+            long sentAt = System.nanoTime();
+            futures.add(httpClient
+                    .sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/orders/"))
+                                    .header("Content-Type", "application/json")
+                                    .POST(HttpRequest.BodyPublishers.ofString(requestString))
+                                    .build(),
+                            HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, exception) -> {
+                        latencies[request] = System.nanoTime() - sentAt;
+                        statusCodes[request] = Objects.isNull(response) ? 0 : response.statusCode();
+                    }));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(exception -> null).join();
+        return new CreateResult(
+                (int) Arrays.stream(statusCodes).filter(statusCode -> statusCode == 200).count(),
+                (int) Arrays.stream(statusCodes).filter(statusCode -> statusCode == 503).count(),
+                p99Millis(latencies, statusCodes, 200),
+                p99Millis(latencies, statusCodes, 503));
+    }
+
+    /***
+     * Helper method to get the 99th percentile latency of the requests answered with a status code
+     * @param latencies latency of each request in nanoseconds
+     * @param statusCodes status code of each request
+     * @param statusCode status code of the requests measured
+     * @return 99th percentile latency in milliseconds, 0 if no request has been answered with the status code
+     */
+    private static double p99Millis(long[] latencies, int[] statusCodes, int statusCode){
+        long[] statusLatencies = IntStream.range(0, latencies.length)
+                .filter(index -> statusCodes[index] == statusCode)
+                .mapToLong(index -> latencies[index])
+                .sorted()
+                .toArray();
+        if(statusLatencies.length == 0){
+            return 0;
+        }
+        return statusLatencies[(int) Math.ceil(statusLatencies.length * 0.99) - 1] / 1e6;
+    }
+
+    /***
+     * Helper method to start the embedded PostgreSQL shared by all tests
+     * @return EmbeddedPostgres, stopped by its shutdown hook
+     */
+    private static EmbeddedPostgres startEmbeddedPostgres(){
+        try{
+            return EmbeddedPostgres.start();
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /***
+     * Orders admitted and refused with 503, and 99th percentile latency in milliseconds of each, of a run
+     */
+    public record CreateResult(int admitted, int refused, double admittedP99Millis, double refusedP99Millis) {
+        @Override
+        public String toString(){
+            return String.format("%d admitted, p99 %.0f ms, %d refused, p99 %.0f ms",
+                    admitted, admittedP99Millis, refused, refusedP99Millis);
+        }
+    }
+}
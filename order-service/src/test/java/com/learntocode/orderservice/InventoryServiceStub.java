@@ -0,0 +1,295 @@
+package com.learntocode.orderservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.learntocode.orderservice.dto.OrderInventoryDTO;
+import com.learntocode.orderservice.dto.OrderLineItemInventoryDTO;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/***
+ * Stand-in of an inventory-service instance for order-service tests, served by the JDK HTTP server. It answers the
+ * reserve, batch reserve and release endpoints from a Stock shared by all stub instances, the way instances of
+ * inventory-service share their database. Every instance can be slowed down or made to fail on its own
+ */
+public class InventoryServiceStub {
+    private final HttpServer httpServer;
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final Stock stock;
+    private final ObjectMapper objectMapper;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile Function<Integer, Duration> latency = requestNumber -> Duration.ZERO;
+    private volatile boolean failing;
+    private volatile boolean failingAfterHandling;
+    private volatile boolean rejecting;
+    private volatile Semaphore capacity;
+
+    public InventoryServiceStub(Stock stock, ObjectMapper objectMapper){
+        this.stock = stock;
+        this.objectMapper = objectMapper;
+        try{
+            httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception);
+        }
+        httpServer.setExecutor(executorService);
+        httpServer.createContext("/api/inventories/reserve/batch/", exchange -> handle(exchange, body -> {
+            List<OrderInventoryDTO> requestDTOList = objectMapper.readValue(body,
+                    TypeFactory.defaultInstance().constructCollectionType(List.class, OrderInventoryDTO.class));
+            return requestDTOList.stream().map(stock::reserve).toList();
+        }));
+        httpServer.createContext("/api/inventories/reserve/", exchange -> handle(exchange,
+                body -> stock.reserve(objectMapper.readValue(body, OrderInventoryDTO.class))));
+        httpServer.createContext("/api/inventories/release/", exchange -> handle(exchange, body -> {
+            stock.release(objectMapper.readValue(body, OrderInventoryDTO.class));
+            return null;
+        }));
+        httpServer.start();
+    }
+
+    /***
+     * Method to get the URI the instance is registered under
+     * @return URI of the instance
+     */
+    public String getUri(){
+        return "http://localhost:" + httpServer.getAddress().getPort();
+    }
+
+    /***
+     * Method to delay every answer of the instance
+     * @param latency delay of an answer given the number of the request, counted from 1
+     */
+    public void setLatency(Function<Integer, Duration> latency){
+        this.latency = latency;
+    }
+
+    /***
+     * Method to let the instance handle at most a number of requests at a time, the others wait for their turn
+     * before their latency starts, the way a saturated inventory-service queues requests
+     * @param capacity number of requests handled at a time, 0 for no limit
+     */
+    public void setCapacity(int capacity){
+        this.capacity = capacity > 0 ? new Semaphore(capacity, true) : null;
+    }
+
+    /***
+     * Method to make the instance answer every request with 500
+     * @param failing true to fail
+     */
+    public void setFailing(boolean failing){
+        this.failing = failing;
+    }
+
+    /***
+     * Method to make the instance handle every request and then answer it with 500, the way an instance failing
+     * after its commit, or a response lost on the way back, looks to the caller
+     * @param failingAfterHandling true to fail after handling
+     */
+    public void setFailingAfterHandling(boolean failingAfterHandling){
+        this.failingAfterHandling = failingAfterHandling;
+    }
+
+    /***
+     * Method to make the instance answer every request with 400, the way inventory-service rejects a request it
+     * cannot validate
+     * @param rejecting true to reject
+     */
+    public void setRejecting(boolean rejecting){
+        this.rejecting = rejecting;
+    }
+
+    /***
+     * Method to get the number of requests received since the last reset
+     * @return number of requests
+     */
+    public int getRequestCount(){
+        return requestCount.get();
+    }
+
+    /***
+     * Method to reset latency, capacity, failures, rejections and request count of the instance
+     */
+    public void reset(){
+        latency = requestNumber -> Duration.ZERO;
+        failing = false;
+        failingAfterHandling = false;
+        rejecting = false;
+        capacity = null;
+        requestCount.set(0);
+    }
+
+    /***
+     * Method to stop the instance
+     */
+    public void stop(){
+        httpServer.stop(0);
+        executorService.shutdownNow();
+    }
+
+    /***
+     * Helper method to answer a request after the latency of the instance
+     * @param exchange HTTP exchange
+     * @param handler maps the request body to the response body, null for an empty response
+     * @throws IOException if the exchange fails
+     */
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        Semaphore handlingCapacity = capacity;
+        try(exchange){
+            int requestNumber = requestCount.incrementAndGet();
+            if(Objects.nonNull(handlingCapacity)){
+                handlingCapacity.acquire();
+            }
+            try{
+                long latencyMillis = latency.apply(requestNumber).toMillis();
+                if(latencyMillis > 0){
+                    Thread.sleep(latencyMillis);
+                }
+            }
+            finally{
+                if(Objects.nonNull(handlingCapacity)){
+                    handlingCapacity.release();
+                }
+            }
+            if(failing){
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            if(rejecting){
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            Object responseBody = handler.handle(exchange.getRequestBody().readAllBytes());
+            if(failingAfterHandling){
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            if(Objects.isNull(responseBody)){
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            byte[] response = objectMapper.writeValueAsBytes(responseBody);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+        }
+        catch(InterruptedException exception){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(byte[] body) throws IOException;
+    }
+
+    /***
+     * Quantities in stock shared by the stub instances. A reservation under a key is applied once, a release marks
+     * its key released so that neither a repeated release nor a late reservation under the key is applied again
+     */
+    public static class Stock {
+        private final Map<String, Integer> quantities = new HashMap<>();
+        private final Map<String, Boolean> reservedKeys = new HashMap<>();
+        private final AtomicInteger reservationCount = new AtomicInteger();
+
+        /***
+         * Method to set the quantity in stock of a SKU
+         * @param skuCode skuCode of the product
+         * @param quantity quantity in stock
+         */
+        public synchronized void setQuantity(String skuCode, int quantity){
+            quantities.put(skuCode.toUpperCase(Locale.ROOT), quantity);
+        }
+
+        /***
+         * Method to get the quantity in stock of a SKU
+         * @param skuCode skuCode of the product
+         * @return quantity in stock, 0 for unknown SKUs
+         */
+        public synchronized int getQuantity(String skuCode){
+            return quantities.getOrDefault(skuCode.toUpperCase(Locale.ROOT), 0);
+        }
+
+        /***
+         * Method to get the number of reservations applied since the last reset
+         * @return number of reservations applied
+         */
+        public int getReservationCount(){
+            return reservationCount.get();
+        }
+
+        /***
+         * Method to clear all quantities, keys and counts
+         */
+        public synchronized void reset(){
+            quantities.clear();
+            reservedKeys.clear();
+            reservationCount.set(0);
+        }
+
+        /***
+         * Method to reserve all line items of an Order or none of them
+         * @param requestDTO skuCodes and required quantity to be reserved
+         * @return OrderInventoryDTO with all line items in stock if reserved
+         */
+        public synchronized OrderInventoryDTO reserve(OrderInventoryDTO requestDTO){
+            Boolean reserved = Objects.isNull(requestDTO.getReservationKey()) ? null :
+                    reservedKeys.get(requestDTO.getReservationKey());
+            boolean inStock = Objects.isNull(reserved) ?
+                    requestDTO.getOrderLineItemInventoryDTOList()
+                            .stream()
+                            .allMatch(lineItem -> getQuantity(lineItem.getSkuCode()) >= lineItem.getRequiredQuantity()) :
+                    reserved;
+            if(inStock && Objects.isNull(reserved)){
+                requestDTO.getOrderLineItemInventoryDTOList().forEach(lineItem ->
+                        setQuantity(lineItem.getSkuCode(), getQuantity(lineItem.getSkuCode()) - lineItem.getRequiredQuantity()));
+                if(Objects.nonNull(requestDTO.getReservationKey())){
+                    reservedKeys.put(requestDTO.getReservationKey(), true);
+                }
+                reservationCount.incrementAndGet();
+            }
+            return OrderInventoryDTO
+                    .builder()
+                    .reservationKey(requestDTO.getReservationKey())
+                    .orderLineItemInventoryDTOList(requestDTO.getOrderLineItemInventoryDTOList()
+                            .stream()
+                            .map(lineItem -> OrderLineItemInventoryDTO
+                                    .builder()
+                                    .skuCode(lineItem.getSkuCode())
+                                    .requiredQuantity(lineItem.getRequiredQuantity())
+                                    .availableQuantity(getQuantity(lineItem.getSkuCode()))
+                                    .inStock(inStock)
+                                    .build())
+                            .toList())
+                    .build();
+        }
+
+        /***
+         * Method to release the line items reserved under the key of the request
+         * @param requestDTO skuCodes and quantity to be released
+         */
+        public synchronized void release(OrderInventoryDTO requestDTO){
+            if(Objects.nonNull(requestDTO.getReservationKey()) &&
+                    !Boolean.TRUE.equals(reservedKeys.put(requestDTO.getReservationKey(), false))){
+                return;
+            }
+            requestDTO.getOrderLineItemInventoryDTOList().forEach(lineItem ->
+                    setQuantity(lineItem.getSkuCode(), getQuantity(lineItem.getSkuCode()) + lineItem.getRequiredQuantity()));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.learntocode.orderservice;
+
+import com.learntocode.orderservice.service.OrderNumberGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * JMH benchmark of orderNumber generation and parsing. Compares OrderNumberGenerator with UUID.randomUUID, which
+ * draws every orderNumber from SecureRandom, and the parsing of an orderNumber with the old case-insensitive
+ * String lookup key. Not part of the test run, started with
+ * java -cp target/test-classes:target/classes:$(dependency classpath) com.learntocode.orderservice.OrderNumberGeneratorBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderNumberGeneratorBenchmark {
+    private OrderNumberGenerator orderNumberGenerator;
+    private String orderNumber;
+
+    @Setup
+    public void setUp(){
+        orderNumberGenerator = new OrderNumberGenerator();
+        orderNumber = orderNumberGenerator.next().toString().toUpperCase();
+    }
+
+    @Benchmark
+    public UUID generateTimeOrdered(){
+        return orderNumberGenerator.next();
+    }
+
+    @Benchmark
+    public UUID generateRandom(){
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public UUID generateTimeOrderedContended(){
+        return orderNumberGenerator.next();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public UUID generateRandomContended(){
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public UUID parseOrderNumber(){
+        return UUID.fromString(orderNumber);
+    }
+
+    @Benchmark
+    public String lowerCaseOrderNumber(){
+        return orderNumber.toLowerCase();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OrderNumberGeneratorBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
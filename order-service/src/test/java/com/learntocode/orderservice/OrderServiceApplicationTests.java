@@ -0,0 +1,955 @@
+package com.learntocode.orderservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.learntocode.orderservice.dto.BulkOrderResultDTO;
+import com.learntocode.orderservice.dto.OrderInventoryDTO;
+import com.learntocode.orderservice.dto.OrderLineItemDTO;
+import com.learntocode.orderservice.dto.OrderLineItemInventoryDTO;
+import com.learntocode.orderservice.dto.OrderRequestDTO;
+import com.learntocode.orderservice.dto.OrderResponseDTO;
+import com.learntocode.orderservice.exception.InvalidOrderPriceException;
+import com.learntocode.orderservice.exception.InventoryServiceCallException;
+import com.learntocode.orderservice.exception.OrderQueueFullException;
+import com.learntocode.orderservice.model.OrderStatus;
+import com.learntocode.orderservice.repository.OrderRepository;
+import com.learntocode.orderservice.repository.OutboxEventRepository;
+import com.learntocode.orderservice.service.AsyncOrderQueue;
+import com.learntocode.orderservice.service.InventoryRequestCoalescer;
+import com.learntocode.orderservice.service.OrderNumberGenerator;
+import com.learntocode.orderservice.service.OrderService;
+import com.learntocode.orderservice.service.OrderServiceImpl;
+import com.learntocode.orderservice.service.OutboxRelay;
+import com.learntocode.orderservice.service.ProductPriceCache;
+import com.learntocode.orderservice.service.ReservationReconciler;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@EmbeddedKafka(topics = "OrderPlacedTopic", bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+@Slf4j
+public class OrderServiceApplicationTests {
+    /* PostgreSQL started from the binaries of the embedded-postgres test dependency, no Docker needed */
+    static EmbeddedPostgres embeddedPostgres = startEmbeddedPostgres();
+    /* Two inventory-service instances sharing their stock, registered with the simple discovery client */
+    static InventoryServiceStub.Stock stock = new InventoryServiceStub.Stock();
+    static List<InventoryServiceStub> inventoryServiceStubs = List.of(
+            new InventoryServiceStub(stock, new ObjectMapper()),
+            new InventoryServiceStub(stock, new ObjectMapper()));
+    static ProductServiceStub productServiceStub = new ProductServiceStub(new ObjectMapper());
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ReservationReconciler reservationReconciler;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private AsyncOrderQueue asyncOrderQueue;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductPriceCache productPriceCache;
+
+    @Autowired
+    private InventoryRequestCoalescer inventoryRequestCoalescer;
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry dynamicPropertyRegistry){
+        dynamicPropertyRegistry.add("spring.datasource.url", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+        dynamicPropertyRegistry.add("spring.datasource.username", () -> "postgres");
+        dynamicPropertyRegistry.add("spring.datasource.password", () -> "postgres");
+        dynamicPropertyRegistry.add("spring.jpa.show-sql", () -> false);
+        dynamicPropertyRegistry.add("spring.jpa.properties.hibernate.generate_statistics", () -> true);
+        dynamicPropertyRegistry.add("eureka.client.enabled", () -> false);
+        dynamicPropertyRegistry.add("spring.zipkin.enabled", () -> false);
+        dynamicPropertyRegistry.add("order.pricing.enabled", () -> false);
+        //background pollers run once at startup and are then called by the tests, keeping statement counts exact
+        dynamicPropertyRegistry.add("order.outbox.poll-interval", () -> 3_600_000);
+        dynamicPropertyRegistry.add("order.async.poll-interval", () -> 3_600_000);
+        dynamicPropertyRegistry.add("order.inventory.snapshot.reconcile-interval", () -> 3_600_000);
+        dynamicPropertyRegistry.add("order.pricing.refresh-interval", () -> 3_600_000);
+        dynamicPropertyRegistry.add("order.pricing.changes-page-size", () -> 2);
+        dynamicPropertyRegistry.add("spring.cloud.discovery.client.simple.instances.product-service[0].uri",
+                productServiceStub::getUri);
+        for(int index = 0; index < inventoryServiceStubs.size(); index++){
+            String uri = inventoryServiceStubs.get(index).getUri();
+            dynamicPropertyRegistry.add(
+                    "spring.cloud.discovery.client.simple.instances.inventory-service[" + index + "].uri", () -> uri);
+        }
+    }
+
+    @AfterEach
+    public void resetInventoryService(){
+        stock.reset();
+        inventoryServiceStubs.forEach(InventoryServiceStub::reset);
+        circuitBreakerRegistry.circuitBreaker("inventory").reset();
+    }
+
+    /***
+     * Query-plan Test of the orderNumber lookups. With a large orders table the lookup by orderNumber has to be
+     * served by the unique index of the uuid column, and GET /api/orders/orderNumber/{orderNumber} has to find an
+     * Order whatever the case of its orderNumber
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test01 - Look up orderNumbers through the Unique Index")
+    public void shouldLookUpOrderNumbersThroughTheUniqueIndex() throws Exception{
+        stock.setQuantity("PLAN-1", 10);
+        OrderResponseDTO responseDTO = createOrder(getOrderRequest(getLineItem("PLAN-1", 1)));
+        jdbcTemplate.update("insert into orders (id, order_uuid, reservation_pending, status) " +
+                "select nextval('orders_seq'), gen_random_uuid(), false, 'CONFIRMED' from generate_series(1, 200000)");
+        jdbcTemplate.execute("analyze orders");
+
+        assertTrue(explain("select * from orders where order_uuid = '" + responseDTO.getOrderNumber() + "'")
+                .contains("ux_orders_order_uuid"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get(
+                        "/api/orders/orderNumber/" + responseDTO.getOrderNumber().toUpperCase(Locale.ROOT)))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.id").value(responseDTO.getId()));
+    }
+
+    /***
+     * Integration Test of the outbox relay against an embedded Kafka broker. OrderPlacedEvents of created Orders are
+     * published to OrderPlacedTopic and removed from the outbox. An OutboxEvent claimed by another relay is left to
+     * it until its claim lease expires, an expired claim is taken over
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test02 - Relay OrderPlacedEvents to Kafka")
+    public void shouldRelayOrderPlacedEventsToKafka() throws Exception{
+        try(Consumer<String, String> consumer = createConsumer()){
+            embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, "OrderPlacedTopic");
+            stock.setQuantity("OUTBOX-1", 10);
+            Set<String> orderNumbers = new HashSet<>();
+            for(int index = 0; index < 3; index++){
+                orderNumbers.add(createOrder(getOrderRequest(getLineItem("OUTBOX-1", 1))).getOrderNumber());
+            }
+            outboxRelay.relay();
+            assertTrue(consumeKeys(consumer, orderNumbers).containsAll(orderNumbers));
+            assertEquals(0, outboxEventRepository.count());
+
+            //one event claimed by a live relay, one by a relay that died half an hour ago
+            String claimedOrderNumber = UUID.randomUUID().toString();
+            String expiredOrderNumber = UUID.randomUUID().toString();
+            insertOutboxEvent(claimedOrderNumber, Instant.now());
+            insertOutboxEvent(expiredOrderNumber, Instant.now().minus(Duration.ofMinutes(30)));
+            outboxRelay.relay();
+            Set<String> relayedOrderNumbers = consumeKeys(consumer, Set.of(expiredOrderNumber));
+            assertTrue(relayedOrderNumbers.contains(expiredOrderNumber));
+            assertFalse(relayedOrderNumbers.contains(claimedOrderNumber));
+            assertEquals(1, outboxEventRepository.count());
+            assertEquals(1, meterRegistry.get("order.outbox.depth").gauge().value());
+            jdbcTemplate.update("delete from outbox_event");
+        }
+    }
+
+    /***
+     * Statement-count Test of saving an Order. An Order and its OrderLineItems are inserted with batched statements,
+     * so an Order of 50 OrderLineItems takes as many statements as an Order of one, where identity ids and the join
+     * table used to take two inserts per OrderLineItem. The statements of both are logged
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test03 - Save Orders with Batched Inserts")
+    public void shouldSaveOrdersWithBatchedInserts() throws Exception{
+        stock.setQuantity("BATCH-1", 1000);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        //first Orders draw the id blocks of the pooled sequences
+        createOrder(getOrderRequest(getLineItems("BATCH-1", 50)));
+
+        long[] statements = new long[2];
+        int[] lineItemCounts = {1, 50};
+        for(int position = 0; position < lineItemCounts.length; position++){
+            statistics.clear();
+            createOrder(getOrderRequest(getLineItems("BATCH-1", lineItemCounts[position])));
+            statements[position] = statistics.getPrepareStatementCount();
+            log.info("Order of {} OrderLineItems: {} rows inserted with {} statements", lineItemCounts[position],
+                    statistics.getEntityInsertCount(), statements[position]);
+            assertEquals(lineItemCounts[position] + 2, statistics.getEntityInsertCount());
+        }
+        //an order, an order_line_item and an outbox_event insert, plus at most one sequence call per table
+        assertTrue(statements[1] <= 6, "Order of 50 OrderLineItems took " + statements[1] + " statements");
+        assertTrue(statements[1] <= statements[0] + 1,
+                "Statements grow with the OrderLineItems: " + Arrays.toString(statements));
+    }
+
+    /***
+     * Query-count Test of reading Orders. A page of Orders along with their OrderLineItems is read with two queries
+     * and an Order with one query, whatever the number of Orders and OrderLineItems
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test04 - Read Orders with a Constant Number of Queries")
+    public void shouldReadOrdersWithAConstantNumberOfQueries() throws Exception{
+        stock.setQuantity("READ-1", 1000);
+        List<OrderResponseDTO> orders = new ArrayList<>();
+        for(int index = 0; index < 20; index++){
+            orders.add(createOrder(getOrderRequest(getLineItems("READ-1", 1 + index % 5))));
+        }
+        long afterId = orders.get(0).getId() - 1;
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        for(int size : new int[]{1, 20}){
+            statistics.clear();
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/orders/?afterId=" + afterId + "&size=" + size))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(size))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[" + (size - 1) + "].orderLineItemList.length()")
+                            .value(orders.get(size - 1).getOrderLineItemList().size()));
+            assertEquals(2, statistics.getPrepareStatementCount(), "Page of " + size + " Orders");
+        }
+        for(OrderResponseDTO order : List.of(orders.get(0), orders.get(4))){
+            statistics.clear();
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/orders/" + order.getId()))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.orderLineItemList.length()")
+                            .value(order.getOrderLineItemList().size()));
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/orders/orderNumber/" + order.getOrderNumber()))
+                    .andExpect(MockMvcResultMatchers.status().isOk());
+            assertEquals(2, statistics.getPrepareStatementCount(),
+                    "Order of " + order.getOrderLineItemList().size() + " OrderLineItems");
+        }
+    }
+
+    /***
+     * Integration Test of an Order accepted from the availability snapshot after inventory-service has reserved it
+     * and failed to answer. The Order keeps the orderNumber it has been reserved under, so ReservationReconciler
+     * does not take the stock a second time, and its OrderPlacedEvent is written once it is reserved
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test05 - Reconcile a Snapshot Order under its Reservation Key")
+    public void shouldReconcileASnapshotOrderUnderItsReservationKey() throws Exception{
+        stock.setQuantity("SNAPSHOT-1", 100);
+        createOrder(getOrderRequest(getLineItem("SNAPSHOT-1", 1)));
+        inventoryServiceStubs.forEach(stub -> stub.setFailingAfterHandling(true));
+        OrderResponseDTO snapshotOrder = createOrder(getOrderRequest(getLineItem("SNAPSHOT-1", 1)));
+        assertEquals(98, stock.getQuantity("SNAPSHOT-1"));
+        assertEquals(OrderStatus.CONFIRMED, snapshotOrder.getStatus());
+        assertTrue(isReservationPending(snapshotOrder.getOrderNumber()));
+        assertEquals(0, countOutboxEvents(snapshotOrder.getOrderNumber()));
+
+        inventoryServiceStubs.forEach(stub -> stub.setFailingAfterHandling(false));
+        reservationReconciler.reconcile();
+        assertEquals(98, stock.getQuantity("SNAPSHOT-1"));
+        assertEquals(2, stock.getReservationCount());
+        assertFalse(isReservationPending(snapshotOrder.getOrderNumber()));
+        assertEquals(1, countOutboxEvents(snapshotOrder.getOrderNumber()));
+        jdbcTemplate.update("delete from outbox_event");
+    }
+
+    /***
+     * Integration Test of an Order accepted from the availability snapshot whose products are sold out by the time
+     * inventory-service is back. The Order is REJECTED and no OrderPlacedEvent is written for it
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test06 - Reject an Oversold Snapshot Order")
+    public void shouldRejectAnOversoldSnapshotOrder() throws Exception{
+        stock.setQuantity("SNAPSHOT-2", 100);
+        createOrder(getOrderRequest(getLineItem("SNAPSHOT-2", 1)));
+        inventoryServiceStubs.forEach(stub -> stub.setFailing(true));
+        OrderResponseDTO snapshotOrder = createOrder(getOrderRequest(getLineItem("SNAPSHOT-2", 1)));
+        assertEquals(99, stock.getQuantity("SNAPSHOT-2"));
+
+        inventoryServiceStubs.forEach(stub -> stub.setFailing(false));
+        stock.setQuantity("SNAPSHOT-2", 0);
+        reservationReconciler.reconcile();
+        assertFalse(isReservationPending(snapshotOrder.getOrderNumber()));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/orders/orderNumber/" + snapshotOrder.getOrderNumber()))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status").value(OrderStatus.REJECTED.name()));
+        assertEquals(0, countOutboxEvents(snapshotOrder.getOrderNumber()));
+        jdbcTemplate.update("delete from outbox_event");
+    }
+
+    /***
+     * Insert-locality Test of orderNumbers. The same number of time-ordered and random orderNumbers are inserted
+     * into two tables with a unique uuid index, the way ux_orders_order_uuid indexes the orders table. Time-ordered
+     * orderNumbers are appended to the rightmost leaf page, which is left full on a split, where random ones split
+     * pages all over the index and leave them half empty. The random index is therefore markedly larger, the sizes
+     * of both are logged
+     */
+    @Test
+    @DisplayName("Integration Test07 - Insert Time-ordered orderNumbers at the End of the Index")
+    public void shouldInsertTimeOrderedOrderNumbersAtTheEndOfTheIndex(){
+        OrderNumberGenerator generator = new OrderNumberGenerator();
+        long timeOrderedIndexSize = insertOrderNumbers("order_number_time_ordered", generator::next);
+        long randomIndexSize = insertOrderNumbers("order_number_random", UUID::randomUUID);
+        log.info("Index of 200000 orderNumbers: time-ordered {} bytes, random {} bytes",
+                timeOrderedIndexSize, randomIndexSize);
+        assertTrue(randomIndexSize > timeOrderedIndexSize * 1.2,
+                "Random orderNumbers did not fragment the index: " + randomIndexSize + " vs " + timeOrderedIndexSize);
+    }
+
+    /***
+     * Integration Test of the asynchronous queue capacity under concurrent Orders. Twenty Orders are queued at once
+     * while five slots are left and inventory-service is slow, so no queued Order completes in between. Slots are
+     * taken along with the capacity check, exactly five Orders are queued and the others are refused
+     * @throws Exception if waiting for the Orders is interrupted
+     */
+    @Test
+    @DisplayName("Integration Test08 - Queue no more Orders than the Queue Capacity")
+    public void shouldQueueNoMoreOrdersThanTheQueueCapacity() throws Exception{
+        stock.setQuantity("QUEUE-1", 100);
+        inventoryServiceStubs.forEach(stub -> stub.setLatency(requestNumber -> Duration.ofSeconds(2)));
+        long queueCapacity = (long) ReflectionTestUtils.getField(asyncOrderQueue, "queueCapacity");
+        long queueDepth = (long) meterRegistry.get("order.async.queue.depth").gauge().value();
+        ReflectionTestUtils.setField(asyncOrderQueue, "queueCapacity", queueDepth + 5);
+        try{
+            ExecutorService executorService = Executors.newFixedThreadPool(20);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<CompletableFuture<OrderResponseDTO>>> futures = new ArrayList<>();
+            for(int index = 0; index < 20; index++){
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    return orderService.enqueueOrder(getOrderRequest(getLineItem("QUEUE-1", 1)), null);
+                }));
+            }
+            start.countDown();
+            int queued = 0;
+            int refused = 0;
+            for(Future<CompletableFuture<OrderResponseDTO>> future : futures){
+                try{
+                    future.get().join();
+                    queued++;
+                }
+                catch(CompletionException exception){
+                    assertTrue(exception.getCause() instanceof OrderQueueFullException);
+                    refused++;
+                }
+            }
+            executorService.shutdown();
+            assertEquals(5, queued);
+            assertEquals(15, refused);
+        }
+        finally{
+            ReflectionTestUtils.setField(asyncOrderQueue, "queueCapacity", queueCapacity);
+        }
+        //let the workers complete the queued Orders before the next test
+        long waitUntil = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while(orderRepository.countByStatus(OrderStatus.PENDING) > 0 && System.nanoTime() < waitUntil){
+            Thread.sleep(100);
+        }
+        assertEquals(0, orderRepository.countByStatus(OrderStatus.PENDING));
+    }
+
+    /***
+     * Integration Test of pricing Orders from the prices of product-service. Orders are rejected while the prices
+     * are not loaded, for SKUs without price, whatever price the client sent, and for OrderLineItems without skuCode.
+     * Priced Orders are saved at the price of their SKU without the request being modified. Later changes are read
+     * page by page after the catalog version the prices are at, without streaming all Products again, unless
+     * product-service cannot tell the changes anymore. An SKU listed by several Products keeps a price until the last
+     * of them is deleted or moved to another skuCode
+     * @throws Exception if waiting for a refresh is interrupted
+     */
+    @Test
+    @DisplayName("Integration Test09 - Price Orders from Confirmed Prices Only")
+    public void shouldPriceOrdersFromConfirmedPricesOnly() throws Exception{
+        stock.setQuantity("PRICE-1", 100);
+        stock.setQuantity("PRICE-2", 100);
+        stock.setQuantity("PRICE-4", 100);
+        String productId = productServiceStub.putProduct(null, "PRICE-1", BigDecimal.valueOf(100));
+        ReflectionTestUtils.setField(productPriceCache, "enabled", true);
+        try{
+            assertPriceRejected(getOrderRequest(getLineItem("PRICE-1", 1)), "not confirmed");
+
+            refreshPrices();
+            OrderRequestDTO requestDTO = getOrderRequest(getLineItem("price-1", 1));
+            requestDTO.getOrderLineItemList().get(0).setPrice(null);
+            OrderResponseDTO responseDTO = orderService.createOrder(requestDTO, null).join();
+            assertEquals(0, BigDecimal.valueOf(100).compareTo(responseDTO.getOrderLineItemList().get(0).getPrice()));
+            assertNull(requestDTO.getOrderLineItemList().get(0).getPrice());
+            assertPriceRejected(getOrderRequest(getLineItem("PRICE-2", 1)), "PRICE-2 is not known");
+            assertPriceRejected(getOrderRequest(getLineItem(null, 1)), "without skuCode");
+
+            //three changes take two pages of changes
+            productServiceStub.putProduct(productId, "PRICE-1", BigDecimal.valueOf(120));
+            String secondProductId = productServiceStub.putProduct(null, "PRICE-2", BigDecimal.valueOf(100));
+            productServiceStub.putProduct(null, "PRICE-3", BigDecimal.valueOf(100));
+            refreshPrices();
+            assertPriceRejected(getOrderRequest(getLineItem("PRICE-1", 1)), "changed to 120");
+            orderService.createOrder(getOrderRequest(getLineItem("PRICE-2", 1)), null).join();
+            productServiceStub.deleteProduct(secondProductId);
+            refreshPrices();
+            assertPriceRejected(getOrderRequest(getLineItem("PRICE-2", 1)), "PRICE-2 is not known");
+            assertEquals(1, productServiceStub.getStreamCount());
+
+            productServiceStub.setHistoryLost(true);
+            productServiceStub.putProduct(secondProductId, "PRICE-2", BigDecimal.valueOf(100));
+            refreshPrices();
+            assertEquals(2, productServiceStub.getStreamCount());
+            orderService.createOrder(getOrderRequest(getLineItem("PRICE-2", 1)), null).join();
+
+            //Products sharing an SKU, the price last applied holds until its Product is gone
+            String sharedProductId = productServiceStub.putProduct(null, "PRICE-4", BigDecimal.valueOf(100));
+            String otherSharedProductId = productServiceStub.putProduct(null, "price-4", BigDecimal.valueOf(110));
+            refreshPrices();
+            assertPriceRejected(getOrderRequest(getLineItem("PRICE-4", 1)), "changed to 110");
+            productServiceStub.deleteProduct(otherSharedProductId);
+            refreshPrices();
+            orderService.createOrder(getOrderRequest(getLineItem("PRICE-4", 1)), null).join();
+            productServiceStub.putProduct(sharedProductId, "PRICE-5", BigDecimal.valueOf(100));
+            refreshPrices();
+            assertPriceRejected(getOrderRequest(getLineItem("PRICE-4", 1)), "PRICE-4 is not known");
+        }
+        finally{
+            productServiceStub.setHistoryLost(false);
+            ReflectionTestUtils.setField(productPriceCache, "enabled", false);
+        }
+    }
+
+    /***
+     * Integration Test of InventoryRequestCoalescer. Reservations are sent as soon as the batch is full, or once the
+     * window of the first of them elapsed, in one call whose results are fanned out to each caller. A failed call
+     * fails all its callers but counts once in the inventory circuit breaker. Batch sizes are published as metrics
+     * @throws Exception if waiting for the reservations fails
+     */
+    @Test
+    @DisplayName("Integration Test10 - Coalesce Reservations into Batch Calls")
+    public void shouldCoalesceReservationsIntoBatchCalls() throws Exception{
+        stock.setQuantity("COALESCE-1", 3);
+        Duration window = (Duration) ReflectionTestUtils.getField(inventoryRequestCoalescer, "window");
+        int maxBatchSize = (int) ReflectionTestUtils.getField(inventoryRequestCoalescer, "maxBatchSize");
+        DistributionSummary batchSizeSummary = meterRegistry.get("order.inventory.reserve.batch.size").summary();
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("inventory");
+        long batches = batchSizeSummary.count();
+        double reservations = batchSizeSummary.totalAmount();
+        ReflectionTestUtils.setField(inventoryRequestCoalescer, "window", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(inventoryRequestCoalescer, "maxBatchSize", 4);
+        try{
+            //the fourth reservation fills the batch long before the window elapsed, three of them are in stock
+            List<CompletableFuture<OrderInventoryDTO>> futures = IntStream.range(0, 4)
+                    .mapToObj(index -> inventoryRequestCoalescer.reserve(getOrderInventory("COALESCE-1", 1)))
+                    .toList();
+            int inStock = 0;
+            for(CompletableFuture<OrderInventoryDTO> future : futures){
+                inStock += future.get(10, TimeUnit.SECONDS).getOrderLineItemInventoryDTOList().get(0).getInStock() ? 1 : 0;
+            }
+            assertEquals(3, inStock);
+            assertEquals(0, stock.getQuantity("COALESCE-1"));
+            assertEquals(1, getInventoryRequestCount());
+            assertEquals(4, meterRegistry.get("order.inventory.reserve.batch.max.size").gauge().value());
+            assertEquals(window.toMillis(), meterRegistry.get("order.inventory.reserve.batch.window").gauge().value());
+
+            //a batch that is not filled is sent once the window elapsed
+            ReflectionTestUtils.setField(inventoryRequestCoalescer, "window", Duration.ofMillis(300));
+            long startedAt = System.nanoTime();
+            CompletableFuture<OrderInventoryDTO> first = inventoryRequestCoalescer.reserve(getOrderInventory("COALESCE-1", 1));
+            CompletableFuture<OrderInventoryDTO> second = inventoryRequestCoalescer.reserve(getOrderInventory("COALESCE-1", 1));
+            assertFalse(first.isDone());
+            assertFalse(first.get(10, TimeUnit.SECONDS).getOrderLineItemInventoryDTOList().get(0).getInStock());
+            assertFalse(second.get(10, TimeUnit.SECONDS).getOrderLineItemInventoryDTOList().get(0).getInStock());
+            assertTrue(System.nanoTime() - startedAt >= Duration.ofMillis(300).toNanos());
+            assertEquals(2, getInventoryRequestCount());
+
+            //one failed call fails every caller of the batch and is one failure of the circuit breaker
+            ReflectionTestUtils.setField(inventoryRequestCoalescer, "window", Duration.ofSeconds(30));
+            inventoryServiceStubs.forEach(stub -> stub.setFailing(true));
+            int failedCalls = circuitBreaker.getMetrics().getNumberOfFailedCalls();
+            futures = IntStream.range(0, 4)
+                    .mapToObj(index -> inventoryRequestCoalescer.reserve(getOrderInventory("COALESCE-1", 1)))
+                    .toList();
+            for(CompletableFuture<OrderInventoryDTO> future : futures){
+                CompletableFuture<OrderInventoryDTO> failed = future;
+                Exception exception = assertThrows(Exception.class, () -> failed.get(10, TimeUnit.SECONDS));
+                assertTrue(exception.getCause() instanceof InventoryServiceCallException);
+            }
+            assertEquals(3, getInventoryRequestCount());
+            assertEquals(failedCalls + 1, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+            assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+            assertEquals(batches + 3, batchSizeSummary.count());
+            assertEquals(reservations + 10, batchSizeSummary.totalAmount());
+        }
+        finally{
+            ReflectionTestUtils.setField(inventoryRequestCoalescer, "window", window);
+            ReflectionTestUtils.setField(inventoryRequestCoalescer, "maxBatchSize", maxBatchSize);
+        }
+    }
+
+    /***
+     * Integration Test of Orders created with an Idempotency-Key. A replay is answered from the response cache, and
+     * from the database once the cache is cleared. Replays arriving while the first request is in flight wait for
+     * its Order. An Order saved for the key by another order-service instance while the request was reserving wins,
+     * the reservation of the request is released. Whichever way a key is replayed, there is one Order, one
+     * reservation and one OutboxEvent for it
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test11 - Create One Order per Idempotency-Key")
+    public void shouldCreateOneOrderPerIdempotencyKey() throws Exception{
+        stock.setQuantity("IDEMPOTENT-1", 100);
+        OrderServiceImpl orderServiceImpl = AopTestUtils.getTargetObject(orderService);
+        Cache<?, ?> idempotentResponseCache =
+                (Cache<?, ?>) ReflectionTestUtils.getField(orderServiceImpl, "idempotentResponseCache");
+        double replays = meterRegistry.get("order.idempotency.replays").counter().count();
+
+        //replayed sequentially, from the cache and then from the database
+        OrderResponseDTO responseDTO = createOrder(getOrderRequest(getLineItem("IDEMPOTENT-1", 1)), "idempotent-1");
+        assertEquals(responseDTO.getOrderNumber(),
+                createOrder(getOrderRequest(getLineItem("IDEMPOTENT-1", 1)), "idempotent-1").getOrderNumber());
+        idempotentResponseCache.invalidateAll();
+        assertEquals(responseDTO.getOrderNumber(),
+                createOrder(getOrderRequest(getLineItem("IDEMPOTENT-1", 1)), "idempotent-1").getOrderNumber());
+        assertEquals(replays + 2, meterRegistry.get("order.idempotency.replays").counter().count());
+        assertEquals(1, countOrders("idempotent-1"));
+        assertEquals(1, stock.getReservationCount());
+        assertEquals(1, getInventoryRequestCount());
+        assertEquals(1, countOutboxEvents(responseDTO.getOrderNumber()));
+
+        //replayed while the first request is in flight
+        inventoryServiceStubs.forEach(stub -> stub.setLatency(requestNumber -> Duration.ofMillis(500)));
+        List<CompletableFuture<OrderResponseDTO>> futures = IntStream.range(0, 5)
+                .mapToObj(index -> orderService.createOrder(getOrderRequest(getLineItem("IDEMPOTENT-1", 1)),
+                        "idempotent-2"))
+                .toList();
+        Set<String> orderNumbers = futures
+                .stream()
+                .map(future -> future.join().getOrderNumber())
+                .collect(Collectors.toSet());
+        assertEquals(1, orderNumbers.size());
+        assertEquals(1, countOrders("idempotent-2"));
+        assertEquals(2, stock.getReservationCount());
+        assertEquals(2, getInventoryRequestCount());
+        assertEquals(1, countOutboxEvents(orderNumbers.iterator().next()));
+
+        //another instance saves an Order for the key while the request is reserving
+        CompletableFuture<OrderResponseDTO> racedFuture =
+                orderService.createOrder(getOrderRequest(getLineItem("IDEMPOTENT-1", 1)), "idempotent-3");
+        long waitUntil = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while(getInventoryRequestCount() < 3 && System.nanoTime() < waitUntil){
+            Thread.sleep(10);
+        }
+        OrderResponseDTO otherResponseDTO = orderServiceImpl.saveOrder(
+                getOrderRequest(getLineItem("IDEMPOTENT-1", 1)), List.of(BigDecimal.valueOf(100)), "idempotent-3",
+                UUID.randomUUID(), getOrderInventory("IDEMPOTENT-1", 1));
+        assertEquals(otherResponseDTO.getOrderNumber(), racedFuture.join().getOrderNumber());
+        assertEquals(1, countOrders("idempotent-3"));
+        assertEquals(1, countOutboxEvents(otherResponseDTO.getOrderNumber()));
+        waitUntil = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while(stock.getQuantity("IDEMPOTENT-1") != 98 && System.nanoTime() < waitUntil){
+            Thread.sleep(10);
+        }
+        assertEquals(98, stock.getQuantity("IDEMPOTENT-1"));
+        jdbcTemplate.update("delete from outbox_event");
+    }
+
+    /***
+     * Integration Test of an Order rejected by inventory-service. A 4xx answer fails the Order with 400 instead of
+     * accepting it from the availability snapshot, and is not a failure of the inventory circuit breaker
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test12 - Fail Orders Rejected by Inventory-Service")
+    public void shouldFailOrdersRejectedByInventoryService() throws Exception{
+        stock.setQuantity("REJECTED-1", 100);
+        createOrder(getOrderRequest(getLineItem("REJECTED-1", 1)), "rejected-1");
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("inventory");
+        int failedCalls = circuitBreaker.getMetrics().getNumberOfFailedCalls();
+
+        inventoryServiceStubs.forEach(stub -> stub.setRejecting(true));
+        performAsync(MockMvcRequestBuilders.post("/api/orders/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotency-Key", "rejected-2")
+                .content(objectMapper.writeValueAsString(getOrderRequest(getLineItem("REJECTED-1", 1)))))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        assertEquals(0, countOrders("rejected-2"));
+        assertEquals(99, stock.getQuantity("REJECTED-1"));
+        assertEquals(failedCalls, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        jdbcTemplate.update("delete from outbox_event");
+    }
+
+    /***
+     * Integration Test of creating a bulk of Orders. All Orders are reserved with one inventory-service call and
+     * accepted or rejected on their own, in the order of the requests. The Orders in stock are saved in chunks of
+     * save-chunk-size Orders, one transaction per chunk, each Order along with its OutboxEvent
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test13 - Create a Bulk of Orders with One Reservation Call")
+    public void shouldCreateABulkOfOrdersWithOneReservationCall() throws Exception{
+        stock.setQuantity("BULK-1", 100);
+        stock.setQuantity("BULK-2", 0);
+        OrderServiceImpl orderServiceImpl = AopTestUtils.getTargetObject(orderService);
+        int bulkSaveChunkSize = (int) ReflectionTestUtils.getField(orderServiceImpl, "bulkSaveChunkSize");
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        ReflectionTestUtils.setField(orderServiceImpl, "bulkSaveChunkSize", 3);
+        try{
+            List<OrderRequestDTO> requestDTOList = List.of(
+                    getOrderRequest(getLineItem("BULK-1", 1)),
+                    getOrderRequest(getLineItem("BULK-1", 1)),
+                    getOrderRequest(getLineItem("BULK-1", 1), getLineItem("BULK-2", 1)),
+                    getOrderRequest(getLineItem("BULK-1", 1)),
+                    getOrderRequest(getLineItem("BULK-1", 1)));
+            statistics.clear();
+            String responseString = performAsync(MockMvcRequestBuilders.post("/api/orders/bulk/")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(requestDTOList)))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            BulkOrderResultDTO[] results = objectMapper.readValue(responseString, BulkOrderResultDTO[].class);
+
+            assertEquals(requestDTOList.size(), results.length);
+            for(int index = 0; index < results.length; index++){
+                assertEquals(index, results[index].getIndex());
+                if(index == 2){
+                    assertFalse(results[index].getAccepted());
+                    assertEquals("Products Not in Stock", results[index].getMessage());
+                    assertNull(results[index].getOrder());
+                }
+                else{
+                    assertTrue(results[index].getAccepted());
+                    assertEquals(OrderStatus.CONFIRMED, results[index].getOrder().getStatus());
+                    assertEquals(1, countOutboxEvents(results[index].getOrder().getOrderNumber()));
+                }
+            }
+            assertEquals(1, getInventoryRequestCount());
+            assertEquals(96, stock.getQuantity("BULK-1"));
+            //four Orders in stock are saved in a chunk of three and a chunk of one
+            assertEquals(2, statistics.getTransactionCount());
+        }
+        finally{
+            ReflectionTestUtils.setField(orderServiceImpl, "bulkSaveChunkSize", bulkSaveChunkSize);
+        }
+        jdbcTemplate.update("delete from outbox_event");
+    }
+
+    /***
+     * Helper method to refresh the prices of ProductPriceCache and wait for the refresh to complete
+     * @throws InterruptedException if waiting for the refresh is interrupted
+     */
+    public void refreshPrices() throws InterruptedException {
+        long refreshedAt = (long) ReflectionTestUtils.getField(productPriceCache, "refreshedAt");
+        productPriceCache.refresh();
+        long waitUntil = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while((long) ReflectionTestUtils.getField(productPriceCache, "refreshedAt") == refreshedAt &&
+                System.nanoTime() < waitUntil){
+            Thread.sleep(10);
+        }
+        assertFalse(productPriceCache.isStale());
+    }
+
+    /***
+     * Helper method to assert that an Order is rejected for its prices
+     * @param requestDTO Order request
+     * @param message part of the message of the rejection
+     */
+    public void assertPriceRejected(OrderRequestDTO requestDTO, String message){
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> orderService.createOrder(requestDTO, null).join());
+        assertTrue(exception.getCause() instanceof InvalidOrderPriceException);
+        assertTrue(exception.getCause().getMessage().contains(message), exception.getCause().getMessage());
+    }
+
+    /***
+     * Helper method to create a Kafka consumer of OrderPlacedTopic reading from the beginning
+     * @return Consumer with String keys and values
+     */
+    public Consumer<String, String> createConsumer(){
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("outbox-test", "false", embeddedKafkaBroker);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return new DefaultKafkaConsumerFactory<>(consumerProps, new StringDeserializer(), new StringDeserializer())
+                .createConsumer();
+    }
+
+    /***
+     * Helper method to consume records until the expected keys have been seen or 30 seconds have passed
+     * @param consumer Consumer of OrderPlacedTopic
+     * @param expectedKeys keys to be waited for
+     * @return keys of the consumed records, the orderNumbers
+     */
+    public Set<String> consumeKeys(Consumer<String, String> consumer, Set<String> expectedKeys){
+        Set<String> keys = new HashSet<>();
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while(!keys.containsAll(expectedKeys) && System.nanoTime() < deadline){
+            for(ConsumerRecord<String, String> consumerRecord : KafkaTestUtils.getRecords(consumer, 1000)){
+                keys.add(consumerRecord.key());
+            }
+        }
+        return keys;
+    }
+
+    /***
+     * Helper method to write an OutboxEvent claimed by a relay
+     * @param orderNumber orderNumber of the event
+     * @param claimedAt time of the claim
+     */
+    public void insertOutboxEvent(String orderNumber, Instant claimedAt){
+        jdbcTemplate.update("insert into outbox_event (id, topic, order_number, created_at, claimed_at) " +
+                        "values (nextval('outbox_event_seq'), 'OrderPlacedTopic', ?, now(), ?)",
+                orderNumber, Timestamp.from(claimedAt));
+    }
+
+    /***
+     * Helper method to insert 200000 orderNumbers one batch after the other into a new table with a unique index,
+     * and drop the table
+     * @param table name of the table
+     * @param orderNumbers supplies the orderNumbers in insertion order
+     * @return size of the unique index in bytes
+     */
+    public long insertOrderNumbers(String table, Supplier<UUID> orderNumbers){
+        jdbcTemplate.execute("create table " + table + " (order_uuid uuid not null)");
+        jdbcTemplate.execute("create unique index ux_" + table + " on " + table + " (order_uuid)");
+        for(int batch = 0; batch < 200; batch++){
+            List<Object[]> batchArgs = IntStream.range(0, 1000)
+                    .mapToObj(index -> new Object[]{orderNumbers.get()})
+                    .toList();
+            jdbcTemplate.batchUpdate("insert into " + table + " (order_uuid) values (?)", batchArgs);
+        }
+        Long indexSize = jdbcTemplate.queryForObject("select pg_relation_size('ux_" + table + "')", Long.class);
+        jdbcTemplate.execute("drop table " + table);
+        return indexSize;
+    }
+
+    /***
+     * Helper method to check whether the inventory reservation of an Order is still pending
+     * @param orderNumber orderNumber of the Order
+     * @return true if pending
+     */
+    public boolean isReservationPending(String orderNumber){
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "select reservation_pending from orders where order_uuid = ?::uuid", Boolean.class, orderNumber));
+    }
+
+    /***
+     * Helper method to count the OutboxEvents written for an Order
+     * @param orderNumber orderNumber of the Order
+     * @return number of OutboxEvents
+     */
+    public int countOutboxEvents(String orderNumber){
+        return jdbcTemplate.queryForObject(
+                "select count(*) from outbox_event where order_number = ?", Integer.class, orderNumber);
+    }
+
+    /***
+     * Helper method to count the Orders saved for an Idempotency-Key
+     * @param idempotencyKey Idempotency-Key of the Orders
+     * @return number of Orders
+     */
+    public int countOrders(String idempotencyKey){
+        return jdbcTemplate.queryForObject(
+                "select count(*) from orders where idempotency_key = ?", Integer.class, idempotencyKey);
+    }
+
+    /***
+     * Helper method to create an Order through POST /api/orders/
+     * @param requestDTO Order request
+     * @return OrderResponseDTO of the created Order
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    public OrderResponseDTO createOrder(OrderRequestDTO requestDTO) throws Exception{
+        return createOrder(requestDTO, null);
+    }
+
+    /***
+     * Helper method to create an Order through POST /api/orders/ with an Idempotency-Key
+     * @param requestDTO Order request
+     * @param idempotencyKey Idempotency-Key header, null to send none
+     * @return OrderResponseDTO of the created Order
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    public OrderResponseDTO createOrder(OrderRequestDTO requestDTO, String idempotencyKey) throws Exception{
+        MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.post("/api/orders/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(requestDTO));
+        if(Objects.nonNull(idempotencyKey)){
+            requestBuilder.header("Idempotency-Key", idempotencyKey);
+        }
+        String responseString = performAsync(requestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(responseString, OrderResponseDTO.class);
+    }
+
+    /***
+     * Helper method to perform a request answered asynchronously and dispatch its result
+     * @param requestBuilder request to be performed
+     * @return ResultActions of the dispatched result
+     * @throws Exception MockMVC perform methods throw exception
+     */
+    public ResultActions performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception{
+        MvcResult mvcResult = mockMvc.perform(requestBuilder)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult));
+    }
+
+    /***
+     * Helper method to fetch the query plan of a statement
+     * @param sql statement to be explained
+     * @return query plan, one line per node
+     */
+    public String explain(String sql){
+        String plan = String.join("\n", jdbcTemplate.queryForList("explain " + sql, String.class));
+        log.info("Query plan of {}:\n{}", sql, plan);
+        return plan;
+    }
+
+    /***
+     * Helper method to build OrderRequestDTO
+     * @return Method return OrderRequestDTO built using parameters
+     */
+    public OrderRequestDTO getOrderRequest(OrderLineItemDTO... lineItems){
+        return OrderRequestDTO
+                .builder()
+                .orderLineItemList(List.of(lineItems))
+                .build();
+    }
+
+    /***
+     * Helper method to build OrderInventoryDTO of one SKU under a new reservation key
+     * @return Method return OrderInventoryDTO built using parameters
+     */
+    public OrderInventoryDTO getOrderInventory(String skuCode, int requiredQuantity){
+        return OrderInventoryDTO
+                .builder()
+                .reservationKey(UUID.randomUUID().toString())
+                .orderLineItemInventoryDTOList(List.of(OrderLineItemInventoryDTO
+                        .builder()
+                        .skuCode(skuCode)
+                        .requiredQuantity(requiredQuantity)
+                        .build()))
+                .build();
+    }
+
+    /***
+     * Helper method to count the requests answered by all inventory-service instances
+     * @return number of requests since the last reset
+     */
+    public int getInventoryRequestCount(){
+        return inventoryServiceStubs.stream().mapToInt(InventoryServiceStub::getRequestCount).sum();
+    }
+
+    /***
+     * Helper method to build a list of OrderLineItemDTO of the same SKU
+     * @return Method return array of OrderLineItemDTO built using parameters
+     */
+    public OrderLineItemDTO[] getLineItems(String skuCode, int count){
+        return IntStream.range(0, count).mapToObj(index -> getLineItem(skuCode, 1)).toArray(OrderLineItemDTO[]::new);
+    }
+
+    /***
+     * Helper method to build OrderLineItemDTO
+     * @return Method return OrderLineItemDTO built using parameters
+     */
+    public OrderLineItemDTO getLineItem(String skuCode, int quantity){
+        return OrderLineItemDTO
+                .builder()
+                .skuCode(skuCode)
+                .price(BigDecimal.valueOf(100))
+                .quantity(quantity)
+                .build();
+    }
+
+    /***
+     * Helper method to start the embedded PostgreSQL shared by all tests
+     * @return EmbeddedPostgres, stopped by its shutdown hook
+     */
+    private static EmbeddedPostgres startEmbeddedPostgres(){
+        try{
+            return EmbeddedPostgres.start();
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.learntocode.orderservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learntocode.orderservice.dto.OrderInventoryDTO;
+import com.learntocode.orderservice.dto.OrderLineItemDTO;
+import com.learntocode.orderservice.dto.OrderLineItemInventoryDTO;
+import com.learntocode.orderservice.dto.OrderRequestDTO;
+import com.learntocode.orderservice.dto.OrderResponseDTO;
+import com.learntocode.orderservice.service.InventoryClient;
+import com.learntocode.orderservice.service.OrderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/***
+ * Load tests of order-service against slow inventory-service instances, over HTTP on a Tomcat with few threads.
+ * The concurrency limits are disabled, so throughput and latency are those of the order pipeline itself. Results
+ * are logged as benchmarks. The load balancer keeps the latency of the instances across tests, tests run in the order
+ * of their names so that each one starts from the latency left by the previous one. Excluded from the default build,
+ * run with mvn test -Pload-tests
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@EmbeddedKafka(topics = "OrderPlacedTopic", bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+@Import(OrderServiceLoadTests.BlockingOrderController.class)
+@TestMethodOrder(MethodOrderer.DisplayName.class)
+@Slf4j
+public class OrderServiceLoadTests {
+    private static final int SERVLET_THREADS = 4;
+
+    /* PostgreSQL started from the binaries of the embedded-postgres test dependency, no Docker needed */
+    static EmbeddedPostgres embeddedPostgres = startEmbeddedPostgres();
+    /* Two inventory-service instances sharing their stock, registered with the simple discovery client */
+    static InventoryServiceStub.Stock stock = new InventoryServiceStub.Stock();
+    static List<InventoryServiceStub> inventoryServiceStubs = List.of(
+            new InventoryServiceStub(stock, new ObjectMapper()),
+            new InventoryServiceStub(stock, new ObjectMapper()));
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private InventoryClient inventoryClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry dynamicPropertyRegistry){
+        dynamicPropertyRegistry.add("spring.datasource.url", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+        dynamicPropertyRegistry.add("spring.datasource.username", () -> "postgres");
+        dynamicPropertyRegistry.add("spring.datasource.password", () -> "postgres");
+        dynamicPropertyRegistry.add("spring.jpa.show-sql", () -> false);
+        dynamicPropertyRegistry.add("eureka.client.enabled", () -> false);
+        dynamicPropertyRegistry.add("spring.zipkin.enabled", () -> false);
+        dynamicPropertyRegistry.add("order.pricing.enabled", () -> false);
+        dynamicPropertyRegistry.add("order.concurrency-limit.enabled", () -> false);
+        dynamicPropertyRegistry.add("server.tomcat.threads.max", () -> SERVLET_THREADS);
+        dynamicPropertyRegistry.add("server.tomcat.threads.min-spare", () -> SERVLET_THREADS);
+        for(int index = 0; index < inventoryServiceStubs.size(); index++){
+            String uri = inventoryServiceStubs.get(index).getUri();
+            dynamicPropertyRegistry.add(
+                    "spring.cloud.discovery.client.simple.instances.inventory-service[" + index + "].uri", () -> uri);
+        }
+    }
+
+    @AfterEach
+    public void resetInventoryService(){
+        stock.reset();
+        inventoryServiceStubs.forEach(InventoryServiceStub::reset);
+    }
+
+    /***
+     * Load Test of POST /api/orders/ with 200 ms of inventory-service latency. The same Orders are sent to the
+     * endpoint and to an endpoint blocking its servlet thread until the Order is placed, the way createOrder used to.
+     * With 4 servlet threads the blocking endpoint places at most 20 Orders per second, the asynchronous endpoint has
+     * to place several times as many. Throughput and latency of both are logged as a benchmark
+     * @throws Exception HTTP client methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test01 - Create Orders beyond the Servlet Threads")
+    public void shouldCreateOrdersBeyondTheServletThreads() throws Exception{
+        stock.setQuantity("LOAD-1", 1_000_000);
+        inventoryServiceStubs.forEach(stub -> stub.setLatency(requestNumber -> Duration.ofMillis(200)));
+        //warm up both paths
+        run("/test/orders/blocking/", 20, 4);
+        run("/api/orders/", 20, 4);
+
+        LoadResult blocking = run("/test/orders/blocking/", 200, 64);
+        LoadResult nonBlocking = run("/api/orders/", 200, 64);
+        log.info("Blocking createOrder: {}", blocking);
+        log.info("Non-blocking createOrder: {}", nonBlocking);
+        assertEquals(200, blocking.succeeded());
+        assertEquals(200, nonBlocking.succeeded());
+        assertTrue(blocking.throughput() < SERVLET_THREADS / 0.2 * 1.1,
+                "Blocking endpoint is not bound by the servlet threads: " + blocking);
+        assertTrue(nonBlocking.throughput() > 2.5 * blocking.throughput(),
+                "Non-blocking endpoint is bound by the servlet threads: " + nonBlocking);
+    }
+
+    /***
+     * Simulation Test of inventory-service routing with one instance answering in 5 ms and one in 250 ms. The
+     * same reservations are sent round-robin over both instances, the way the default load balancer routes them, and
+     * through lb://inventory-service. Round-robin sends half of them to the slow instance, LatencyAwareLoadBalancer
+     * has to send only a small share of them there. The share is counted by the instances rather than derived from
+     * the latency, which depends on the host. Latencies of both are logged as a benchmark
+     * @throws Exception HTTP client methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test02 - Route Reservations around a Slow Instance")
+    public void shouldRouteReservationsAroundASlowInstance() throws Exception{
+        stock.setQuantity("LOAD-2", 1_000_000);
+        inventoryServiceStubs.get(0).setLatency(requestNumber -> Duration.ofMillis(5));
+        inventoryServiceStubs.get(1).setLatency(requestNumber -> Duration.ofMillis(250));
+        List<WebClient> instanceClients = inventoryServiceStubs
+                .stream()
+                .map(stub -> WebClient.create(stub.getUri()))
+                .toList();
+        AtomicInteger nextInstance = new AtomicInteger();
+        //warm up both paths, the load balancer samples both instances
+        measure(20, 4, () -> inventoryClient.reserve(getReservation("LOAD-2")).thenApply(Objects::nonNull));
+
+        InventoryServiceStub slowStub = inventoryServiceStubs.get(1);
+        int slowRequests = slowStub.getRequestCount();
+        LoadResult roundRobin = measure(400, 8, () -> instanceClients
+                .get(nextInstance.getAndIncrement() % instanceClients.size())
+                .post()
+                .uri("/api/inventories/reserve/")
+                .bodyValue(getReservation("LOAD-2"))
+                .retrieve()
+                .bodyToMono(OrderInventoryDTO.class)
+                .map(Objects::nonNull)
+                .toFuture());
+        int roundRobinSlowRequests = slowStub.getRequestCount() - slowRequests;
+        slowRequests = slowStub.getRequestCount();
+        LoadResult latencyAware = measure(400, 8,
+                () -> inventoryClient.reserve(getReservation("LOAD-2")).thenApply(Objects::nonNull));
+        int latencyAwareSlowRequests = slowStub.getRequestCount() - slowRequests;
+        log.info("Round-robin reservations: {}, {} of them on the slow instance", roundRobin, roundRobinSlowRequests);
+        log.info("Latency-aware reservations: {}, {} of them on the slow instance", latencyAware,
+                latencyAwareSlowRequests);
+        assertEquals(400, roundRobin.succeeded());
+        assertEquals(400, latencyAware.succeeded());
+        assertEquals(200, roundRobinSlowRequests);
+        assertTrue(latencyAwareSlowRequests < 40,
+                "Latency-aware routing did not avoid the slow instance: " + latencyAwareSlowRequests + " of 400");
+    }
+
+    /***
+     * Load Test of hedged reservations with both inventory-service instances stalling for a second on every 25th
+     * request. Without hedging the stalls set the p99, with hedging a stalled reservation is sent again to the other
+     * instance and the first answer wins, which keeps the p99 a fraction of the stall. The stalled attempt is still
+     * applied by its instance once the stall is over, the reservation key makes sure every reservation takes the
+     * stock once. Both are logged as a benchmark
+     * @throws Exception HTTP client methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test03 - Hedge Stalled Reservations without Reserving Twice")
+    public void shouldHedgeStalledReservationsWithoutReservingTwice() throws Exception{
+        stock.setQuantity("LOAD-3", 1_000_000);
+        inventoryServiceStubs.forEach(stub -> stub.setLatency(requestNumber ->
+                Duration.ofMillis(requestNumber % 25 == 0 ? 1000 : 5)));
+        //warm up, hedging starts once enough reservations have been timed
+        measure(120, 4, () -> inventoryClient.reserve(getReservation("LOAD-3")).thenApply(Objects::nonNull));
+
+        LoadResult unhedged = measure(300, 8,
+                () -> inventoryClient.reserve(getReservation("LOAD-3")).thenApply(Objects::nonNull));
+        double hedges = meterRegistry.get("order.inventory.hedges").counter().count();
+        double hedgeWins = meterRegistry.get("order.inventory.hedge.wins").counter().count();
+        LoadResult hedged;
+        ReflectionTestUtils.setField(inventoryClient, "hedgingEnabled", true);
+        try{
+            hedged = measure(300, 8,
+                    () -> inventoryClient.reserve(getReservation("LOAD-3")).thenApply(Objects::nonNull));
+        }
+        finally{
+            ReflectionTestUtils.setField(inventoryClient, "hedgingEnabled", false);
+        }
+        //attempts that lost to their hedge are applied by their instance once the stall is over
+        Thread.sleep(1500);
+        log.info("Unhedged reservations: {}", unhedged);
+        log.info("Hedged reservations: {}", hedged);
+        assertEquals(300, unhedged.succeeded());
+        assertEquals(300, hedged.succeeded());
+        assertTrue(unhedged.p99Millis() >= 1000, "Reservations did not stall: " + unhedged);
+        assertTrue(hedged.p99Millis() < unhedged.p99Millis() / 2, "Stalled reservations were not hedged: " + hedged);
+        assertTrue(meterRegistry.get("order.inventory.hedges").counter().count() > hedges);
+        assertTrue(meterRegistry.get("order.inventory.hedge.wins").counter().count() > hedgeWins);
+        assertEquals(720, stock.getReservationCount());
+        assertEquals(1_000_000 - 720, stock.getQuantity("LOAD-3"));
+    }
+
+    /***
+     * Helper method to send Orders with a fixed number of requests in flight
+     * @param path endpoint creating the Orders
+     * @param requests number of Orders
+     * @param concurrency number of requests in flight
+     * @return LoadResult of the run
+     * @throws Exception HTTP client and ObjectMapper methods throw exception
+     */
+    public LoadResult run(String path, int requests, int concurrency) throws Exception{
+        String requestString = objectMapper.writeValueAsString(getOrderRequest(getLineItem("LOAD-1", 1)));
+        return measure(requests, concurrency, () -> httpClient
+                .sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString(requestString))
+                                .build(),
+                        HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> response.statusCode() == 200));
+    }
+
+    /***
+     * Helper method to make calls with a fixed number of calls in flight and measure them
+     * @param requests number of calls
+     * @param concurrency number of calls in flight
+     * @param call makes one call, completed with true if it succeeded
+     * @return LoadResult of the run
+     * @throws InterruptedException if interrupted while waiting for a call to complete
+     */
+    public static LoadResult measure(int requests, int concurrency, Supplier<CompletableFuture<Boolean>> call)
+            throws InterruptedException{
+        Semaphore inFlight = new Semaphore(concurrency);
+        long[] latencies = new long[requests];
+        boolean[] succeeded = new boolean[requests];
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        long startedAt = System.nanoTime();
+        for(int index = 0; index < requests; index++){
+            inFlight.acquire();
+            int request = index;
+            long sentAt = System.nanoTime();
+            futures.add(call.get()
+                    .whenComplete((success, exception) -> {
+                        latencies[request] = System.nanoTime() - sentAt;
+                        succeeded[request] = Boolean.TRUE.equals(success);
+                        inFlight.release();
+                    }));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(exception -> null).join();
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        Arrays.sort(latencies);
+        int succeededCount = 0;
+        for(boolean success : succeeded){
+            succeededCount += success ? 1 : 0;
+        }
+        return new LoadResult(succeededCount,
+                requests / seconds,
+                latencies[requests / 2] / 1e6,
+                latencies[(int) Math.ceil(requests * 0.99) - 1] / 1e6);
+    }
+
+    /***
+     * Helper method to build the reservation of one unit of a SKU under a new key
+     * @param skuCode skuCode of the product
+     * @return OrderInventoryDTO
+     */
+    public OrderInventoryDTO getReservation(String skuCode){
+        return OrderInventoryDTO
+                .builder()
+                .reservationKey(UUID.randomUUID().toString())
+                .orderLineItemInventoryDTOList(List.of(OrderLineItemInventoryDTO
+                        .builder()
+                        .skuCode(skuCode)
+                        .requiredQuantity(1)
+                        .build()))
+                .build();
+    }
+
+    /***
+     * Helper method to build OrderRequestDTO
+     * @return Method return OrderRequestDTO built using parameters
+     */
+    public OrderRequestDTO getOrderRequest(OrderLineItemDTO... lineItems){
+        return OrderRequestDTO
+                .builder()
+                .orderLineItemList(List.of(lineItems))
+                .build();
+    }
+
+    /***
+     * Helper method to build OrderLineItemDTO
+     * @return Method return OrderLineItemDTO built using parameters
+     */
+    public OrderLineItemDTO getLineItem(String skuCode, int quantity){
+        return OrderLineItemDTO
+                .builder()
+                .skuCode(skuCode)
+                .price(BigDecimal.valueOf(100))
+                .quantity(quantity)
+                .build();
+    }
+
+    /***
+     * Helper method to start the embedded PostgreSQL shared by all tests
+     * @return EmbeddedPostgres, stopped by its shutdown hook
+     */
+    private static EmbeddedPostgres startEmbeddedPostgres(){
+        try{
+            return EmbeddedPostgres.start();
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /***
+     * Calls succeeded, throughput in calls per second, and median and 99th percentile latency in milliseconds of a run
+     */
+    public record LoadResult(int succeeded, double throughput, double medianMillis, double p99Millis) {
+        @Override
+        public String toString(){
+            return String.format("%d succeeded, %.1f calls/s, median %.0f ms, p99 %.0f ms",
+                    succeeded, throughput, medianMillis, p99Millis);
+        }
+    }
+
+    /***
+     * Places Orders the way createOrder did before it was asynchronous, holding the servlet thread until the Order
+     * is placed. Registered for the load tests only
+     */
+    @RequestMapping("/test/orders")
+    public static class BlockingOrderController {
+        @Autowired
+        private OrderService orderService;
+
+        @PostMapping("/blocking/")
+        @ResponseBody
+        public OrderResponseDTO createOrder(@RequestBody OrderRequestDTO requestDTO) {
+            return orderService.createOrder(requestDTO, null).join();
+        }
+    }
+}
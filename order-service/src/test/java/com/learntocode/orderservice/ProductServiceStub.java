@@ -0,0 +1,168 @@
+package com.learntocode.orderservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learntocode.orderservice.dto.ProductChangeDTO;
+import com.learntocode.orderservice.dto.ProductPriceDTO;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Stand-in of a product-service instance for order-service tests, served by the JDK HTTP server. It answers the
+ * product listing, tagged with the catalog version, the listing streamed as newline delimited JSON and the changes
+ * of Products after a catalog version. Catalog versions are made up the way product-service makes them, seconds
+ * since the epoch in the upper 32 bits and a counter in the lower ones
+ */
+public class ProductServiceStub {
+    private final HttpServer httpServer;
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final ObjectMapper objectMapper;
+    private final Map<String, ProductPriceDTO> products = new LinkedHashMap<>();
+    private final List<ProductChangeDTO> changes = new ArrayList<>();
+    private final AtomicInteger streamCount = new AtomicInteger();
+    private long catalogVersion = System.currentTimeMillis() / 1000 << 32;
+    private volatile boolean historyLost;
+
+    public ProductServiceStub(ObjectMapper objectMapper){
+        this.objectMapper = objectMapper;
+        try{
+            httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 100);
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception);
+        }
+        httpServer.setExecutor(executorService);
+        httpServer.createContext("/api/products/changes", this::handleChanges);
+        httpServer.createContext("/api/products/", this::handleListing);
+        httpServer.start();
+    }
+
+    /***
+     * Method to get the URI the instance is registered under
+     * @return URI of the instance
+     */
+    public String getUri(){
+        return "http://localhost:" + httpServer.getAddress().getPort();
+    }
+
+    /***
+     * Method to create or change a Product
+     * @param id of the Product, null to create a new one
+     * @param skuCode skuCode of the Product
+     * @param price price of the Product
+     * @return id of the Product
+     */
+    public synchronized String putProduct(String id, String skuCode, BigDecimal price){
+        String productId = Objects.isNull(id) ? UUID.randomUUID().toString() : id;
+        ProductPriceDTO productPriceDTO = ProductPriceDTO.builder().id(productId).skuCode(skuCode).price(price).build();
+        products.put(productId, productPriceDTO);
+        changes.add(ProductChangeDTO.builder().id(productId).deleted(false).product(productPriceDTO)
+                .catalogVersion(Long.toHexString(++catalogVersion)).build());
+        return productId;
+    }
+
+    /***
+     * Method to delete a Product
+     * @param id of the Product
+     */
+    public synchronized void deleteProduct(String id){
+        products.remove(id);
+        changes.add(ProductChangeDTO.builder().id(id).deleted(true)
+                .catalogVersion(Long.toHexString(++catalogVersion)).build());
+    }
+
+    /***
+     * Method to make the instance answer requests for changes with 410, the way product-service does once the
+     * changes have been dropped from the oplog
+     * @param historyLost true to answer 410
+     */
+    public void setHistoryLost(boolean historyLost){
+        this.historyLost = historyLost;
+    }
+
+    /***
+     * Method to get the number of times all Products have been streamed
+     * @return number of streamed listings
+     */
+    public int getStreamCount(){
+        return streamCount.get();
+    }
+
+    /***
+     * Helper method to answer the listing, streamed with Accept: application/x-ndjson, otherwise its first Product
+     * tagged with the catalog version
+     * @param exchange HTTP exchange
+     * @throws IOException if the exchange fails
+     */
+    private void handleListing(HttpExchange exchange) throws IOException {
+        try(exchange){
+            byte[] response;
+            String accept = Objects.toString(exchange.getRequestHeaders().getFirst("Accept"), "");
+            synchronized(this){
+                if(accept.contains("application/x-ndjson")){
+                    streamCount.incrementAndGet();
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    for(ProductPriceDTO productPriceDTO : products.values()){
+                        outputStream.write(objectMapper.writeValueAsBytes(productPriceDTO));
+                        outputStream.write('\n');
+                    }
+                    response = outputStream.toByteArray();
+                    exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+                }
+                else{
+                    response = objectMapper.writeValueAsBytes(products.values().stream().limit(1).toList());
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.getResponseHeaders().add("ETag", "\"" + Long.toHexString(catalogVersion) + "\"");
+                }
+            }
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+        }
+    }
+
+    /***
+     * Helper method to answer the changes after the catalog version given by since, at most size of them
+     * @param exchange HTTP exchange
+     * @throws IOException if the exchange fails
+     */
+    private void handleChanges(HttpExchange exchange) throws IOException {
+        try(exchange){
+            if(historyLost){
+                exchange.sendResponseHeaders(410, -1);
+                return;
+            }
+            Map<String, String> parameters = new LinkedHashMap<>();
+            for(String parameter : exchange.getRequestURI().getQuery().split("&")){
+                String[] nameAndValue = parameter.split("=", 2);
+                parameters.put(nameAndValue[0], nameAndValue[1]);
+            }
+            long since = Long.parseUnsignedLong(parameters.get("since"), 16);
+            int size = Integer.parseInt(parameters.get("size"));
+            byte[] response;
+            synchronized(this){
+                response = objectMapper.writeValueAsBytes(changes
+                        .stream()
+                        .filter(changeDTO -> Long.parseUnsignedLong(changeDTO.getCatalogVersion(), 16) > since)
+                        .limit(size)
+                        .toList());
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.learntocode.productservice.configuration;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductCacheConfig {
+    /***
+     * Container running the MongoDB change stream subscriptions, started and stopped with the application context
+     * @param mongoTemplate MongoTemplate the change streams are opened with
+     * @return MessageListenerContainer
+     */
+    @Bean
+    public MessageListenerContainer messageListenerContainer(MongoTemplate mongoTemplate){
+        return new DefaultMessageListenerContainer(mongoTemplate);
+    }
+}
@@ -0,0 +1,39 @@
+package com.learntocode.productservice.configuration;
+
+import com.learntocode.productservice.model.Product;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/***
+ * Migrates Products saved by earlier versions of product-service. Every step only touches documents that have not
+ * been migrated yet, so the migration is a no-op once done
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSchemaMigration implements ApplicationRunner {
+    private final MongoTemplate mongoTemplate;
+
+    /***
+     * Products saved before the version field was introduced get version 0. Saving a Product without version
+     * would otherwise insert it as a new document instead of updating it
+     * @param args application arguments
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        long versionedProducts = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("version").exists(false)),
+                Update.update("version", 0L),
+                Product.class).getModifiedCount();
+        if(versionedProducts > 0){
+            log.info("Populated version of {} Products", versionedProducts);
+        }
+    }
+}
@@ -1,21 +1,39 @@
 package com.learntocode.productservice.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learntocode.productservice.dto.ProductBatchItemDTO;
+import com.learntocode.productservice.dto.ProductBatchRequestDTO;
+import com.learntocode.productservice.dto.ProductChangeDTO;
 import com.learntocode.productservice.dto.ProductRequestDTO;
 import com.learntocode.productservice.dto.ProductResponseDTO;
 import com.learntocode.productservice.dto.ProductUpdateRequestDTO;
+import com.learntocode.productservice.exception.CatalogHistoryLostException;
+import com.learntocode.productservice.exception.InvalidBatchRequestException;
 import com.learntocode.productservice.exception.ProductNotFoundException;
 import com.learntocode.productservice.service.ProductService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/api/products")
 @RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ProductController {
     private final ProductService productService;
+    private final ObjectMapper objectMapper;
 
     /***
      * Endpoint to create Product
@@ -29,24 +47,134 @@ public class ProductController {
     }
 
     /***
-     * Endpoint to get list of all Products
-     * @return List of ProductResponseDTO containing all products
+     * Endpoint to get list of all Products. When afterId or size is given, a single page ordered by id is
+     * returned, the id of the last Product of a page is the afterId of the next page. The listing is tagged with the
+     * catalog version, a request whose If-None-Match still holds it is answered 304 before the listing is read
+     * @param afterId id of the last Product of the previous page
+     * @param size maximum number of Products in the page
+     * @param webRequest checked for If-None-Match
+     * @return ResponseEntity wrapping List of ProductResponseDTO containing all products, null if not modified
      */
     @GetMapping("/")
-    @ResponseStatus(HttpStatus.OK)
-    public List<ProductResponseDTO> getAllProducts(){
-        return productService.getAllProducts();
+    public ResponseEntity<List<ProductResponseDTO>> getAllProducts(
+            @RequestParam(value = "afterId", required = false) String afterId,
+            @RequestParam(value = "size", required = false) Integer size,
+            WebRequest webRequest){
+        Long catalogVersion = productService.getCatalogVersion();
+        String eTag = Objects.isNull(catalogVersion) ? null : "\"" + Long.toHexString(catalogVersion) + "\"";
+        if(Objects.nonNull(eTag) && webRequest.checkNotModified(eTag)){
+            return null;
+        }
+        List<ProductResponseDTO> responseDTOList = Objects.isNull(afterId) && Objects.isNull(size) ?
+                productService.getAllProducts() :
+                productService.getProductsPage(afterId, size);
+        return withETag(eTag, responseDTOList);
     }
 
     /***
-     * Endpoint to get Product based on id
+     * Endpoint to get the changes of Products after a catalog version, so that a copy of the catalog is kept up to
+     * date without reading it again. The catalog version of the last change is the since of the next page
+     * @param since catalog version, the ETag of the listing without quotes or the catalog version of a change
+     * @param size maximum number of changes
+     * @return List of ProductChangeDTO in the order the changes were made
+     * @throws CatalogHistoryLostException is thrown if the changes cannot be read anymore, the catalog has to be read
+     * again
+     */
+    @GetMapping("/changes")
+    public List<ProductChangeDTO> getProductChanges(@RequestParam("since") String since,
+                                                    @RequestParam(value = "size", required = false) Integer size)
+            throws CatalogHistoryLostException {
+        return productService.getProductChanges(since, size);
+    }
+
+    /***
+     * Endpoint to stream all Products as newline delimited JSON, selected with Accept: application/x-ndjson.
+     * Each Product is written to the response as soon as it is read
+     * @return StreamingResponseBody writing one ProductResponseDTO per line
+     */
+    @GetMapping(value = "/", produces = "application/x-ndjson")
+    public StreamingResponseBody streamAllProducts(){
+        return outputStream -> productService.streamAllProducts(responseDTO -> {
+            try{
+                outputStream.write(objectMapper.writeValueAsBytes(responseDTO));
+                outputStream.write('\n');
+            }
+            catch(IOException exception){
+                throw new UncheckedIOException(exception);
+            }
+        });
+    }
+
+    /***
+     * Endpoint to import Products from a newline delimited JSON body, one ProductUpdateRequestDTO per line. Records
+     * with an id are upserted, records without id are created. The body is read as it arrives and the outcome of
+     * every record is streamed back as newline delimited JSON once its batch is written. The import runs on the
+     * request thread so that a long import is not cut short by the async request timeout
+     * @param inputStream request body
+     * @param response receives one ProductImportResultDTO per line
+     * @throws IOException is thrown if the request body cannot be read or the response cannot be written
+     */
+    @PostMapping(value = "/import/", consumes = "application/x-ndjson")
+    public void importProducts(InputStream inputStream, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType("application/x-ndjson");
+        OutputStream outputStream = response.getOutputStream();
+        try{
+            productService.importProducts(inputStream, resultDTO -> {
+                try{
+                    outputStream.write(objectMapper.writeValueAsBytes(resultDTO));
+                    outputStream.write('\n');
+                }
+                catch(IOException exception){
+                    throw new UncheckedIOException(exception);
+                }
+            });
+        }
+        catch(UncheckedIOException exception){
+            throw exception.getCause();
+        }
+        outputStream.flush();
+    }
+
+    /***
+     * Endpoint to search Products by the terms of their name and description. Products containing all terms
+     * match, the last term also matching as a prefix
+     * @param query search terms
+     * @param size maximum number of Products returned
+     * @return List of ProductResponseDTO of the matching Products, best match first
+     */
+    @GetMapping("/search")
+    public List<ProductResponseDTO> searchProducts(@RequestParam("q") String query,
+                                                   @RequestParam(value = "size", required = false) Integer size){
+        return productService.searchProducts(query, size);
+    }
+
+    /***
+     * Endpoint to get the Products of several ids in one request. Ids that are not found are reported in their item
+     * instead of failing the request
+     * @param requestDTO ids of the Products, up to the configured maximum, and the fields to be returned
+     * @return List of ProductBatchItemDTO, one per requested id in the order of the request
+     * @throws InvalidBatchRequestException is thrown if no id, too many ids or an unknown field is requested
+     */
+    @PostMapping("/batch/")
+    public List<ProductBatchItemDTO> getProductsByIds(@RequestBody ProductBatchRequestDTO requestDTO)
+            throws InvalidBatchRequestException {
+        return productService.getProductsByIds(requestDTO);
+    }
+
+    /***
+     * Endpoint to get Product based on id. The Product is tagged with its version, a request whose If-None-Match
+     * still holds it is answered 304 without body
      * @param id of the Product
-     * @return ProductResponseDTO containing the Product details
+     * @return ResponseEntity wrapping ProductResponseDTO containing the Product details
      * @throws ProductNotFoundException is thrown if Product is not found
      */
     @GetMapping("/{id}")
-    public ProductResponseDTO getProductById(@PathVariable("id") String id) throws ProductNotFoundException {
-        return productService.getProductById(id);
+    public ResponseEntity<ProductResponseDTO> getProductById(@PathVariable("id") String id)
+            throws ProductNotFoundException {
+        ProductResponseDTO responseDTO = productService.getProductById(id);
+        String eTag = Objects.isNull(responseDTO.getVersion()) ? null : "\"" + responseDTO.getVersion() + "\"";
+        return withETag(eTag, responseDTO);
     }
 
     /***
@@ -69,4 +197,19 @@ public class ProductController {
     public void deleteProduct(@PathVariable("id") String id) throws ProductNotFoundException {
         productService.deleteProduct(id);
     }
+
+    /***
+     * Helper method to build a 200 response tagged with the ETag. Spring answers 304 without writing the body if the
+     * ETag matches the If-None-Match of the request
+     * @param eTag strong ETag, no ETag is sent if null
+     * @param body response body
+     * @return ResponseEntity
+     */
+    private <T> ResponseEntity<T> withETag(String eTag, T body){
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if(Objects.nonNull(eTag)){
+            builder.eTag(eTag);
+        }
+        return builder.body(body);
+    }
 }
@@ -0,0 +1,103 @@
+package com.learntocode.productservice.controller;
+
+import com.learntocode.productservice.dto.ProductRequestDTO;
+import com.learntocode.productservice.dto.ProductResponseDTO;
+import com.learntocode.productservice.dto.ProductUpdateRequestDTO;
+import com.learntocode.productservice.service.ReactiveProductService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+
+/***
+ * ProductController of the reactive web stack, serving the CRUD part of the REST contract on WebFlux. Search, batch
+ * lookup, import, changes and the catalog version ETag of the listing are served by ProductController only. Failures
+ * are handled by ProductExceptionHandler as on the servlet stack
+ */
+@RestController
+@RequestMapping("/api/products")
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductController {
+    private final ReactiveProductService reactiveProductService;
+
+    /***
+     * Endpoint to create Product
+     * @param requestDTO contains Product details to be saved
+     * @return Mono of ProductResponseDTO contains the saved Product details
+     */
+    @PostMapping("/")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<ProductResponseDTO> createProduct(@RequestBody ProductRequestDTO requestDTO){
+        return reactiveProductService.createProduct(requestDTO);
+    }
+
+    /***
+     * Endpoint to get list of all Products. When afterId or size is given, a single page ordered by id is
+     * returned, the id of the last Product of a page is the afterId of the next page
+     * @param afterId id of the last Product of the previous page
+     * @param size maximum number of Products in the page
+     * @return Flux of ProductResponseDTO written as a JSON array
+     */
+    @GetMapping("/")
+    @ResponseStatus(HttpStatus.OK)
+    public Flux<ProductResponseDTO> getAllProducts(@RequestParam(value = "afterId", required = false) String afterId,
+                                                   @RequestParam(value = "size", required = false) Integer size){
+        if(Objects.isNull(afterId) && Objects.isNull(size)){
+            return reactiveProductService.getAllProducts();
+        }
+        return reactiveProductService.getProductsPage(afterId, size);
+    }
+
+    /***
+     * Endpoint to stream all Products as newline delimited JSON, selected with Accept: application/x-ndjson.
+     * Products are read from MongoDB as fast as the client consumes them
+     * @return Flux of ProductResponseDTO written one per line
+     */
+    @GetMapping(value = "/", produces = "application/x-ndjson")
+    public Flux<ProductResponseDTO> streamAllProducts(){
+        return reactiveProductService.streamAllProducts();
+    }
+
+    /***
+     * Endpoint to get Product based on id. The Product is tagged with its version, a request whose If-None-Match
+     * still holds it is answered 304 without body
+     * @param id of the Product
+     * @return Mono of ResponseEntity wrapping ProductResponseDTO containing the Product details
+     */
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<ProductResponseDTO>> getProductById(@PathVariable("id") String id){
+        return reactiveProductService.getProductById(id).map(responseDTO -> {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+            if(Objects.nonNull(responseDTO.getVersion())){
+                builder.eTag("\"" + responseDTO.getVersion() + "\"");
+            }
+            return builder.body(responseDTO);
+        });
+    }
+
+    /***
+     * Endpoint to update Product details
+     * @param requestDTO containing the Product details that need to be updated
+     * @return Mono of ProductResponseDTO containing the Product details
+     */
+    @PatchMapping("/")
+    public Mono<ProductResponseDTO> updateProduct(@RequestBody ProductUpdateRequestDTO requestDTO){
+        return reactiveProductService.updateProduct(requestDTO);
+    }
+
+    /***
+     * Endpoint to delete Product
+     * @param id of the Product to be deleted
+     * @return Mono completing once the Product is deleted
+     */
+    @DeleteMapping("/{id}")
+    public Mono<Void> deleteProduct(@PathVariable("id") String id){
+        return reactiveProductService.deleteProduct(id);
+    }
+}
@@ -0,0 +1,25 @@
+package com.learntocode.productservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/***
+ * Result of one id of a batch lookup. Fields not requested and the fields of a Product not found are left out
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductBatchItemDTO {
+    private String id;
+    private Boolean found;
+    private String name;
+    private String description;
+    private BigDecimal price;
+}
@@ -0,0 +1,23 @@
+package com.learntocode.productservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/***
+ * Change of one Product since a catalog version, the Product as it is now or its deletion. The catalog version of
+ * the change is the one to ask for the changes after it
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductChangeDTO {
+    private String id;
+    private Boolean deleted;
+    private ProductResponseDTO product;
+    private String catalogVersion;
+}
@@ -0,0 +1,23 @@
+package com.learntocode.productservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/***
+ * Outcome of one record of a bulk import
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductImportResultDTO {
+    private Long index;
+    private String id;
+    private Boolean accepted;
+    private Boolean created;
+    private String message;
+}
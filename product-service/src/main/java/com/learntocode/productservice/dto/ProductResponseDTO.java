@@ -13,7 +13,9 @@ import java.math.BigDecimal;
 @NoArgsConstructor
 public class ProductResponseDTO {
     private String id;
+    private String skuCode;
     private String name;
     private String description;
     private BigDecimal price;
+    private Long version;
 }
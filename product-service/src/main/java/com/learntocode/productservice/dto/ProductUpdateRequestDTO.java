@@ -13,6 +13,7 @@ import java.math.BigDecimal;
 @AllArgsConstructor
 public class ProductUpdateRequestDTO {
     private String id;
+    private String skuCode;
     private String name;
     private String description;
     private BigDecimal price;
@@ -0,0 +1,11 @@
+package com.learntocode.productservice.exception;
+
+public class CatalogHistoryLostException extends Exception{
+    public CatalogHistoryLostException() {
+        super();
+    }
+
+    public CatalogHistoryLostException(String message) {
+        super(message);
+    }
+}
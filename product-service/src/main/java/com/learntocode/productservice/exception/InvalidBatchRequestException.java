@@ -0,0 +1,11 @@
+package com.learntocode.productservice.exception;
+
+public class InvalidBatchRequestException extends Exception{
+    public InvalidBatchRequestException() {
+        super();
+    }
+
+    public InvalidBatchRequestException(String message) {
+        super(message);
+    }
+}
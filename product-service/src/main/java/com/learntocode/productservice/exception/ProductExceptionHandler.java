@@ -1,24 +1,22 @@
 package com.learntocode.productservice.exception;
 
 import com.learntocode.productservice.dto.ExceptionResponseDTO;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.context.request.WebRequest;
 
 @ControllerAdvice
 public class ProductExceptionHandler {
     /***
-     * Method to handle ProductNotFoundException
+     * Method to handle ProductNotFoundException, on the servlet as well as on the reactive web stack
      * @param exception ProductNotFoundException custom exception
-     * @param request
      * @return ResponseEntity wrapping ExceptionResponseDTO containing HttpStatus and Message
      */
     @ExceptionHandler(ProductNotFoundException.class)
     public ResponseEntity<ExceptionResponseDTO> productNotFoundExceptionHandler(
-            ProductNotFoundException exception,
-            WebRequest request){
+            ProductNotFoundException exception){
         ExceptionResponseDTO responseDTO = ExceptionResponseDTO
                 .builder()
                 .status(HttpStatus.NOT_FOUND)
@@ -26,4 +24,52 @@ public class ProductExceptionHandler {
                 .build();
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(responseDTO);
     }
+
+    /***
+     * Method to handle InvalidBatchRequestException
+     * @param exception InvalidBatchRequestException custom exception
+     * @return ResponseEntity wrapping ExceptionResponseDTO containing HttpStatus and Message
+     */
+    @ExceptionHandler(InvalidBatchRequestException.class)
+    public ResponseEntity<ExceptionResponseDTO> invalidBatchRequestExceptionHandler(
+            InvalidBatchRequestException exception){
+        ExceptionResponseDTO responseDTO = ExceptionResponseDTO
+                .builder()
+                .status(HttpStatus.BAD_REQUEST)
+                .message(exception.getMessage())
+                .build();
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(responseDTO);
+    }
+
+    /***
+     * Method to handle OptimisticLockingFailureException, raised when a Product changed between being read and saved
+     * @param exception OptimisticLockingFailureException
+     * @return ResponseEntity wrapping ExceptionResponseDTO containing HttpStatus and Message
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ExceptionResponseDTO> optimisticLockingFailureExceptionHandler(
+            OptimisticLockingFailureException exception){
+        ExceptionResponseDTO responseDTO = ExceptionResponseDTO
+                .builder()
+                .status(HttpStatus.CONFLICT)
+                .message(exception.getMessage())
+                .build();
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(responseDTO);
+    }
+
+    /***
+     * Method to handle CatalogHistoryLostException
+     * @param exception CatalogHistoryLostException custom exception
+     * @return ResponseEntity wrapping ExceptionResponseDTO containing HttpStatus and Message
+     */
+    @ExceptionHandler(CatalogHistoryLostException.class)
+    public ResponseEntity<ExceptionResponseDTO> catalogHistoryLostExceptionHandler(
+            CatalogHistoryLostException exception){
+        ExceptionResponseDTO responseDTO = ExceptionResponseDTO
+                .builder()
+                .status(HttpStatus.GONE)
+                .message(exception.getMessage())
+                .build();
+        return ResponseEntity.status(HttpStatus.GONE).body(responseDTO);
+    }
 }
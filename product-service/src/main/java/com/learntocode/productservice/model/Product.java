@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.math.BigDecimal;
@@ -17,7 +18,10 @@ import java.math.BigDecimal;
 public class Product {
     @Id
     private String id;
+    private String skuCode;
     private String name;
     private String description;
     private BigDecimal price;
+    @Version
+    private Long version;
 }
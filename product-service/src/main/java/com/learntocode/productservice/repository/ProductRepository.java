@@ -1,7 +1,36 @@
 package com.learntocode.productservice.repository;
 
 import com.learntocode.productservice.model.Product;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.List;
+import java.util.stream.Stream;
+
 public interface ProductRepository extends MongoRepository<Product, String> {
+    /***
+     * Method to fetch the first page of Products, used for keyset pagination
+     * @param pageable page size and sort order
+     * @return List of Product
+     */
+    List<Product> findAllBy(Pageable pageable);
+
+    /***
+     * Method to fetch a page of Products following the given id, used for keyset pagination. The id has to be
+     * given as stored, an ObjectId for generated ids: a String is not converted for a range query and MongoDB only
+     * compares values of the same type, so no ObjectId would ever follow it
+     * @param id of the last Product of the previous page
+     * @param pageable page size and sort order
+     * @return List of Product
+     */
+    List<Product> findByIdGreaterThan(Object id, Pageable pageable);
+
+    /***
+     * Method to stream all Products ordered by id. Documents are fetched through a cursor in batches of the
+     * cursor batch size, the stream has to be closed once consumed
+     * @return Stream of Product
+     */
+    @Meta(cursorBatchSize = 500)
+    Stream<Product> streamAllByOrderByIdAsc();
 }
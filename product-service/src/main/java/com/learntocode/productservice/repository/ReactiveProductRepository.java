@@ -0,0 +1,37 @@
+package com.learntocode.productservice.repository;
+
+import com.learntocode.productservice.model.Product;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Meta;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+/***
+ * Non-blocking variant of ProductRepository used when product-service runs on the reactive web stack
+ */
+public interface ReactiveProductRepository extends ReactiveMongoRepository<Product, String> {
+    /***
+     * Method to fetch the first page of Products, used for keyset pagination
+     * @param pageable page size and sort order
+     * @return Flux of Product
+     */
+    Flux<Product> findAllBy(Pageable pageable);
+
+    /***
+     * Method to fetch a page of Products following the given id, used for keyset pagination. The id has to be
+     * given as stored, an ObjectId for generated ids: a String is not converted for a range query and MongoDB only
+     * compares values of the same type, so no ObjectId would ever follow it
+     * @param id of the last Product of the previous page
+     * @param pageable page size and sort order
+     * @return Flux of Product
+     */
+    Flux<Product> findByIdGreaterThan(Object id, Pageable pageable);
+
+    /***
+     * Method to stream all Products ordered by id. Documents are requested from the cursor in batches of the
+     * cursor batch size as the subscriber demands them
+     * @return Flux of Product
+     */
+    @Meta(cursorBatchSize = 500)
+    Flux<Product> streamAllByOrderByIdAsc();
+}
@@ -0,0 +1,297 @@
+package com.learntocode.productservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.learntocode.productservice.dto.ProductResponseDTO;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/***
+ * Read cache of single Products and listing pages. Every change of the product collection, made by this or any
+ * other product-service instance, arrives through a MongoDB change stream and invalidates the cached Product and
+ * all pages. Caching is bypassed while the change stream is not listening, as changes would go unnoticed, e.g. on a
+ * standalone MongoDB without replica set. The subscription is renewed on reads once the resubscribe interval passed.
+ * The catalog version, the cluster time of the last change seen, versions the listing for conditional requests.
+ * Being taken from the shared change stream it is the same on every instance once they caught up with the changes.
+ * The reactive web stack reads through ReactiveProductRepository and does not use the cache
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductCache {
+    private static final String PRODUCT_COLLECTION = "product";
+
+    private final MessageListenerContainer messageListenerContainer;
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    @Value("${product.cache.enabled}")
+    private boolean enabled;
+    @Value("${product.cache.maximum-size}")
+    private long maximumSize;
+    @Value("${product.cache.page-maximum-weight}")
+    private long pageMaximumWeight;
+    @Value("${product.cache.expire-after-write}")
+    private Duration expireAfterWrite;
+    @Value("${product.cache.resubscribe-interval}")
+    private Duration resubscribeInterval;
+
+    /* Pages are keyed by generation, a page loaded while the catalog changed is stored under an outdated generation
+     * and never served */
+    private final AtomicLong pageGeneration = new AtomicLong();
+    /* Cluster time of the last change of the product collection seen, 0 while unknown. Only ever grows */
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private Cache<String, ProductResponseDTO> productCache;
+    private Cache<String, List<ProductResponseDTO>> pageCache;
+    private Counter invalidationCounter;
+    private volatile Subscription subscription;
+    private volatile long subscribedAt;
+    private volatile boolean listening;
+
+    @PostConstruct
+    public void initialize(){
+        productCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        pageCache = Caffeine.newBuilder()
+                .maximumWeight(pageMaximumWeight)
+                .<String, List<ProductResponseDTO>>weigher((key, page) -> Math.max(1, page.size()))
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, productCache, "products");
+        CaffeineCacheMetrics.monitor(meterRegistry, pageCache, "product-pages");
+        Gauge.builder("product.cache.hit.ratio", productCache, cache -> cache.stats().hitRate())
+                .tag("cache", "products")
+                .description("Ratio of Product lookups answered from the cache")
+                .register(meterRegistry);
+        Gauge.builder("product.cache.hit.ratio", pageCache, cache -> cache.stats().hitRate())
+                .tag("cache", "product-pages")
+                .description("Ratio of Product listings answered from the cache")
+                .register(meterRegistry);
+        Gauge.builder("product.cache.listening", this, cache -> cache.listening ? 1 : 0)
+                .description("1 while the change stream invalidating the cache is listening, caching is bypassed otherwise")
+                .register(meterRegistry);
+        invalidationCounter = Counter.builder("product.cache.invalidations")
+                .description("Changes of the product collection invalidating the cache")
+                .register(meterRegistry);
+        if(enabled){
+            subscribe();
+        }
+    }
+
+    /***
+     * Method to get a Product from the cache, loading it on a miss
+     * @param id of the Product
+     * @param loader loads the Product, returns null if it does not exist
+     * @return ProductResponseDTO, null if the Product does not exist
+     */
+    public ProductResponseDTO getProduct(String id, Function<String, ProductResponseDTO> loader){
+        if(!isListening()){
+            return loader.apply(id);
+        }
+        return productCache.get(id, loader);
+    }
+
+    /***
+     * Method to get the cached Products of the given ids, without loading the others
+     * @param ids of the Products
+     * @return Map of id to ProductResponseDTO of the cached Products
+     */
+    public Map<String, ProductResponseDTO> getCachedProducts(Iterable<String> ids){
+        if(!isListening()){
+            return Map.of();
+        }
+        return productCache.getAllPresent(ids);
+    }
+
+    /***
+     * Method to get a listing page from the cache, loading it on a miss. Pages are keyed by the catalog version as
+     * well, a page is never older than the catalog version read before it
+     * @param pageKey identifies the page by its parameters
+     * @param loader loads the page
+     * @return List of ProductResponseDTO
+     */
+    public List<ProductResponseDTO> getPage(String pageKey, Supplier<List<ProductResponseDTO>> loader){
+        if(!isListening()){
+            return loader.get();
+        }
+        return pageCache.get(pageGeneration.get() + "|" + catalogVersion.get() + "|" + pageKey,
+                key -> loader.get());
+    }
+
+    /***
+     * Method to get the catalog version, which changes with every change of the product collection
+     * @return catalog version, null while the change stream is not listening or no version is known yet
+     */
+    public Long getCatalogVersion(){
+        if(!isListening()){
+            return null;
+        }
+        long version = catalogVersion.get();
+        return version == 0 ? null : version;
+    }
+
+    /***
+     * Method to invalidate a Product and all pages. Called on local writes so that they are read back at once, the
+     * change stream does the same for the writes of every instance shortly after
+     * @param id of the changed Product
+     */
+    public void evict(String id){
+        productCache.invalidate(id);
+        invalidatePages();
+    }
+
+    /***
+     * Method to invalidate several Products and all pages
+     * @param ids of the changed Products
+     */
+    public void evictAll(Iterable<String> ids){
+        productCache.invalidateAll(ids);
+        invalidatePages();
+    }
+
+    /***
+     * Method to check whether the change stream is listening, renewing the subscription if it has ended. The cache
+     * is cleared whenever listening starts, as changes may have been missed in between
+     * @return true if cached entries can be served
+     */
+    public boolean isListening(){
+        if(!enabled){
+            return false;
+        }
+        Subscription currentSubscription = subscription;
+        boolean active = Objects.nonNull(currentSubscription) && currentSubscription.isActive();
+        if(active && !listening){
+            invalidateAll();
+            catalogVersion.accumulateAndGet(currentOperationTime(), Math::max);
+            listening = true;
+        }
+        else if(!active){
+            listening = false;
+            if(System.nanoTime() - subscribedAt >= resubscribeInterval.toNanos()){
+                subscribe();
+            }
+        }
+        return listening;
+    }
+
+    /***
+     * Helper method to subscribe to the change stream of the product collection, replacing an ended subscription
+     */
+    private synchronized void subscribe(){
+        if(Objects.nonNull(subscription)){
+            if(subscription.isActive()){
+                return;
+            }
+            messageListenerContainer.remove(subscription);
+        }
+        subscribedAt = System.nanoTime();
+        ChangeStreamRequest<Document> request = ChangeStreamRequest.builder(this::onChange)
+                .collection(PRODUCT_COLLECTION)
+                .build();
+        subscription = messageListenerContainer.register(request, Document.class, exception -> {
+            log.warn("Change stream of the product collection failed, Product cache is bypassed", exception);
+            listening = false;
+            invalidateAll();
+        });
+    }
+
+    /***
+     * Helper method to invalidate the cache on a change of the product collection. Changes without a Product id,
+     * such as a dropped collection, invalidate everything
+     * @param message change stream event
+     */
+    private void onChange(Message<ChangeStreamDocument<Document>, Document> message){
+        invalidationCounter.increment();
+        String id = productIdOf(message.getRaw());
+        if(Objects.isNull(id)){
+            invalidateAll();
+        }
+        else{
+            evict(id);
+        }
+        BsonTimestamp clusterTime = message.getRaw().getClusterTime();
+        if(Objects.nonNull(clusterTime)){
+            catalogVersion.accumulateAndGet(clusterTime.getValue(), Math::max);
+        }
+    }
+
+    /***
+     * Helper method to get the current operation time of the replica set, the catalog version to start from when
+     * listening starts. Changes before it have been missed and are covered by clearing the cache
+     * @return operation time, 0 if unknown
+     */
+    private long currentOperationTime(){
+        try{
+            Object operationTime = mongoTemplate.executeCommand(new Document("ping", 1)).get("operationTime");
+            return operationTime instanceof BsonTimestamp ? ((BsonTimestamp) operationTime).getValue() : 0;
+        }
+        catch(DataAccessException exception){
+            log.warn("Operation time of the product collection could not be read, catalog version unknown", exception);
+            return 0;
+        }
+    }
+
+    /***
+     * Helper method to get the id of the Product changed by a change stream event
+     * @param event change stream event of the product collection
+     * @return id of the Product, null if the event has no document key, such as a dropped collection
+     */
+    static String productIdOf(ChangeStreamDocument<?> event){
+        BsonDocument documentKey = event.getDocumentKey();
+        BsonValue id = Objects.isNull(documentKey) ? null : documentKey.get("_id");
+        if(Objects.isNull(id)){
+            return null;
+        }
+        if(id.isObjectId()){
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : null;
+    }
+
+    /***
+     * Helper method to invalidate all pages, pages being loaded are stored under the outdated generation
+     */
+    private void invalidatePages(){
+        pageGeneration.incrementAndGet();
+        pageCache.invalidateAll();
+    }
+
+    /***
+     * Helper method to invalidate all Products and pages
+     */
+    private void invalidateAll(){
+        productCache.invalidateAll();
+        invalidatePages();
+    }
+}
@@ -0,0 +1,623 @@
+package com.learntocode.productservice.service;
+
+import com.learntocode.productservice.model.Product;
+import com.learntocode.productservice.repository.ProductRepository;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/***
+ * In-memory inverted index over the name and description of all Products. Text is split into lower case terms of
+ * letters and digits. A query matches the Products containing all of its terms, the last term also matching as a
+ * prefix, and returns the top k ranked by the weight of the matched terms (name counting double) times their
+ * inverse document frequency.
+ * The index is built at startup and kept up to date by local writes and by a change stream of the product
+ * collection, which carries the writes of all instances. Should the change stream fail, e.g. on a standalone MongoDB
+ * without replica set, the index is rebuilt at most every rebuild interval while searched.
+ * Every term is stored once in the dictionary, a posting list is an int array holding the Product number and the
+ * term weight of each Product. Products are numbered in the order they are indexed, a changed Product is indexed
+ * again under a new number, so posting lists stay sorted. Postings of removed Products are dropped once they make up
+ * a quarter of the index
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductSearchIndex {
+    private static final String PRODUCT_COLLECTION = "product";
+    private static final Pattern TERM_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int NAME_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    /* A posting is the Product number shifted left by the weight bits plus the term weight, capped at MAX_WEIGHT */
+    private static final int WEIGHT_BITS = 4;
+    private static final int MAX_WEIGHT = (1 << WEIGHT_BITS) - 1;
+    private static final int MIN_COMPACTION_REMOVALS = 1024;
+
+    private final ProductRepository productRepository;
+    private final MessageListenerContainer messageListenerContainer;
+    private final MeterRegistry meterRegistry;
+    @Value("${product.search.max-results}")
+    private int maxResults;
+    @Value("${product.search.max-prefix-expansions}")
+    private int maxPrefixExpansions;
+    @Value("${product.search.rebuild-interval}")
+    private Duration rebuildInterval;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-search-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /* Guarded by lock, changes made while a rebuild reads the product collection are replayed on the rebuilt index */
+    private Index index = new Index();
+    private List<Change> pendingChanges;
+    private volatile boolean changeStreamFailed;
+    private volatile long rebuildStartedAt;
+    private Subscription subscription;
+    private Timer searchTimer;
+
+    @PostConstruct
+    public void registerMetrics(){
+        searchTimer = Timer.builder("product.search.latency")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .description("Time to search the Product index")
+                .register(meterRegistry);
+        Gauge.builder("product.search.index.products", this, searchIndex -> searchIndex.read(Index::liveProducts))
+                .description("Number of Products in the search index")
+                .register(meterRegistry);
+        Gauge.builder("product.search.index.terms", this, searchIndex -> searchIndex.read(Index::terms))
+                .description("Number of distinct terms in the search index")
+                .register(meterRegistry);
+    }
+
+    /***
+     * Builds the index once the application is ready. Searches answer from the empty index until it is built
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize(){
+        scheduleRebuild();
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        rebuildExecutor.shutdownNow();
+    }
+
+    /***
+     * Method to search Products
+     * @param query terms separated by anything but letters and digits, the last term matching as a prefix
+     * @param size maximum number of results, limited to the configured maximum
+     * @return ids of the matching Products, best match first
+     */
+    public List<String> search(String query, Integer size){
+        if(changeStreamFailed && System.nanoTime() - rebuildStartedAt >= rebuildInterval.toNanos()){
+            scheduleRebuild();
+        }
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        int limit = Objects.isNull(size) ? maxResults : Math.max(1, Math.min(size, maxResults));
+        if(terms.isEmpty()){
+            return List.of();
+        }
+        long startedAt = System.nanoTime();
+        lock.readLock().lock();
+        try{
+            return index.search(terms, limit, maxPrefixExpansions);
+        }
+        finally{
+            lock.readLock().unlock();
+            searchTimer.record(Duration.ofNanos(System.nanoTime() - startedAt));
+        }
+    }
+
+    /***
+     * Method to add a Product to the index or replace its indexed terms
+     * @param product created or updated Product
+     */
+    public void index(Product product){
+        apply(new Change(product.getId(), product));
+    }
+
+    /***
+     * Method to remove a Product from the index
+     * @param id of the deleted Product
+     */
+    public void remove(String id){
+        apply(new Change(id, null));
+    }
+
+    /***
+     * Helper method to apply a change to the index, recording it for replay if a rebuild is in progress
+     * @param change Change to be applied
+     */
+    private void apply(Change change){
+        lock.writeLock().lock();
+        try{
+            index.apply(change);
+            if(Objects.nonNull(pendingChanges)){
+                pendingChanges.add(change);
+            }
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /***
+     * Helper method to rebuild the index in the background, renewing the change stream subscription first so that
+     * no change made during the rebuild is missed
+     */
+    private void scheduleRebuild(){
+        lock.writeLock().lock();
+        try{
+            if(Objects.nonNull(pendingChanges)){
+                return;
+            }
+            pendingChanges = new ArrayList<>();
+            rebuildStartedAt = System.nanoTime();
+            changeStreamFailed = false;
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+        rebuildExecutor.execute(() -> {
+            Index rebuiltIndex = new Index();
+            boolean rebuilt = false;
+            try{
+                subscribe();
+                try(Stream<Product> productStream = productRepository.streamAllByOrderByIdAsc()){
+                    productStream.forEach(product -> rebuiltIndex.apply(new Change(product.getId(), product)));
+                }
+                rebuiltIndex.trim();
+                rebuilt = true;
+            }
+            catch(RuntimeException exception){
+                log.warn("Product search index could not be rebuilt", exception);
+                changeStreamFailed = true;
+            }
+            lock.writeLock().lock();
+            try{
+                if(rebuilt){
+                    pendingChanges.forEach(rebuiltIndex::apply);
+                    index = rebuiltIndex;
+                }
+                pendingChanges = null;
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /***
+     * Helper method to subscribe to the change stream of the product collection with the full document of every
+     * insert and update, replacing an earlier subscription
+     */
+    private void subscribe(){
+        if(Objects.nonNull(subscription)){
+            messageListenerContainer.remove(subscription);
+        }
+        ChangeStreamRequest<Product> request = ChangeStreamRequest.builder(this::onChange)
+                .collection(PRODUCT_COLLECTION)
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                .build();
+        subscription = messageListenerContainer.register(request, Product.class, exception -> {
+            log.warn("Change stream of the product collection failed, Product search index is rebuilt instead",
+                    exception);
+            changeStreamFailed = true;
+        });
+    }
+
+    /***
+     * Helper method to apply a change of the product collection to the index. Changes without a Product id, such as
+     * a dropped collection, rebuild the index
+     * @param message change stream event
+     */
+    private void onChange(Message<ChangeStreamDocument<Document>, Product> message){
+        String id = ProductCache.productIdOf(message.getRaw());
+        if(Objects.isNull(id)){
+            scheduleRebuild();
+            return;
+        }
+        Product product = message.getBody();
+        apply(new Change(id, Objects.nonNull(product) && Objects.nonNull(product.getId()) ? product : null));
+    }
+
+    /***
+     * Helper method to read a value of the index under the read lock
+     * @param reader reads the value
+     * @return value
+     */
+    private double read(ToIntFunction<Index> reader){
+        lock.readLock().lock();
+        try{
+            return reader.applyAsInt(index);
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /***
+     * Helper method to split text into terms
+     * @param text text to be split, may be null
+     * @return List of lower case terms in the order of the text
+     */
+    static List<String> tokenize(String text){
+        if(Objects.isNull(text)){
+            return List.of();
+        }
+        List<String> terms = new ArrayList<>();
+        for(String term : TERM_SEPARATOR.split(text.toLowerCase(Locale.ROOT))){
+            if(!term.isEmpty() && term.length() <= MAX_TERM_LENGTH){
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /***
+     * Product to be indexed under its id, or the id of a Product to be removed if product is null
+     */
+    @AllArgsConstructor
+    private static class Change {
+        private final String id;
+        private final Product product;
+    }
+
+    /***
+     * Dictionary and posting lists. Not thread safe, guarded by the lock of ProductSearchIndex
+     */
+    private static class Index {
+        private final TreeMap<String, Postings> dictionary = new TreeMap<>();
+        private final Map<String, Integer> numbers = new HashMap<>();
+        /* Id of the Product of each number, null once removed */
+        private String[] productIds = new String[1024];
+        private int nextNumber;
+        private int removedProducts;
+
+        void apply(Change change){
+            Integer number = numbers.remove(change.id);
+            if(Objects.nonNull(number)){
+                productIds[number] = null;
+                removedProducts++;
+            }
+            if(Objects.nonNull(change.product)){
+                add(change.id, change.product);
+            }
+            if(removedProducts >= MIN_COMPACTION_REMOVALS && removedProducts * 4 > nextNumber){
+                compact();
+            }
+        }
+
+        int liveProducts(){
+            return numbers.size();
+        }
+
+        int terms(){
+            return dictionary.size();
+        }
+
+        private void add(String id, Product product){
+            Map<String, Integer> weights = new HashMap<>();
+            tokenize(product.getName()).forEach(term -> weights.merge(term, NAME_WEIGHT, Integer::sum));
+            tokenize(product.getDescription()).forEach(term -> weights.merge(term, DESCRIPTION_WEIGHT, Integer::sum));
+            int number = nextNumber++;
+            if(number == productIds.length){
+                productIds = Arrays.copyOf(productIds, productIds.length * 2);
+            }
+            productIds[number] = id;
+            numbers.put(id, number);
+            weights.forEach((term, weight) -> dictionary
+                    .computeIfAbsent(term, newTerm -> new Postings())
+                    .add(number << WEIGHT_BITS | Math.min(weight, MAX_WEIGHT)));
+        }
+
+        /***
+         * Renumbers the live Products densely and drops the postings of removed Products and unused terms
+         */
+        private void compact(){
+            int[] renumbering = new int[nextNumber];
+            int liveNumber = 0;
+            for(int number = 0; number < nextNumber; number++){
+                String id = productIds[number];
+                renumbering[number] = Objects.isNull(id) ? -1 : liveNumber;
+                if(Objects.nonNull(id)){
+                    productIds[liveNumber] = id;
+                    numbers.put(id, liveNumber++);
+                }
+            }
+            Arrays.fill(productIds, liveNumber, nextNumber, null);
+            nextNumber = liveNumber;
+            removedProducts = 0;
+            Iterator<Postings> iterator = dictionary.values().iterator();
+            while(iterator.hasNext()){
+                Postings postings = iterator.next();
+                postings.renumber(renumbering);
+                if(postings.size == 0){
+                    iterator.remove();
+                }
+            }
+        }
+
+        void trim(){
+            dictionary.values().forEach(Postings::trim);
+        }
+
+        /***
+         * Matches the exact terms rarest first, then the prefix term, so that large posting lists are only probed
+         * for the few Products still matching instead of being read in full
+         */
+        List<String> search(List<String> terms, int limit, int maxPrefixExpansions){
+            List<List<Postings>> termPostings = new ArrayList<>();
+            for(String term : terms.subList(0, terms.size() - 1)){
+                Postings postings = dictionary.get(term);
+                if(Objects.isNull(postings)){
+                    return List.of();
+                }
+                termPostings.add(List.of(postings));
+            }
+            termPostings.sort(Comparator.comparingInt(postingsList -> postingsList.get(0).size));
+            String prefix = terms.get(terms.size() - 1);
+            List<Postings> expansions = new ArrayList<>();
+            for(Postings postings : dictionary.subMap(prefix, prefix + Character.MAX_VALUE).values()){
+                if(expansions.size() == maxPrefixExpansions){
+                    break;
+                }
+                expansions.add(postings);
+            }
+            termPostings.add(expansions);
+            Match match = null;
+            for(List<Postings> postingsList : termPostings){
+                match = Objects.isNull(match) ? match(postingsList) : narrow(match, postingsList);
+                if(match.size == 0){
+                    return List.of();
+                }
+            }
+            return top(match, limit);
+        }
+
+        /***
+         * Collects the live Products of the given posting lists, scoring each by weight times inverse document
+         * frequency, summed over the posting lists the Product is in. Large unions are summed in an array indexed
+         * by Product number rather than sorted
+         */
+        private Match match(List<Postings> postingsList){
+            int total = 0;
+            for(Postings postings : postingsList){
+                total += postings.size;
+            }
+            if(postingsList.size() > 1 && total > nextNumber / 16){
+                float[] scores = new float[nextNumber];
+                int count = 0;
+                for(Postings postings : postingsList){
+                    float idf = idf(postings);
+                    for(int i = 0; i < postings.size; i++){
+                        int number = postings.entries[i] >>> WEIGHT_BITS;
+                        if(Objects.nonNull(productIds[number])){
+                            count += scores[number] == 0 ? 1 : 0;
+                            scores[number] += (postings.entries[i] & MAX_WEIGHT) * idf;
+                        }
+                    }
+                }
+                Match match = new Match(count);
+                for(int number = 0; number < nextNumber && match.size < count; number++){
+                    if(scores[number] > 0){
+                        match.numbers[match.size] = number;
+                        match.scores[match.size++] = scores[number];
+                    }
+                }
+                return match;
+            }
+            long[] scored = new long[total];
+            int count = 0;
+            for(Postings postings : postingsList){
+                float idf = idf(postings);
+                for(int i = 0; i < postings.size; i++){
+                    int number = postings.entries[i] >>> WEIGHT_BITS;
+                    if(Objects.nonNull(productIds[number])){
+                        float score = (postings.entries[i] & MAX_WEIGHT) * idf;
+                        scored[count++] = (long) number << 32 | Float.floatToIntBits(score);
+                    }
+                }
+            }
+            if(postingsList.size() > 1){
+                Arrays.sort(scored, 0, count);
+            }
+            Match match = new Match(count);
+            for(int i = 0; i < count; i++){
+                int number = (int) (scored[i] >>> 32);
+                float score = Float.intBitsToFloat((int) scored[i]);
+                if(match.size > 0 && match.numbers[match.size - 1] == number){
+                    match.scores[match.size - 1] += score;
+                }
+                else{
+                    match.numbers[match.size] = number;
+                    match.scores[match.size++] = score;
+                }
+            }
+            return match;
+        }
+
+        /***
+         * Keeps the Products of a match that are in any of the given posting lists, adding their scores. Posting
+         * lists much larger than the match are probed by binary search for each Product of the match
+         */
+        private Match narrow(Match match, List<Postings> postingsList){
+            long total = 0;
+            for(Postings postings : postingsList){
+                total += postings.size;
+            }
+            if((long) match.size * postingsList.size() * 32 > total){
+                return match.intersect(match(postingsList));
+            }
+            float[] idfs = new float[postingsList.size()];
+            for(int i = 0; i < idfs.length; i++){
+                idfs[i] = idf(postingsList.get(i));
+            }
+            Match narrowed = new Match(match.size);
+            for(int i = 0; i < match.size; i++){
+                float score = 0;
+                for(int j = 0; j < idfs.length; j++){
+                    score += postingsList.get(j).weightOf(match.numbers[i]) * idfs[j];
+                }
+                if(score > 0){
+                    narrowed.numbers[narrowed.size] = match.numbers[i];
+                    narrowed.scores[narrowed.size++] = match.scores[i] + score;
+                }
+            }
+            return narrowed;
+        }
+
+        private float idf(Postings postings){
+            return (float) Math.log(1 + (double) numbers.size() / postings.size);
+        }
+
+        private List<String> top(Match match, int limit){
+            PriorityQueue<Long> best = new PriorityQueue<>(limit + 1);
+            for(int i = 0; i < match.size; i++){
+                /* Scores are positive, so ordering the packed longs orders by score */
+                long scored = (long) Float.floatToIntBits(match.scores[i]) << 32 | match.numbers[i];
+                if(best.size() < limit || scored > best.peek()){
+                    best.add(scored);
+                    if(best.size() > limit){
+                        best.poll();
+                    }
+                }
+            }
+            String[] ids = new String[best.size()];
+            for(int i = ids.length - 1; i >= 0; i--){
+                ids[i] = productIds[(int) (best.poll() & 0xFFFFFFFFL)];
+            }
+            return Arrays.asList(ids);
+        }
+    }
+
+    /***
+     * Growable posting list, sorted by Product number
+     */
+    private static class Postings {
+        private int[] entries = new int[2];
+        private int size;
+
+        void add(int entry){
+            if(size == entries.length){
+                entries = Arrays.copyOf(entries, size + (size >> 1) + 1);
+            }
+            entries[size++] = entry;
+        }
+
+        /***
+         * Binary search of the weight of a Product
+         * @param number of the Product
+         * @return term weight, 0 if the Product does not contain the term
+         */
+        int weightOf(int number){
+            int low = 0;
+            int high = size - 1;
+            while(low <= high){
+                int middle = (low + high) >>> 1;
+                int middleNumber = entries[middle] >>> WEIGHT_BITS;
+                if(middleNumber < number){
+                    low = middle + 1;
+                }
+                else if(middleNumber > number){
+                    high = middle - 1;
+                }
+                else{
+                    return entries[middle] & MAX_WEIGHT;
+                }
+            }
+            return 0;
+        }
+
+        void renumber(int[] renumbering){
+            int liveSize = 0;
+            for(int i = 0; i < size; i++){
+                int number = renumbering[entries[i] >>> WEIGHT_BITS];
+                if(number >= 0){
+                    entries[liveSize++] = number << WEIGHT_BITS | (entries[i] & MAX_WEIGHT);
+                }
+            }
+            size = liveSize;
+            trim();
+        }
+
+        void trim(){
+            if(entries.length > size){
+                entries = Arrays.copyOf(entries, Math.max(size, 1));
+            }
+        }
+    }
+
+    /***
+     * Products matching a query so far, sorted by Product number, with their scores
+     */
+    private static class Match {
+        private final int[] numbers;
+        private final float[] scores;
+        private int size;
+
+        Match(int capacity){
+            numbers = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        Match intersect(Match other){
+            Match match = new Match(Math.min(size, other.size));
+            int i = 0;
+            int j = 0;
+            while(i < size && j < other.size){
+                if(numbers[i] < other.numbers[j]){
+                    i++;
+                }
+                else if(numbers[i] > other.numbers[j]){
+                    j++;
+                }
+                else{
+                    match.numbers[match.size] = numbers[i];
+                    match.scores[match.size++] = scores[i++] + other.scores[j++];
+                }
+            }
+            return match;
+        }
+    }
+}
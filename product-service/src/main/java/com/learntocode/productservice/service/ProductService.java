@@ -1,15 +1,30 @@
 package com.learntocode.productservice.service;
 
+import com.learntocode.productservice.dto.ProductBatchItemDTO;
+import com.learntocode.productservice.dto.ProductBatchRequestDTO;
+import com.learntocode.productservice.dto.ProductChangeDTO;
+import com.learntocode.productservice.dto.ProductImportResultDTO;
 import com.learntocode.productservice.dto.ProductRequestDTO;
 import com.learntocode.productservice.dto.ProductResponseDTO;
 import com.learntocode.productservice.dto.ProductUpdateRequestDTO;
+import com.learntocode.productservice.exception.CatalogHistoryLostException;
+import com.learntocode.productservice.exception.InvalidBatchRequestException;
 import com.learntocode.productservice.exception.ProductNotFoundException;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ProductService {
     ProductResponseDTO createProduct(ProductRequestDTO requestDTO);
     List<ProductResponseDTO> getAllProducts();
+    List<ProductResponseDTO> getProductsPage(String afterId, Integer size);
+    Long getCatalogVersion();
+    List<ProductChangeDTO> getProductChanges(String since, Integer size) throws CatalogHistoryLostException;
+    void streamAllProducts(Consumer<ProductResponseDTO> consumer);
+    List<ProductResponseDTO> searchProducts(String query, Integer size);
+    void importProducts(InputStream inputStream, Consumer<ProductImportResultDTO> consumer);
+    List<ProductBatchItemDTO> getProductsByIds(ProductBatchRequestDTO requestDTO) throws InvalidBatchRequestException;
     ProductResponseDTO getProductById(String id) throws ProductNotFoundException;
     ProductResponseDTO updateProduct(ProductUpdateRequestDTO requestDTO) throws ProductNotFoundException;
     void deleteProduct(String id) throws ProductNotFoundException;
@@ -1,22 +1,86 @@
 package com.learntocode.productservice.service;
 
+import com.learntocode.productservice.dto.ProductBatchItemDTO;
+import com.learntocode.productservice.dto.ProductBatchRequestDTO;
+import com.learntocode.productservice.dto.ProductChangeDTO;
+import com.learntocode.productservice.dto.ProductImportResultDTO;
 import com.learntocode.productservice.dto.ProductRequestDTO;
 import com.learntocode.productservice.dto.ProductResponseDTO;
 import com.learntocode.productservice.dto.ProductUpdateRequestDTO;
+import com.learntocode.productservice.exception.CatalogHistoryLostException;
+import com.learntocode.productservice.exception.InvalidBatchRequestException;
 import com.learntocode.productservice.exception.ProductNotFoundException;
 import com.learntocode.productservice.model.Product;
 import com.learntocode.productservice.repository.ProductRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoServerException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ProductServiceImpl implements ProductService{
+    /* Fields of a Product that can be selected in batch lookups, the id is always returned */
+    private static final Set<String> BATCH_FIELDS = Set.of("name", "description", "price");
+    /* Server errors of a change stream that cannot start at the requested time: ChangeStreamFatalError,
+     * ChangeStreamHistoryLost, and change streams not being supported without replica set */
+    private static final Set<Integer> CHANGE_HISTORY_LOST_CODES = Set.of(280, 286, 40573);
+
     private final ProductRepository productRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final ProductCache productCache;
+    private final ProductSearchIndex productSearchIndex;
+    @Value("${listing.max-page-size}")
+    private Integer maxPageSize;
+    @Value("${product.batch.max-size}")
+    private Integer maxBatchSize;
+    @Value("${product.import.batch-size}")
+    private Integer importBatchSize;
+    @Value("${product.changes.max-await-time}")
+    private Duration changesMaxAwaitTime;
 
     /***
      * Method to create Product
@@ -27,32 +91,230 @@ public class ProductServiceImpl implements ProductService{
     public ProductResponseDTO createProduct(ProductRequestDTO requestDTO) {
         Product product = mapProductRequestToProduct(requestDTO);
         product = productRepository.save(product);
+        productCache.evict(product.getId());
+        productSearchIndex.index(product);
         return mapProductToProductResponse(product);
     }
 
     /***
-     * Method to get all Products
+     * Method to get all Products, served from the Product cache
      * @return List of ProductResponseDTO containing all Products
      */
     @Override
     public List<ProductResponseDTO> getAllProducts() {
-        List<Product> productList = productRepository.findAll();
-        return productList.stream().map(this::mapProductToProductResponse).toList();
+        return productCache.getPage("all", () -> productRepository
+                .findAll()
+                .stream()
+                .map(this::mapProductToProductResponse)
+                .toList());
+    }
+
+    /***
+     * Method to get a page of Products using keyset pagination on id, served from the Product cache
+     * @param afterId id of the last Product of the previous page, null for the first page
+     * @param size number of Products in the page, limited to the configured maximum page size
+     * @return List of ProductResponseDTO ordered by id
+     */
+    @Override
+    public List<ProductResponseDTO> getProductsPage(String afterId, Integer size) {
+        int pageSize = Objects.isNull(size) ? maxPageSize : Math.max(1, Math.min(size, maxPageSize));
+        PageRequest pageRequest = PageRequest.of(0, pageSize, Sort.by("id"));
+        return productCache.getPage(pageSize + "|" + Objects.toString(afterId, ""), () -> {
+            List<Product> productList = Objects.isNull(afterId) ?
+                    productRepository.findAllBy(pageRequest) :
+                    productRepository.findByIdGreaterThan(ObjectId.isValid(afterId) ? new ObjectId(afterId) : afterId,
+                            pageRequest);
+            return productList.stream().map(this::mapProductToProductResponse).toList();
+        });
+    }
+
+    /***
+     * Method to get the catalog version, which changes with every change of the product collection. Read it before
+     * the listing it versions, listings served after it are never older
+     * @return catalog version, null if unknown, such as while the Product cache is bypassed
+     */
+    @Override
+    public Long getCatalogVersion() {
+        return productCache.getCatalogVersion();
+    }
+
+    /***
+     * Method to get the changes of Products after a catalog version, read from the change stream of the product
+     * collection starting right after the cluster time the version stands for. Changes are returned in the order they
+     * were made, up to the page size, an update as the Product is now. The catalog version of the last change is the
+     * one to ask for the next page, fewer changes than the page size means all changes made so far have been read
+     * @param since catalog version, as sent in the ETag of the listing or with a change
+     * @param size maximum number of changes, limited to the configured maximum page size
+     * @return List of ProductChangeDTO
+     * @throws CatalogHistoryLostException is thrown if the changes after the catalog version cannot be read anymore,
+     * such as once they have been dropped from the oplog, or without replica set
+     */
+    @Override
+    public List<ProductChangeDTO> getProductChanges(String since, Integer size) throws CatalogHistoryLostException {
+        long sinceVersion;
+        try{
+            sinceVersion = Long.parseUnsignedLong(since, 16);
+        }
+        catch(NumberFormatException exception){
+            throw new CatalogHistoryLostException("Catalog version " + since + " is not known");
+        }
+        int pageSize = Objects.isNull(size) ? maxPageSize : Math.max(1, Math.min(size, maxPageSize));
+        List<ProductChangeDTO> changeDTOList = new ArrayList<>();
+        try(MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = mongoTemplate
+                .getCollection(mongoTemplate.getCollectionName(Product.class))
+                .watch()
+                .startAtOperationTime(new BsonTimestamp(sinceVersion + 1))
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(changesMaxAwaitTime.toMillis(), TimeUnit.MILLISECONDS)
+                .cursor()){
+            ChangeStreamDocument<Document> event;
+            while(changeDTOList.size() < pageSize && Objects.nonNull(event = cursor.tryNext())){
+                ProductChangeDTO changeDTO = mapChangeStreamEventToProductChange(event);
+                if(Objects.nonNull(changeDTO)){
+                    changeDTOList.add(changeDTO);
+                }
+            }
+        }
+        catch(MongoServerException exception){
+            if(CHANGE_HISTORY_LOST_CODES.contains(exception.getCode())){
+                throw new CatalogHistoryLostException("Changes after catalog version " + since +
+                        " cannot be read anymore");
+            }
+            throw exception;
+        }
+        return changeDTOList;
+    }
+
+    /***
+     * Method to stream all Products to the consumer one by one. Products are read through a cursor with a
+     * bounded batch size, so memory stays constant irrespective of the number of Products
+     * @param consumer receives each ProductResponseDTO as soon as it is mapped
+     */
+    @Override
+    public void streamAllProducts(Consumer<ProductResponseDTO> consumer) {
+        try(Stream<Product> productStream = productRepository.streamAllByOrderByIdAsc()){
+            productStream.map(this::mapProductToProductResponse).forEach(consumer);
+        }
+    }
+
+    /***
+     * Method to search Products by the terms of their name and description
+     * @param query search terms, the last term matching as a prefix
+     * @param size maximum number of Products returned, limited to the configured maximum
+     * @return List of ProductResponseDTO of the matching Products, best match first
+     */
+    @Override
+    public List<ProductResponseDTO> searchProducts(String query, Integer size) {
+        List<String> ids = productSearchIndex.search(query, size);
+        if(ids.isEmpty()){
+            return List.of();
+        }
+        Map<String, Product> productMap = new HashMap<>();
+        productRepository.findAllById(ids).forEach(product -> productMap.put(product.getId(), product));
+        return ids
+                .stream()
+                .map(productMap::get)
+                .filter(Objects::nonNull)
+                .map(this::mapProductToProductResponse)
+                .toList();
+    }
+
+    /***
+     * Method to import Products from newline delimited JSON, one ProductUpdateRequestDTO per line. Records with an
+     * id are upserted, setting the fields given, records without id are inserted. Lines are read and parsed one at a
+     * time and written in unordered bulk writes of the import batch size, so memory is bounded by the batch size
+     * whatever the size of the input. The search index picks imported Products up through its change stream
+     * @param inputStream newline delimited JSON, blank lines are skipped
+     * @param consumer receives the ProductImportResultDTO of every record once its batch has been written
+     */
+    @Override
+    public void importProducts(InputStream inputStream, Consumer<ProductImportResultDTO> consumer) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        List<ImportRecord> batch = new ArrayList<>(importBatchSize);
+        long index = 0;
+        try{
+            String line;
+            while(Objects.nonNull(line = reader.readLine())){
+                if(line.isBlank()){
+                    continue;
+                }
+                ImportRecord importRecord = new ImportRecord(index++, null, null);
+                try{
+                    importRecord.requestDTO = objectMapper.readValue(line, ProductUpdateRequestDTO.class);
+                }
+                catch(JsonProcessingException exception){
+                    consumer.accept(rejectedImport(importRecord, "Invalid JSON: " + exception.getOriginalMessage()));
+                    continue;
+                }
+                if(Objects.isNull(importRecord.requestDTO)){
+                    consumer.accept(rejectedImport(importRecord, "Invalid JSON: null"));
+                    continue;
+                }
+                batch.add(importRecord);
+                if(batch.size() == importBatchSize){
+                    writeImportBatch(batch, consumer);
+                    batch.clear();
+                }
+            }
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception);
+        }
+        if(!batch.isEmpty()){
+            writeImportBatch(batch, consumer);
+        }
+    }
+
+    /***
+     * Method to get the Products of several ids at once. Cached Products are taken from the Product cache, the others
+     * are fetched in a single query reading only the requested fields
+     * @param requestDTO ids of the Products and the fields to be returned, all fields if none are given
+     * @return List of ProductBatchItemDTO, one per requested id in the order of the request, telling whether the
+     * Product has been found
+     * @throws InvalidBatchRequestException is thrown if no id, too many ids or an unknown field is requested
+     */
+    @Override
+    public List<ProductBatchItemDTO> getProductsByIds(ProductBatchRequestDTO requestDTO)
+            throws InvalidBatchRequestException {
+        List<String> ids = requestDTO.getIds();
+        if(Objects.isNull(ids) || ids.isEmpty() || ids.size() > maxBatchSize || ids.contains(null)){
+            throw new InvalidBatchRequestException("Between 1 and " + maxBatchSize + " ids are required");
+        }
+        Set<String> fields = Objects.isNull(requestDTO.getFields()) || requestDTO.getFields().isEmpty() ?
+                BATCH_FIELDS : Set.copyOf(requestDTO.getFields());
+        if(!BATCH_FIELDS.containsAll(fields)){
+            throw new InvalidBatchRequestException("Fields must be among " + BATCH_FIELDS);
+        }
+        Map<String, ProductResponseDTO> productMap = new HashMap<>(productCache.getCachedProducts(ids));
+        List<String> missingIds = ids.stream().distinct().filter(id -> !productMap.containsKey(id)).toList();
+        if(!missingIds.isEmpty()){
+            Query query = Query.query(Criteria.where("id").in(missingIds));
+            fields.forEach(field -> query.fields().include(field));
+            mongoTemplate.find(query, Product.class)
+                    .forEach(product -> productMap.put(product.getId(), mapProductToProductResponse(product)));
+        }
+        return ids
+                .stream()
+                .map(id -> mapProductResponseToBatchItem(id, productMap.get(id), fields))
+                .toList();
     }
 
     /***
-     * Method to get Product based on id
+     * Method to get Product based on id, served from the Product cache
      * @param id id of the Product
      * @return ProductResponseDTO containing the Product details of given Product id
      * @throws ProductNotFoundException is thrown if Product is not found
      */
     @Override
     public ProductResponseDTO getProductById(String id) throws ProductNotFoundException {
-        Optional<Product> product = productRepository.findById(id);
-        if(!product.isEmpty()){
+        ProductResponseDTO responseDTO = productCache.getProduct(id, productId -> productRepository
+                .findById(productId)
+                .map(this::mapProductToProductResponse)
+                .orElse(null));
+        if(Objects.isNull(responseDTO)){
             throw new ProductNotFoundException("Product "+ id +" Not Found");
         }
-        return mapProductToProductResponse(product.get());
+        return responseDTO;
     }
 
     /***
@@ -64,23 +326,30 @@ public class ProductServiceImpl implements ProductService{
     @Override
     public ProductResponseDTO updateProduct(ProductUpdateRequestDTO requestDTO) throws ProductNotFoundException {
         Optional<Product> productOptional = productRepository.findById(requestDTO.getId());
-        if(!productOptional.isEmpty()){
+        if(productOptional.isEmpty()){
             throw new ProductNotFoundException("Product "+ requestDTO.getId() +" Not Found");
         }
         Product product = productOptional.get();
-        if(Objects.nonNull(product.getName()) &&
-        !"".equalsIgnoreCase(product.getName())){
-            product.setName(product.getName());
+        if(Objects.nonNull(requestDTO.getSkuCode()) &&
+        !"".equalsIgnoreCase(requestDTO.getSkuCode())){
+            product.setSkuCode(requestDTO.getSkuCode());
+        }
+        if(Objects.nonNull(requestDTO.getName()) &&
+        !"".equalsIgnoreCase(requestDTO.getName())){
+            product.setName(requestDTO.getName());
         }
-        if(Objects.nonNull(product.getDescription()) &&
-        !"".equalsIgnoreCase(product.getDescription())){
-            product.setDescription(product.getDescription());
+        if(Objects.nonNull(requestDTO.getDescription()) &&
+        !"".equalsIgnoreCase(requestDTO.getDescription())){
+            product.setDescription(requestDTO.getDescription());
         }
-        if(Objects.nonNull(product.getPrice()) &&
-        !"".equalsIgnoreCase(product.getPrice().toString())){
-            product.setPrice(product.getPrice());
+        if(Objects.nonNull(requestDTO.getPrice()) &&
+        !"".equalsIgnoreCase(requestDTO.getPrice().toString())){
+            product.setPrice(requestDTO.getPrice());
         }
-        return mapProductToProductResponse(productRepository.save(product));
+        product = productRepository.save(product);
+        productCache.evict(product.getId());
+        productSearchIndex.index(product);
+        return mapProductToProductResponse(product);
     }
 
     /***
@@ -95,6 +364,8 @@ public class ProductServiceImpl implements ProductService{
             throw new ProductNotFoundException("Product "+ id + " Not Found");
         }
         productRepository.deleteById(id);
+        productCache.evict(id);
+        productSearchIndex.remove(id);
     }
 
     /***
@@ -105,12 +376,170 @@ public class ProductServiceImpl implements ProductService{
     private Product mapProductRequestToProduct(ProductRequestDTO requestDTO){
         return Product
                 .builder()
+                .skuCode(requestDTO.getSkuCode())
                 .name(requestDTO.getName())
                 .description(requestDTO.getDescription())
                 .price(requestDTO.getPrice())
                 .build();
     }
 
+    /***
+     * Helper method to write a batch of import records in one unordered bulk write. A failing record does not stop
+     * the others, its error is reported in its ProductImportResultDTO
+     * @param batch records to be written
+     * @param consumer receives the ProductImportResultDTO of every record of the batch
+     */
+    private void writeImportBatch(List<ImportRecord> batch, Consumer<ProductImportResultDTO> consumer){
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        List<ImportRecord> written = new ArrayList<>(batch.size());
+        for(ImportRecord importRecord : batch){
+            ProductUpdateRequestDTO requestDTO = importRecord.requestDTO;
+            if(Objects.isNull(requestDTO.getId()) || requestDTO.getId().isEmpty()){
+                importRecord.id = new ObjectId().toHexString();
+                bulkOperations.insert(Product
+                        .builder()
+                        .id(importRecord.id)
+                        .skuCode(requestDTO.getSkuCode())
+                        .name(requestDTO.getName())
+                        .description(requestDTO.getDescription())
+                        .price(requestDTO.getPrice())
+                        .version(0L)
+                        .build());
+                written.add(importRecord);
+                continue;
+            }
+            importRecord.id = requestDTO.getId();
+            Update update = new Update();
+            if(Objects.nonNull(requestDTO.getSkuCode()) && !"".equalsIgnoreCase(requestDTO.getSkuCode())){
+                update.set("skuCode", requestDTO.getSkuCode());
+            }
+            if(Objects.nonNull(requestDTO.getName()) && !"".equalsIgnoreCase(requestDTO.getName())){
+                update.set("name", requestDTO.getName());
+            }
+            if(Objects.nonNull(requestDTO.getDescription()) && !"".equalsIgnoreCase(requestDTO.getDescription())){
+                update.set("description", requestDTO.getDescription());
+            }
+            if(Objects.nonNull(requestDTO.getPrice())){
+                update.set("price", requestDTO.getPrice());
+            }
+            if(update.getUpdateObject().isEmpty()){
+                consumer.accept(rejectedImport(importRecord, "No field to update"));
+                continue;
+            }
+            update.inc("version", 1);
+            bulkOperations.upsert(Query.query(Criteria.where("id").is(requestDTO.getId())), update);
+            written.add(importRecord);
+        }
+        if(written.isEmpty()){
+            return;
+        }
+        Map<Integer, String> errors = new HashMap<>();
+        Set<Integer> upserts = new HashSet<>();
+        try{
+            bulkOperations.execute().getUpserts().stream().map(BulkWriteUpsert::getIndex).forEach(upserts::add);
+        }
+        catch(BulkOperationException exception){
+            BulkWriteResult result = exception.getResult();
+            result.getUpserts().stream().map(BulkWriteUpsert::getIndex).forEach(upserts::add);
+            exception.getErrors().forEach(error -> errors.put(error.getIndex(), error.getMessage()));
+        }
+        catch(DataAccessException exception){
+            written.forEach(importRecord -> consumer.accept(rejectedImport(importRecord, exception.getMessage())));
+            return;
+        }
+        productCache.evictAll(written.stream().map(importRecord -> importRecord.id).toList());
+        for(int i = 0; i < written.size(); i++){
+            ImportRecord importRecord = written.get(i);
+            if(errors.containsKey(i)){
+                consumer.accept(rejectedImport(importRecord, errors.get(i)));
+                continue;
+            }
+            boolean inserted = Objects.isNull(importRecord.requestDTO.getId()) ||
+                    importRecord.requestDTO.getId().isEmpty();
+            consumer.accept(ProductImportResultDTO
+                    .builder()
+                    .index(importRecord.index)
+                    .id(importRecord.id)
+                    .accepted(true)
+                    .created(inserted || upserts.contains(i))
+                    .build());
+        }
+    }
+
+    /***
+     * Helper method to build the ProductImportResultDTO of a rejected import record
+     * @param importRecord rejected record
+     * @param message reason of the rejection
+     * @return ProductImportResultDTO
+     */
+    private ProductImportResultDTO rejectedImport(ImportRecord importRecord, String message){
+        return ProductImportResultDTO
+                .builder()
+                .index(importRecord.index)
+                .id(importRecord.id)
+                .accepted(false)
+                .message(message)
+                .build();
+    }
+
+    /***
+     * Helper method to map the ProductResponseDTO of a requested id to ProductBatchItemDTO
+     * @param id requested id
+     * @param responseDTO ProductResponseDTO of the id, null if not found
+     * @param fields fields to be returned
+     * @return ProductBatchItemDTO
+     */
+    private ProductBatchItemDTO mapProductResponseToBatchItem(String id, ProductResponseDTO responseDTO,
+                                                              Set<String> fields){
+        if(Objects.isNull(responseDTO)){
+            return ProductBatchItemDTO.builder().id(id).found(false).build();
+        }
+        return ProductBatchItemDTO
+                .builder()
+                .id(id)
+                .found(true)
+                .name(fields.contains("name") ? responseDTO.getName() : null)
+                .description(fields.contains("description") ? responseDTO.getDescription() : null)
+                .price(fields.contains("price") ? responseDTO.getPrice() : null)
+                .build();
+    }
+
+    /***
+     * Helper method to map a change stream event of the product collection to ProductChangeDTO
+     * @param event change stream event
+     * @return ProductChangeDTO, null for a change of a Product deleted since, whose deletion follows
+     * @throws CatalogHistoryLostException is thrown if the product collection itself was dropped or renamed
+     */
+    private ProductChangeDTO mapChangeStreamEventToProductChange(ChangeStreamDocument<Document> event)
+            throws CatalogHistoryLostException {
+        String catalogVersion = Long.toHexString(event.getClusterTime().getValue());
+        OperationType operationType = event.getOperationType();
+        if(operationType == OperationType.DELETE){
+            return ProductChangeDTO
+                    .builder()
+                    .id(ProductCache.productIdOf(event))
+                    .deleted(true)
+                    .catalogVersion(catalogVersion)
+                    .build();
+        }
+        if(operationType != OperationType.INSERT && operationType != OperationType.UPDATE &&
+                operationType != OperationType.REPLACE){
+            throw new CatalogHistoryLostException("Product collection changed as a whole at catalog version " +
+                    catalogVersion);
+        }
+        if(Objects.isNull(event.getFullDocument())){
+            return null;
+        }
+        Product product = mongoTemplate.getConverter().read(Product.class, event.getFullDocument());
+        return ProductChangeDTO
+                .builder()
+                .id(product.getId())
+                .deleted(false)
+                .product(mapProductToProductResponse(product))
+                .catalogVersion(catalogVersion)
+                .build();
+    }
+
     /***
      * Helper method to map Product to ProductResponseDTO
      * @param product Product to be mapped
@@ -120,9 +549,21 @@ public class ProductServiceImpl implements ProductService{
         return ProductResponseDTO
                 .builder()
                 .id(product.getId())
+                .skuCode(product.getSkuCode())
                 .name(product.getName())
                 .description(product.getDescription())
                 .price(product.getPrice())
+                .version(product.getVersion())
                 .build();
     }
+
+    /***
+     * Record of a bulk import, numbered in the order of the input
+     */
+    @AllArgsConstructor
+    private static class ImportRecord {
+        private final long index;
+        private ProductUpdateRequestDTO requestDTO;
+        private String id;
+    }
 }
@@ -0,0 +1,17 @@
+package com.learntocode.productservice.service;
+
+import com.learntocode.productservice.dto.ProductRequestDTO;
+import com.learntocode.productservice.dto.ProductResponseDTO;
+import com.learntocode.productservice.dto.ProductUpdateRequestDTO;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveProductService {
+    Mono<ProductResponseDTO> createProduct(ProductRequestDTO requestDTO);
+    Flux<ProductResponseDTO> getAllProducts();
+    Flux<ProductResponseDTO> getProductsPage(String afterId, Integer size);
+    Flux<ProductResponseDTO> streamAllProducts();
+    Mono<ProductResponseDTO> getProductById(String id);
+    Mono<ProductResponseDTO> updateProduct(ProductUpdateRequestDTO requestDTO);
+    Mono<Void> deleteProduct(String id);
+}
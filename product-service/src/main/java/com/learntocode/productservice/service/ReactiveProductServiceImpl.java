@@ -0,0 +1,173 @@
+package com.learntocode.productservice.service;
+
+import com.learntocode.productservice.dto.ProductRequestDTO;
+import com.learntocode.productservice.dto.ProductResponseDTO;
+import com.learntocode.productservice.dto.ProductUpdateRequestDTO;
+import com.learntocode.productservice.exception.ProductNotFoundException;
+import com.learntocode.productservice.model.Product;
+import com.learntocode.productservice.repository.ReactiveProductRepository;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+
+/***
+ * ProductService of the reactive web stack. MongoDB is called through ReactiveProductRepository, no thread is
+ * blocked while a call is in flight. Reads are not served from ProductCache, which belongs to the servlet stack
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductServiceImpl implements ReactiveProductService{
+    private final ReactiveProductRepository reactiveProductRepository;
+    @Value("${listing.max-page-size}")
+    private Integer maxPageSize;
+
+    /***
+     * Method to create Product
+     * @param requestDTO contains details needed to create Product
+     * @return Mono of ProductResponseDTO with saved Product details
+     */
+    @Override
+    public Mono<ProductResponseDTO> createProduct(ProductRequestDTO requestDTO) {
+        return reactiveProductRepository
+                .save(mapProductRequestToProduct(requestDTO))
+                .map(this::mapProductToProductResponse);
+    }
+
+    /***
+     * Method to get all Products
+     * @return Flux of ProductResponseDTO containing all Products
+     */
+    @Override
+    public Flux<ProductResponseDTO> getAllProducts() {
+        return reactiveProductRepository.findAll().map(this::mapProductToProductResponse);
+    }
+
+    /***
+     * Method to get a page of Products using keyset pagination on id
+     * @param afterId id of the last Product of the previous page, null for the first page
+     * @param size number of Products in the page, limited to the configured maximum page size
+     * @return Flux of ProductResponseDTO ordered by id
+     */
+    @Override
+    public Flux<ProductResponseDTO> getProductsPage(String afterId, Integer size) {
+        int pageSize = Objects.isNull(size) ? maxPageSize : Math.max(1, Math.min(size, maxPageSize));
+        PageRequest pageRequest = PageRequest.of(0, pageSize, Sort.by("id"));
+        Flux<Product> productFlux = Objects.isNull(afterId) ?
+                reactiveProductRepository.findAllBy(pageRequest) :
+                reactiveProductRepository.findByIdGreaterThan(
+                        ObjectId.isValid(afterId) ? new ObjectId(afterId) : afterId, pageRequest);
+        return productFlux.map(this::mapProductToProductResponse);
+    }
+
+    /***
+     * Method to stream all Products ordered by id. Products are read from the cursor only as fast as the
+     * subscriber requests them, so a slow client slows down the cursor instead of filling memory
+     * @return Flux of ProductResponseDTO
+     */
+    @Override
+    public Flux<ProductResponseDTO> streamAllProducts() {
+        return reactiveProductRepository.streamAllByOrderByIdAsc().map(this::mapProductToProductResponse);
+    }
+
+    /***
+     * Method to get Product based on id
+     * @param id id of the Product
+     * @return Mono of ProductResponseDTO containing the Product details of given Product id, failing with
+     * ProductNotFoundException if Product is not found
+     */
+    @Override
+    public Mono<ProductResponseDTO> getProductById(String id) {
+        return reactiveProductRepository
+                .findById(id)
+                .switchIfEmpty(Mono.error(() -> new ProductNotFoundException("Product "+ id +" Not Found")))
+                .map(this::mapProductToProductResponse);
+    }
+
+    /***
+     * Method to update Product
+     * @param requestDTO contains the Product details that need to be updated
+     * @return Mono of ProductResponseDTO containing the updated Product details, failing with
+     * ProductNotFoundException if Product is not found
+     */
+    @Override
+    public Mono<ProductResponseDTO> updateProduct(ProductUpdateRequestDTO requestDTO) {
+        return reactiveProductRepository
+                .findById(requestDTO.getId())
+                .switchIfEmpty(Mono.error(() ->
+                        new ProductNotFoundException("Product "+ requestDTO.getId() +" Not Found")))
+                .flatMap(product -> {
+                    if(Objects.nonNull(requestDTO.getSkuCode()) &&
+                    !"".equalsIgnoreCase(requestDTO.getSkuCode())){
+                        product.setSkuCode(requestDTO.getSkuCode());
+                    }
+                    if(Objects.nonNull(requestDTO.getName()) &&
+                    !"".equalsIgnoreCase(requestDTO.getName())){
+                        product.setName(requestDTO.getName());
+                    }
+                    if(Objects.nonNull(requestDTO.getDescription()) &&
+                    !"".equalsIgnoreCase(requestDTO.getDescription())){
+                        product.setDescription(requestDTO.getDescription());
+                    }
+                    if(Objects.nonNull(requestDTO.getPrice()) &&
+                    !"".equalsIgnoreCase(requestDTO.getPrice().toString())){
+                        product.setPrice(requestDTO.getPrice());
+                    }
+                    return reactiveProductRepository.save(product);
+                })
+                .map(this::mapProductToProductResponse);
+    }
+
+    /***
+     * Method to delete Product given by id
+     * @param id of the Product
+     * @return Mono completing once deleted, failing with ProductNotFoundException if Product not found
+     */
+    @Override
+    public Mono<Void> deleteProduct(String id) {
+        return reactiveProductRepository
+                .findById(id)
+                .switchIfEmpty(Mono.error(() -> new ProductNotFoundException("Product "+ id + " Not Found")))
+                .flatMap(product -> reactiveProductRepository.deleteById(id));
+    }
+
+    /***
+     * Method to map ProductRequestDTO to Product
+     * @param requestDTO ProductRequestDTO to be mapped
+     * @return Product
+     */
+    private Product mapProductRequestToProduct(ProductRequestDTO requestDTO){
+        return Product
+                .builder()
+                .skuCode(requestDTO.getSkuCode())
+                .name(requestDTO.getName())
+                .description(requestDTO.getDescription())
+                .price(requestDTO.getPrice())
+                .build();
+    }
+
+    /***
+     * Helper method to map Product to ProductResponseDTO
+     * @param product Product to be mapped
+     * @return ProductResponseDTO
+     */
+    private ProductResponseDTO mapProductToProductResponse(Product product) {
+        return ProductResponseDTO
+                .builder()
+                .id(product.getId())
+                .skuCode(product.getSkuCode())
+                .name(product.getName())
+                .description(product.getDescription())
+                .price(product.getPrice())
+                .version(product.getVersion())
+                .build();
+    }
+}
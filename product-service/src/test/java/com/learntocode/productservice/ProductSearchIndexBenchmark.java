@@ -0,0 +1,139 @@
+package com.learntocode.productservice;
+
+import com.learntocode.productservice.model.Product;
+import com.learntocode.productservice.service.ProductSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * JMH benchmark of ProductSearchIndex over a generated catalog of 1M Products. Names and descriptions are drawn
+ * from brands, categories and colors, every Product has a model number of its own, so the dictionary holds about as
+ * many terms as there are Products. Queries are sampled to report latency percentiles, from a term matching one
+ * Product to a one letter prefix matching most of the catalog. Heap used by the index is printed once built. Not
+ * part of the test run, started with
+ * java -cp target/test-classes:target/classes:$(dependency classpath) com.learntocode.productservice.ProductSearchIndexBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ProductSearchIndexBenchmark {
+    private static final String[] BRANDS = {"Samsung", "Apple", "Sony", "Nike", "Adidas", "Puma", "Reebok", "Asics",
+            "Fossil", "Casio", "Bata", "Lenovo", "Dell", "Philips", "Bosch", "Canon", "Nikon", "Xiaomi", "Oneplus",
+            "Realme", "Boat", "Jbl", "Lg", "Panasonic", "Titan"};
+    private static final String[] CATEGORIES = {"Phone", "Laptop", "Tablet", "Smartwatch", "Shoes", "Headphones",
+            "Speaker", "Camera", "Television", "Monitor", "Keyboard", "Mouse", "Charger", "Strap", "Backpack",
+            "Jacket", "Trimmer", "Mixer", "Kettle", "Printer"};
+    private static final String[] COLORS = {"black", "white", "silver", "blue", "red", "green", "grey", "gold"};
+
+    @Param("1000000")
+    private int products;
+
+    private ProductSearchIndex productSearchIndex;
+    private String rareQuery;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        productSearchIndex = new ProductSearchIndex(null, null, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(productSearchIndex, "maxResults", 100);
+        ReflectionTestUtils.setField(productSearchIndex, "maxPrefixExpansions", 64);
+        ReflectionTestUtils.setField(productSearchIndex, "rebuildInterval", Duration.ofMinutes(5));
+        productSearchIndex.registerMetrics();
+        long heapBefore = usedHeap();
+        Random random = new Random(42);
+        for(int number = 0; number < products; number++){
+            productSearchIndex.index(getProduct(number, random));
+        }
+        rareQuery = "m" + (products / 2);
+        System.out.printf("Index of %d Products uses %d MB of heap%n", products, (usedHeap() - heapBefore) >> 20);
+    }
+
+    @Benchmark
+    public List<String> searchRareTerm(){
+        return productSearchIndex.search(rareQuery, 10);
+    }
+
+    @Benchmark
+    public List<String> searchCommonTerm(){
+        return productSearchIndex.search("smartwatch", 10);
+    }
+
+    @Benchmark
+    public List<String> searchTwoTerms(){
+        return productSearchIndex.search("samsung phone", 10);
+    }
+
+    @Benchmark
+    public List<String> searchThreeTermsWithPrefix(){
+        return productSearchIndex.search("black samsung pho", 10);
+    }
+
+    @Benchmark
+    public List<String> searchShortPrefix(){
+        return productSearchIndex.search("s", 10);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public void indexChangedProduct(){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        productSearchIndex.index(getProduct(random.nextInt(products), random));
+    }
+
+    /***
+     * Helper method to generate a Product of the catalog
+     * @param number of the Product, determines its id and model number
+     * @param random draws brand, category and colors
+     * @return Product
+     */
+    private static Product getProduct(int number, Random random){
+        String brand = BRANDS[random.nextInt(BRANDS.length)];
+        String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+        return Product
+                .builder()
+                .id(String.format("%024x", number))
+                .name(brand + " " + category + " M" + number)
+                .description(COLORS[random.nextInt(COLORS.length)] + " " + category.toLowerCase() + " by " + brand +
+                        ", also in " + COLORS[random.nextInt(COLORS.length)])
+                .price(BigDecimal.valueOf(100 + random.nextInt(100000)))
+                .build();
+    }
+
+    private static long usedHeap(){
+        for(int i = 0; i < 3; i++){
+            System.gc();
+        }
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProductSearchIndexBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
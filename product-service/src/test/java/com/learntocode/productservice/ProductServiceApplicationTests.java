@@ -2,9 +2,14 @@ package com.learntocode.productservice;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.learntocode.productservice.dto.ProductBatchRequestDTO;
+import com.learntocode.productservice.dto.ProductChangeDTO;
+import com.learntocode.productservice.dto.ProductImportResultDTO;
 import com.learntocode.productservice.dto.ProductRequestDTO;
 import com.learntocode.productservice.dto.ProductResponseDTO;
+import com.learntocode.productservice.model.Product;
 import com.learntocode.productservice.repository.ProductRepository;
+import com.learntocode.productservice.service.ProductCache;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +20,7 @@ import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.testcontainers.containers.MongoDBContainer;
@@ -22,9 +28,15 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @Testcontainers
@@ -41,6 +53,9 @@ public class ProductServiceApplicationTests {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ProductCache productCache;
+
     @DynamicPropertySource
     static void setProperties(DynamicPropertyRegistry dynamicPropertyRegistry){
         dynamicPropertyRegistry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
@@ -63,7 +78,7 @@ public class ProductServiceApplicationTests {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(productRequestString))
                 .andExpect(MockMvcResultMatchers.status().isCreated())
-                .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("IPhone 13"));
+                .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("Samsung F51"));
     }
 
     /***
@@ -96,6 +111,408 @@ public class ProductServiceApplicationTests {
         assertEquals(productRepository.findAll().size(), productList.size());
     }
 
+    /***
+     * Integration Test of keyset pagination on GET /api/products/ api endpoint. Products are saved using
+     * POST /api/products/ and then all pages are walked using afterId of the last Product of each page.
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test03 - Get Products Page by Page")
+    public void shouldGetProductsPageByPage() throws Exception{
+        //Products are created using POST
+        for(int i = 0; i < 5; i++){
+            mockMvc.perform(MockMvcRequestBuilders.post("/api/products/")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(
+                                    getProductRequest("Puma " + i,"Puma Shoes", BigDecimal.valueOf(4500)))))
+                    .andExpect(MockMvcResultMatchers.status().isCreated());
+        }
+
+        //GET on /api/products/ page by page until an empty page is returned and asserting the total
+        int productCount = 0;
+        String afterId = null;
+        List<ProductResponseDTO> productList;
+        do{
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/")
+                    .param("size", "2");
+            if(afterId != null){
+                requestBuilder.param("afterId", afterId);
+            }
+            MvcResult mvcResult = mockMvc.perform(requestBuilder).andReturn();
+            productList = objectMapper.readValue(mvcResult.getResponse().getContentAsString(),
+                    TypeFactory.defaultInstance().constructCollectionType(List.class, ProductResponseDTO.class));
+            productCount += productList.size();
+            if(!productList.isEmpty()){
+                afterId = productList.get(productList.size() - 1).getId();
+            }
+        } while(!productList.isEmpty());
+        assertEquals(productRepository.count(), productCount);
+    }
+
+    /***
+     * Integration Test of streaming GET /api/products/ api endpoint with Accept: application/x-ndjson. Every
+     * line of the streamed response contains one Product.
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test04 - Stream All Products")
+    public void shouldStreamAllProducts() throws Exception{
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/products/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                getProductRequest("Adidas 1120","Adidas Shoes", BigDecimal.valueOf(5500)))))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        //Streaming response is written asynchronously, hence the async dispatch
+        MvcResult asyncResult = mockMvc.perform(MockMvcRequestBuilders.get("/api/products/")
+                        .accept("application/x-ndjson"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(asyncResult))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn();
+        List<String> lines = mvcResult.getResponse().getContentAsString().lines().toList();
+        assertEquals(productRepository.count(), lines.size());
+        for(String line : lines){
+            objectMapper.readValue(line, ProductResponseDTO.class);
+        }
+    }
+
+    /***
+     * Integration Test of the Product cache. A Product and the listing are read into the cache, then the product
+     * collection is changed through ProductRepository, bypassing the cache the way another instance would. The
+     * change stream has to invalidate the cached Product and listing.
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test05 - Invalidate Cached Products on Change")
+    public void shouldInvalidateCachedProductsOnChange() throws Exception{
+        //MongoDBContainer runs a replica set, so the change stream has to start listening
+        long deadline = System.currentTimeMillis() + 10000;
+        while(!productCache.isListening() && System.currentTimeMillis() < deadline){
+            Thread.sleep(100);
+        }
+        assertTrue(productCache.isListening());
+
+        MvcResult createResult = mockMvc.perform(MockMvcRequestBuilders.post("/api/products/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                getProductRequest("Reebok 300","Reebok Shoes", BigDecimal.valueOf(3500)))))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn();
+        String id = objectMapper.readValue(createResult.getResponse().getContentAsString(), ProductResponseDTO.class)
+                .getId();
+
+        //Product and listing are cached by reading them
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/products/" + id))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("Reebok 300"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/products/"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        //Product collection is changed without going through the service
+        Product product = productRepository.findById(id).orElseThrow();
+        product.setName("Reebok 310");
+        productRepository.save(product);
+        productRepository.save(Product.builder().name("Reebok 320").description("Reebok Shoes")
+                .price(BigDecimal.valueOf(3800)).build());
+
+        //Cached Product and listing are invalidated by the change stream
+        String name = null;
+        List<ProductResponseDTO> productList = List.of();
+        deadline = System.currentTimeMillis() + 5000;
+        while(System.currentTimeMillis() < deadline){
+            name = objectMapper.readValue(mockMvc.perform(MockMvcRequestBuilders.get("/api/products/" + id))
+                    .andReturn().getResponse().getContentAsString(), ProductResponseDTO.class).getName();
+            productList = objectMapper.readValue(mockMvc.perform(MockMvcRequestBuilders.get("/api/products/"))
+                            .andReturn().getResponse().getContentAsString(),
+                    TypeFactory.defaultInstance().constructCollectionType(List.class, ProductResponseDTO.class));
+            if("Reebok 310".equals(name) && productList.size() == productRepository.count()){
+                break;
+            }
+            Thread.sleep(50);
+        }
+        assertEquals("Reebok 310", name);
+        assertEquals(productRepository.count(), productList.size());
+    }
+
+    /***
+     * Integration Test of GET /api/products/search api endpoint. Products are saved using POST /api/products/ and
+     * then searched by a term of their description and a prefix of their name, Products with the name matching rank
+     * first.
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test06 - Search Products")
+    public void shouldSearchProducts() throws Exception{
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/products/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                getProductRequest("Fossil Gen 6","Fossil Smartwatch", BigDecimal.valueOf(21000)))))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/products/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                getProductRequest("Gen Z Strap","Strap for Fossil Smartwatch", BigDecimal.valueOf(900)))))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/api/products/search")
+                        .param("q", "smartwatch fos"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn();
+        List<ProductResponseDTO> productList = objectMapper.readValue(mvcResult.getResponse().getContentAsString(),
+                TypeFactory.defaultInstance().constructCollectionType(List.class, ProductResponseDTO.class));
+        assertEquals(2, productList.size());
+        assertEquals("Fossil Gen 6", productList.get(0).getName());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/products/search")
+                        .param("q", "smartwatch casio"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(0));
+    }
+
+    /***
+     * Integration Test of POST /api/products/batch/ api endpoint. Two saved Products and an unknown id are looked up
+     * in one request selecting the name only, the unknown id is reported as not found.
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test07 - Get Products by Ids")
+    public void shouldGetProductsByIds() throws Exception{
+        String[] ids = new String[2];
+        for(int i = 0; i < ids.length; i++){
+            MvcResult createResult = mockMvc.perform(MockMvcRequestBuilders.post("/api/products/")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(
+                                    getProductRequest("Asics " + i,"Asics Shoes", BigDecimal.valueOf(7500)))))
+                    .andExpect(MockMvcResultMatchers.status().isCreated())
+                    .andReturn();
+            ids[i] = objectMapper.readValue(createResult.getResponse().getContentAsString(), ProductResponseDTO.class)
+                    .getId();
+        }
+
+        ProductBatchRequestDTO requestDTO = ProductBatchRequestDTO
+                .builder()
+                .ids(List.of(ids[0], "ffffffffffffffffffffffff", ids[1]))
+                .fields(List.of("name"))
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/products/batch/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requestDTO)))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name").value("Asics 0"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].price").doesNotExist())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].found").value(false))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].id").value(ids[1]))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].found").value(true));
+
+        //Unknown fields are rejected
+        requestDTO.setFields(List.of("stock"));
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/products/batch/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requestDTO)))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    /***
+     * Integration Test of POST /api/products/import/ api endpoint. A newline delimited JSON body creates a Product,
+     * updates a saved Product, upserts an unknown id and contains an invalid line. The outcome of every record is
+     * verified from the newline delimited JSON response.
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test08 - Import Products")
+    public void shouldImportProducts() throws Exception{
+        MvcResult createResult = mockMvc.perform(MockMvcRequestBuilders.post("/api/products/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                getProductRequest("Bata 100","Bata Shoes", BigDecimal.valueOf(1500)))))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn();
+        String id = objectMapper.readValue(createResult.getResponse().getContentAsString(), ProductResponseDTO.class)
+                .getId();
+
+        String body = objectMapper.writeValueAsString(getProductRequest("Bata 200","Bata Shoes",
+                BigDecimal.valueOf(1800))) + "\n" +
+                "{\"id\":\"" + id + "\",\"price\":1400}\n" +
+                "\n" +
+                "{\"name\":\n" +
+                "{\"id\":\"eeeeeeeeeeeeeeeeeeeeeeee\",\"name\":\"Bata 300\",\"price\":2100}\n";
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.post("/api/products/import/")
+                        .contentType("application/x-ndjson")
+                        .content(body))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn();
+        Map<Long, ProductImportResultDTO> results = new HashMap<>();
+        for(String line : mvcResult.getResponse().getContentAsString().lines().toList()){
+            ProductImportResultDTO resultDTO = objectMapper.readValue(line, ProductImportResultDTO.class);
+            results.put(resultDTO.getIndex(), resultDTO);
+        }
+        assertEquals(4, results.size());
+        assertTrue(results.get(0L).getAccepted() && results.get(0L).getCreated());
+        assertTrue(results.get(1L).getAccepted() && !results.get(1L).getCreated());
+        assertFalse(results.get(2L).getAccepted());
+        assertTrue(results.get(3L).getAccepted() && results.get(3L).getCreated());
+        assertEquals(0, BigDecimal.valueOf(1400).compareTo(productRepository.findById(id).orElseThrow().getPrice()));
+        assertEquals("Bata 300", productRepository.findById("eeeeeeeeeeeeeeeeeeeeeeee").orElseThrow().getName());
+    }
+
+    /***
+     * Integration Test of conditional GET /api/products/{id} and GET /api/products/. A request repeating the ETag of
+     * the previous response is answered 304 with an empty body until the Product or the catalog changes, then the
+     * changed body is sent again with a new ETag.
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test09 - Conditional Get Products")
+    public void shouldAnswerNotModifiedForUnchangedProducts() throws Exception{
+        long deadline = System.currentTimeMillis() + 10000;
+        while(!productCache.isListening() && System.currentTimeMillis() < deadline){
+            Thread.sleep(100);
+        }
+        assertTrue(productCache.isListening());
+
+        MvcResult createResult = mockMvc.perform(MockMvcRequestBuilders.post("/api/products/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                getProductRequest("Puma 100","Puma Shoes", BigDecimal.valueOf(2500)))))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn();
+        ProductResponseDTO responseDTO = objectMapper.readValue(createResult.getResponse().getContentAsString(),
+                ProductResponseDTO.class);
+
+        //Product is tagged with its version and not sent again while unchanged
+        MvcResult productResult = mockMvc.perform(MockMvcRequestBuilders.get("/api/products/" + responseDTO.getId()))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"" + responseDTO.getVersion() + "\""))
+                .andReturn();
+        String productETag = productResult.getResponse().getHeader("ETag");
+        assertTrue(productResult.getResponse().getContentAsByteArray().length > 0);
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/products/" + responseDTO.getId())
+                        .header("If-None-Match", productETag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().bytes(new byte[0]));
+
+        //Listing is tagged with the catalog version, once the change stream has seen the new Product
+        String listingETag = null;
+        deadline = System.currentTimeMillis() + 5000;
+        while(System.currentTimeMillis() < deadline){
+            MvcResult listingResult = mockMvc.perform(MockMvcRequestBuilders.get("/api/products/"))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andReturn();
+            listingETag = listingResult.getResponse().getHeader("ETag");
+            if(Objects.nonNull(listingETag) &&
+                    listingResult.getResponse().getContentAsString().contains(responseDTO.getId()) &&
+                    mockMvc.perform(MockMvcRequestBuilders.get("/api/products/").header("If-None-Match", listingETag))
+                            .andReturn().getResponse().getStatus() == 304){
+                break;
+            }
+            Thread.sleep(50);
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/products/").header("If-None-Match", listingETag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().bytes(new byte[0]));
+
+        //Updating the Product changes both ETags
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/products/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":\"" + responseDTO.getId() + "\",\"price\":2300}"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/products/" + responseDTO.getId())
+                        .header("If-None-Match", productETag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"" + (responseDTO.getVersion() + 1) + "\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.price").value(2300));
+        int status = 304;
+        deadline = System.currentTimeMillis() + 5000;
+        while(status == 304 && System.currentTimeMillis() < deadline){
+            status = mockMvc.perform(MockMvcRequestBuilders.get("/api/products/").header("If-None-Match", listingETag))
+                    .andReturn().getResponse().getStatus();
+            Thread.sleep(50);
+        }
+        assertEquals(200, status);
+    }
+
+    /***
+     * Integration Test of GET /api/products/changes api endpoint. Products are changed after the catalog version sent
+     * in the ETag of the listing, and the changes after it are read in the order they were made. A catalog version
+     * not known is answered 410.
+     * @throws Exception ObjectMapper read and write methods, and MockMVC perform methods throw exception
+     */
+    @Test
+    @DisplayName("Integration Test10 - Get Product Changes")
+    public void shouldGetProductChanges() throws Exception{
+        long deadline = System.currentTimeMillis() + 10000;
+        while(!productCache.isListening() && System.currentTimeMillis() < deadline){
+            Thread.sleep(100);
+        }
+        assertTrue(productCache.isListening());
+
+        List<String> ids = new ArrayList<>();
+        for(String name : List.of("Asics 100", "Asics 200")){
+            MvcResult createResult = mockMvc.perform(MockMvcRequestBuilders.post("/api/products/")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(
+                                    getProductRequest(name,"Asics Shoes", BigDecimal.valueOf(4000)))))
+                    .andExpect(MockMvcResultMatchers.status().isCreated())
+                    .andReturn();
+            ids.add(objectMapper.readValue(createResult.getResponse().getContentAsString(), ProductResponseDTO.class)
+                    .getId());
+        }
+        String since = null;
+        deadline = System.currentTimeMillis() + 5000;
+        while(Objects.isNull(since) && System.currentTimeMillis() < deadline){
+            since = mockMvc.perform(MockMvcRequestBuilders.get("/api/products/")).andReturn().getResponse()
+                    .getHeader("ETag");
+            Thread.sleep(50);
+        }
+        assertTrue(Objects.nonNull(since));
+        since = since.replace("\"", "");
+        //Creations the change stream had not seen yet when the listing was tagged are read past
+        List<ProductChangeDTO> changeDTOList = getProductChanges(since);
+        while(!changeDTOList.isEmpty()){
+            since = changeDTOList.get(changeDTOList.size() - 1).getCatalogVersion();
+            changeDTOList = getProductChanges(since);
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/products/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":\"" + ids.get(0) + "\",\"price\":3800}"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/products/" + ids.get(1)))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        //Changes after the catalog version are read in the order they were made
+        changeDTOList = getProductChanges(since);
+        assertEquals(2, changeDTOList.size());
+        assertEquals(ids.get(0), changeDTOList.get(0).getId());
+        assertFalse(changeDTOList.get(0).getDeleted());
+        assertEquals(0, BigDecimal.valueOf(3800).compareTo(changeDTOList.get(0).getProduct().getPrice()));
+        assertEquals(ids.get(1), changeDTOList.get(1).getId());
+        assertTrue(changeDTOList.get(1).getDeleted());
+
+        //Nothing changed after the last change
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/products/changes")
+                        .param("since", changeDTOList.get(1).getCatalogVersion()))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/products/changes").param("since", "not-a-version"))
+                .andExpect(MockMvcResultMatchers.status().isGone());
+    }
+
+    /***
+     * Helper method to get the changes of Products after a catalog version
+     * @param since catalog version
+     * @return List of ProductChangeDTO
+     * @throws Exception ObjectMapper read method and MockMVC perform method throw exception
+     */
+    private List<ProductChangeDTO> getProductChanges(String since) throws Exception{
+        return objectMapper.readValue(mockMvc.perform(MockMvcRequestBuilders.get("/api/products/changes")
+                                .param("since", since))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andReturn().getResponse().getContentAsString(),
+                TypeFactory.defaultInstance().constructCollectionType(List.class, ProductChangeDTO.class));
+    }
+
     /***
      * Helper method to build ProductRequestDTO
      * @return Method return ProductRequestDTO built using parameters
@@ -0,0 +1,525 @@
+package com.learntocode.productservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learntocode.productservice.dto.ProductBatchRequestDTO;
+import com.learntocode.productservice.dto.ProductImportResultDTO;
+import com.learntocode.productservice.model.Product;
+import com.learntocode.productservice.repository.ProductRepository;
+import com.learntocode.productservice.service.ProductCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/***
+ * Load tests of product-service over HTTP against a MongoDB container running as a replica set, so that the change
+ * stream keeping the cache and the search index up to date is listening. Every test starts from an empty product
+ * collection. Results are logged as benchmarks. Excluded from the default build, run with mvn test -Pload-tests
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+@TestMethodOrder(MethodOrderer.DisplayName.class)
+@Slf4j
+public class ProductServiceLoadTests {
+    private static final int PRODUCTS = 1000;
+    private static final int IMPORT_RECORDS = 1_000_000;
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:4.4.2");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessageListenerContainer messageListenerContainer;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry dynamicPropertyRegistry){
+        dynamicPropertyRegistry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+        dynamicPropertyRegistry.add("eureka.client.enabled", () -> false);
+        dynamicPropertyRegistry.add("spring.zipkin.enabled", () -> false);
+    }
+
+    @BeforeEach
+    public void clearProducts() throws InterruptedException {
+        productRepository.deleteAll();
+        long deadline = System.currentTimeMillis() + 10000;
+        while(!productCache.isListening() && System.currentTimeMillis() < deadline){
+            Thread.sleep(100);
+        }
+        assertTrue(productCache.isListening());
+    }
+
+    /***
+     * Load Test of GET /api/products/{id} and GET /api/products/ with the Product cache enabled and bypassed. The
+     * same random reads of 1000 Products are sent in both modes after the cache has been warmed up. Nearly every
+     * cached read has to be a hit. Throughput, latency and hit ratio are logged as a benchmark
+     * @throws Exception HTTP client methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test01 - Read Products with and without Cache")
+    public void shouldReadProductsWithAndWithoutCache() throws Exception{
+        List<String> ids = saveProducts(PRODUCTS);
+        Supplier<CompletableFuture<Boolean>> readProduct =
+                () -> get("/api/products/" + ids.get(ThreadLocalRandom.current().nextInt(ids.size())));
+        Supplier<CompletableFuture<Boolean>> readPage = () -> get("/api/products/?size=100");
+        //warm up both modes, which also loads every Product into the cache
+        for(String id : ids){
+            get("/api/products/" + id).join();
+        }
+        measure(200, 16, readPage);
+
+        double hitsBefore = cacheGets("products", "hit");
+        double missesBefore = cacheGets("products", "miss");
+        LoadResult cachedProducts = measure(5000, 32, readProduct);
+        double hits = cacheGets("products", "hit") - hitsBefore;
+        double misses = cacheGets("products", "miss") - missesBefore;
+        LoadResult cachedPages = measure(1000, 32, readPage);
+        LoadResult uncachedProducts;
+        LoadResult uncachedPages;
+        ReflectionTestUtils.setField(productCache, "enabled", false);
+        try{
+            uncachedProducts = measure(5000, 32, readProduct);
+            uncachedPages = measure(1000, 32, readPage);
+        }
+        finally{
+            ReflectionTestUtils.setField(productCache, "enabled", true);
+        }
+        log.info("Cached getProductById: {}, hit ratio {}", cachedProducts, hits / (hits + misses));
+        log.info("Uncached getProductById: {}", uncachedProducts);
+        log.info("Cached page of 100 Products: {}", cachedPages);
+        log.info("Uncached page of 100 Products: {}", uncachedPages);
+        assertEquals(5000, cachedProducts.succeeded());
+        assertEquals(5000, uncachedProducts.succeeded());
+        assertEquals(1000, cachedPages.succeeded());
+        assertEquals(1000, uncachedPages.succeeded());
+        assertTrue(hits / (hits + misses) > 0.99, "Cached reads missed the cache: " + hits + " hits, " + misses +
+                " misses");
+    }
+
+    /***
+     * Load Test of GET /api/products/ on the servlet and on the reactive web stack. A reactive product-service is
+     * started next to the servlet one on the same product collection, the cache of the servlet stack is bypassed so
+     * that both read every page from MongoDB. Pages of 100 Products are read with more requests in flight than
+     * Tomcat has threads. Throughput and latency of both stacks are logged as a benchmark
+     * @throws Exception HTTP client methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test02 - Read Products on the Servlet and the Reactive Stack")
+    public void shouldReadProductsOnTheServletAndTheReactiveStack() throws Exception{
+        saveProducts(PRODUCTS);
+        ConfigurableApplicationContext reactiveContext = new SpringApplicationBuilder(ProductServiceApplication.class)
+                .properties("spring.main.web-application-type=reactive",
+                        "server.port=0",
+                        "spring.data.mongodb.uri=" + mongoDBContainer.getReplicaSetUrl(),
+                        "eureka.client.enabled=false",
+                        "spring.zipkin.enabled=false")
+                .run();
+        ReflectionTestUtils.setField(productCache, "enabled", false);
+        try{
+            int reactivePort = ((WebServerApplicationContext) reactiveContext).getWebServer().getPort();
+            Supplier<CompletableFuture<Boolean>> readServletPage = () -> get(port, "/api/products/?size=100");
+            Supplier<CompletableFuture<Boolean>> readReactivePage = () -> get(reactivePort, "/api/products/?size=100");
+            //warm up both stacks
+            measure(500, 32, readServletPage);
+            measure(500, 32, readReactivePage);
+
+            LoadResult servlet = measure(5000, 512, readServletPage);
+            LoadResult reactive = measure(5000, 512, readReactivePage);
+            log.info("Servlet page of 100 Products: {}", servlet);
+            log.info("Reactive page of 100 Products: {}", reactive);
+            assertEquals(5000, servlet.succeeded());
+            assertEquals(5000, reactive.succeeded());
+        }
+        finally{
+            ReflectionTestUtils.setField(productCache, "enabled", true);
+            reactiveContext.close();
+        }
+    }
+
+    /***
+     * Load Test of looking up 100 Products by POST /api/products/batch/ against 100 sequential
+     * GET /api/products/{id}, the way a cart used to be rendered. The cache is bypassed so that both read MongoDB.
+     * The batch lookup has to take less than half the time of the sequential lookups. Latency of both is logged as a
+     * benchmark
+     * @throws Exception HTTP client methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test03 - Look up Products in a Batch and one by one")
+    public void shouldLookUpProductsInABatchAndOneByOne() throws Exception{
+        List<String> ids = saveProducts(PRODUCTS);
+        String body = objectMapper.writeValueAsString(ProductBatchRequestDTO.builder().ids(ids.subList(0, 100)).build());
+        Supplier<CompletableFuture<Boolean>> batchLookup = () -> httpClient.sendAsync(HttpRequest
+                                .newBuilder(URI.create("http://localhost:" + port + "/api/products/batch/"))
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString(body))
+                                .build(),
+                        HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> response.statusCode() == 200);
+        Supplier<CompletableFuture<Boolean>> sequentialLookups = () -> {
+            CompletableFuture<Boolean> lookups = CompletableFuture.completedFuture(true);
+            for(String id : ids.subList(0, 100)){
+                lookups = lookups.thenCompose(found -> get("/api/products/" + id).thenApply(next -> found && next));
+            }
+            return lookups;
+        };
+        ReflectionTestUtils.setField(productCache, "enabled", false);
+        try{
+            //warm up both lookups
+            measure(20, 1, batchLookup);
+            measure(20, 1, sequentialLookups);
+
+            LoadResult batch = measure(100, 1, batchLookup);
+            LoadResult sequential = measure(100, 1, sequentialLookups);
+            log.info("Batch lookup of 100 Products: {}", batch);
+            log.info("Sequential lookup of 100 Products: {}", sequential);
+            assertEquals(100, batch.succeeded());
+            assertEquals(100, sequential.succeeded());
+            assertTrue(batch.medianMillis() < sequential.medianMillis() / 2,
+                    "Batch lookup is not faster than sequential lookups: " + batch + ", " + sequential);
+        }
+        finally{
+            ReflectionTestUtils.setField(productCache, "enabled", true);
+        }
+    }
+
+    /***
+     * Load Test of POST /api/products/import/ with a newline delimited JSON body of 1M Products, generated while it is
+     * sent. The change stream subscriptions are stopped during the import, so that the heap measured is that of the
+     * import and not of the search index picking up 1M Products. After a warm up import, live heap is sampled after a
+     * garbage collection every 2 seconds and has to grow by less than a quarter of the body, which holds for an import
+     * buffering a batch of records at a time. Throughput and heap growth are logged as a benchmark
+     * @throws Exception HTTP client methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test04 - Import 1M Products")
+    public void shouldImportOneMillionProducts() throws Exception{
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor();
+        AtomicLong bodyBytes = new AtomicLong();
+        messageListenerContainer.stop();
+        long accepted;
+        long baselineHeap;
+        AtomicLong peakHeap;
+        long startedAt;
+        try{
+            //warm up the import and the client until their pools and caches have grown to their steady state
+            importProducts(100000, new AtomicLong());
+            productRepository.deleteAll();
+
+            memoryMXBean.gc();
+            baselineHeap = memoryMXBean.getHeapMemoryUsage().getUsed();
+            peakHeap = new AtomicLong(baselineHeap);
+            heapSampler.scheduleWithFixedDelay(() -> {
+                memoryMXBean.gc();
+                peakHeap.accumulateAndGet(memoryMXBean.getHeapMemoryUsage().getUsed(), Math::max);
+            }, 2, 2, TimeUnit.SECONDS);
+            startedAt = System.nanoTime();
+            accepted = importProducts(IMPORT_RECORDS, bodyBytes);
+        }
+        finally{
+            heapSampler.shutdownNow();
+            messageListenerContainer.start();
+        }
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        long heapGrowth = peakHeap.get() - baselineHeap;
+        log.info("Import of {} Products: {} s, {} records/s, body {} MB, live heap growth {} MB",
+                IMPORT_RECORDS, String.format("%.1f", seconds), String.format("%.0f", IMPORT_RECORDS / seconds),
+                bodyBytes.get() >> 20, heapGrowth >> 20);
+        assertEquals(IMPORT_RECORDS, accepted);
+        assertEquals(IMPORT_RECORDS, productRepository.count());
+        assertTrue(heapGrowth < bodyBytes.get() / 4, "Import buffered the body: live heap grew by " + heapGrowth +
+                " bytes for a body of " + bodyBytes.get() + " bytes");
+    }
+
+    /***
+     * Load Test of conditional GET /api/products/ and GET /api/products/{id}. The listing of 1000 Products and a
+     * single Product are read repeatedly without and with the ETag of the previous response. Conditional reads have
+     * to be answered 304 without body and the listing has to cost less than half the CPU time of the process. Bytes
+     * and CPU time of both are logged as a benchmark
+     * @throws Exception HTTP client methods throw exception
+     */
+    @Test
+    @DisplayName("Load Test05 - Read unchanged Products with and without ETag")
+    public void shouldReadUnchangedProductsWithAndWithoutETag() throws Exception{
+        List<String> ids = saveProducts(PRODUCTS);
+        String listingETag = getListingETag(ids.get(ids.size() - 1));
+        String productETag = httpClient.send(HttpRequest
+                                .newBuilder(URI.create("http://localhost:" + port + "/api/products/" + ids.get(0))).build(),
+                        HttpResponse.BodyHandlers.discarding())
+                .headers().firstValue("ETag").orElse(null);
+        assertTrue(Objects.nonNull(listingETag) && Objects.nonNull(productETag));
+        //warm up both paths
+        measure(200, 8, () -> getTagged("/api/products/", null, new AtomicLong()));
+        measure(200, 8, () -> getTagged("/api/products/", listingETag, new AtomicLong()));
+
+        AtomicLong listingBytes = new AtomicLong();
+        AtomicLong taggedListingBytes = new AtomicLong();
+        AtomicLong productBytes = new AtomicLong();
+        AtomicLong taggedProductBytes = new AtomicLong();
+        long cpuTime = processCpuTime();
+        LoadResult listing = measure(1000, 8, () -> getTagged("/api/products/", null, listingBytes));
+        long listingCpuTime = processCpuTime() - cpuTime;
+        cpuTime = processCpuTime();
+        LoadResult taggedListing = measure(1000, 8, () -> getTagged("/api/products/", listingETag, taggedListingBytes));
+        long taggedListingCpuTime = processCpuTime() - cpuTime;
+        cpuTime = processCpuTime();
+        LoadResult product = measure(5000, 8, () -> getTagged("/api/products/" + ids.get(0), null, productBytes));
+        long productCpuTime = processCpuTime() - cpuTime;
+        cpuTime = processCpuTime();
+        LoadResult taggedProduct = measure(5000, 8,
+                () -> getTagged("/api/products/" + ids.get(0), productETag, taggedProductBytes));
+        long taggedProductCpuTime = processCpuTime() - cpuTime;
+        log.info("Listing of 1000 Products without ETag: {}, {} KB, {} ms CPU", listing, listingBytes.get() >> 10,
+                listingCpuTime / 1000000);
+        log.info("Listing of 1000 Products with ETag: {}, {} KB, {} ms CPU", taggedListing,
+                taggedListingBytes.get() >> 10, taggedListingCpuTime / 1000000);
+        log.info("Product without ETag: {}, {} KB, {} ms CPU", product, productBytes.get() >> 10,
+                productCpuTime / 1000000);
+        log.info("Product with ETag: {}, {} KB, {} ms CPU", taggedProduct, taggedProductBytes.get() >> 10,
+                taggedProductCpuTime / 1000000);
+        assertEquals(1000, listing.succeeded());
+        assertEquals(1000, taggedListing.succeeded());
+        assertEquals(5000, product.succeeded());
+        assertEquals(5000, taggedProduct.succeeded());
+        assertEquals(0, taggedListingBytes.get());
+        assertEquals(0, taggedProductBytes.get());
+        assertTrue(taggedListingCpuTime < listingCpuTime / 2, "Conditional listing did not save CPU time: " +
+                taggedListingCpuTime + " ns against " + listingCpuTime + " ns");
+    }
+
+    /***
+     * Helper method to import generated Products through POST /api/products/import/. The results are streamed back
+     * while the body is still being sent, which needs a client reading and writing at the same time
+     * @param records number of Products to be imported
+     * @param bodyBytes incremented by the size of every line sent
+     * @return number of records accepted
+     */
+    public long importProducts(int records, AtomicLong bodyBytes){
+        Flux<String> lines = Flux.range(0, records)
+                .map(record -> "{\"skuCode\":\"IMPORT-" + record + "\",\"name\":\"Import Product " + record +
+                        "\",\"description\":\"Product " + record + " of the import load test\",\"price\":" +
+                        (100 + record % 100000) + "}\n")
+                .doOnNext(line -> bodyBytes.addAndGet(line.length()));
+        return WebClient.create("http://localhost:" + port)
+                .post()
+                .uri("/api/products/import/")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(lines, String.class)
+                .retrieve()
+                .bodyToFlux(ProductImportResultDTO.class)
+                .filter(ProductImportResultDTO::getAccepted)
+                .count()
+                .blockOptional()
+                .orElse(0L);
+    }
+
+    /***
+     * Helper method to send a GET request to product-service
+     * @param path path and query of the request
+     * @return CompletableFuture of true if answered 200
+     */
+    public CompletableFuture<Boolean> get(String path){
+        return get(port, path);
+    }
+
+    /***
+     * Helper method to send a GET request
+     * @param port port of the product-service to be called
+     * @param path path and query of the request
+     * @return CompletableFuture of true if answered 200
+     */
+    public CompletableFuture<Boolean> get(int port, String path){
+        return httpClient.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build(),
+                        HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> response.statusCode() == 200);
+    }
+
+    /***
+     * Helper method to send a GET request, conditional if an ETag is given
+     * @param path path and query of the request
+     * @param eTag sent as If-None-Match, null for an unconditional request
+     * @param bodyBytes incremented by the size of the response body
+     * @return CompletableFuture of true if answered 304 to a conditional request or 200 to an unconditional one
+     */
+    public CompletableFuture<Boolean> getTagged(String path, String eTag, AtomicLong bodyBytes){
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+        if(Objects.nonNull(eTag)){
+            builder.header("If-None-Match", eTag);
+        }
+        return httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    bodyBytes.addAndGet(response.body().length);
+                    return response.statusCode() == (Objects.isNull(eTag) ? 200 : 304);
+                });
+    }
+
+    /***
+     * Helper method to get the ETag of the listing, which is tagged once the change stream has seen the last change
+     * @param lastId id of the last Product saved, which has to be listed
+     * @return ETag of the listing, null if not tagged within 5 seconds
+     * @throws Exception HTTP client methods throw exception
+     */
+    public String getListingETag(String lastId) throws Exception{
+        long deadline = System.currentTimeMillis() + 5000;
+        while(System.currentTimeMillis() < deadline){
+            HttpResponse<String> response = httpClient.send(HttpRequest
+                            .newBuilder(URI.create("http://localhost:" + port + "/api/products/")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            String eTag = response.headers().firstValue("ETag").orElse(null);
+            if(Objects.nonNull(eTag) && response.body().contains(lastId)){
+                return eTag;
+            }
+            Thread.sleep(50);
+        }
+        return null;
+    }
+
+    /***
+     * Helper method to get the CPU time used by the process so far, by product-service and the test client alike
+     * @return CPU time in nanoseconds
+     */
+    public static long processCpuTime(){
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    /***
+     * Helper method to save Products directly to the product collection
+     * @param count number of Products
+     * @return ids of the saved Products
+     */
+    public List<String> saveProducts(int count){
+        return productRepository.saveAll(IntStream.range(0, count)
+                        .mapToObj(index -> Product
+                                .builder()
+                                .skuCode("LOAD-" + index)
+                                .name("Load Product " + index)
+                                .description("Product " + index + " of the load test catalog")
+                                .price(BigDecimal.valueOf(100 + index))
+                                .build())
+                        .toList())
+                .stream()
+                .map(Product::getId)
+                .toList();
+    }
+
+    /***
+     * Helper method to get the number of lookups of a cache with the given result since startup
+     * @param cache name of the cache
+     * @param result hit or miss
+     * @return number of lookups
+     */
+    public double cacheGets(String cache, String result){
+        return meterRegistry.get("cache.gets").tag("cache", cache).tag("result", result).functionCounter().count();
+    }
+
+    /***
+     * Helper method to send requests with at most concurrency of them in flight at a time
+     * @param requests number of requests
+     * @param concurrency maximum number of requests in flight
+     * @param call sends one request, completing with true if it succeeded
+     * @return LoadResult
+     * @throws InterruptedException if interrupted while waiting for a request to complete
+     */
+    public static LoadResult measure(int requests, int concurrency, Supplier<CompletableFuture<Boolean>> call)
+            throws InterruptedException{
+        Semaphore inFlight = new Semaphore(concurrency);
+        long[] latencies = new long[requests];
+        boolean[] succeeded = new boolean[requests];
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        long startedAt = System.nanoTime();
+        for(int index = 0; index < requests; index++){
+            inFlight.acquire();
+            int request = index;
+            long sentAt = System.nanoTime();
+            futures.add(call.get()
+                    .whenComplete((success, exception) -> {
+                        latencies[request] = System.nanoTime() - sentAt;
+                        succeeded[request] = Boolean.TRUE.equals(success);
+                        inFlight.release();
+                    }));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(exception -> null).join();
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        Arrays.sort(latencies);
+        int succeededCount = 0;
+        for(boolean success : succeeded){
+            succeededCount += success ? 1 : 0;
+        }
+        return new LoadResult(succeededCount,
+                requests / seconds,
+                latencies[requests / 2] / 1e6,
+                latencies[(int) Math.ceil(requests * 0.99) - 1] / 1e6);
+    }
+
+    /***
+     * Number of succeeded requests, requests per second and latency percentiles of a load test run
+     */
+    public record LoadResult(int succeeded, double throughput, double medianMillis, double p99Millis) {
+        @Override
+        public String toString(){
+            return String.format("%d succeeded, %.1f calls/s, median %.1f ms, p99 %.1f ms",
+                    succeeded, throughput, medianMillis, p99Millis);
+        }
+    }
+}